@@ -193,6 +193,8 @@ public class Main
     * during training.
    **/
   private static int trainingOutput = 0;
+  /** The number of threads that pre-extract features during training. */
+  public static int extractionThreads = 1;
   /**
     * This flag is set to <code>true</code> if cleaning has been enabled on
     * the command line.
@@ -351,6 +353,18 @@ public class Main
                           + "non-negative integer.");
         }
       }
+      else if (args[index].equals("-e")) {
+        try {
+          extractionThreads = Integer.parseInt(args[++index]);
+          if (extractionThreads < 1) throw new Exception();
+        }
+        catch (Exception e) {
+          PrintUsage();
+          throw
+            new Exception("The -e argument must be followed by a "
+                          + "positive integer.");
+        }
+      }
       else if (args[index].equals("-c")) compileOnly = true;
       else if (args[index].equals("-d"))
         classPackageDirectory = args[++index];
@@ -557,6 +571,7 @@ public class Main
 + "  where [options] is one or more of the following:\n"
 + "    -c               Compile to Java only\n"
 + "    -d <dir>         Write generated class files to <dir>\n"
++ "    -e <n>           Pre-extract features with <n> threads\n"
 + "    -j <a>           Send the specified arguments to javac\n"
 //+ "    -p               Train in parallel\n"
 + "    -s               Print the names of all declarations and quit\n"
@@ -495,6 +495,7 @@ public class Train extends Pass
         progressOutput = Integer.parseInt(lce.progressOutput.value);
 
       trainer = new BatchTrainer(learner, parser, progressOutput);
+      trainer.setThreads(Main.extractionThreads);
     }
 
 
@@ -755,6 +756,7 @@ public class Train extends Pass
         BatchTrainer preExtractor =
           new BatchTrainer(learner, testParser, trainer.getProgressOutput(),
                            "test set: ");
+        preExtractor.setThreads(Main.extractionThreads);
         preExtractor.preExtract(testExFilePath, preExtractZip,
                                 Lexicon.CountPolicy.none);
         testParser = preExtractor.getParser();
@@ -9,14 +9,23 @@ import java.io.FileOutputStream;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import LBJ2.classify.Classifier;
+import LBJ2.classify.FeatureVector;
 import LBJ2.learn.Learner;
 import LBJ2.parse.FoldSeparator;
 import LBJ2.parse.FoldParser;
 import LBJ2.parse.Parser;
 import LBJ2.parse.ArrayFileParser;
+import LBJ2.parse.ReadAheadParser;
 import LBJ2.util.ExceptionlessInputStream;
 import LBJ2.util.ExceptionlessOutputStream;
 import LBJ2.util.TableFormat;
@@ -31,6 +40,18 @@ import LBJ2.util.StudentT;
  **/
 public class BatchTrainer
 {
+  /**
+    * The number of examples handed to a thread at a time during parallel
+    * pre-extraction.
+   **/
+  public static final int extractionBlockSize = 64;
+  /**
+    * The number of examples read ahead of the learner during training when
+    * more than one thread is used.
+   **/
+  public static final int readAhead = 1024;
+
+
   /** <!-- writeExample(ExceptionlessOutputStream,int[],double[],int[],double[]) -->
     * Writes an example vector to the specified stream, with all features
     * being written in the order they appear in the vector.
@@ -170,6 +191,12 @@ public class BatchTrainer
   protected int examples;
   /** The number of features extracted during pre-extraction. */
   protected int lexiconSize;
+  /**
+    * The number of threads that extract features during pre-extraction.
+    * When greater than 1, training also reads examples ahead of the learner
+    * on a separate thread.
+   **/
+  protected int threads = 1;
 
 
   // Constructors.
@@ -286,6 +313,21 @@ public class BatchTrainer
   public int getProgressOutput() { return progressOutput; }
   /** Returns the value of {@link #parser}. */
   public Parser getParser() { return parser; }
+  /** Returns the value of {@link #threads}. */
+  public int getThreads() { return threads; }
+
+
+  /** <!-- setThreads(int) -->
+    * Sets the number of threads that extract features during
+    * pre-extraction.  With more than one, {@link #learner}'s labeler and
+    * extractor are called on several threads at once, so they must not
+    * share mutable state between calls.  Features are still added to the
+    * lexicon in the order the examples are parsed, so the lexicon and the
+    * extracted examples are the same no matter how many threads are used.
+    *
+    * @param t  The number of threads.
+   **/
+  public void setThreads(int t) { threads = Math.max(1, t); }
 
 
   /** <!-- setIsTraining(boolean) -->
@@ -496,9 +538,12 @@ public class BatchTrainer
     // Write examples to the output stream.
     boolean alreadyExtracted = parser instanceof ArrayFileParser;
     if (alreadyExtracted) ((ArrayFileParser) parser).setIncludePruned(true);
+    Parser source = parser;
+    if (threads > 1 && !alreadyExtracted)
+      source = new ParallelExtractor(preExtractLearner, parser, threads);
 
-    for (Object example = parser.next(); example != null;
-         example = parser.next()) {
+    for (Object example = source.next(); example != null;
+         example = source.next()) {
       if (progressOutput > 0 && examples % progressOutput == 0)
         System.out.println(
             "  " + learner.name + ", pre-extract: " + messageIndent + examples
@@ -535,7 +580,7 @@ public class BatchTrainer
           "  " + learner.name + ", pre-extract: " + messageIndent + examples
           + " examples at " + new Date());
 
-    parser.close();
+    source.close();
     eos.close();
 
     if (copy) {
@@ -906,11 +951,14 @@ public class BatchTrainer
     }
     else setIsTraining(true);
 
+    Parser source = parser;
+    if (threads > 1) source = new ReadAheadParser(parser, readAhead);
+
     for (int i = start; i <= rounds; ++i) {
       int examples = 0;
 
-      for (Object example = parser.next(); example != null;
-           example = parser.next()) {
+      for (Object example = source.next(); example != null;
+           example = source.next()) {
         if (example == FoldSeparator.separator) continue;
 
         if (progressOutput > 0 && examples % progressOutput == 0) {
@@ -930,7 +978,7 @@ public class BatchTrainer
         System.out.println(examples + " examples processed at " + new Date());
       }
 
-      parser.reset();
+      source.reset();
       learner.doneWithRound();
       dwr.doneWithRound(i);
     }
@@ -1423,5 +1471,143 @@ public class BatchTrainer
 
     return result;
   }
+
+
+  /** <!-- class ParallelExtractor -->
+    * Reads examples from a parser and calls a learner's labeler and
+    * extractor on them on a pool of threads, a block of examples at a time.
+    * {@link #next()} looks up the resulting features in the learner's
+    * lexicons on the calling thread and in the order the examples were
+    * parsed, returning example arrays just as
+    * {@link Learner#getExampleArray(Object)} would.  Fold separators are
+    * returned as they are.
+   **/
+  protected static class ParallelExtractor implements Parser
+  {
+    /** The learner whose labeler, extractor, and lexicons are used. */
+    protected Learner learner;
+    /** The parser examples are read from, only on the calling thread. */
+    protected Parser parser;
+    /** The threads that call the labeler and extractor. */
+    protected ExecutorService pool;
+    /** The blocks submitted to {@link #pool}, in order. */
+    protected LinkedList pending;
+    /** The number of blocks kept in {@link #pending}. */
+    protected int maxPending;
+    /** Whether {@link #parser} has returned its last example. */
+    protected boolean exhausted;
+    /** The extracted block being returned. */
+    protected Object[] block;
+    /** The position of the next example in {@link #block}. */
+    protected int position;
+
+
+    /**
+      * Creates the extractor and starts extracting.
+      *
+      * @param l  The learner whose labeler, extractor, and lexicons are used.
+      * @param p  The parser examples are read from.
+      * @param t  The number of threads.
+     **/
+    public ParallelExtractor(Learner l, Parser p, int t) {
+      learner = l;
+      parser = p;
+      pool =
+        Executors.newFixedThreadPool(t,
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "LBJ pre-extract");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      pending = new LinkedList();
+      maxPending = 2 * t;
+      while (pending.size() < maxPending && !exhausted) submit();
+    }
+
+
+    /**
+      * Reads the next block of examples from {@link #parser} and submits it
+      * to {@link #pool}.
+     **/
+    protected void submit() {
+      final Object[] examples = new Object[extractionBlockSize];
+      int n = 0;
+      while (n < examples.length && !exhausted) {
+        examples[n] = parser.next();
+        if (examples[n] == null) exhausted = true;
+        else ++n;
+      }
+      if (n == 0) return;
+
+      final int size = n;
+      final Classifier labeler = learner.getLabeler();
+      final Classifier extractor = learner.getExtractor();
+      pending.add(pool.submit(
+        new Callable() {
+          public Object call() {
+            Object[] result = new Object[size];
+            for (int i = 0; i < size; ++i) {
+              Object example = examples[i];
+              if (example == FoldSeparator.separator
+                  || example instanceof Object[]
+                     && ((Object[]) example)[0] instanceof int[]
+                     && ((Object[]) example)[1] instanceof double[])
+                result[i] = example;
+              else
+                result[i] =
+                  new FeatureVector[]{ labeler.classify(example),
+                                       extractor.classify(example) };
+            }
+            return result;
+          }
+        }));
+    }
+
+
+    /**
+      * Returns the next example array or fold separator, or
+      * <code>null</code> when there are no more.
+     **/
+    public Object next() {
+      while (block == null || position == block.length) {
+        if (pending.isEmpty()) return null;
+        Future future = (Future) pending.removeFirst();
+        if (!exhausted) submit();
+
+        try { block = (Object[]) future.get(); }
+        catch (Exception e) {
+          System.err.println(
+              "LBJ ERROR: BatchTrainer.preExtract: Feature extraction "
+              + "failed:");
+          if (e.getCause() != null) e.getCause().printStackTrace();
+          else e.printStackTrace();
+          System.exit(1);
+        }
+        position = 0;
+      }
+
+      Object example = block[position];
+      block[position++] = null;
+      if (!(example instanceof FeatureVector[])) return example;
+      FeatureVector[] vectors = (FeatureVector[]) example;
+      return learner.getExampleArray(vectors[0], vectors[1]);
+    }
+
+
+    /** This parser can't be reset. */
+    public void reset() {
+      throw new UnsupportedOperationException(
+          "LBJ ERROR: BatchTrainer.ParallelExtractor can't be reset.");
+    }
+
+
+    /** Stops the threads and closes {@link #parser}. */
+    public void close() {
+      pool.shutdownNow();
+      parser.close();
+    }
+  }
 }
 
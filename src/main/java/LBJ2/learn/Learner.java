@@ -8,6 +8,12 @@ import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import LBJ2.classify.Classifier;
 import LBJ2.classify.DiscreteFeature;
@@ -33,6 +39,22 @@ import LBJ2.util.FVector;
  **/
 public abstract class Learner extends Classifier
 {
+  /**
+    * {@link #classifyBatch(Object[][])} only splits a batch across threads
+    * when each thread gets at least this many examples.
+   **/
+  protected static final int parallelBatchShare = 256;
+  /**
+    * The number of examples a multi-class learner scores against each of its
+    * weight vectors in turn when classifying a batch.
+   **/
+  protected static final int batchBlockSize = 64;
+  /** The threads that run {@link #classifyBatch(Object[][])}'s pieces. */
+  private static final ThreadGroup batchThreads =
+    new ThreadGroup("LBJ classify");
+  /** Created the first time a batch is split across threads. */
+  private static ExecutorService batchPool;
+
   /** Stores the classifier used to produce labels. */
   protected Classifier labeler;
   /** Stores the classifiers used to produce features. */
@@ -54,9 +76,10 @@ public abstract class Learner extends Classifier
   protected URL lexFilePath;
   /**
     * Informs this learner that it can and should read its feature lexicon on
-    * demand.
+    * demand.  This is volatile so that threads classifying with the same
+    * learner agree on whether the lexicon has been read.
    **/
-  protected boolean readLexiconOnDemand;
+  protected volatile boolean readLexiconOnDemand;
 
 
   /**
@@ -440,6 +463,132 @@ public abstract class Learner extends Classifier
   }
 
 
+  /**
+    * Makes classification decisions about the examples in positions
+    * <code>from</code> (inclusive) through <code>to</code> (exclusive) of the
+    * given batch, storing them in the same positions of <code>result</code>.
+    * This implementation simply calls {@link #classify(int[],double[])}
+    * repeatedly.  Learners that override it to score several examples at a
+    * time must not modify their state while doing so, since
+    * {@link #classifyBatch(Object[][])} may call it on several threads at
+    * once.
+    *
+    * @param e      The examples to make decisions about, represented as
+    *               arrays of indices and strengths.
+    * @param result The array the decisions are stored in.
+    * @param from   The position of the first example to classify.
+    * @param to     One past the position of the last example to classify.
+   **/
+  protected void classify(Object[][] e, FeatureVector[] result, int from,
+                          int to) {
+    for (int i = from; i < to; ++i)
+      result[i] = classify((int[]) e[i][0], (double[]) e[i][1]);
+  }
+
+
+  /**
+    * Makes a batch of classification decisions with
+    * {@link #classify(Object[][],FeatureVector[],int,int)}.  When the batch
+    * is large enough and there are several processors, it is split into
+    * contiguous pieces that are classified on separate threads.  Learners
+    * whose {@link #classify(Object[][],FeatureVector[],int,int)} method is
+    * safe to call concurrently override {@link #classify(Object[][])} to
+    * call this method.
+    *
+    * @param e  The examples to make decisions about, represented as arrays of
+    *           indices and strengths.
+    * @return An array of feature vectors, one per input object.
+   **/
+  protected FeatureVector[] classifyBatch(final Object[][] e) {
+    final FeatureVector[] result = new FeatureVector[e.length];
+    int pieces =
+      Math.min(Runtime.getRuntime().availableProcessors(),
+               e.length / parallelBatchShare);
+    if (pieces < 2
+        || Thread.currentThread().getThreadGroup() == batchThreads) {
+      classify(e, result, 0, e.length);
+      return result;
+    }
+
+    ExecutorService pool = getBatchPool();
+    Future[] futures = new Future[pieces - 1];
+    for (int p = 0; p < pieces - 1; ++p) {
+      final int from = (int) ((long) e.length * p / pieces);
+      final int to = (int) ((long) e.length * (p + 1) / pieces);
+      futures[p] = pool.submit(
+        new Callable() {
+          public Object call() {
+            classify(e, result, from, to);
+            return null;
+          }
+        });
+    }
+
+    classify(e, result, (int) ((long) e.length * (pieces - 1) / pieces),
+             e.length);
+
+    boolean interrupted = false;
+    for (int p = 0; p < futures.length; ++p) {
+      while (true) {
+        try {
+          futures[p].get();
+          break;
+        }
+        catch (InterruptedException ex) { interrupted = true; }
+        catch (ExecutionException ex) {
+          if (interrupted) Thread.currentThread().interrupt();
+          Throwable cause = ex.getCause();
+          if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+          if (cause instanceof Error) throw (Error) cause;
+          throw new RuntimeException(
+              "LBJ ERROR: Learner.classifyBatch: " + cause);
+        }
+      }
+    }
+
+    if (interrupted) Thread.currentThread().interrupt();
+    return result;
+  }
+
+
+  /**
+    * Returns the daemon threads shared by every learner's
+    * {@link #classifyBatch(Object[][])}, creating them the first time.
+   **/
+  private static synchronized ExecutorService getBatchPool() {
+    if (batchPool == null)
+      batchPool =
+        Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(batchThreads, r, "LBJ classify");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    return batchPool;
+  }
+
+
+  /**
+    * Looks up the features in each of the given vectors in the lexicon just
+    * as {@link #classify(FeatureVector)} would, so that learners can
+    * implement {@link #classify(FeatureVector[])} by passing the result to
+    * {@link #classify(Object[][])}.
+    *
+    * @param vectors  The vectors to make example arrays from.
+    * @return One example array of indices and strengths per input vector.
+   **/
+  protected Object[][] getExampleArrays(FeatureVector[] vectors) {
+    Object[][] result = new Object[vectors.length][];
+    for (int i = 0; i < vectors.length; ++i)
+      result[i] = getExampleArray(null, vectors[i]);
+    return result;
+  }
+
+
   /**
     * Returns the classification of the given example object as a single
     * feature instead of a {@link FeatureVector}.
@@ -661,10 +810,29 @@ public abstract class Learner extends Classifier
         && ((Object[]) example)[1] instanceof double[])
       return (Object[]) example;
 
-    if (readLexiconOnDemand && (lexicon == null || lexicon.size() == 0)) {
-      readLexicon(lexFilePath);
-      readLexiconOnDemand = false;
-    }
+    FeatureVector labelVector = training ? labeler.classify(example) : null;
+    return getExampleArray(labelVector, extractor.classify(example));
+  }
+
+
+  /**
+    * Converts the feature vectors produced by this learner's labeler and
+    * extractor for some example into the array of arrays described in
+    * {@link #getExampleArray(Object,boolean)}, looking up the features in
+    * the lexicons.  Calling the labeler and extractor is often the expensive
+    * part of {@link #getExampleArray(Object,boolean)}, and they can be called
+    * on other threads as long as this method is called on the results in the
+    * order the examples should be indexed.
+    *
+    * @param labelVector    The labels of the example, or <code>null</code> if
+    *                       labels should not be extracted.
+    * @param featureVector  The features of the example.
+    * @return The converted example array.
+   **/
+  public Object[] getExampleArray(FeatureVector labelVector,
+                                  FeatureVector featureVector) {
+    boolean training = labelVector != null;
+    if (readLexiconOnDemand) demandLexicon();
 
     Object[] exampleArray = null;
     Lexicon.CountPolicy countPolicy = lexicon.getCountPolicy();
@@ -672,7 +840,6 @@ public abstract class Learner extends Classifier
 
     // Get example labels
     if (training) {
-      FeatureVector labelVector = labeler.classify(example);
       int F = labelVector.featuresSize();
       int[] labelArray = new int[F];
       double[] labelValues = new double[F];
@@ -700,7 +867,6 @@ public abstract class Learner extends Classifier
     else exampleArray = new Object[2];
 
     // Get example features.
-    FeatureVector featureVector = extractor.classify(example);
     int F = featureVector.featuresSize();
     int[] exampleArrayFeatures = new int[F];
     double[] exampleArrayValues = new double[F];
@@ -1341,14 +1507,17 @@ public abstract class Learner extends Classifier
     * Forces this learner to read in its lexicon representation, but only if
     * the lexicon currently available in this object is empty and the learner
     * has been scheduled to read its lexicon on demand with
-    * {@link #readLexiconOnDemand(URL)}.
+    * {@link #readLexiconOnDemand(URL)}.  A lexicon read this way is
+    * {@link Lexicon#freeze() frozen}, so threads classifying with this
+    * learner can share it.
     *
     * @see #readLexiconOnDemand
     * @return The lexicon just read into {@link #lexicon}.
    **/
-  public Lexicon demandLexicon() {
+  public synchronized Lexicon demandLexicon() {
     if (readLexiconOnDemand && (lexicon == null || lexicon.size() == 0)) {
       readLexicon(lexFilePath);
+      lexicon.freeze();
       readLexiconOnDemand = false;
     }
     return lexicon;
@@ -1,10 +1,16 @@
 package LBJ2.learn;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.URL;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import LBJ2.classify.Feature;
 import LBJ2.util.ByteString;
@@ -32,6 +38,21 @@ import LBJ2.util.TableFormat;
   * maintains a second <code>Vector</code> of integers to their associated
   * features for fast reverse lookup using the {@link #lookupKey(int)} method.
   *
+  * <p> A lexicon is not safe to share between threads by default.  There are
+  * two ways to share one.  After {@link #freeze()}, lookups that don't train
+  * read a compact, read-only table without locking, so any number of threads
+  * can classify with the same lexicon.  After
+  * {@link #setConcurrent(boolean) setConcurrent(true)}, {@link #lookup},
+  * {@link #lookupKey(int)}, {@link #contains(Feature)} and
+  * {@link #getChildFeature(Feature,int)} may also be called while training
+  * on several threads; features already in the lexicon are found under a
+  * shared lock, and only adding a feature takes an exclusive one.  A
+  * concurrent lexicon that is also frozen reads its read-only table under
+  * the shared lock too, since a lookup while training on another thread
+  * discards the table under the exclusive lock.  Other methods, such as
+  * those that prune, read or write the lexicon, must not be called while
+  * any thread is using it.
+  *
   * @author Michael Paul
  **/
 public class Lexicon implements Cloneable, Serializable
@@ -40,6 +61,11 @@ public class Lexicon implements Cloneable, Serializable
     * The default capacity of {@link #lexiconInv} and {@link #featureCounts}.
    **/
   private static final int defaultCapacity = 1 << 10;
+  /**
+    * The number of locks guarding global feature counts in a concurrent
+    * lexicon.  Must be a power of 2.
+   **/
+  private static final int countStripes = 64;
 
 
   /** <!-- readLexicon(String) -->
@@ -160,6 +186,25 @@ public class Lexicon implements Cloneable, Serializable
     * features, but which are not themselves given indexes in the lexicon.
    **/
   protected ChildLexicon lexiconChildren;
+  /**
+    * The read-only table built by {@link #freeze()}, or <code>null</code> if
+    * the lexicon isn't frozen.  It is an open addressing hash table holding
+    * one more than the index of each feature, or 0 in empty slots.
+   **/
+  private transient int[] frozenSlots;
+  /** The hash codes of the features in {@link #frozenSlots}. */
+  private transient int[] frozenHashes;
+  /**
+    * Guards the lexicon when it is concurrent, or <code>null</code> if it
+    * isn't.
+   **/
+  private transient ReentrantReadWriteLock lock;
+  /**
+    * Guard the global feature counts of a concurrent lexicon; the count of
+    * the feature with index <code>i</code> is guarded by
+    * <code>countLocks[i % countStripes]</code>.
+   **/
+  private transient Object[] countLocks;
 
 
   /** Creates an empty lexicon. */
@@ -179,6 +224,7 @@ public class Lexicon implements Cloneable, Serializable
 
   /** Clears the data structures associated with this instance. */
   public void clear() {
+    thaw();
     lexicon = new HashMap();
     lexiconInv = new FVector();
     lexiconChildren = null;
@@ -289,8 +335,27 @@ public class Lexicon implements Cloneable, Serializable
     *         lexicon.
    **/
   public boolean contains(Feature f) {
-    lazyMapCreation();
-    return lexicon.containsKey(f);
+    if (lock == null) {
+      if (frozenSlots != null) return frozenLookup(f) != -1;
+      lazyMapCreation();
+      return lexicon.containsKey(f);
+    }
+
+    Lock read = lock.readLock();
+    read.lock();
+    try {
+      if (frozenSlots != null) return frozenLookup(f) != -1;
+      if (lexicon != null) return lexicon.containsKey(f);
+    }
+    finally { read.unlock(); }
+
+    Lock write = lock.writeLock();
+    write.lock();
+    try {
+      lazyMapCreation();
+      return lexicon.containsKey(f);
+    }
+    finally { write.unlock(); }
   }
 
 
@@ -344,6 +409,22 @@ public class Lexicon implements Cloneable, Serializable
           "LBJ ERROR: Lexicon.lookup: A label has been supplied when not "
           + "training with per class feature counts.");
 
+    if (lock != null) return concurrentLookup(f, training, label);
+    if (frozenSlots != null && !training) {
+      int index = frozenLookup(f);
+      return index == -1 ? getCutoff() : index;
+    }
+    return insert(f, training, label);
+  }
+
+
+  /**
+    * The part of {@link #lookup(Feature,boolean,int)} that may add the
+    * feature to the lexicon, called with the exclusive lock held if the
+    * lexicon is concurrent.
+   **/
+  private int insert(Feature f, boolean training, int label) {
+    thaw();
     lazyMapCreation();
     Integer I = (Integer) lexicon.get(f);
 
@@ -370,6 +451,171 @@ public class Lexicon implements Cloneable, Serializable
   }
 
 
+  /**
+    * Implements {@link #lookup(Feature,boolean,int)} for a concurrent
+    * lexicon.  A feature that's already in the lexicon is found under the
+    * shared lock, in the frozen table if there is one and we aren't training,
+    * and its global count is incremented under the lock of its stripe.
+    * Adding a feature, and counting per class, takes the exclusive lock.
+   **/
+  private int concurrentLookup(Feature f, boolean training, int label) {
+    Lock read = lock.readLock();
+    read.lock();
+    try {
+      if (frozenSlots != null && !training) {
+        int index = frozenLookup(f);
+        return index == -1 ? getCutoff() : index;
+      }
+      if (lexicon != null) {
+        Integer I = (Integer) lexicon.get(f);
+        if (I == null) {
+          if (!training) return getCutoff();
+        }
+        else {
+          int index = I.intValue();
+          if (!training
+              || featureCounts == null && perClassFeatureCounts == null)
+            return index;
+          if (featureCounts != null && index < featureCounts.size()) {
+            synchronized (countLocks[index & (countStripes - 1)]) {
+              featureCounts.increment(index);
+            }
+            return index;
+          }
+        }
+      }
+    }
+    finally { read.unlock(); }
+
+    Lock write = lock.writeLock();
+    write.lock();
+    try { return insert(f, training, label); }
+    finally { write.unlock(); }
+  }
+
+
+  /**
+    * Looks up a feature in {@link #frozenSlots}.
+    *
+    * @param f  The feature to look up.
+    * @return The index of the feature, or -1 if it isn't in the lexicon.
+   **/
+  private int frozenLookup(Feature f) {
+    int[] slots = frozenSlots, hashes = frozenHashes;
+    int mask = slots.length - 1;
+    int hash = f.hashCode();
+    for (int i = mix(hash) & mask; slots[i] != 0; i = (i + 1) & mask)
+      if (hashes[i] == hash && lexiconInv.get(slots[i] - 1).equals(f))
+        return slots[i] - 1;
+    return -1;
+  }
+
+
+  /** Spreads the bits of a hash code over an open addressing table. */
+  private static int mix(int h) {
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+  /** <!-- freeze() -->
+    * Compacts the lexicon into a read-only open addressing table, which
+    * lookups that don't train then read without locking.  The
+    * <code>HashMap</code> the lexicon normally keeps is discarded, so a
+    * frozen lexicon also takes less memory.  Any method that changes the
+    * lexicon, including a lookup while training, discards the table again.
+    * In a concurrent lexicon, lookups read the table under the shared lock,
+    * so other threads may train with it; otherwise, such methods must not be
+    * called while other threads are reading it.  This method itself must not
+    * be called while other threads are using the lexicon.
+   **/
+  public void freeze() {
+    int N = lexiconInv.size();
+    int capacity = 2;
+    while (capacity < 2 * N) capacity <<= 1;
+    int[] slots = new int[capacity];
+    int[] hashes = new int[capacity];
+
+    for (int index = 0; index < N; ++index) {
+      Feature f = lexiconInv.get(index);
+      if (f == null) continue;
+      int hash = f.hashCode();
+      int i = mix(hash) & (capacity - 1);
+      while (slots[i] != 0) i = (i + 1) & (capacity - 1);
+      slots[i] = index + 1;
+      hashes[i] = hash;
+    }
+
+    frozenHashes = hashes;
+    frozenSlots = slots;
+    lexicon = null;
+  }
+
+
+  /** Returns <code>true</code> iff {@link #freeze()} is in effect. */
+  public boolean isFrozen() { return frozenSlots != null; }
+
+
+  /**
+    * Discards the table built by {@link #freeze()}, if any.  Methods that
+    * change which features the lexicon holds or their indexes call this
+    * first.
+   **/
+  protected void thaw() {
+    frozenSlots = null;
+    frozenHashes = null;
+  }
+
+
+  /** <!-- setConcurrent(boolean) -->
+    * Determines whether the lexicon may be used by several threads at once
+    * while training, as described in the class comment.  This method must
+    * not be called while other threads are using the lexicon.
+    *
+    * @param c  Whether the lexicon should be concurrent.
+   **/
+  public void setConcurrent(boolean c) {
+    if (!c) {
+      lock = null;
+      countLocks = null;
+    }
+    else if (lock == null) {
+      lock = new ReentrantReadWriteLock();
+      countLocks = new Object[countStripes];
+      for (int i = 0; i < countStripes; ++i) countLocks[i] = new Object();
+    }
+  }
+
+
+  /** Returns <code>true</code> iff the lexicon is concurrent. */
+  public boolean isConcurrent() { return lock != null; }
+
+
+  /**
+    * Writes the serializable fields, followed by whether the lexicon is
+    * concurrent, since its locks aren't serialized.
+   **/
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeBoolean(lock != null);
+  }
+
+
+  /**
+    * Reads what {@link #writeObject(ObjectOutputStream)} wrote, and creates
+    * the locks again if the lexicon was concurrent.  A lexicon serialized
+    * before the flag was written isn't concurrent.
+   **/
+  private void readObject(ObjectInputStream in)
+          throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    boolean concurrent = false;
+    try { concurrent = in.readBoolean(); }
+    catch (EOFException e) { }
+    setConcurrent(concurrent);
+  }
+
+
   /**
     * Used to lookup the children of conjunctive and referring features during
     * training, this method checks {@link #lexiconChildren} if the feature
@@ -384,6 +630,20 @@ public class Lexicon implements Cloneable, Serializable
     *         lexicon.
    **/
   public Feature getChildFeature(Feature f, int label) {
+    if (lock == null) return insertChild(f, label);
+    Lock write = lock.writeLock();
+    write.lock();
+    try { return insertChild(f, label); }
+    finally { write.unlock(); }
+  }
+
+
+  /**
+    * Implements {@link #getChildFeature(Feature,int)}, called with the
+    * exclusive lock held if the lexicon is concurrent.
+   **/
+  private Feature insertChild(Feature f, int label) {
+    thaw();
     lazyMapCreation();
     Integer I = (Integer) lexicon.get(f);
     if (I != null) {
@@ -451,8 +711,18 @@ public class Lexicon implements Cloneable, Serializable
     * @return The feature that maps to the given integer.
    **/
   public Feature lookupKey(int i) {
-    if (i < 0) return lexiconChildren.lookupKey(-i - 1);
-    return lexiconInv.get(i);
+    if (lock == null) {
+      if (i < 0) return lexiconChildren.lookupKey(-i - 1);
+      return lexiconInv.get(i);
+    }
+
+    Lock read = lock.readLock();
+    read.lock();
+    try {
+      if (i < 0) return lexiconChildren.lookupKey(-i - 1);
+      return lexiconInv.get(i);
+    }
+    finally { read.unlock(); }
   }
 
 
@@ -541,6 +811,7 @@ public class Lexicon implements Cloneable, Serializable
     *         <code>null</code> if <code>policy</code> indicates no pruning.
    **/
   public int[] prune(PruningPolicy policy) {
+    thaw();
     if (policy.isNone()) {
       pruneCutoff = -1;
       return null;
@@ -653,6 +924,7 @@ public class Lexicon implements Cloneable, Serializable
    **/
   public void discardPrunedFeatures() {
     if (pruneCutoff == -1) return;
+    thaw();
     featureCounts = null;
     perClassFeatureCounts = null;
     for (int i = lexiconInv.size() - 1; i >= pruneCutoff; --i) {
@@ -682,6 +954,8 @@ public class Lexicon implements Cloneable, Serializable
       clone.lexicon.putAll(lexicon);
     }
     clone.lexiconInv = (FVector) lexiconInv.clone();
+    clone.lock = null;
+    clone.setConcurrent(lock != null);
     if (featureCounts != null)
       clone.featureCounts = (IVector) featureCounts.clone();
     if (perClassFeatureCounts != null)
@@ -785,6 +1059,7 @@ public class Lexicon implements Cloneable, Serializable
     * @param readCounts Whether or not to read the feature counts.
    **/
   public void read(ExceptionlessInputStream in, boolean readCounts) {
+    thaw();
     lexiconChildren = (ChildLexicon) Lexicon.readLexicon(in, readCounts);
 
     Class previousClass = null;
@@ -592,6 +592,30 @@ public abstract class LinearThresholdUnit extends Learner
   }
 
 
+  /**
+    * Classifies a batch of vectors, looking up their features once and then
+    * scoring them as {@link #classify(Object[][])} does.
+    *
+    * @param vectors  The vectors to make decisions about.
+    * @return An array of feature vectors, one per input vector.
+   **/
+  public FeatureVector[] classify(FeatureVector[] vectors) {
+    return classify(getExampleArrays(vectors));
+  }
+
+
+  /**
+    * Classifies a batch of examples, splitting large batches across threads.
+    * Subclasses whose {@link #score(int[],double[])} method modifies the
+    * learner should override this method to classify serially.
+    *
+    * @param e  The examples to make decisions about, represented as arrays of
+    *           indices and strengths.
+    * @return An array of feature vectors, one per input object.
+   **/
+  public FeatureVector[] classify(Object[][] e) { return classifyBatch(e); }
+
+
   /**
     * Computes the score for the specified example vector which will be
     * thresholded to make the binary classification.
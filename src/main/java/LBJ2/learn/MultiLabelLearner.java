@@ -107,6 +107,25 @@ public class MultiLabelLearner extends SparseNetworkLearner
   }
 
 
+  /**
+    * Calls {@link #classify(int[],double[])} on each example, since the
+    * winner-take-all decisions of
+    * {@link SparseNetworkLearner#classify(Object[][],FeatureVector[],int,int)}
+    * don't apply here.
+    *
+    * @param e      The examples to make decisions about, represented as
+    *               arrays of indices and strengths.
+    * @param result The array the decisions are stored in.
+    * @param from   The position of the first example to classify.
+    * @param to     One past the position of the last example to classify.
+   **/
+  protected void classify(Object[][] e, FeatureVector[] result, int from,
+                          int to) {
+    for (int i = from; i < to; ++i)
+      result[i] = classify((int[]) e[i][0], (double[]) e[i][1]);
+  }
+
+
   /**
     * Simply a container for all of {@link MultiLabelLearner}'s configurable
     * parameters.  Using instances of this class should make code more
@@ -72,6 +72,11 @@ public class NaiveBayes extends Learner
   protected double smoothing;
   /** One {@link NaiveBayesVector} for each observed prediction value. */
   protected OVector network;
+  /**
+    * Whether the logarithm of every count in {@link #network} is up to date,
+    * so that batches can be scored on several threads at once.
+   **/
+  protected transient boolean logsComputed;
 
 
   /** Default constructor. */
@@ -192,6 +197,7 @@ public class NaiveBayes extends Learner
                     int[] exampleLabels, double[] labelValues) {
     int label = exampleLabels[0];
     int N = network.size();
+    logsComputed = false;
 
     NaiveBayesVector labelVector = null;
     if (label >= N) {
@@ -210,6 +216,7 @@ public class NaiveBayes extends Learner
   public void forget() {
     super.forget();
     network = new OVector();
+    logsComputed = false;
   }
 
 
@@ -311,6 +318,92 @@ public class NaiveBayes extends Learner
   }
 
 
+  /**
+    * Classifies a batch of vectors, looking up their features once and then
+    * scoring them as {@link #classify(Object[][])} does.
+    *
+    * @param vectors  The vectors to make decisions about.
+    * @return An array of feature vectors, one per input vector.
+   **/
+  public FeatureVector[] classify(FeatureVector[] vectors) {
+    return classify(getExampleArrays(vectors));
+  }
+
+
+  /**
+    * Classifies a batch of examples, splitting large batches across threads.
+    * Scoring an example normally updates the counts it reads, so first every
+    * {@link NaiveBayesVector} is made large enough to hold every feature in
+    * the batch and its logarithms are computed; after that, scoring only
+    * reads the network.
+    *
+    * @param e  The examples to make decisions about, represented as arrays of
+    *           indices and strengths.
+    * @return An array of feature vectors, one per input object.
+   **/
+  public FeatureVector[] classify(Object[][] e) {
+    int features = 0;
+    for (int i = 0; i < e.length; ++i) {
+      int[] exampleFeatures = (int[]) e[i][0];
+      for (int j = 0; j < exampleFeatures.length; ++j)
+        features = Math.max(features, exampleFeatures[j] + 1);
+    }
+
+    int N = network.size();
+    for (int l = 0; l < N; l++)
+      ((NaiveBayesVector) network.get(l)).prepare(features, !logsComputed);
+    logsComputed = true;
+    return classifyBatch(e);
+  }
+
+
+  /**
+    * Makes the same decisions as {@link #classify(int[],double[])}, but
+    * scores a block of {@link Learner#batchBlockSize} examples against each
+    * {@link NaiveBayesVector} before moving on to the next, so that each
+    * vector's counts are fetched once per block instead of once per example.
+    *
+    * @param e      The examples to make decisions about, represented as
+    *               arrays of indices and strengths.
+    * @param result The array the decisions are stored in.
+    * @param from   The position of the first example to classify.
+    * @param to     One past the position of the last example to classify.
+   **/
+  protected void classify(Object[][] e, FeatureVector[] result, int from,
+                          int to) {
+    double[] bestScores = new double[batchBlockSize];
+    int[] bestLabels = new int[batchBlockSize];
+    int N = network.size();
+
+    for (int start = from; start < to; start += batchBlockSize) {
+      int size = Math.min(batchBlockSize, to - start);
+      for (int i = 0; i < size; ++i) {
+        bestScores[i] = -Double.MAX_VALUE;
+        bestLabels[i] = -1;
+      }
+
+      for (int l = 0; l < N; l++) {
+        NaiveBayesVector vector = (NaiveBayesVector) network.get(l);
+
+        for (int i = 0; i < size; ++i) {
+          Object[] example = e[start + i];
+          double score = vector.dot((int[]) example[0], (double[]) example[1]);
+
+          if (score > bestScores[i]) {
+            bestLabels[i] = l;
+            bestScores[i] = score;
+          }
+        }
+      }
+
+      for (int i = 0; i < size; ++i)
+        result[start + i] =
+          new FeatureVector(bestLabels[i] == -1
+                            ? null : predictions.get(bestLabels[i]));
+    }
+  }
+
+
   /**
     * Writes the algorithm's internal representation as text.
     *
@@ -354,6 +447,7 @@ public class NaiveBayes extends Learner
     smoothing = in.readDouble();
     int N = in.readInt();
     network = new OVector(N);
+    logsComputed = false;
 
     for (int i = 0; i < N; ++i) {
       NaiveBayesVector nbv = new NaiveBayesVector();
@@ -368,6 +462,7 @@ public class NaiveBayes extends Learner
     NaiveBayes clone = (NaiveBayes) super.clone();
     int N = network.size();
     clone.network = new OVector(N);
+    clone.logsComputed = false;
     for (int i = 0; i < N; ++i)
       clone.network.add(((NaiveBayesVector) network.get(i)).clone());
     return clone;
@@ -658,6 +753,24 @@ public class NaiveBayes extends Learner
     }
 
 
+    /**
+      * Adds zero counts until this vector holds the given number of features
+      * and optionally brings the logarithm of every count up to date, so that
+      * {@link #dot(int[],double[])} can then be called on several threads at
+      * once without modifying the vector.
+      *
+      * @param features     The number of features to hold.
+      * @param computeLogs  Whether to compute the logarithms.
+     **/
+    public void prepare(int features, boolean computeLogs) {
+      while (counts.size() < features) counts.add(new Count());
+      if (!computeLogs) return;
+      priorCount.getLog();
+      int N = counts.size();
+      for (int i = 0; i < N; ++i) ((Count) counts.get(i)).getLog();
+    }
+
+
     /**
       * Returns the weight of the given feature
       *
@@ -485,6 +485,77 @@ public class SparseNetworkLearner extends Learner
   }
 
 
+  /**
+    * Classifies a batch of vectors, looking up their features once and then
+    * scoring them as {@link #classify(Object[][])} does.
+    *
+    * @param vectors  The vectors to make decisions about.
+    * @return An array of feature vectors, one per input vector.
+   **/
+  public FeatureVector[] classify(FeatureVector[] vectors) {
+    return classify(getExampleArrays(vectors));
+  }
+
+
+  /**
+    * Classifies a batch of examples, splitting large batches across threads.
+    *
+    * @param e  The examples to make decisions about, represented as arrays of
+    *           indices and strengths.
+    * @return An array of feature vectors, one per input object.
+   **/
+  public FeatureVector[] classify(Object[][] e) { return classifyBatch(e); }
+
+
+  /**
+    * Makes the same winner-take-all decisions as
+    * {@link #classify(int[],double[])}, but scores a block of
+    * {@link Learner#batchBlockSize} examples against each linear threshold
+    * unit before moving on to the next, so that each unit's weights are
+    * fetched once per block instead of once per example.
+    *
+    * @param e      The examples to make decisions about, represented as
+    *               arrays of indices and strengths.
+    * @param result The array the decisions are stored in.
+    * @param from   The position of the first example to classify.
+    * @param to     One past the position of the last example to classify.
+   **/
+  protected void classify(Object[][] e, FeatureVector[] result, int from,
+                          int to) {
+    double[] bestScores = new double[batchBlockSize];
+    int[] bestValues = new int[batchBlockSize];
+    int N = network.size();
+
+    for (int start = from; start < to; start += batchBlockSize) {
+      int size = Math.min(batchBlockSize, to - start);
+      for (int i = 0; i < size; ++i) {
+        bestScores[i] = Double.NEGATIVE_INFINITY;
+        bestValues[i] = -1;
+      }
+
+      for (int l = 0; l < N; l++) {
+        LinearThresholdUnit ltu = (LinearThresholdUnit) network.get(l);
+        if (ltu == null) continue;
+
+        for (int i = 0; i < size; ++i) {
+          Object[] example = e[start + i];
+          double score = ltu.score((int[]) example[0], (double[]) example[1]);
+
+          if (score > bestScores[i]) {
+            bestValues[i] = l;
+            bestScores[i] = score;
+          }
+        }
+      }
+
+      for (int i = 0; i < size; ++i)
+        result[start + i] =
+          new FeatureVector(bestValues[i] == -1
+                            ? null : predictions.get(bestValues[i]));
+    }
+  }
+
+
   /**
     * Using this method, the winner-take-all competition is narrowed to
     * involve only those labels contained in the specified list.  The list
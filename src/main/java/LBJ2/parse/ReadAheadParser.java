@@ -0,0 +1,132 @@
+package LBJ2.parse;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+  * Wraps another parser, calling its <code>next()</code> method on a
+  * background thread so that up to a fixed number of examples are parsed
+  * ahead of the caller.  This lets the I/O and decoding of an example file
+  * overlap with whatever the caller does with each example, such as
+  * learning from it.  Examples are returned in the same order as the wrapped
+  * parser returns them.
+  *
+  * <p> Only the background thread calls the wrapped parser's
+  * <code>next()</code> method, so the wrapped parser need not be thread
+  * safe.  {@link #reset()} and {@link #close()} stop the background thread
+  * before passing the call on.
+ **/
+public class ReadAheadParser implements Parser
+{
+  /** Stands in for the <code>null</code> that ends the examples. */
+  private static final Object end = new Object();
+
+  /** The parser whose examples are read ahead. */
+  protected Parser parser;
+  /** The number of examples to read ahead. */
+  protected int capacity;
+  /** Examples read by {@link #reader} and not yet returned. */
+  private BlockingQueue queue;
+  /** The background thread, or <code>null</code> if it isn't running. */
+  private Thread reader;
+  /** Set by {@link #reader} if the wrapped parser threw. */
+  private volatile Throwable failure;
+  /** Whether {@link #end} has been returned since the last reset. */
+  private boolean done;
+
+
+  /**
+    * Creates the parser.
+    *
+    * @param p  The parser whose examples are read ahead.
+    * @param c  The number of examples to read ahead.
+   **/
+  public ReadAheadParser(Parser p, int c) {
+    parser = p;
+    capacity = c;
+  }
+
+
+  /**
+    * Returns the next example from the wrapped parser, starting the
+    * background thread if it isn't already running.
+   **/
+  public Object next() {
+    if (done) return null;
+    if (reader == null) start();
+
+    Object example = null;
+    try { example = queue.take(); }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(
+          "LBJ ERROR: ReadAheadParser.next: Interrupted: " + e);
+    }
+
+    if (example != end) return example;
+    done = true;
+    stop();
+    if (failure instanceof RuntimeException)
+      throw (RuntimeException) failure;
+    if (failure instanceof Error) throw (Error) failure;
+    return null;
+  }
+
+
+  /** Starts {@link #reader}. */
+  private void start() {
+    final BlockingQueue q = new ArrayBlockingQueue(capacity);
+    queue = q;
+    failure = null;
+    reader =
+      new Thread("LBJ read ahead") {
+        public void run() {
+          try {
+            for (Object example = parser.next(); example != null;
+                 example = parser.next())
+              q.put(example);
+            q.put(end);
+          }
+          catch (InterruptedException e) { }
+          catch (Throwable t) {
+            failure = t;
+            try { q.put(end); }
+            catch (InterruptedException e) { }
+          }
+        }
+      };
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+
+  /** Stops {@link #reader} if it is running and waits for it to exit. */
+  private void stop() {
+    if (reader == null) return;
+    reader.interrupt();
+    boolean interrupted = false;
+    while (reader.isAlive()) {
+      try { reader.join(); }
+      catch (InterruptedException e) { interrupted = true; }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+    reader = null;
+    queue = null;
+  }
+
+
+  /** Stops reading ahead and resets the wrapped parser. */
+  public void reset() {
+    stop();
+    done = false;
+    parser.reset();
+  }
+
+
+  /** Stops reading ahead and closes the wrapped parser. */
+  public void close() {
+    stop();
+    parser.close();
+  }
+}
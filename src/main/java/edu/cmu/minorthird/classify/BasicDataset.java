@@ -154,26 +154,32 @@ public class BasicDataset implements Dataset,Serializable,Visible,Saveable{
 
 	static private final String FORMAT_NAME="Minorthird Dataset";
 
+	static private final String BINARY_FORMAT_NAME="Minorthird Binary Dataset";
+
 	@Override
 	public String[] getFormatNames(){
-		return new String[]{FORMAT_NAME};
+		return new String[]{FORMAT_NAME,BINARY_FORMAT_NAME};
 	}
 
 	@Override
 	public String getExtensionFor(String s){
-		return ".data";
+		return BINARY_FORMAT_NAME.equals(s)?".bdata":".data";
 	}
 
 	@Override
 	public void saveAs(File file,String format)throws IOException{
-		if(!format.equals(FORMAT_NAME)){
-			throw new IllegalArgumentException("illegal format: "+format);
+		if(format.equals(FORMAT_NAME)){
+			DatasetLoader.save(this,file);
+		}
+		else if(format.equals(BINARY_FORMAT_NAME)){
+			DatasetLoader.saveBinary(this,file);
 		}
 		else{
-			DatasetLoader.save(this,file);
+			throw new IllegalArgumentException("illegal format: "+format);
 		}
 	}
 
+	/** Restore a dataset saved in either format. */
 	@Override
 	public Object restore(File file) throws IOException{
 		try{
@@ -23,20 +23,18 @@ public abstract class BatchClassifierLearner implements ClassifierLearner
 	protected Classifier classifier = null;
 
 
-    @Override
-		public ClassifierLearner copy() {
-	BatchClassifierLearner bcl = null;//(ClassifierLearner)(new Object());
-	try {
-	    bcl =(BatchClassifierLearner)(this.clone());
-	    //bcl = this;
-	    bcl.dataset = new BasicDataset();
-	    bcl.classifier = null;
-	} catch (Exception e) {
-	    System.out.println("Can't CLONE!!");
-	    e.printStackTrace();
+	@Override
+	public ClassifierLearner copy() {
+		BatchClassifierLearner bcl;
+		try {
+			bcl = (BatchClassifierLearner)(this.clone());
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException("can't copy "+this+": "+e,e);
+		}
+		bcl.dataset = new BasicDataset();
+		bcl.classifier = null;
+		return bcl;
 	}
-	return bcl;
-    }
 
 	@Override
 	final public void reset() { 
@@ -31,6 +31,15 @@ public class BatchVersion extends BatchClassifierLearner
 	public OnlineClassifierLearner getInnerLearner() { return innerLearner; }
 	public void setInnerLearner(OnlineClassifierLearner learner) { this.innerLearner=learner; }
 
+	/** The copy gets its own inner learner, so it can be trained independently of this one. */
+	@Override
+	public ClassifierLearner copy()
+	{
+		BatchVersion learner = (BatchVersion)super.copy();
+		learner.innerLearner = (OnlineClassifierLearner)innerLearner.copy();
+		return learner;
+	}
+
 	@Override
 	final public void setSchema(ExampleSchema schema)	{	innerLearner.setSchema(schema);	}
 	@Override
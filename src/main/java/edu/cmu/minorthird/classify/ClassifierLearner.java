@@ -31,6 +31,9 @@ public interface ClassifierLearner extends Cloneable{
 	/**
 	 * Make a copy of the learner.
 	 * Note: This will reset the learner, erasing previous data!
+	 * The copy shares nothing with this learner that training changes, so the
+	 * two can be trained at once on different threads.  A learner that can't
+	 * make such a copy throws UnsupportedOperationException.
 	 */
 	public ClassifierLearner copy();
 
@@ -11,6 +11,12 @@ import edu.cmu.minorthird.classify.relational.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Dataset i/o.
@@ -57,12 +63,29 @@ public class DatasetLoader{
 			new StringEncoder('%',"=. \t");
 
 	static private Map<String,ClassLabel> classLabelDict=new HashMap<String,ClassLabel>();
+
+	// lines parsed by a thread at a time, and characters read at a time
+	static private final int LINES_PER_CHUNK=1024;
+
+	static private final int CHARS_PER_READ=1<<16;
+
+	// chunks read ahead of the consumer, per thread
+	static private final int CHUNKS_PER_THREAD=4;
+
+	// powers of ten that are exact doubles, for parseDouble
+	static private final double[] POWERS_OF_TEN=new double[16];
+
+	static private final int MAX_EXACT_DIGITS=POWERS_OF_TEN.length-1;
 	
 	static{
 		classLabelDict.put(ExampleSchema.POS_CLASS_NAME,ClassLabel
 				.positiveLabel(+1));
 		classLabelDict.put(ExampleSchema.NEG_CLASS_NAME,ClassLabel
 				.negativeLabel(-1));
+		POWERS_OF_TEN[0]=1;
+		for(int i=1;i<POWERS_OF_TEN.length;i++){
+			POWERS_OF_TEN[i]=POWERS_OF_TEN[i-1]*10;
+		}
 	}
 
 	/** Save a dataset to a file.  This should save each example in
@@ -107,24 +130,73 @@ public class DatasetLoader{
 		return dataset;
 	}
 
-	/** Load a dataset from a file */
+	/**
+	 * Save a dataset in the binary format, which loadBinary reads back
+	 * without parsing.
+	 * @see MappedDataset
+	 */
+	static public void saveBinary(Dataset dataset,File file) throws IOException{
+		MappedDataset.save(dataset,file);
+	}
+
+	/**
+	 * Load a dataset saved by saveBinary.  The file is mapped, and examples
+	 * are read from it as they are used.
+	 */
+	static public MappedDataset loadBinary(File file) throws IOException{
+		return new MappedDataset(file);
+	}
+
+	/** True if the file holds a dataset saved by saveBinary. */
+	static public boolean isBinary(File file) throws IOException{
+		DataInputStream in=new DataInputStream(new FileInputStream(file));
+		try{
+			return file.length()>=4&&in.readInt()==MappedDataset.MAGIC;
+		}finally{
+			in.close();
+		}
+	}
+
+	/** Load a dataset from a file, in either the text or the binary format */
 	static public Dataset loadFile(File file) throws IOException,
 			NumberFormatException{
+		return loadFile(file,1);
+	}
+
+	/**
+	 * Load a dataset from a file, parsing lines on numThreads threads.  The
+	 * examples, and their order, are the same as for any other number of
+	 * threads.
+	 */
+	static public Dataset loadFile(File file,int numThreads) throws IOException,
+			NumberFormatException{
+		if(isBinary(file)){
+			return loadBinary(file);
+		}
 		Dataset dataset=new BasicDataset();
 		ProgressCounter pc=
 				new ProgressCounter("loading file "+file.getName(),"line");
-		LineNumberReader in=new LineNumberReader(new FileReader(file));
-		String line;
-		while((line=in.readLine())!=null){
-			dataset.add(parseLine(line,file,in));
+		for(ExampleFileIterator i=new ExampleFileIterator(file,MINORTHIRD_LINES,numThreads);i.hasNextExample();){
+			dataset.add(i.next());
 			pc.progress();
 		}
 		log.info("loaded "+dataset.size()+" examples from "+file.getName());
-		in.close();
 		pc.finished();
 		return dataset;
 	}
 
+	/**
+	 * Iterate over the examples in a file, in order, without loading them
+	 * all.  Lines are parsed on numThreads threads, a little ahead of the
+	 * iteration.  The file is closed when the last example has been
+	 * returned; an I/O error while reading throws an
+	 * IllegalStateException.
+	 */
+	static public Iterator<Example> exampleIterator(File file,int numThreads)
+			throws IOException{
+		return new ExampleFileIterator(file,MINORTHIRD_LINES,numThreads);
+	}
+
 	/** Load a relational dataset from a file specifying objs */
 	static public void loadRelFile(File file,RealRelationalDataset dataset)
 			throws IOException,NumberFormatException{
@@ -309,43 +381,146 @@ public class DatasetLoader{
 		return fileName+":"+lineNumber;
 	}
 
+	/** The class label that a file names as labelName.  classLabelDict is
+	 * shared by every load, including loads parsing lines on several threads,
+	 * so it is only read or changed while holding its lock.
+	 */
+	static ClassLabel getClassLabel(String labelName){
+		return getClassLabel(labelName,null,0,null);
+	}
+
+	/** The class label named labelName at the given line of a file whose
+	 * examples are of the given type.  Only POS and NEG are allowed in binary
+	 * ("b") files.
+	 */
+	static private ClassLabel getClassLabel(String labelName,String type,
+			int lineNumber,String fileName){
+		synchronized(classLabelDict){
+			ClassLabel label=classLabelDict.get(labelName);
+			if(label==null){
+				if("b".equals(type)){
+					throw new IllegalArgumentException("should be POS/NEG but label is '"+
+							labelName+"' at line#"+lineNumber+" of "+fileName);
+				}
+				classLabelDict.put(labelName,(label=new ClassLabel(labelName)));
+			}
+			return label;
+		}
+	}
+
 	static private Example parseLine(String line,File file,LineNumberReader in){
-		String[] arr=line.split("\\s+");
-		if(arr.length<3)
+		return parseLine(line.toCharArray(),0,line.length(),file.getName(),in
+				.getLineNumber());
+	}
+
+	/**
+	 * Parse the line text[from..to), which is line lineNumber of fileName.
+	 * Tokens are found directly in the characters, as line.split("\\s+")
+	 * would find them, and only names and labels become strings.
+	 */
+	static private Example parseLine(char[] text,int from,int to,
+			String fileName,int lineNumber){
+		int[] starts=new int[16];
+		int[] ends=new int[16];
+		int n=0;
+		for(int i=from;i<to;){
+			int start=i;
+			while(i<to&&!isWhitespace(text[i]))
+				i++;
+			// like split, keep a leading empty token but no trailing ones
+			if(i>start||(start==from&&i<to)){
+				if(n==starts.length){
+					starts=Arrays.copyOf(starts,2*n);
+					ends=Arrays.copyOf(ends,2*n);
+				}
+				starts[n]=start;
+				ends[n++]=i;
+			}
+			while(i<to&&isWhitespace(text[i]))
+				i++;
+		}
+		if(n<3)
 			throw new IllegalArgumentException("too few values at line#"+
-					in.getLineNumber()+" of "+file.getName());
-		for(int i=0;i<3;i++)
-			arr[i]=stringCoder.decode(arr[i]);
-		String subpopulationId=arr[1];
-		String source=getSourceAssignedToExample(file.getName(),in.getLineNumber());
-		if("NUL".equals(arr[1]))
+					lineNumber+" of "+fileName);
+		String type=decode(stringCoder,text,starts[0],ends[0]);
+		String subpopulationId=decode(stringCoder,text,starts[1],ends[1]);
+		String labelName=decode(stringCoder,text,starts[2],ends[2]);
+		String source=getSourceAssignedToExample(fileName,lineNumber);
+		if("NUL".equals(subpopulationId))
 			subpopulationId=null;
 		MutableInstance instance=new MutableInstance(source,subpopulationId);
-		for(int i=3;i<arr.length;i++){
-			int eqPos=arr[i].indexOf("=");
+		for(int i=3;i<n;i++){
+			int eqPos=indexOf(text,starts[i],ends[i],'=');
 			if(eqPos>=0){
 				try{
-					String feature=arr[i].substring(0,eqPos);
-					String value=arr[i].substring(eqPos+1);
-					double weight=Double.parseDouble(value);
-					instance.addNumeric(parseFeatureName(feature),weight);
+					double weight=parseDouble(text,eqPos+1,ends[i]);
+					instance.addNumeric(parseFeatureName(text,starts[i],eqPos),weight);
 				}catch(NumberFormatException e){
 					throw new IllegalArgumentException("bad feature# "+i+" line#"+
-							in.getLineNumber()+" of "+file.getName());
+							lineNumber+" of "+fileName);
 				}
 			}else{
-				instance.addBinary(parseFeatureName(arr[i]));
+				instance.addBinary(parseFeatureName(text,starts[i],ends[i]));
 			}
 		}
-		ClassLabel label=classLabelDict.get(arr[2]);
-		if(label==null){
-			if("b".equals(arr[0])){
-				throw new IllegalArgumentException("should be POS/NEG but label is '"+
-						arr[2]+"' at line#"+in.getLineNumber()+" of "+file.getName());
+		return new Example(instance,getClassLabel(labelName,type,lineNumber,
+				fileName));
+	}
+
+	// the whitespace matched by \s
+	static private boolean isWhitespace(char c){
+		return c==' '||c=='\t'||c=='\n'||c=='\r'||c=='\f'||c=='\u000B';
+	}
+
+	static private int indexOf(char[] text,int from,int to,char c){
+		for(int i=from;i<to;i++){
+			if(text[i]==c)
+				return i;
+		}
+		return -1;
+	}
+
+	// coder.decode(new String(text,from,to-from)), which is only needed when
+	// there is something to decode
+	static private String decode(StringEncoder coder,char[] text,int from,int to){
+		String s=new String(text,from,to-from);
+		return indexOf(text,from,to,'%')<0?s:coder.decode(s);
+	}
+
+	/**
+	 * Double.parseDouble(new String(text,from,to-from)).  Plain decimals of
+	 * up to 15 digits are converted directly: their digits and the power of
+	 * ten are exact doubles, so one division gives the correctly rounded
+	 * value, just as parseDouble does.
+	 */
+	static private double parseDouble(char[] text,int from,int to){
+		int i=from;
+		boolean negative=false;
+		if(i<to&&(text[i]=='-'||text[i]=='+')){
+			negative=text[i]=='-';
+			i++;
+		}
+		long mantissa=0;
+		int digits=0,scale=0;
+		boolean point=false;
+		for(;i<to;i++){
+			char c=text[i];
+			if(c>='0'&&c<='9'){
+				mantissa=mantissa*10+(c-'0');
+				digits++;
+				if(point)
+					scale++;
+			}else if(c=='.'&&!point){
+				point=true;
+			}else{
+				break;
 			}
-			classLabelDict.put(arr[2],(label=new ClassLabel(arr[2])));
 		}
-		return new Example(instance,label);
+		if(i<to||digits==0||digits>MAX_EXACT_DIGITS){
+			return Double.parseDouble(new String(text,from,to-from));
+		}
+		double value=mantissa/POWERS_OF_TEN[scale];
+		return negative?-value:value;
 	}
 
 	static private SGMExample RelparseLine(String line,File file,
@@ -378,14 +553,8 @@ public class DatasetLoader{
 				instance.addBinary(parseFeatureName(arr[i]));
 			}
 		}
-		ClassLabel label=classLabelDict.get(arr[3]);
-		if(label==null){
-			if("b".equals(arr[1])){
-				throw new IllegalArgumentException("should be POS/NEG but label is '"+
-						arr[3]+"' at line#"+in.getLineNumber()+" of "+file.getName());
-			}
-			classLabelDict.put(arr[3],(label=new ClassLabel(arr[3])));
-		}
+		ClassLabel label=
+				getClassLabel(arr[3],arr[1],in.getLineNumber(),file.getName());
 		return new SGMExample(instance,label,ID);
 	}
 
@@ -427,19 +596,9 @@ public class DatasetLoader{
 			}
 		}
 		ClassLabel[] labels=new ClassLabel[numDim];
-		for(int i=2;i<2+numDim;i++){
-			ClassLabel label=classLabelDict.get(arr[i]);
-			labels[i-2]=label;
-		}
 		for(int i=0;i<labels.length;i++){
-			if(labels[i]==null){
-				if("b".equals(arr[0])){
-					throw new IllegalArgumentException(
-							"should be POS/NEG but label is '"+arr[2+i]+"' at line#"+
-									in.getLineNumber()+" of "+file.getName());
-				}
-				classLabelDict.put(arr[2+i],(labels[i]=new ClassLabel(arr[2+i])));
-			}
+			labels[i]=
+					getClassLabel(arr[2+i],arr[0],in.getLineNumber(),file.getName());
 		}
 		//
 		MultiClassLabel multiLabel=new MultiClassLabel(labels);
@@ -453,39 +612,379 @@ public class DatasetLoader{
 		return new Feature(featureParts);
 	}
 
+	// parseFeatureName(new String(text,from,to-from))
+	static private Feature parseFeatureName(char[] text,int from,int to){
+		if(indexOf(text,from,to,'.')<0){
+			return new Feature(new String[]{decode(featureCoder,text,from,to)});
+		}
+		// like split, drop trailing empty parts
+		while(to>from&&text[to-1]=='.')
+			to--;
+		int numParts=0;
+		if(to>from){
+			numParts=1;
+			for(int i=from;i<to;i++){
+				if(text[i]=='.')
+					numParts++;
+			}
+		}
+		String[] featureParts=new String[numParts];
+		int start=from;
+		for(int j=0;j<numParts;j++){
+			int end=indexOf(text,start,to,'.');
+			if(end<0)
+				end=to;
+			featureParts[j]=decode(featureCoder,text,start,end);
+			start=end+1;
+		}
+		return new Feature(featureParts);
+	}
+
+	/**
+	 * Load a dataset in SVM-light format: a numeric label, then
+	 * feature:value pairs.
+	 */
 	public static Dataset loadSVMStyle(File file) throws IOException{
+		return loadSVMStyle(file,1);
+	}
+
+	/**
+	 * Load a dataset in SVM-light format, parsing lines on numThreads
+	 * threads.
+	 */
+	public static Dataset loadSVMStyle(File file,int numThreads)
+			throws IOException{
 		Dataset dataset=new BasicDataset();
-		BufferedReader in=new BufferedReader(new FileReader(file));
-		while(in.ready()){
-			String line=in.readLine();
-			StringTokenizer st=new StringTokenizer(line," \t\n\r\f:");
-
-			//label - yes this is necessary:
-			//the original string representation and the reconstituted versions are different.
-			//ex: (string)+1 => (double)1.0 => (string)1.0
-			MutableInstance instance=new MutableInstance();
-			String label=st.nextToken();
-			double labelDouble=Double.parseDouble(label);
-			label=""+labelDouble;
-
-			//num features
-			//      int numFeatures = st.countTokens()/2;
-			while(st.hasMoreTokens()){
-				//add features to instance
-				// note for svm these should be numeric
-				String featureName=st.nextToken();
-				String featureValue=st.nextToken();
-				instance.addNumeric(new Feature(featureName),Double
-						.parseDouble(featureValue));
+		for(ExampleFileIterator i=new ExampleFileIterator(file,SVM_LINES,numThreads);i.hasNextExample();){
+			dataset.add(i.next());
+		}
+		return dataset;
+	}
+
+	/**
+	 * Iterate over the examples in an SVM-light file, as exampleIterator
+	 * does for the usual format.
+	 */
+	public static Iterator<Example> svmStyleExampleIterator(File file,
+			int numThreads) throws IOException{
+		return new ExampleFileIterator(file,SVM_LINES,numThreads);
+	}
+
+	static private Example parseSVMLine(char[] text,int from,int to,
+			String fileName,int lineNumber){
+		int i=skipSVMDelimiters(text,from,to);
+		if(i==to)
+			throw new IllegalArgumentException("too few values at line#"+
+					lineNumber+" of "+fileName);
+		int end=skipSVMToken(text,i,to);
+		//label - yes this is necessary:
+		//the original string representation and the reconstituted versions are different.
+		//ex: (string)+1 => (double)1.0 => (string)1.0
+		double labelDouble=parseDouble(text,i,end);
+		MutableInstance instance=new MutableInstance();
+		for(i=skipSVMDelimiters(text,end,to);i<to;i=skipSVMDelimiters(text,end,to)){
+			//add features to instance
+			// note for svm these should be numeric
+			end=skipSVMToken(text,i,to);
+			Feature feature=new Feature(new String(text,i,end-i));
+			i=skipSVMDelimiters(text,end,to);
+			if(i==to)
+				throw new IllegalArgumentException("no value for feature "+feature+
+						" at line#"+lineNumber+" of "+fileName);
+			end=skipSVMToken(text,i,to);
+			instance.addNumeric(feature,parseDouble(text,i,end));
+		}
+		return new Example(instance,ClassLabel.binaryLabel(labelDouble));
+	}
+
+	// tokens in SVM-light lines are delimited by whitespace and ':'
+	static private boolean isSVMDelimiter(char c){
+		return c==' '||c=='\t'||c=='\n'||c=='\r'||c=='\f'||c==':';
+	}
+
+	static private int skipSVMDelimiters(char[] text,int from,int to){
+		while(from<to&&isSVMDelimiter(text[from]))
+			from++;
+		return from;
+	}
+
+	static private int skipSVMToken(char[] text,int from,int to){
+		while(from<to&&!isSVMDelimiter(text[from]))
+			from++;
+		return from;
+	}
+
+	/** Parses one line of a file into an example. */
+	private interface LineParser{
+
+		public Example parse(char[] text,int from,int to,String fileName,
+				int lineNumber);
+	}
+
+	static private final LineParser MINORTHIRD_LINES=new LineParser(){
+
+		@Override
+		public Example parse(char[] text,int from,int to,String fileName,
+				int lineNumber){
+			return parseLine(text,from,to,fileName,lineNumber);
+		}
+	};
+
+	static private final LineParser SVM_LINES=new LineParser(){
+
+		@Override
+		public Example parse(char[] text,int from,int to,String fileName,
+				int lineNumber){
+			return parseSVMLine(text,from,to,fileName,lineNumber);
+		}
+	};
+
+	/** Consecutive lines of a file: line firstLine+k is text[starts[k]..ends[k]). */
+	static private class LineChunk{
+
+		final char[] text;
+
+		final int[] starts,ends;
+
+		final int numLines,firstLine;
+
+		LineChunk(char[] text,int[] starts,int[] ends,int numLines,int firstLine){
+			this.text=text;
+			this.starts=starts;
+			this.ends=ends;
+			this.numLines=numLines;
+			this.firstLine=firstLine;
+		}
+	}
+
+	/**
+	 * Reads characters a block at a time and splits them into chunks of
+	 * whole lines.  Lines end as they do for LineNumberReader, at '\n',
+	 * '\r' or "\r\n", and are numbered the same way.
+	 */
+	static private class LineChunker{
+
+		private final Reader in;
+
+		private char[] buf=new char[CHARS_PER_READ];
+
+		// characters buf[start..end) have been read but not returned
+		private int start=0,end=0;
+
+		private boolean eof=false;
+
+		private int linesReturned=0;
+
+		LineChunker(Reader in){
+			this.in=in;
+		}
+
+		/** The next chunk of up to LINES_PER_CHUNK lines, or null at the end. */
+		LineChunk next() throws IOException{
+			int[] starts=new int[LINES_PER_CHUNK];
+			int[] ends=new int[LINES_PER_CHUNK];
+			int n=0;
+			// offsets are relative to start, which fill() may move
+			int lineStart=0,p=0;
+			while(n<LINES_PER_CHUNK){
+				if(start+p==end&&!fill()){
+					if(p>lineStart){
+						starts[n]=lineStart;
+						ends[n++]=p;
+					}
+					break;
+				}
+				char c=buf[start+p];
+				if(c!='\n'&&c!='\r'){
+					p++;
+					continue;
+				}
+				starts[n]=lineStart;
+				ends[n++]=p++;
+				if(c=='\r'&&(start+p<end||fill())&&buf[start+p]=='\n')
+					p++;
+				lineStart=p;
 			}
+			if(n==0)
+				return null;
+			char[] text=Arrays.copyOfRange(buf,start,start+p);
+			start+=p;
+			LineChunk chunk=new LineChunk(text,starts,ends,n,linesReturned+1);
+			linesReturned+=n;
+			return chunk;
+		}
 
-			//build Example
-			Example example=new Example(instance,ClassLabel.binaryLabel(labelDouble));
+		// read more characters, keeping buf[start..end); false at the end
+		private boolean fill() throws IOException{
+			if(eof)
+				return false;
+			if(start>0){
+				System.arraycopy(buf,start,buf,0,end-start);
+				end-=start;
+				start=0;
+			}
+			if(end==buf.length)
+				buf=Arrays.copyOf(buf,2*buf.length);
+			int read=in.read(buf,end,buf.length-end);
+			if(read<0){
+				eof=true;
+				return false;
+			}
+			end+=read;
+			return true;
+		}
 
-			dataset.add(example);
+		void close() throws IOException{
+			in.close();
 		}
+	}
 
-		return dataset;
+	/**
+	 * Iterates over the examples in a file.  Chunks of lines are read on the
+	 * calling thread and, with more than one thread, parsed on a pool at
+	 * most CHUNKS_PER_THREAD chunks per thread ahead of the iteration.
+	 */
+	static private class ExampleFileIterator implements Iterator<Example>{
+
+		private final String fileName;
+
+		private final LineParser parser;
+
+		private final LineChunker chunker;
+
+		private final ExecutorService pool;
+
+		private final LinkedList<Future<Example[]>> pending=
+				new LinkedList<Future<Example[]>>();
+
+		private Example[] examples=new Example[0];
+
+		private int next=0;
+
+		private boolean closed=false;
+
+		ExampleFileIterator(File file,LineParser parser,int numThreads)
+				throws IOException{
+			this.fileName=file.getName();
+			this.parser=parser;
+			this.chunker=new LineChunker(new InputStreamReader(new FileInputStream(file)));
+			this.pool=numThreads>1?Executors.newFixedThreadPool(numThreads,new DaemonThreads()):null;
+			for(int k=0;pool!=null&&k<numThreads*CHUNKS_PER_THREAD&&submit();k++);
+		}
+
+		// read the next chunk and parse it on the pool; false at the end
+		private boolean submit() throws IOException{
+			final LineChunk chunk=chunker.next();
+			if(chunk==null)
+				return false;
+			pending.add(pool.submit(new Callable<Example[]>(){
+
+				@Override
+				public Example[] call(){
+					return parse(chunk);
+				}
+			}));
+			return true;
+		}
+
+		private Example[] parse(LineChunk chunk){
+			Example[] parsed=new Example[chunk.numLines];
+			for(int k=0;k<chunk.numLines;k++){
+				parsed[k]=parser.parse(chunk.text,chunk.starts[k],chunk.ends[k],
+						fileName,chunk.firstLine+k);
+				// sort the features now, on this thread, not when first read
+				parsed[k].numFeatures();
+			}
+			return parsed;
+		}
+
+		boolean hasNextExample() throws IOException{
+			try{
+				while(next==examples.length){
+					if(closed)
+						return false;
+					if(pool==null){
+						LineChunk chunk=chunker.next();
+						examples=chunk==null?null:parse(chunk);
+					}else{
+						examples=pending.isEmpty()?null:get(pending.removeFirst());
+						submit();
+					}
+					next=0;
+					if(examples==null){
+						examples=new Example[0];
+						close();
+					}
+				}
+				return true;
+			}catch(IOException e){
+				close();
+				throw e;
+			}catch(RuntimeException e){
+				close();
+				throw e;
+			}
+		}
+
+		private void close() throws IOException{
+			if(!closed){
+				closed=true;
+				if(pool!=null)
+					pool.shutdownNow();
+				chunker.close();
+			}
+		}
+
+		@Override
+		public boolean hasNext(){
+			try{
+				return hasNextExample();
+			}catch(IOException e){
+				throw new IllegalStateException("error reading "+fileName+": "+e,e);
+			}
+		}
+
+		@Override
+		public Example next(){
+			if(!hasNext())
+				throw new NoSuchElementException();
+			Example example=examples[next];
+			examples[next++]=null;
+			return example;
+		}
+
+		@Override
+		public void remove(){
+			throw new UnsupportedOperationException();
+		}
+
+		/** Wait for a chunk to be parsed, rethrowing whatever was thrown. */
+		private static Example[] get(Future<Example[]> result){
+			try{
+				return result.get();
+			}catch(ExecutionException e){
+				Throwable cause=e.getCause();
+				if(cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				if(cause instanceof Error)
+					throw (Error)cause;
+				throw new IllegalStateException("error parsing examples: "+cause,cause);
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while parsing examples",e);
+			}
+		}
+	}
+
+	/** Daemon threads, so an abandoned iterator doesn't keep the JVM alive. */
+	static private class DaemonThreads implements ThreadFactory{
+
+		@Override
+		public Thread newThread(Runnable r){
+			Thread t=new Thread(r,"dataset-loader");
+			t.setDaemon(true);
+			return t;
+		}
 	}
 
 	/**
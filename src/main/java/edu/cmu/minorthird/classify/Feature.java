@@ -2,6 +2,8 @@
 
 package edu.cmu.minorthird.classify;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import at.orz.hash.XXHash;
@@ -9,6 +11,10 @@ import at.orz.hash.XXHash;
 /**
  * A name for a feature.  Features are hierarchical, so names are
  * structured: each name is an array of names from the heirarchy.
+ * 
+ * <p>The hash code is computed once, when the feature is created.
+ * Canonical features created by the same {@link FeatureFactory} are
+ * compared by id rather than by name.
  *
  * @author William Cohen
  */
@@ -20,10 +26,22 @@ public class Feature implements Comparable<Feature>,Serializable{
 	private String[] name;
 	private int id;
 
+	// cached hash of the name parts
+	private transient int hash;
+	// the factory this feature is canonical in, if any
+	private transient FeatureFactory factory;
+
 	/** Create a feature with its feature ID. */
 	public Feature(String[] name,int id){
 		this.name=name;
 		this.id=id;
+		this.hash=computeHash(name);
+	}
+
+	/** Create the canonical feature with this name and id for a factory. */
+	Feature(String[] name,int id,FeatureFactory factory){
+		this(name,id);
+		this.factory=factory;
 	}
 
 	/** Create a feature. */
@@ -62,8 +80,21 @@ public class Feature implements Comparable<Feature>,Serializable{
 	/** Overrides equals */
 	@Override
 	public boolean equals(Object object){
-		if(object instanceof Feature){
-			return compareTo((Feature)object)==0;
+		if(object==this){
+			return true;
+		}
+		else if(object instanceof Feature){
+			Feature other=(Feature)object;
+			if(factory!=null&&factory==other.factory){
+				// canonical features of one factory are equal iff their ids are
+				return id==other.id;
+			}
+			else if(hash!=other.hash){
+				return false;
+			}
+			else{
+				return compareTo(other)==0;
+			}
 		}
 		else{
 			return false;
@@ -72,6 +103,10 @@ public class Feature implements Comparable<Feature>,Serializable{
 
 	@Override
 	public int hashCode(){
+		return hash;
+	}
+
+	private static int computeHash(String[] name){
 		int h=783233;
 		for(int i=0;i<name.length;i++){
 			h=h^XXHash.digestFast32(name[i].getBytes(), 783233, true);
@@ -79,6 +114,17 @@ public class Feature implements Comparable<Feature>,Serializable{
 		return h;
 	}
 
+	/** Mark this feature as the canonical feature of a factory. */
+	void setFactory(FeatureFactory factory){
+		this.factory=factory;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException{
+		in.defaultReadObject();
+		hash=computeHash(name);
+	}
+
 	@Override
 	public String toString(){
 		if(name.length==1){
@@ -2,14 +2,20 @@
 
 package edu.cmu.minorthird.classify;
 
-import it.unimi.dsi.fastutil.objects.Object2ObjectArrayMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.cmu.minorthird.classify.multi.MultiExample;
 
@@ -17,19 +23,42 @@ import edu.cmu.minorthird.classify.multi.MultiExample;
  * Creates Features, and maintains a mapping between Features and
  * numeric ids.  Also ensures that only a single feature instance
  * exists with a particular name.
+ * 
+ * <p>Canonical lookup, id assignment and id-to-feature lookup are all
+ * constant time.  A single factory may be shared between threads:
+ * lookups of features that already exist never block, and new
+ * features are assigned consecutive ids under a lock.
  */
 
 public class FeatureFactory implements Serializable{
 
 	static private final long serialVersionUID=20080115L;
 
+	// the serialized form is just the list of canonical features, in id
+	// order; this is the same field older versions wrote, so saved models
+	// still load
+	private static final ObjectStreamField[] serialPersistentFields={
+		new ObjectStreamField("idFeatureMap",ObjectArrayList.class)
+	};
+
+	private static final int INITIAL_CAPACITY=1024;
+
 	// maps features to canonical features
-	private Object2ObjectArrayMap<Feature, Feature> canonicalMap = new Object2ObjectArrayMap<>();
-	// maps feature ID's to canonical features
-	private ObjectArrayList<Feature> idFeatureMap = new ObjectArrayList<>();
+	private transient ConcurrentHashMap<Feature,Feature> canonicalMap;
+	// maps feature ID's to canonical features; entries below numFeatures
+	// are never changed once written
+	private transient volatile Feature[] idFeatureMap;
+	// number of features assigned so far, written after idFeatureMap
+	private transient volatile int numFeatures;
+
+	public FeatureFactory(){
+		canonicalMap=new ConcurrentHashMap<Feature,Feature>(INITIAL_CAPACITY);
+		idFeatureMap=new Feature[INITIAL_CAPACITY];
+		numFeatures=0;
+	}
 	
 	public int getMaxFeatureIndex(){
-		return idFeatureMap.size()-1;
+		return numFeatures-1;
 	}
 
 	public boolean contains(Feature f){
@@ -40,10 +69,25 @@ public class FeatureFactory implements Serializable{
 	public Feature getFeature(Feature f){
 		Feature canonical=canonicalMap.get(f);
 		if(canonical==null){
-			// not yet stored, so create a canonical version
-			canonical=new Feature(f.getName(),idFeatureMap.size());
-			canonicalMap.put(f,canonical);
-			idFeatureMap.add(canonical);
+			canonical=addFeature(f);
+		}
+		return canonical;
+	}
+
+	// not yet stored, so create a canonical version with the next free id
+	private synchronized Feature addFeature(Feature f){
+		Feature canonical=canonicalMap.get(f);
+		if(canonical==null){
+			int id=numFeatures;
+			canonical=new Feature(f.getName(),id,this);
+			Feature[] features=idFeatureMap;
+			if(id==features.length){
+				features=Arrays.copyOf(features,features.length*2);
+			}
+			features[id]=canonical;
+			idFeatureMap=features;
+			numFeatures=id+1;
+			canonicalMap.put(canonical,canonical);
 		}
 		return canonical;
 	}
@@ -59,16 +103,49 @@ public class FeatureFactory implements Serializable{
 	}
 
 	public Feature getFeature(int id){
-		if(id<0||id>=idFeatureMap.size()){
+		// read the count first: the array it was published with holds at
+		// least that many features
+		int n=numFeatures;
+		if(id<0||id>=n){
 			return null;
 		}
 		else{
-			return idFeatureMap.get(id);
+			return idFeatureMap[id];
 		}
 	}
 
+	/**
+	 * Return the id of the canonical version of a feature, or -1 if the
+	 * feature has not been stored in this factory.
+	 */
 	public int getID(Feature feature){
-		return idFeatureMap.indexOf(feature);
+		Feature canonical=canonicalMap.get(feature);
+		return canonical==null?-1:canonical.getID();
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		int n=numFeatures;
+		ObjectOutputStream.PutField fields=out.putFields();
+		fields.put("idFeatureMap",ObjectArrayList.wrap(idFeatureMap,n));
+		out.writeFields();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException{
+		ObjectInputStream.GetField fields=in.readFields();
+		ObjectArrayList<Feature> list=
+				(ObjectArrayList<Feature>)fields.get("idFeatureMap",null);
+		int n=list==null?0:list.size();
+		Feature[] features=new Feature[Math.max(INITIAL_CAPACITY,n)];
+		canonicalMap=new ConcurrentHashMap<Feature,Feature>(features.length);
+		for(int i=0;i<n;i++){
+			features[i]=list.get(i);
+			features[i].setFactory(this);
+			canonicalMap.put(features[i],features[i]);
+		}
+		idFeatureMap=features;
+		numFeatures=n;
 	}
 
 	/**
@@ -106,9 +183,10 @@ public class FeatureFactory implements Serializable{
 	public String toString(){
 		StringBuilder b=new StringBuilder();
 		b.append(super.toString()).append(" : [");
-		for(int i=0;i<idFeatureMap.size();i++){
-			b.append(i).append("=").append(idFeatureMap.get(i));
-			if(i<idFeatureMap.size()-1){
+		int n=numFeatures;
+		for(int i=0;i<n;i++){
+			b.append(i).append("=").append(idFeatureMap[i]);
+			if(i<n-1){
 				b.append(" ");
 			}
 		}
@@ -117,19 +195,31 @@ public class FeatureFactory implements Serializable{
 	}
 
 	/**
-	 * A compact but immutable implementation of an instance.
+	 * A compact but immutable implementation of an instance.  Features
+	 * are stored as sorted arrays of canonical feature ids, so weight
+	 * lookups are binary searches over ints and iteration allocates no
+	 * intermediate arrays.  Learners that keep weights indexed by feature
+	 * id can use {@link #dot(double[])}, {@link #axpy(double,double[])}
+	 * or the positional accessors {@link #getIDAt(int)} and {@link
+	 * #getWeightAt(int)} to avoid going through Feature objects.
+	 * 
 	 * @author wcohen, ksteppe
 	 */
 
-	protected class CompactInstance extends AbstractInstance implements Serializable{
+	public class CompactInstance extends AbstractInstance implements Serializable{
 
 		static final long serialVersionUID=20071015L;
 
-		private Feature[] binaryFeatures;
+		private int[] binaryIds;
 
-		private Feature[] numericFeatures;
+		private int[] numericIds;
 		private double[] weights;
 
+		// only present in instances serialized by older versions, which
+		// stored canonical features rather than ids; converted on load
+		private Feature[] binaryFeatures;
+		private Feature[] numericFeatures;
+
 		/**
 		 * Create a compact instance from some other instance
 		 * @param instance Instance object to generate from
@@ -140,43 +230,81 @@ public class FeatureFactory implements Serializable{
 			this.source=instance.getSource();
 			this.subpopulationId=instance.getSubpopulationId();
 
-			// create a sorted set for holding and sorting the features 
-			SortedSet<Feature> set=new TreeSet<Feature>();
+			// collect the ids of the binary features
+			binaryIds=collectIDs(instance.binaryFeatureIterator());
 
-			// iterate over binary features and store in array
-			for(Iterator<Feature> it=instance.binaryFeatureIterator();it.hasNext();){
-				set.add(getFeature(it.next()));
+			// collect the ids of the numeric features and store their weights
+			numericIds=collectIDs(instance.numericFeatureIterator());
+			weights=new double[numericIds.length];
+			for(int i=0;i<numericIds.length;i++){
+				weights[i]=instance.getWeight(getFeature(numericIds[i]));
 			}
-			binaryFeatures=set.toArray(new Feature[set.size()]);
 
-			set.clear();
-
-			// iterate over numeric features and store in array
-			for(Iterator<Feature> it=instance.numericFeatureIterator();it.hasNext();){
-				set.add(getFeature(it.next()));
-			}
-			numericFeatures=set.toArray(new Feature[set.size()]);
-
-			// store numeric feature weights
-			weights=new double[numericFeatures.length];
-			for(int i=0;i<numericFeatures.length;i++){
-				weights[i]=instance.getWeight(numericFeatures[i]);
-			}
+		}
 
+		/**
+		 * Create a compact instance directly from canonical feature ids, as
+		 * stored by a {@link MappedDataset}.  The id arrays must be sorted
+		 * and without duplicates, and are used without copying.
+		 */
+		CompactInstance(Object source,String subpopulationId,int[] binaryIds,
+				int[] numericIds,double[] weights){
+			this.source=source;
+			this.subpopulationId=subpopulationId;
+			this.binaryIds=binaryIds;
+			this.numericIds=numericIds;
+			this.weights=weights;
 		}
 
 		// returns the factory that compressed this instance
 		public FeatureFactory getFactory(){return FeatureFactory.this;}
 
-		// using binary search to find feature weight; should it be more efficient?
+		/** Number of binary features, which come first in {@link #getIDAt(int)}. */
+		public int numBinaryFeatures(){
+			return binaryIds.length;
+		}
+
+		// canonical ids of the features in the iterator, sorted and without duplicates
+		private int[] collectIDs(Iterator<Feature> it){
+			int[] ids=new int[16];
+			int n=0;
+			while(it.hasNext()){
+				if(n==ids.length){
+					ids=Arrays.copyOf(ids,n*2);
+				}
+				ids[n++]=getFeature(it.next()).getID();
+			}
+			Arrays.sort(ids,0,n);
+			int m=0;
+			for(int i=0;i<n;i++){
+				if(m==0||ids[i]!=ids[m-1]){
+					ids[m++]=ids[i];
+				}
+			}
+			return m==ids.length?ids:Arrays.copyOf(ids,m);
+		}
+
 		@Override
 		public double getWeight(Feature f){
+			// canonical features from this factory already know their id
+			int id=f.getID();
+			if(id<0||getFeature(id)!=f){
+				id=getID(f);
+				if(id<0){
+					return 0;
+				}
+			}
+			return getWeight(id);
+		}
+
+		/** Get the weight assigned to the feature with the given id. */
+		public double getWeight(int id){
 			// search through binary features first
-			if(Arrays.binarySearch(binaryFeatures,f)>-1){
+			if(Arrays.binarySearch(binaryIds,id)>-1){
 				return 1;
 			}
 			// then search through numeric features
-			int index=Arrays.binarySearch(numericFeatures,f);
+			int index=Arrays.binarySearch(numericIds,id);
 			if(index>-1){
 				return weights[index];
 			}
@@ -185,88 +313,171 @@ public class FeatureFactory implements Serializable{
 			}
 		}
 
+		/**
+		 * Id of the i-th feature, where the binary features come first
+		 * and the numeric features follow, each in increasing id order.
+		 */
+		public int getIDAt(int i){
+			return i<binaryIds.length?binaryIds[i]:numericIds[i-binaryIds.length];
+		}
+
+		/** Weight of the i-th feature, in the order used by {@link #getIDAt(int)}. */
+		public double getWeightAt(int i){
+			return i<binaryIds.length?1:weights[i-binaryIds.length];
+		}
+
+		/**
+		 * Inner product of this instance with a weight vector indexed by
+		 * feature id.  Ids beyond the end of the vector have weight zero.
+		 */
+		public double dot(double[] w){
+			double sum=0;
+			for(int i=0;i<binaryIds.length;i++){
+				int id=binaryIds[i];
+				if(id<w.length){
+					sum+=w[id];
+				}
+			}
+			for(int i=0;i<numericIds.length;i++){
+				int id=numericIds[i];
+				if(id<w.length){
+					sum+=weights[i]*w[id];
+				}
+			}
+			return sum;
+		}
+
+		/**
+		 * Add a times this instance to a weight vector indexed by feature
+		 * id, ie y += a*x.  The vector must be long enough to hold every
+		 * id in this instance.
+		 */
+		public void axpy(double a,double[] y){
+			for(int i=0;i<binaryIds.length;i++){
+				y[binaryIds[i]]+=a;
+			}
+			for(int i=0;i<numericIds.length;i++){
+				y[numericIds[i]]+=a*weights[i];
+			}
+		}
+
+		/** Largest feature id in this instance, or -1 if it is empty. */
+		public int getMaxID(){
+			int max=-1;
+			if(binaryIds.length>0){
+				max=binaryIds[binaryIds.length-1];
+			}
+			if(numericIds.length>0){
+				max=Math.max(max,numericIds[numericIds.length-1]);
+			}
+			return max;
+		}
+
 		@Override
 		public Iterator<Feature> binaryFeatureIterator(){
-			return new FeatureArrayIterator(binaryFeatures);
+			return new FeatureIdIterator(binaryIds,null);
 		}
 
 		@Override
 		public Iterator<Feature> numericFeatureIterator(){
-			return new FeatureArrayIterator(numericFeatures);
+			return new FeatureIdIterator(numericIds,null);
 		}
 
 		@Override
 		public Iterator<Feature> featureIterator(){
-			return new UnionFeatureArrayIterator(binaryFeatures,numericFeatures);
+			return new FeatureIdIterator(binaryIds,numericIds);
 		}
 		
 		@Override
 		public int numFeatures(){
-			return binaryFeatures.length+numericFeatures.length;
+			return binaryIds.length+numericIds.length;
 		}
 
 		@Override
 		public String toString(){
 			StringBuilder b=new StringBuilder();
 			b.append("[compact instance/").append(subpopulationId).append(":");
-			for(int i=0;i<binaryFeatures.length;i++){
-				b.append(" ").append(binaryFeatures[i]);
+			for(int i=0;i<binaryIds.length;i++){
+				b.append(" ").append(getFeature(binaryIds[i]));
 			}
-			for(int i=0;i<numericFeatures.length;i++){
-				b.append(" ").append(numericFeatures[i]).append(":").append(getWeight(numericFeatures[i]));
+			for(int i=0;i<numericIds.length;i++){
+				b.append(" ").append(getFeature(numericIds[i])).append(":").append(weights[i]);
 			}
 			b.append("]");
 			return b.toString();
 		}
 
-		/** a looper over a feature array with Feature.Looper type */
-		public class FeatureArrayIterator implements Iterator<Feature>{
+		private void readObject(ObjectInputStream in) throws IOException,
+				ClassNotFoundException{
+			in.defaultReadObject();
+			if(binaryIds==null){
+				// saved by an older version, which sorted features by name
+				binaryIds=new int[binaryFeatures.length];
+				for(int i=0;i<binaryFeatures.length;i++){
+					binaryIds[i]=getFeature(binaryFeatures[i]).getID();
+				}
+				Arrays.sort(binaryIds);
+				SortedMap<Integer,Double> numeric=new TreeMap<Integer,Double>();
+				for(int i=0;i<numericFeatures.length;i++){
+					numeric.put(getFeature(numericFeatures[i]).getID(),weights[i]);
+				}
+				numericIds=new int[numeric.size()];
+				weights=new double[numeric.size()];
+				int i=0;
+				for(Map.Entry<Integer,Double> e:numeric.entrySet()){
+					numericIds[i]=e.getKey();
+					weights[i++]=e.getValue();
+				}
+				binaryFeatures=null;
+				numericFeatures=null;
+			}
+		}
+
+		/**
+		 * Iterates over the canonical features for one or two id arrays,
+		 * one after the other.
+		 */
+		private class FeatureIdIterator implements Iterator<Feature>{
 
+			private int[] ids;
+			private int[] moreIds;
 			private int current;
-			private Feature[] features;
 
-			public FeatureArrayIterator(Feature[] features){
+			public FeatureIdIterator(int[] ids,int[] moreIds){
+				this.ids=ids;
+				this.moreIds=moreIds;
 				current=0;
-				this.features=features;
 			}
 
 			@Override
 			public boolean hasNext(){
-				return current<features.length;
+				if(current<ids.length){
+					return true;
+				}
+				if(moreIds!=null){
+					ids=moreIds;
+					moreIds=null;
+					current=0;
+					return ids.length>0;
+				}
+				return false;
 			}
 
 			@Override
 			public Feature next(){
-				return features[current++];
+				if(!hasNext()){
+					throw new NoSuchElementException();
+				}
+				return getFeature(ids[current++]);
 			}
 
 			@Override
 			public void remove(){
-				throw new Error("method CompactInstance.FeatureArrayLooper: remove not implemented.");
+				throw new UnsupportedOperationException("CompactInstance is immutable");
 			}
 
 		}
 
-		/** sequential composite of n FeatureArrayLoopers (constructor for 2) */
-		public class UnionFeatureArrayIterator extends FeatureArrayIterator{
-
-			public UnionFeatureArrayIterator(Feature[] features,Feature[] moreFeatures){
-				super(combine(features,moreFeatures));
-			}
-
-		}
-
-	}
-
-	private static Feature[] combine(Feature[] a1,Feature[] a2){
-		Feature[] combined=new Feature[a1.length+a2.length];
-		for(int i=0;i<a1.length;i++){
-			combined[i]=a1[i];
-		}
-		for(int i=0;i<a2.length;i++){
-			combined[a1.length+i]=a2[i];
-		}
-		return combined;
 	}
 
 }
@@ -29,25 +29,6 @@ public class ManyVsRestLearner extends OneVsAllLearner{
     	super(learnerName);
     }
     
-    @Override
-		public ClassifierLearner copy() {
-	    ManyVsRestLearner learner = null;
-		try {
-		    learner =(ManyVsRestLearner)(this.clone());
-		    if(innerLearner!= null) {
-				learner.innerLearner.clear();
-				for (int i=0; i<innerLearner.size(); i++) {
-				    ClassifierLearner inner = (innerLearner.get(i));
-				    learner.innerLearner.add(inner.copy());
-				}
-		    }
-		} catch (Exception e) {
-		    System.out.println("Can't CLONE ManyVsRestLearner!!");
-		    e.printStackTrace();
-		}
-		return learner;
-    }
-
     @Override
 		public void addExample(Example answeredQuery)
     {    	
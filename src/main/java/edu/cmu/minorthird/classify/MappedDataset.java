@@ -0,0 +1,459 @@
+/* Copyright 2003, Carnegie Mellon, All Rights Reserved */
+
+package edu.cmu.minorthird.classify;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * A dataset stored in the binary dataset format, and read from a
+ * read-only mapping of the file.  Examples are built when they are
+ * requested, so iterating over a large dataset does not hold all of it on
+ * the heap; only the feature dictionary is loaded.  Adding examples,
+ * shuffling or splitting the dataset first reads all of its examples into
+ * memory, after which it behaves like any RandomAccessDataset.
+ * <p>
+ * The file is columnar.  After a header giving the counts and the offset
+ * of each section, it holds:
+ * <ul>
+ * <li>a table of the strings used for class names, subpopulations and
+ * feature name parts;
+ * <li>the feature dictionary: for each feature id in turn, its number of
+ * name parts and their string indices;
+ * <li>one column each for the label, subpopulation and weight of every
+ * example;
+ * <li>the binary features of the examples in compressed sparse row form:
+ * a column of row starts and a column of feature ids;
+ * <li>the numeric features in the same form, with a further column of
+ * values, stored as floats when every value is exactly a float.
+ * </ul>
+ * Example sources are assigned as if the examples had been read from a
+ * text file, one per line.
+ *
+ * @see DatasetLoader#saveBinary(Dataset,File)
+ * @see DatasetLoader#loadBinary(File)
+ */
+
+public class MappedDataset extends RandomAccessDataset{
+
+	static final long serialVersionUID=20080118L;
+
+	/** Starts every file in this format; text datasets never begin with a NUL. */
+	static final int MAGIC=0x004D3344;
+
+	static final int VERSION=1;
+
+	// magic, version, numExamples, numFeatures, valueBytes, unused, then the
+	// section offsets and the numbers of binary and numeric entries
+	static private final int NUM_SECTIONS=10;
+
+	static private final int HEADER_BYTES=6*4+(NUM_SECTIONS+2)*8;
+
+	static private final int STRINGS=0,FEATURES=1,LABELS=2,SUBPOPULATIONS=3,
+			WEIGHTS=4,BINARY_STARTS=5,BINARY_IDS=6,NUMERIC_STARTS=7,NUMERIC_IDS=8,
+			NUMERIC_VALUES=9;
+
+	static private final Charset UTF8=Charset.forName("UTF-8");
+
+	private String fileName;
+
+	private int numExamples;
+
+	private transient String[] strings;
+
+	private transient ClassLabel[] labelsByString;
+
+	private transient Column labels,subpopulations,weights,binaryStarts,
+			binaryIds,numericStarts,numericIds,numericValues;
+
+	private transient int valueBytes;
+
+	// true once the examples have been read into the examples list; read
+	// without locking, so the columns are kept for readers that saw false
+	private volatile boolean materialized=false;
+
+	/** Map the dataset saved in file by {@link #save(Dataset,File)}. */
+	public MappedDataset(File file) throws IOException{
+		fileName=file.getName();
+		RandomAccessFile raf=new RandomAccessFile(file,"r");
+		try{
+			FileChannel channel=raf.getChannel();
+			ByteBuffer header=channel.map(FileChannel.MapMode.READ_ONLY,0,HEADER_BYTES);
+			if(header.getInt()!=MAGIC){
+				throw new IOException(file+" is not a binary dataset");
+			}
+			if(header.getInt()!=VERSION){
+				throw new IOException(file+" has an unknown binary dataset version");
+			}
+			numExamples=header.getInt();
+			int numFeatures=header.getInt();
+			valueBytes=header.getInt();
+			header.getInt();
+			long[] offsets=new long[NUM_SECTIONS];
+			for(int i=0;i<NUM_SECTIONS;i++){
+				offsets[i]=header.getLong();
+			}
+			long numBinary=header.getLong();
+			long numNumeric=header.getLong();
+
+			readStrings(channel.map(FileChannel.MapMode.READ_ONLY,offsets[STRINGS],
+					offsets[FEATURES]-offsets[STRINGS]));
+			Column dictionary=new Column(channel,offsets[FEATURES],(offsets[LABELS]-offsets[FEATURES])/4,4);
+			long pos=0;
+			for(int id=0;id<numFeatures;id++){
+				String[] name=new String[dictionary.getInt(pos++)];
+				for(int j=0;j<name.length;j++){
+					name[j]=strings[dictionary.getInt(pos++)];
+				}
+				if(featureFactory.getFeature(name).getID()!=id){
+					throw new IOException(file+" has a repeated feature "+new Feature(name));
+				}
+			}
+			labels=new Column(channel,offsets[LABELS],numExamples,4);
+			subpopulations=new Column(channel,offsets[SUBPOPULATIONS],numExamples,4);
+			weights=new Column(channel,offsets[WEIGHTS],numExamples,8);
+			binaryStarts=new Column(channel,offsets[BINARY_STARTS],numExamples+1,8);
+			binaryIds=new Column(channel,offsets[BINARY_IDS],numBinary,4);
+			numericStarts=new Column(channel,offsets[NUMERIC_STARTS],numExamples+1,8);
+			numericIds=new Column(channel,offsets[NUMERIC_IDS],numNumeric,4);
+			numericValues=new Column(channel,offsets[NUMERIC_VALUES],numNumeric,valueBytes);
+		}finally{
+			raf.close();
+		}
+		labelsByString=new ClassLabel[strings.length];
+		for(int i=0;i<numExamples;i++){
+			int s=labels.getInt(i);
+			if(labelsByString[s]==null){
+				labelsByString[s]=DatasetLoader.getClassLabel(strings[s]);
+				classNameSet.addAll(labelsByString[s].possibleLabels());
+			}
+		}
+	}
+
+	private void readStrings(ByteBuffer buf){
+		strings=new String[buf.getInt()];
+		for(int i=0;i<strings.length;i++){
+			byte[] bytes=new byte[buf.getInt()];
+			buf.get(bytes);
+			strings[i]=new String(bytes,UTF8);
+		}
+	}
+
+	/** The example at position i. */
+	@Override
+	public Example getExample(int i){
+		if(materialized){
+			return super.getExample(i);
+		}
+		if(i<0||i>=numExamples){
+			throw new IndexOutOfBoundsException("example "+i+" of "+numExamples);
+		}
+		long start=binaryStarts.getLong(i);
+		int[] binary=new int[(int)(binaryStarts.getLong(i+1)-start)];
+		for(int j=0;j<binary.length;j++){
+			binary[j]=binaryIds.getInt(start+j);
+		}
+		start=numericStarts.getLong(i);
+		int[] numeric=new int[(int)(numericStarts.getLong(i+1)-start)];
+		double[] values=new double[numeric.length];
+		for(int j=0;j<numeric.length;j++){
+			numeric[j]=numericIds.getInt(start+j);
+			values[j]=valueBytes==4?numericValues.getFloat(start+j):numericValues.getDouble(start+j);
+		}
+		int subpopulation=subpopulations.getInt(i);
+		Instance instance=featureFactory.new CompactInstance(
+				DatasetLoader.getSourceAssignedToExample(fileName,i+1),
+				subpopulation<0?null:strings[subpopulation],binary,numeric,values);
+		return new Example(instance,labelsByString[labels.getInt(i)],weights.getDouble(i));
+	}
+
+	@Override
+	public Iterator<Example> iterator(){
+		if(materialized){
+			return super.iterator();
+		}
+		return new Iterator<Example>(){
+
+			private int next=0;
+
+			@Override
+			public boolean hasNext(){
+				return next<numExamples;
+			}
+
+			@Override
+			public Example next(){
+				if(!hasNext()){
+					throw new NoSuchElementException();
+				}
+				return getExample(next++);
+			}
+
+			@Override
+			public void remove(){
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public int size(){
+		return materialized?super.size():numExamples;
+	}
+
+	@Override
+	public void add(Example example,boolean compress){
+		materialize();
+		super.add(example,compress);
+	}
+
+	@Override
+	public void shuffle(Random r){
+		materialize();
+		super.shuffle(r);
+	}
+
+	@Override
+	public Split split(Splitter<Example> splitter){
+		materialize();
+		return super.split(splitter);
+	}
+
+	/** Read every example into memory; the file is no longer read. */
+	private synchronized void materialize(){
+		if(!materialized){
+			for(int i=0;i<numExamples;i++){
+				examples.add(getExample(i));
+			}
+			materialized=true;
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		materialize();
+		out.defaultWriteObject();
+	}
+
+	/**
+	 * Save a dataset in the binary format.  The features of each example
+	 * are stored by their ids in the dataset's feature factory.
+	 */
+	static public void save(Dataset dataset,File file) throws IOException{
+		FeatureFactory factory=dataset.getFeatureFactory();
+		List<Example> examples=new ArrayList<Example>(dataset.size());
+		List<FeatureFactory.CompactInstance> rows=
+				new ArrayList<FeatureFactory.CompactInstance>(dataset.size());
+		boolean floats=true;
+		long numBinary=0,numNumeric=0;
+		for(Iterator<Example> i=dataset.iterator();i.hasNext();){
+			Example example=i.next();
+			FeatureFactory.CompactInstance row=factory.compress(example.asInstance());
+			examples.add(example);
+			rows.add(row);
+			numBinary+=row.numBinaryFeatures();
+			numNumeric+=row.numFeatures()-row.numBinaryFeatures();
+			for(int j=row.numBinaryFeatures();floats&&j<row.numFeatures();j++){
+				double w=row.getWeightAt(j);
+				floats=(float)w==w||Double.isNaN(w);
+			}
+		}
+		// every feature used by the rows is in the factory by now
+		int numFeatures=factory.getMaxFeatureIndex()+1;
+		StringTable strings=new StringTable();
+		int[][] featureNames=new int[numFeatures][];
+		for(int id=0;id<numFeatures;id++){
+			String[] name=factory.getFeature(id).getName();
+			featureNames[id]=new int[name.length];
+			for(int j=0;j<name.length;j++){
+				featureNames[id][j]=strings.indexOf(name[j]);
+			}
+		}
+		int[] labelColumn=new int[examples.size()];
+		int[] subpopulationColumn=new int[examples.size()];
+		for(int i=0;i<examples.size();i++){
+			Example example=examples.get(i);
+			labelColumn[i]=strings.indexOf(example.getLabel().bestClassName());
+			String subpopulation=example.getSubpopulationId();
+			subpopulationColumn[i]=subpopulation==null?-1:strings.indexOf(subpopulation);
+		}
+
+		FileOutputStream fileOut=new FileOutputStream(file);
+		try{
+			FileChannel channel=fileOut.getChannel();
+			DataOutputStream out=new DataOutputStream(new BufferedOutputStream(fileOut,1<<16));
+			out.write(new byte[HEADER_BYTES]);
+			long[] offsets=new long[NUM_SECTIONS];
+
+			offsets[STRINGS]=position(out,channel);
+			out.writeInt(strings.size());
+			for(String s:strings.list){
+				byte[] bytes=s.getBytes(UTF8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			offsets[FEATURES]=position(out,channel);
+			for(int id=0;id<numFeatures;id++){
+				out.writeInt(featureNames[id].length);
+				for(int j=0;j<featureNames[id].length;j++){
+					out.writeInt(featureNames[id][j]);
+				}
+			}
+			offsets[LABELS]=position(out,channel);
+			for(int i=0;i<labelColumn.length;i++){
+				out.writeInt(labelColumn[i]);
+			}
+			offsets[SUBPOPULATIONS]=position(out,channel);
+			for(int i=0;i<subpopulationColumn.length;i++){
+				out.writeInt(subpopulationColumn[i]);
+			}
+			offsets[WEIGHTS]=position(out,channel);
+			for(Example example:examples){
+				out.writeDouble(example.getWeight());
+			}
+			offsets[BINARY_STARTS]=position(out,channel);
+			long start=0;
+			for(FeatureFactory.CompactInstance row:rows){
+				out.writeLong(start);
+				start+=row.numBinaryFeatures();
+			}
+			out.writeLong(start);
+			offsets[BINARY_IDS]=position(out,channel);
+			for(FeatureFactory.CompactInstance row:rows){
+				for(int j=0;j<row.numBinaryFeatures();j++){
+					out.writeInt(row.getIDAt(j));
+				}
+			}
+			offsets[NUMERIC_STARTS]=position(out,channel);
+			start=0;
+			for(FeatureFactory.CompactInstance row:rows){
+				out.writeLong(start);
+				start+=row.numFeatures()-row.numBinaryFeatures();
+			}
+			out.writeLong(start);
+			offsets[NUMERIC_IDS]=position(out,channel);
+			for(FeatureFactory.CompactInstance row:rows){
+				for(int j=row.numBinaryFeatures();j<row.numFeatures();j++){
+					out.writeInt(row.getIDAt(j));
+				}
+			}
+			offsets[NUMERIC_VALUES]=position(out,channel);
+			for(FeatureFactory.CompactInstance row:rows){
+				for(int j=row.numBinaryFeatures();j<row.numFeatures();j++){
+					if(floats){
+						out.writeFloat((float)row.getWeightAt(j));
+					}else{
+						out.writeDouble(row.getWeightAt(j));
+					}
+				}
+			}
+			out.flush();
+
+			ByteBuffer header=ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).putInt(rows.size()).putInt(numFeatures);
+			header.putInt(floats?4:8).putInt(0);
+			for(int i=0;i<NUM_SECTIONS;i++){
+				header.putLong(offsets[i]);
+			}
+			header.putLong(numBinary).putLong(numNumeric);
+			header.flip();
+			channel.write(header,0);
+		}finally{
+			fileOut.close();
+		}
+	}
+
+	// bytes written so far
+	static private long position(DataOutputStream out,FileChannel channel)
+			throws IOException{
+		out.flush();
+		return channel.position();
+	}
+
+	/** Strings numbered in the order they are first seen. */
+	static private class StringTable{
+
+		final List<String> list=new ArrayList<String>();
+
+		final Map<String,Integer> index=new HashMap<String,Integer>();
+
+		int indexOf(String s){
+			Integer i=index.get(s);
+			if(i==null){
+				i=list.size();
+				list.add(s);
+				index.put(s,i);
+			}
+			return i;
+		}
+
+		int size(){
+			return list.size();
+		}
+	}
+
+	/**
+	 * A column of fixed width values in the file, mapped read-only.  Columns
+	 * longer than a single mapping allows are mapped in several segments.
+	 */
+	static private class Column{
+
+		static private final int SEGMENT_SHIFT=27;
+
+		static private final long SEGMENT_MASK=(1L<<SEGMENT_SHIFT)-1;
+
+		private final ByteBuffer[] segments;
+
+		private final int width;
+
+		Column(FileChannel channel,long offset,long length,int width)
+				throws IOException{
+			this.width=width;
+			int numSegments=(int)((length+SEGMENT_MASK)>>>SEGMENT_SHIFT);
+			segments=new ByteBuffer[numSegments];
+			for(int i=0;i<numSegments;i++){
+				long first=(long)i<<SEGMENT_SHIFT;
+				long n=Math.min(length-first,1L<<SEGMENT_SHIFT);
+				segments[i]=channel.map(FileChannel.MapMode.READ_ONLY,offset+first*width,n*width);
+			}
+		}
+
+		private ByteBuffer segment(long i){
+			return segments[(int)(i>>>SEGMENT_SHIFT)];
+		}
+
+		private int position(long i){
+			return (int)(i&SEGMENT_MASK)*width;
+		}
+
+		int getInt(long i){
+			return segment(i).getInt(position(i));
+		}
+
+		long getLong(long i){
+			return segment(i).getLong(position(i));
+		}
+
+		float getFloat(long i){
+			return segment(i).getFloat(position(i));
+		}
+
+		double getDouble(long i){
+			return segment(i).getDouble(position(i));
+		}
+	}
+}
@@ -2,9 +2,9 @@
 
 package edu.cmu.minorthird.classify;
 
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.NoSuchElementException;
 
 import edu.cmu.minorthird.util.UnionIterator;
 import edu.cmu.minorthird.util.gui.ViewerFrame;
@@ -17,8 +17,20 @@ import edu.cmu.minorthird.util.gui.ViewerFrame;
 
 public class MutableInstance extends AbstractInstance{
 
-	private Set<Feature> binarySet=new TreeSet<Feature>();
-	private WeightedSet<Feature> numericSet=new WeightedSet<Feature>();
+	private static final int INITIAL_CAPACITY=16;
+
+	private static final int INSERTION_SORT_LIMIT=32;
+
+	// Features and weights are appended to flat arrays as they are added, and
+	// sorted once, when the instance is next read.  Sorting also resolves
+	// repeated features: a numeric feature keeps its last weight, and a binary
+	// feature is kept unless a numeric version was added after it.  After
+	// sorting, a feature is stored at most twice, numeric entry first.
+	private Feature[] features=new Feature[INITIAL_CAPACITY];
+	private double[] weights=new double[INITIAL_CAPACITY];
+	private boolean[] binary=new boolean[INITIAL_CAPACITY];
+	private int size=0;
+	private volatile boolean sorted=true;
 	
 	public MutableInstance(Object source,String subpopulationId){ 
 		this.source=source; 
@@ -38,36 +50,42 @@ public class MutableInstance extends AbstractInstance{
 	 * feature, if it exists.
 	 */
 	public void addNumeric(Feature feature,double value){ 
-		binarySet.remove(feature);
-		numericSet.add(feature,value); 
+		append(feature,value,false);
 	}
 
 	/** Add a binary feature. */
 	public void addBinary(Feature feature){
-		binarySet.add(feature);
+		append(feature,1.0,true);
 	}
 
 	/** Get the weight assigned to a feature in this instance. */
 	@Override
 	public double getWeight(Feature feature){
-		if(binarySet.contains(feature)){
+		sort();
+		int i=lowerBound(feature);
+		if(i==size||features[i].compareTo(feature)!=0){
+			return 0.0;
+		}
+		else if(binary[i]||(i+1<size&&binary[i+1]&&features[i+1].compareTo(feature)==0)){
 			return 1.0;
 		}
 		else{
-			return numericSet.getWeight(feature);
+			return weights[i];
 		}
 	}
 	
 	/** Return an iterator over all binary features */
 	@Override
 	public Iterator<Feature> binaryFeatureIterator(){
-		return binarySet.iterator();
+		sort();
+		return new FeatureIterator(true);
 	}
 
 	/** Return an iterator over all numeric features */
 	@Override
 	public Iterator<Feature> numericFeatureIterator(){
-		return numericSet.iterator();
+		sort();
+		return new FeatureIterator(false);
 	}
 
 	/** Return an iterator over all features */
@@ -78,7 +96,205 @@ public class MutableInstance extends AbstractInstance{
 	
 	@Override
 	public int numFeatures(){
-		return binarySet.size()+numericSet.size();
+		sort();
+		return size;
+	}
+
+	private void append(Feature feature,double weight,boolean isBinary){
+		if(size==features.length){
+			int capacity=2*size;
+			features=Arrays.copyOf(features,capacity);
+			weights=Arrays.copyOf(weights,capacity);
+			binary=Arrays.copyOf(binary,capacity);
+		}
+		// features added in sorted order need no sorting later
+		if(sorted&&size>0&&feature.compareTo(features[size-1])<=0){
+			sorted=false;
+		}
+		features[size]=feature;
+		weights[size]=weight;
+		binary[size]=isBinary;
+		size++;
+	}
+
+	// index of the first stored feature not less than feature
+	private int lowerBound(Feature feature){
+		int lo=0,hi=size;
+		while(lo<hi){
+			int mid=(lo+hi)>>>1;
+			if(features[mid].compareTo(feature)<0){
+				lo=mid+1;
+			}
+			else{
+				hi=mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Sort the features added since the last sort, and resolve repeats the
+	 * same way the TreeSet and TreeMap used before did: the first object added
+	 * is kept as the key, with the weight added last.
+	 */
+	private void sort(){
+		if(!sorted){
+			sortNow();
+		}
+	}
+
+	private synchronized void sortNow(){
+		if(sorted){
+			return;
+		}
+		// both sorts are stable, so repeats stay in the order they were added
+		if(size<=INSERTION_SORT_LIMIT){
+			insertionSort();
+		}
+		else{
+			mergeSort();
+		}
+		int n=0;
+		for(int lo=0,hi;lo<size;lo=hi){
+			// entries lo..hi-1 are the same feature
+			hi=lo+1;
+			while(hi<size&&features[hi].compareTo(features[lo])==0){
+				hi++;
+			}
+			int firstNumeric=-1,lastNumeric=-1,firstBinary=-1;
+			for(int k=lo;k<hi;k++){
+				if(!binary[k]){
+					if(firstNumeric<0){
+						firstNumeric=k;
+					}
+					lastNumeric=k;
+				}
+			}
+			for(int k=Math.max(lo,lastNumeric+1);k<hi;k++){
+				if(binary[k]){
+					firstBinary=k;
+					break;
+				}
+			}
+			// n<=lo, so this only overwrites entries already read
+			Feature numericFeature=firstNumeric<0?null:features[firstNumeric];
+			double numericWeight=lastNumeric<0?0:weights[lastNumeric];
+			Feature binaryFeature=firstBinary<0?null:features[firstBinary];
+			if(numericFeature!=null){
+				features[n]=numericFeature;
+				weights[n]=numericWeight;
+				binary[n]=false;
+				n++;
+			}
+			if(binaryFeature!=null){
+				features[n]=binaryFeature;
+				weights[n]=1.0;
+				binary[n]=true;
+				n++;
+			}
+		}
+		Arrays.fill(features,n,size,null);
+		size=n;
+		sorted=true;
+	}
+
+	private void insertionSort(){
+		for(int i=1;i<size;i++){
+			Feature f=features[i];
+			double w=weights[i];
+			boolean b=binary[i];
+			int j=i-1;
+			while(j>=0&&features[j].compareTo(f)>0){
+				features[j+1]=features[j];
+				weights[j+1]=weights[j];
+				binary[j+1]=binary[j];
+				j--;
+			}
+			features[j+1]=f;
+			weights[j+1]=w;
+			binary[j+1]=b;
+		}
+	}
+
+	private void mergeSort(){
+		int[] order=new int[size];
+		for(int i=0;i<size;i++){
+			order[i]=i;
+		}
+		mergeSort(order,new int[size],0,size);
+		Feature[] sortedFeatures=new Feature[features.length];
+		double[] sortedWeights=new double[features.length];
+		boolean[] sortedBinary=new boolean[features.length];
+		for(int i=0;i<size;i++){
+			sortedFeatures[i]=features[order[i]];
+			sortedWeights[i]=weights[order[i]];
+			sortedBinary[i]=binary[order[i]];
+		}
+		features=sortedFeatures;
+		weights=sortedWeights;
+		binary=sortedBinary;
+	}
+
+	// stable sort of order[lo..hi-1] by feature
+	private void mergeSort(int[] order,int[] buf,int lo,int hi){
+		if(hi-lo<2){
+			return;
+		}
+		int mid=(lo+hi)>>>1;
+		mergeSort(order,buf,lo,mid);
+		mergeSort(order,buf,mid,hi);
+		if(features[order[mid-1]].compareTo(features[order[mid]])<=0){
+			return;
+		}
+		System.arraycopy(order,lo,buf,lo,hi-lo);
+		for(int i=lo,j=mid,k=lo;k<hi;k++){
+			if(j==hi||(i<mid&&features[buf[i]].compareTo(features[buf[j]])<=0)){
+				order[k]=buf[i++];
+			}
+			else{
+				order[k]=buf[j++];
+			}
+		}
+	}
+
+	/** Iterates over the binary, or the numeric, features in sorted order. */
+	private class FeatureIterator implements Iterator<Feature>{
+
+		private final boolean isBinary;
+
+		private int next=-1;
+
+		FeatureIterator(boolean isBinary){
+			this.isBinary=isBinary;
+			advance();
+		}
+
+		private void advance(){
+			next++;
+			while(next<size&&binary[next]!=isBinary){
+				next++;
+			}
+		}
+
+		@Override
+		public boolean hasNext(){
+			return next<size;
+		}
+
+		@Override
+		public Feature next(){
+			if(next>=size){
+				throw new NoSuchElementException();
+			}
+			Feature f=features[next];
+			advance();
+			return f;
+		}
+
+		@Override
+		public void remove(){
+			throw new UnsupportedOperationException("can't remove features from a MutableInstance");
+		}
 	}
 
 	static public void main(String[] args){
@@ -99,21 +99,23 @@ public class OneVsAllLearner implements ClassifierLearner{
 
 	@Override
 	public ClassifierLearner copy(){
-		OneVsAllLearner learner=null;
+		OneVsAllLearner copy;
 		try{
-			learner=(OneVsAllLearner)this.clone();
-			if(innerLearner!=null){
-				learner.innerLearner.clear();
-				for(int i=0;i<innerLearner.size();i++){
-					ClassifierLearner inner=innerLearner.get(i);
-					learner.innerLearner.add(inner.copy());
-				}
+			copy=(OneVsAllLearner)this.clone();
+		}catch(CloneNotSupportedException e){
+			throw new IllegalStateException("can't copy "+this+": "+e,e);
+		}
+		// the copy gets its own prototype and inner learners, so it can be
+		// trained independently of this one
+		if(learner!=null)
+			copy.learner=learner.copy();
+		if(innerLearner!=null){
+			copy.innerLearner=new ArrayList<ClassifierLearner>(innerLearner.size());
+			for(int i=0;i<innerLearner.size();i++){
+				copy.innerLearner.add(innerLearner.get(i).copy());
 			}
-		}catch(Exception e){
-			System.out.println("Can't clone!");
-			e.printStackTrace();
 		}
-		return learner;
+		return copy;
 	}
 
 	@Override
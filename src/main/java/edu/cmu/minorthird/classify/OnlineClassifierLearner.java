@@ -23,15 +23,14 @@ public abstract class OnlineClassifierLearner implements ClassifierLearner
 	final public Instance nextQuery() { return null; }
 	@Override
 	public ClassifierLearner copy() { 
-	    ClassifierLearner learner = null;
-	    try {
-		learner =(ClassifierLearner)(this.clone());
+		ClassifierLearner learner;
+		try {
+			learner = (ClassifierLearner)(this.clone());
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException("can't copy "+this+": "+e,e);
+		}
 		learner.reset();
-	    } catch (Exception e) {
-		System.out.println("Can't CLONE!!");
-		e.printStackTrace();
-	    }
-	    return learner;
+		return learner;
 	}
 
 	/** A promise from the caller that no further examples will be added.
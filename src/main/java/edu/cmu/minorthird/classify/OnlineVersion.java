@@ -67,6 +67,22 @@ public class OnlineVersion extends OnlineClassifierLearner
 	public int getMinBatchTrainingSize() { return minBatchTrainingSize; }
 	public void setMinBatchTrainingSize(int m) { minBatchTrainingSize=m; }
 
+	/** The copy gets its own inner and bootstrap learners, so it can be trained independently of this one. */
+	@Override
+	public ClassifierLearner copy()
+	{
+		OnlineVersion learner;
+		try {
+			learner = (OnlineVersion)clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException("can't copy "+this+": "+e,e);
+		}
+		learner.innerLearner = (BatchClassifierLearner)innerLearner.copy();
+		learner.bootstrapLearner = (OnlineClassifierLearner)bootstrapLearner.copy();
+		learner.reset();
+		return learner;
+	}
+
 	@Override
 	final public void setSchema(ExampleSchema schema)	{	
 		innerLearner.setSchema(schema);	
@@ -92,6 +92,16 @@ public class StackedLearner extends BatchClassifierLearner
 		return innerLearners[0];
 	}
 
+	/** 
+	 * Not supported, because copies would share the splitter, which keeps the
+	 * partitions of the last dataset split.
+	 */
+	@Override
+	public ClassifierLearner copy()
+	{
+		throw new UnsupportedOperationException("can't copy "+this+", because copies would share splitter "+splitter);
+	}
+
 	@Override
 	final public void setSchema(ExampleSchema schema)
 	{
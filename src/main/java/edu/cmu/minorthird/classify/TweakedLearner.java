@@ -132,6 +132,20 @@ public class TweakedLearner extends BatchBinaryClassifierLearner{
 		return new TweakedClassifier(bc,threshold);
 	}
 
+	/**
+	 * The copy gets its own inner learner and tweaking table, so it can be
+	 * trained independently of this one.
+	 */
+	@Override
+	public ClassifierLearner copy(){
+		TweakedLearner learner=(TweakedLearner)super.copy();
+		learner.innerLearner=(BinaryClassifierLearner)innerLearner.copy();
+		learner.tweakingTable=new ArrayList<Row>();
+		learner.m_dataset=null;
+		learner.cm=null;
+		return learner;
+	}
+
 	/**
 	 ******************************************************************** 
 	 * Getters & Setters  
@@ -177,6 +191,8 @@ public class TweakedLearner extends BatchBinaryClassifierLearner{
 	// the table. According to the needs of the tweaking process, the rows are then 
 	// sorted by descending score (also called posWeight).
 	private void initializeTable(){
+		// start over, rather than adding to the rows of an earlier training set
+		tweakingTable=new ArrayList<Row>();
 		int counter=0;
 		for(Iterator<Example> i=m_dataset.iterator();i.hasNext();counter++){
 			Example ex=i.next();
@@ -24,6 +24,8 @@ public class CommitteeLearner
 		this.committeeSize = committeeSize;
 	}
 
+	public int getCommitteeSize() { return committeeSize; }
+
 	/** Learn a committee */
 	public Classifier[] batchTrainCommittee(RandomAccessDataset data)
 	{
@@ -49,15 +49,20 @@ public class QueryByCommittee implements ClassifierLearner{
 		reset();
 	}
 
+	/** The copy gets its own inner learner, which its committee also uses. */
 	@Override
 	public ClassifierLearner copy(){
-		ClassifierLearner learner=null;
+		QueryByCommittee learner;
 		try{
-			learner=(ClassifierLearner)this.clone();
-			learner.reset();
-		}catch(Exception e){
-			e.printStackTrace();
+			learner=(QueryByCommittee)this.clone();
+		}catch(CloneNotSupportedException e){
+			throw new IllegalStateException("can't copy "+this+": "+e,e);
 		}
+		BatchClassifierLearner inner=(BatchClassifierLearner)innerLearner.copy();
+		learner.innerLearner=inner;
+		learner.committeeLearner=
+				new CommitteeLearner(inner,committeeLearner.getCommitteeSize());
+		learner.reset();
 		return learner;
 	}
 
@@ -12,10 +12,20 @@ import javax.swing.*;
 import javax.swing.tree.*;
 import java.io.*;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /** A weighted combination of features.
+ *
+ * <p>Once the hyperplane is incremented with a compressed instance from
+ * a {@link FeatureFactory}, weights of that factory's features are kept
+ * in an array indexed by feature id, with a common scale factor so that
+ * {@link #multiply(double)} takes constant time.  Other features, and
+ * the bias term, are kept in a hash map.  As for the hash map, a feature
+ * of the factory is in the hyperplane once its weight has been set, even
+ * if the weight is zero.
  *
  * @author William Cohen
  */
@@ -33,11 +43,26 @@ public class Hyperplane extends BinaryClassifier implements Visible,
 	 */
 	public static final Feature BIAS_TERM=new Feature("_hyperplaneBias");
 
-	transient protected TObjectDoubleHashMap hyperplaneWeights=
-			new TObjectDoubleHashMap();
+	transient protected TObjectDoubleHashMap<Feature> hyperplaneWeights=
+			new TObjectDoubleHashMap<Feature>();
 
 	transient private boolean ignoreWeights=false;
 
+	// Weights of canonical features of one FeatureFactory, indexed by
+	// feature id.  The weight of such a feature is idWeights[id]*idScale
+	// plus anything hyperplaneWeights holds for it.  idPresent has the ids
+	// whose weights have been set.
+	transient private FeatureFactory factory=null;
+
+	transient private double[] idWeights=null;
+
+	transient private BitSet idPresent=null;
+
+	transient private double idScale=1.0;
+
+	// rescale idWeights when idScale drifts outside this range
+	private static final double MIN_SCALE=1e-30,MAX_SCALE=1e30;
+
 	// mystic incantations to implement a non-default serialization strategy
 	private void writeObject(ObjectOutputStream out) throws IOException{
 		for(Iterator<Feature> i=featureIterator();i.hasNext();){
@@ -59,7 +84,7 @@ public class Hyperplane extends BinaryClassifier implements Visible,
 		try{
 			//System.out.println("reading new object");
 			double w=1;
-			hyperplaneWeights=new TObjectDoubleHashMap();
+			hyperplaneWeights=new TObjectDoubleHashMap<Feature>();
 			while(w!=0){
 				Feature f=(Feature)in.readObject();
 				w=in.readDouble();
@@ -92,9 +117,34 @@ public class Hyperplane extends BinaryClassifier implements Visible,
 	@Override
 	public double score(Instance instance){
 		double score=0.0;
-		for(Iterator<Feature> j=instance.featureIterator();j.hasNext();){
-			Feature f=j.next();
-			score+=instance.getWeight(f)*featureScore(f);
+		FeatureFactory.CompactInstance compact=asCompact(instance);
+		if(compact!=null&&compact.getFactory()==factory){
+			// weights of every feature of the instance are in idWeights
+			for(int i=0;i<compact.numFeatures();i++){
+				int id=compact.getIDAt(i);
+				if(id<idWeights.length){
+					score+=compact.getWeightAt(i)*idWeights[id];
+				}
+			}
+			score*=idScale;
+			if(!onlyBiasInMap()){
+				for(int i=0;i<compact.numFeatures();i++){
+					score+=compact.getWeightAt(i)*hyperplaneWeights.get(factory.getFeature(compact.getIDAt(i)));
+				}
+			}
+		}
+		else if(compact!=null){
+			// walk the id arrays directly, avoiding iterators and weight lookups
+			FeatureFactory compactFactory=compact.getFactory();
+			for(int i=0;i<compact.numFeatures();i++){
+				score+=compact.getWeightAt(i)*featureScore(compactFactory.getFeature(compact.getIDAt(i)));
+			}
+		}
+		else{
+			for(Iterator<Feature> j=instance.featureIterator();j.hasNext();){
+				Feature f=j.next();
+				score+=instance.getWeight(f)*featureScore(f);
+			}
 		}
 		score+=featureScore(BIAS_TERM);
 		return score;
@@ -140,8 +190,14 @@ public class Hyperplane extends BinaryClassifier implements Visible,
 
 	/** Increment one feature from the hyperplane by delta */
 	public void increment(Feature f,double delta){
-		double d=hyperplaneWeights.get(f);
-		hyperplaneWeights.put(f,d+delta);
+		int id=idOf(f);
+		if(id>=0){
+			incrementID(id,delta);
+		}
+		else{
+			double d=hyperplaneWeights.get(f);
+			hyperplaneWeights.put(f,d+delta);
+		}
 	}
 
 	/** Increment the bias term for the hyperplane by delta */
@@ -157,40 +213,110 @@ public class Hyperplane extends BinaryClassifier implements Visible,
 
 	/** Add the value of the features in the instance to this hyperplane. */
 	public void increment(Instance instance,double delta){
-		for(Iterator<Feature> i=instance.featureIterator();i.hasNext();){
-			Feature f=i.next();
-			double w=ignoreWeights?1:instance.getWeight(f);
-			increment(f,w*delta);
+		FeatureFactory.CompactInstance compact=asCompact(instance);
+		if(compact!=null&&factory==null){
+			useFactory(compact.getFactory());
+		}
+		if(compact!=null&&compact.getFactory()==factory){
+			ensureCapacity(compact.getMaxID()+1);
+			double d=delta/idScale;
+			for(int i=0;i<compact.numFeatures();i++){
+				double w=ignoreWeights?1:compact.getWeightAt(i);
+				int id=compact.getIDAt(i);
+				idWeights[id]+=w*d;
+				idPresent.set(id);
+			}
+		}
+		else if(compact!=null){
+			FeatureFactory compactFactory=compact.getFactory();
+			for(int i=0;i<compact.numFeatures();i++){
+				double w=ignoreWeights?1:compact.getWeightAt(i);
+				increment(compactFactory.getFeature(compact.getIDAt(i)),w*delta);
+			}
+		}
+		else{
+			for(Iterator<Feature> i=instance.featureIterator();i.hasNext();){
+				Feature f=i.next();
+				double w=ignoreWeights?1:instance.getWeight(f);
+				increment(f,w*delta);
+			}
 		}
 		incrementBias(delta);
 	}
 
 	/** Multiply all weights by a factor */
 	public void multiply(double factor){
-		for(Iterator<Feature> i=featureIterator();i.hasNext();){
-			Feature f=i.next();
-			hyperplaneWeights.put(f,featureScore(f)*factor);
+		for(TObjectDoubleIterator<Feature> i=hyperplaneWeights.iterator();i
+				.hasNext();){
+			i.advance();
+			i.setValue(i.value()*factor);
+		}
+		if(factory!=null){
+			if(factor==0){
+				Arrays.fill(idWeights,0);
+				idScale=1.0;
+			}
+			else{
+				idScale*=factor;
+				double abs=Math.abs(idScale);
+				if(abs<MIN_SCALE||abs>MAX_SCALE){
+					for(int id=0;id<idWeights.length;id++){
+						idWeights[id]*=idScale;
+					}
+					idScale=1.0;
+				}
+			}
 		}
 	}
 
 	/** Multiply one feature from the hyperplane by delta */
 	public void multiply(Feature f,double delta){
-		double d=hyperplaneWeights.get(f);
-		hyperplaneWeights.put(f,d*delta);
+		int id=idOf(f);
+		if(id<0||hyperplaneWeights.containsKey(f)){
+			double d=hyperplaneWeights.get(f);
+			hyperplaneWeights.put(f,d*delta);
+		}
+		if(id>=0){
+			ensureCapacity(id+1);
+			idWeights[id]*=delta;
+			idPresent.set(id);
+		}
 	}
 
 	/**Checks the presence of a feature in hyperplane */
 	public boolean hasFeature(Feature feat){
-		return hyperplaneWeights.containsKey(feat);
+		if(hyperplaneWeights.containsKey(feat)){
+			return true;
+		}
+		int id=idOf(feat);
+		return id>=0&&idPresent.get(id);
 	}
 
 	/** Add hyperplane b*delta to this hyperplane. */
 	public void increment(Hyperplane b,double delta){
-		for(TObjectDoubleIterator i=b.hyperplaneWeights.iterator();i.hasNext();){
-			i.advance();
-			Feature f=(Feature)i.key();
-			double w=b.featureScore(f);
-			increment(f,w*delta);
+		if(factory==null&&b.factory!=null){
+			useFactory(b.factory);
+		}
+		if(b.factory!=null&&b.factory==factory){
+			// add the id-indexed weights directly
+			ensureCapacity(b.idWeights.length);
+			double d=b.idScale*delta/idScale;
+			for(int id=b.idPresent.nextSetBit(0);id>=0;id=b.idPresent.nextSetBit(id+1)){
+				idWeights[id]+=b.idWeights[id]*d;
+			}
+			idPresent.or(b.idPresent);
+			for(TObjectDoubleIterator<Feature> i=b.hyperplaneWeights.iterator();i
+					.hasNext();){
+				i.advance();
+				increment(i.key(),i.value()*delta);
+			}
+		}
+		else{
+			for(Iterator<Feature> i=b.featureIterator();i.hasNext();){
+				Feature f=i.next();
+				double w=b.featureScore(f);
+				increment(f,w*delta);
+			}
 		}
 	}
 
@@ -201,31 +327,151 @@ public class Hyperplane extends BinaryClassifier implements Visible,
 
 	/** Weight for a feature in the hyperplane. */
 	public double featureScore(Feature feature){
-		return hyperplaneWeights.get(feature);
+		double w=hyperplaneWeights.get(feature);
+		int id=idOf(feature);
+		if(id>=0&&id<idWeights.length){
+			w+=idWeights[id]*idScale;
+		}
+		return w;
 	}
 
-	/** Iterate over all features with non-zero weight. */
+	/** Iterate over all features in the hyperplane. */
 	public Iterator<Feature> featureIterator(){
-		final TObjectDoubleIterator ti=hyperplaneWeights.iterator();
-		Iterator<Feature> i=new Iterator<Feature>(){
+		return new WeightIterator();
+	}
+
+	/** Number of features stored in the hyperplane. */
+	public int numFeatures(){
+		int n=0;
+		for(Iterator<Feature> i=featureIterator();i.hasNext();i.next()){
+			n++;
+		}
+		return n;
+	}
+
+	// the compressed instance underlying an instance or example, or null
+	private static FeatureFactory.CompactInstance asCompact(Instance instance){
+		if(instance instanceof Example){
+			instance=((Example)instance).asInstance();
+		}
+		if(instance instanceof FeatureFactory.CompactInstance){
+			return (FeatureFactory.CompactInstance)instance;
+		}
+		return null;
+	}
+
+	// start keeping the weights of a factory's features in idWeights
+	private void useFactory(FeatureFactory factory){
+		this.factory=factory;
+		idWeights=new double[Math.max(16,factory.getMaxFeatureIndex()+1)];
+		idPresent=new BitSet(idWeights.length);
+		idScale=1.0;
+		// move over any weights already stored for the factory's features
+		for(TObjectDoubleIterator<Feature> i=hyperplaneWeights.iterator();i
+				.hasNext();){
+			i.advance();
+			int id=factory.getID(i.key());
+			if(id>=0){
+				incrementID(id,i.value());
+				i.remove();
+			}
+		}
+	}
+
+	// id of a feature in the factory backing idWeights, or -1
+	private int idOf(Feature f){
+		if(factory==null){
+			return -1;
+		}
+		int id=f.getID();
+		if(id>=0&&factory.getFeature(id)==f){
+			return id;
+		}
+		return factory.getID(f);
+	}
+
+	private void ensureCapacity(int n){
+		if(n>idWeights.length){
+			idWeights=Arrays.copyOf(idWeights,Math.max(n,idWeights.length*2));
+		}
+	}
+
+	private void incrementID(int id,double delta){
+		ensureCapacity(id+1);
+		idWeights[id]+=delta/idScale;
+		idPresent.set(id);
+	}
+
+	// true if the hash map holds no weights except maybe the bias term
+	private boolean onlyBiasInMap(){
+		int n=hyperplaneWeights.size();
+		return n==0||(n==1&&hyperplaneWeights.containsKey(BIAS_TERM));
+	}
+
+	/**
+	 * Iterates over the features whose ids are in idPresent, then over the
+	 * keys of the hash map that weren't already returned.
+	 */
+	private class WeightIterator implements Iterator<Feature>{
+
+		private int nextID=idPresent==null?-1:idPresent.nextSetBit(0);
 
-			@Override
-			public boolean hasNext(){
-				return ti.hasNext();
+		private Object[] keys=null;
+
+		private int nextKey=0;
+
+		private Feature next=null,last=null;
+
+		private void findNext(){
+			if(next==null&&nextID>=0){
+				next=factory.getFeature(nextID);
+				nextID=idPresent.nextSetBit(nextID+1);
+			}
+			if(next==null){
+				if(keys==null){
+					keys=hyperplaneWeights.keys();
+				}
+				while(next==null&&nextKey<keys.length){
+					Feature f=(Feature)keys[nextKey++];
+					int id=idOf(f);
+					if(id<0||!idPresent.get(id)){
+						next=f;
+					}
+				}
 			}
+		}
+
+		@Override
+		public boolean hasNext(){
+			findNext();
+			return next!=null;
+		}
 
-			@Override
-			public Feature next(){
-				ti.advance();
-				return (Feature)ti.key();
+		@Override
+		public Feature next(){
+			findNext();
+			if(next==null){
+				throw new NoSuchElementException();
 			}
+			last=next;
+			next=null;
+			return last;
+		}
 
-			@Override
-			public void remove(){
-				ti.remove();
+		/** Removes the last feature returned from both kinds of storage. */
+		@Override
+		public void remove(){
+			if(last==null){
+				throw new IllegalStateException();
 			}
-		};
-		return i;
+			int id=idOf(last);
+			if(id>=0&&id<idWeights.length){
+				idWeights[id]=0;
+				idPresent.clear(id);
+			}
+			hyperplaneWeights.remove(last);
+			last=null;
+		}
 	}
 
 	//
@@ -340,8 +586,8 @@ public class Hyperplane extends BinaryClassifier implements Visible,
 		@Override
 		public JComponent componentFor(Object o){
 			h=(Hyperplane)o;
-			Object[] keys=h.hyperplaneWeights.keys();
-			Object[][] tableData=new Object[keys.length][2];
+			int numFeatures=h.numFeatures();
+			Object[][] tableData=new Object[numFeatures][2];
 			int k=0;
 			for(Iterator<Feature> i=h.featureIterator();i.hasNext();){
 				Feature f=i.next();
@@ -369,7 +615,7 @@ public class Hyperplane extends BinaryClassifier implements Visible,
 
 				JTree tree;
 				if(controls.treeButton.isSelected()){
-					tree=createTree(tableData,keys.length);
+					tree=createTree(tableData,numFeatures);
 					return new JScrollPane(tree);
 				}
 			}
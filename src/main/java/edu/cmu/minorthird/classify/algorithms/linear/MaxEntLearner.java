@@ -47,6 +47,7 @@ public class MaxEntLearner extends BatchClassifierLearner
 	 set this to zero, if no penalty needed 
 	 *<li>maxIters: Maximum number of iterations over the training data during training 
 	 *<li>mForHessian: The number of corrections used in the BFGS update. 
+	 *<li>numThreads: Number of threads used to compute the gradient during training
 	 *<li>trainerType: ...  
 	 *<li>scaleScores: if 1, scale scores by assuming each class's hyperplane is log-odds of belonging to that class
 	 *</ul>
@@ -71,6 +72,9 @@ public class MaxEntLearner extends BatchClassifierLearner
 		return logSpace;
 	}
 
+	public void setNumThreads(int n) { crfLearner.setNumThreads(n); }
+	public int getNumThreads() { return crfLearner.getNumThreads(); }
+
 	@Override
 	public void setSchema(ExampleSchema schema) { crfLearner.setSchema(schema); }
 	
@@ -243,8 +243,7 @@ class PoissonClassifier extends BinaryClassifier implements Visible,
 			// Note: in this way only _hyperplaneBias of linear gets displayed.
 			//       That one of loglinear does NOT.
 			//
-			Object[] keys=h.linear.hyperplaneWeights.keys();
-			Object[][] tableData=new Object[keys.length][2];
+			Object[][] tableData=new Object[h.linear.numFeatures()][2];
 			int k=0;
 			for(Iterator<Feature> i=h.linear.featureIterator();i.hasNext();){
 				Feature f=i.next();
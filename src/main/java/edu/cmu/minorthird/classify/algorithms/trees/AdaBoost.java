@@ -21,6 +21,7 @@ import edu.cmu.minorthird.classify.BatchBinaryClassifierLearner;
 import edu.cmu.minorthird.classify.BatchClassifierLearner;
 import edu.cmu.minorthird.classify.BinaryClassifier;
 import edu.cmu.minorthird.classify.Classifier;
+import edu.cmu.minorthird.classify.ClassifierLearner;
 import edu.cmu.minorthird.classify.Dataset;
 import edu.cmu.minorthird.classify.Example;
 import edu.cmu.minorthird.classify.Explanation;
@@ -94,6 +95,14 @@ public class AdaBoost extends BatchBinaryClassifierLearner{
 		this.baseLearner=learner;
 	}
 
+	/** The copy gets its own base learner, so it can be trained independently of this one. */
+	@Override
+	public ClassifierLearner copy(){
+		AdaBoost learner=(AdaBoost)super.copy();
+		learner.baseLearner=(BatchClassifierLearner)baseLearner.copy();
+		return learner;
+	}
+
 	@Override
 	public Classifier batchTrain(Dataset dataset){
 		// so that a local copy of weights can be stored...
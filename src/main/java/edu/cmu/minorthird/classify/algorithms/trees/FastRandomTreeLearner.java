@@ -11,6 +11,7 @@ import java.util.Vector;
 import org.apache.log4j.Logger;
 
 import edu.cmu.minorthird.classify.Classifier;
+import edu.cmu.minorthird.classify.ClassifierLearner;
 import edu.cmu.minorthird.classify.Dataset;
 import edu.cmu.minorthird.classify.Example;
 import edu.cmu.minorthird.classify.Feature;
@@ -29,11 +30,14 @@ public class FastRandomTreeLearner extends RandomTreeLearner{
 
 	private Random rand;
 
+	private boolean seeded=false;
+
 	// How many random vars to check for a split
 	public int subsetSize;
 
 	public FastRandomTreeLearner setRandomSeed(long seed){
 		rand=new Random(seed);
+		seeded=true;
 		return this;
 	}
 
@@ -41,6 +45,21 @@ public class FastRandomTreeLearner extends RandomTreeLearner{
 		rand=new Random();
 	}
 
+	/**
+	 * The copy gets its own random numbers.  A learner whose random seed was
+	 * set can't be copied, since the copies would share its sequence of
+	 * random numbers in whatever order they are trained.
+	 */
+	@Override
+	public ClassifierLearner copy(){
+		if(seeded)
+			throw new UnsupportedOperationException("can't copy "+this+
+					", because its random seed was set");
+		FastRandomTreeLearner learner=(FastRandomTreeLearner)super.copy();
+		learner.rand=new Random();
+		return learner;
+	}
+
 	public FastRandomTreeLearner setSubsetSize(int subsetSize){
 		this.subsetSize=subsetSize;
 		return this;
@@ -27,6 +27,7 @@ import org.apache.log4j.Logger;
 import edu.cmu.minorthird.classify.BatchBinaryClassifierLearner;
 import edu.cmu.minorthird.classify.BinaryClassifier;
 import edu.cmu.minorthird.classify.Classifier;
+import edu.cmu.minorthird.classify.ClassifierLearner;
 import edu.cmu.minorthird.classify.Dataset;
 import edu.cmu.minorthird.classify.Example;
 import edu.cmu.minorthird.classify.Explanation;
@@ -69,6 +70,9 @@ public class RandomForests extends BatchBinaryClassifierLearner{
 
 	private Random rand;
 
+	// set by RepeatableForest, whose results depend on the order rand is used
+	private boolean seeded=false;
+
 	// by default, scale the weights of examples
 	private boolean scaleWeights=true;
 
@@ -90,6 +94,23 @@ public class RandomForests extends BatchBinaryClassifierLearner{
 		log.info("setting number of random forest threads to "+threadCount);
 	}
 
+	/**
+	 * The copy gets its own base learner and random numbers, so it can be
+	 * trained independently of this one.  A seeded forest can't be copied,
+	 * since a copy trained alongside this one would not draw the same
+	 * samples as it would after this one.
+	 */
+	@Override
+	public ClassifierLearner copy(){
+		if(seeded)
+			throw new UnsupportedOperationException("can't copy "+this+
+					", because its random seed was set");
+		RandomForests learner=(RandomForests)super.copy();
+		learner.baseLearner=(FastRandomTreeLearner)baseLearner.copy();
+		learner.rand=new Random();
+		return learner;
+	}
+
 	public RandomForests setThreaded(boolean b){
 		isThreaded=b;
 		return this;
@@ -127,6 +148,7 @@ public class RandomForests extends BatchBinaryClassifierLearner{
 		RandomForests rf=
 				new RandomForests(new FastRandomTreeLearner().setRandomSeed(0),101);
 		rf.rand=new Random(0);
+		rf.seeded=true;
 		rf.setThreaded(false);
 		return rf;
 	}
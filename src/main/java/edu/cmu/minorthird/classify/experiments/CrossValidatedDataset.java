@@ -1,5 +1,7 @@
 package edu.cmu.minorthird.classify.experiments;
 
+import java.util.List;
+
 import edu.cmu.minorthird.classify.*;
 import edu.cmu.minorthird.classify.algorithms.trees.DecisionTreeLearner;
 import edu.cmu.minorthird.util.ProgressCounter;
@@ -26,28 +28,42 @@ public class CrossValidatedDataset implements Visible
 	}
 
 	public CrossValidatedDataset(ClassifierLearner learner,Dataset d,Splitter<Example> splitter,boolean saveTrainPartitions)
+	{
+		this(learner,d,splitter,saveTrainPartitions,1);
+	}
+
+	/**
+	 * Train and test up to numThreads folds at once.  Each parallel fold
+	 * trains a copy of the learner, and the results are merged in fold order,
+	 * so the evaluation is the same as for the serial experiment.
+	 */
+	public CrossValidatedDataset(ClassifierLearner learner,Dataset d,final Splitter<Example> splitter,boolean saveTrainPartitions,int numThreads)
 	{
 		Dataset.Split s = d.split(splitter);
 		cds = new ClassifiedDataset[s.getNumPartitions()];
 		trainCds = saveTrainPartitions ? new ClassifiedDataset[s.getNumPartitions()] : null;
 		v = new Evaluation(d.getSchema());
-		ProgressCounter pc = new ProgressCounter("train/test","fold",s.getNumPartitions());
+		final ProgressCounter pc = new ProgressCounter("train/test","fold",s.getNumPartitions());
 		log.info("Number of splits: "+s.getNumPartitions());
-		for (int k=0; k<s.getNumPartitions(); k++) {
-			Dataset trainData = s.getTrain(k);
-			Dataset testData = s.getTest(k);
-			log.info("Split with "+splitter+": training on "+trainData.size()+" and testing on "+testData.size());
-			Classifier c = new DatasetClassifierTeacher(trainData).train(learner);
-			DatasetIndex testIndex = new DatasetIndex(testData);
-			cds[k] = new ClassifiedDataset(c, testData, testIndex);
-			if (trainCds!=null) trainCds[k] = new ClassifiedDataset(c, trainData, testIndex);
-			v.extend(cds[k].getClassifier(),testData,k);
-			v.setProperty("classesInFold"+(k+1),
-										"train: "+classDistributionString(trainData.getSchema(),new DatasetIndex(trainData))
-										+"     test: "+classDistributionString(testData.getSchema(),testIndex));
-			log.info("Stored classified dataset");
-			pc.progress();
-		}
+		List<ClassifierLearner> copies = FoldRunner.copies(learner,s.getNumPartitions(),numThreads);
+		FoldRunner.run(s.getNumPartitions(),copies!=null ? numThreads : 1,FoldRunner.trainAndTest(learner,copies,s),
+			new FoldRunner.Merger<FoldRunner.TrainedFold>() {
+				@Override
+				public void merge(int k,FoldRunner.TrainedFold fold) {
+					Dataset trainData = fold.trainData;
+					Dataset testData = fold.testData;
+					log.info("Split with "+splitter+": trained on "+trainData.size()+" and tested on "+testData.size());
+					DatasetIndex testIndex = new DatasetIndex(testData);
+					cds[k] = new ClassifiedDataset(fold.classifier, testData, testIndex);
+					if (trainCds!=null) trainCds[k] = new ClassifiedDataset(fold.classifier, trainData, testIndex);
+					FoldRunner.extend(v,fold,k);
+					v.setProperty("classesInFold"+(k+1),
+												"train: "+classDistributionString(trainData.getSchema(),new DatasetIndex(trainData))
+												+"     test: "+classDistributionString(testData.getSchema(),testIndex));
+					log.info("Stored classified dataset");
+					pc.progress();
+				}
+			});
 		pc.finished();
 	}
 
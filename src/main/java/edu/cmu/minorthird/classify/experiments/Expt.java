@@ -31,6 +31,7 @@ public class Expt implements CommandLineProcessor.Configurable
    private Splitter<Example> splitter=null;
    private ClassifierLearner learner=null;
    private String splitterArg=null,trainArg=null,testArg=null,learnerArg=null;
+   private int numThreads=1;
 
    private class MyCLP extends BasicCommandLineProcessor
    {
@@ -68,6 +69,7 @@ public class Expt implements CommandLineProcessor.Configurable
          System.out.println(" [-test FILE]             test data is in FILE");
          System.out.println(" [-splitter SPLITTER]     do cross-validation study with the SPLITTER");
          System.out.println(" [-learner LEARNER]       use learner defined by bean-shell command");
+         System.out.println(" [-threads N]             train and test up to N folds in parallel");
          System.out.println();
       }
    }
@@ -93,6 +95,7 @@ public class Expt implements CommandLineProcessor.Configurable
     *  -learn \"new PoissonLearner()\" -train sample:toy -split s10      (stratified s-fold CV)
     *  -learn \"new AdaBoost(new DecisionTreeLearner())\" -train file:foo.data -split r70
     *  -learn \"new AdaBoost()\" -train seqfile:foo.data -split r70
+    *  -learn \"new NaiveBayes()\" -train sample:toy -split k10 -threads 4  (parallel k-fold CV)
     */
    public Expt(String[] args) throws IOException
    {
@@ -110,6 +113,8 @@ public class Expt implements CommandLineProcessor.Configurable
             splitter = toSplitter(splitterArg = args[pos++]);
          } else if (opt.startsWith("-lea")) {
             learner = toLearner(learnerArg = args[pos++]);
+         } else if (opt.startsWith("-th")) {
+            numThreads = StringUtil.atoi(args[pos++]);
          } else if (opt.startsWith("-")) {
             pos++;
          }
@@ -122,7 +127,7 @@ public class Expt implements CommandLineProcessor.Configurable
 
    public Evaluation evaluation()
    {
-      Evaluation v = Tester.evaluate(learner,trainData,splitter);
+      Evaluation v = Tester.evaluate(learner,trainData,splitter,numThreads);
       v.setProperty("learner",learnerArg);
       v.setProperty("train",trainArg);
       if (splitterArg!=null) v.setProperty("splitter",splitterArg);
@@ -131,13 +136,17 @@ public class Expt implements CommandLineProcessor.Configurable
    }
    public CrossValidatedDataset crossValidatedDataset(boolean saveTrain)
    {
-      return new CrossValidatedDataset(learner,trainData,splitter,saveTrain);
+      return new CrossValidatedDataset(learner,trainData,splitter,saveTrain,numThreads);
    }
    public Classifier getClassifier()
    {
       return new DatasetClassifierTeacher(trainData).train(learner);
    }
 
+   /** Train and test up to this many folds in parallel. */
+   public void setNumThreads(int numThreads) { this.numThreads = numThreads; }
+   public int getNumThreads() { return numThreads; }
+
    @Override
 	public String toString()
    {
@@ -282,7 +291,7 @@ public class Expt implements CommandLineProcessor.Configurable
       } catch (Exception e) {
          e.printStackTrace();
          System.out.println(
-             "usage: -learn L -train D1 [-split S] [-test D] [-show eval|all|all+] [-save eval|classifier]");
+             "usage: -learn L -train D1 [-split S] [-test D] [-threads N] [-show eval|all|all+] [-save eval|classifier]");
       }
    }
 }
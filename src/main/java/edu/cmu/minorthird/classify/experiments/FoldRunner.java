@@ -0,0 +1,182 @@
+/* Copyright 2003, Carnegie Mellon, All Rights Reserved */
+
+package edu.cmu.minorthird.classify.experiments;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import edu.cmu.minorthird.classify.ClassLabel;
+import edu.cmu.minorthird.classify.Classifier;
+import edu.cmu.minorthird.classify.ClassifierLearner;
+import edu.cmu.minorthird.classify.Dataset;
+import edu.cmu.minorthird.classify.DatasetClassifierTeacher;
+import edu.cmu.minorthird.classify.Example;
+
+/**
+ * Runs the folds of a train/test experiment on a fixed pool of worker
+ * threads.  Each fold is computed independently by a {@link Fold}, and the
+ * results are handed to a {@link Merger} on the calling thread in fold order,
+ * so the merged result is the same as that of running the folds one after
+ * another.
+ */
+
+class FoldRunner
+{
+	private static Logger log = Logger.getLogger(FoldRunner.class);
+
+	/** Computes the result for a single fold. */
+	interface Fold<T>
+	{
+		public T run(int k);
+	}
+
+	/** Combines the result of a fold into the overall result. */
+	interface Merger<T>
+	{
+		public void merge(int k,T result);
+	}
+
+	/** The classifier learned on one fold, and its predictions on that fold's test data. */
+	static class TrainedFold
+	{
+		Dataset trainData;
+		Dataset testData;
+		Classifier classifier;
+		ClassLabel[] predictions;
+	}
+
+	/**
+	 * Copies of the learner for folds 0..numFolds-1, made on the calling
+	 * thread, so the folds can be trained at once; or null if the folds should
+	 * share the learner and run one after another.  They share it when there's
+	 * only one thread or one fold, or when the learner's copy() throws
+	 * UnsupportedOperationException because it can't make a copy that trains
+	 * independently of the original.
+	 */
+	static <L extends ClassifierLearner> List<L> copies(L learner,int numFolds,int numThreads)
+	{
+		if (numThreads<=1 || numFolds<=1) return null;
+		List<L> copies = new ArrayList<L>(numFolds);
+		try {
+			for (int k=0; k<numFolds; k++) {
+				@SuppressWarnings("unchecked")
+				L copy = (L)learner.copy();
+				copies.add(copy);
+			}
+		} catch (UnsupportedOperationException e) {
+			log.warn("running folds one at a time: "+e.getMessage());
+			return null;
+		}
+		return copies;
+	}
+
+	/** 
+	 * A Fold that trains a learner on the k-th training partition and
+	 * classifies the k-th test partition.  Fold k trains copies.get(k), or the
+	 * learner itself if copies is null.
+	 */
+	static Fold<TrainedFold> trainAndTest(final ClassifierLearner learner,final List<? extends ClassifierLearner> copies,final Dataset.Split s)
+	{
+		return new Fold<TrainedFold>() {
+			@Override
+			public TrainedFold run(int k) {
+				TrainedFold fold = new TrainedFold();
+				// splitters aren't written to be shared between threads
+				synchronized (s) {
+					fold.trainData = s.getTrain(k);
+					fold.testData = s.getTest(k);
+				}
+				ClassifierLearner foldLearner = copies!=null ? copies.get(k) : learner;
+				fold.classifier = new DatasetClassifierTeacher(fold.trainData).train(foldLearner);
+				fold.predictions = new ClassLabel[fold.testData.size()];
+				int j = 0;
+				for (Iterator<Example> i=fold.testData.iterator(); i.hasNext(); ) {
+					fold.predictions[j++] = fold.classifier.classification(i.next());
+				}
+				return fold;
+			}
+		};
+	}
+
+	/** Record the predictions of a TrainedFold in an Evaluation. */
+	static void extend(Evaluation v,TrainedFold fold,int k)
+	{
+		int j = 0;
+		for (Iterator<Example> i=fold.testData.iterator(); i.hasNext(); ) {
+			v.extend(fold.predictions[j++],i.next(),k);
+		}
+	}
+
+	/**
+	 * Run folds 0..numFolds-1 and merge their results in order.  With one
+	 * thread (or one fold) everything runs on the calling thread; otherwise at
+	 * most numThreads folds run at once.
+	 */
+	static <T> void run(int numFolds,int numThreads,final Fold<T> fold,Merger<T> merger)
+	{
+		if (numThreads<=1 || numFolds<=1) {
+			for (int k=0; k<numFolds; k++) {
+				merger.merge(k,fold.run(k));
+			}
+			return;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads,numFolds),new WorkerFactory());
+		try {
+			List<Future<T>> results = new ArrayList<Future<T>>(numFolds);
+			for (int k=0; k<numFolds; k++) {
+				final int fk = k;
+				results.add(pool.submit(new Callable<T>() {
+					@Override
+					public T call() { return fold.run(fk); }
+				}));
+			}
+			for (int k=0; k<numFolds; k++) {
+				merger.merge(k,get(results.get(k)));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/** Wait for a fold, rethrowing whatever the fold threw. */
+	private static <T> T get(Future<T> result)
+	{
+		try {
+			return result.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+			if (cause instanceof Error) throw (Error)cause;
+			throw new IllegalStateException("fold failed: "+cause,cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for fold",e);
+		}
+	}
+
+	/** Daemon worker threads, so an abandoned experiment doesn't keep the JVM alive. */
+	private static class WorkerFactory implements ThreadFactory
+	{
+		private static final AtomicInteger poolNumber = new AtomicInteger(1);
+		private final int pool = poolNumber.getAndIncrement();
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r,"fold-"+pool+"-"+threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
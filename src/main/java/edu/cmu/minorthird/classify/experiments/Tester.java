@@ -3,6 +3,7 @@
 package edu.cmu.minorthird.classify.experiments;
 
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -76,20 +77,33 @@ public class Tester
 	/** Do some sort of hold-out experiment, as determined by the splitter */
 	static public Evaluation evaluate(ClassifierLearner learner,Dataset d,Splitter<Example> splitter)
 	{
-		Evaluation v = new Evaluation(d.getSchema()); 
-		Dataset.Split s = d.split(splitter);
-		ProgressCounter pc = new ProgressCounter("train/test","fold",s.getNumPartitions());
-		for (int k=0; k<s.getNumPartitions(); k++) {
-			Dataset trainData = s.getTrain(k);
-			Dataset testData = s.getTest(k);
-			log.info("splitting with "+splitter+", preparing to train on "+trainData.size()
-							 +" and test on "+testData.size());
-			Classifier c = new DatasetClassifierTeacher(trainData).train(learner);
-			if (DEBUG) log.debug("classifier for fold "+(k+1)+"/"+s.getNumPartitions()+" is:\n" + c);
-			v.extend( c, testData, k );
-			log.info("splitting with "+splitter+", completed train-test round");
-			pc.progress();
-		}
+		return evaluate(learner,d,splitter,1);
+	}
+
+	/** 
+	 * Do some sort of hold-out experiment, as determined by the splitter,
+	 * training and testing up to numThreads folds at once.  Each parallel fold
+	 * trains a copy of the learner, and the results are merged in fold order,
+	 * so the Evaluation is the same as for the serial experiment.
+	 */
+	static public Evaluation evaluate(ClassifierLearner learner,Dataset d,final Splitter<Example> splitter,int numThreads)
+	{
+		final Evaluation v = new Evaluation(d.getSchema()); 
+		final Dataset.Split s = d.split(splitter);
+		final ProgressCounter pc = new ProgressCounter("train/test","fold",s.getNumPartitions());
+		List<ClassifierLearner> copies = FoldRunner.copies(learner,s.getNumPartitions(),numThreads);
+		FoldRunner.run(s.getNumPartitions(),copies!=null ? numThreads : 1,FoldRunner.trainAndTest(learner,copies,s),
+			new FoldRunner.Merger<FoldRunner.TrainedFold>() {
+				@Override
+				public void merge(int k,FoldRunner.TrainedFold fold) {
+					log.info("splitting with "+splitter+", trained on "+fold.trainData.size()
+									 +" and tested on "+fold.testData.size());
+					if (DEBUG) log.debug("classifier for fold "+(k+1)+"/"+s.getNumPartitions()+" is:\n" + fold.classifier);
+					FoldRunner.extend(v,fold,k);
+					log.info("splitting with "+splitter+", completed train-test round");
+					pc.progress();
+				}
+			});
 		pc.finished();
 		return v;
 	}
@@ -104,31 +118,65 @@ public class Tester
     /** Do some sort of hold-out experiment, as determined by the splitter */
     static public MultiEvaluation multiEvaluate(ClassifierLearner learner,MultiDataset d,Splitter<MultiExample> splitter, boolean cross)
 	{
-		MultiEvaluation v = new MultiEvaluation(d.getMultiSchema()); 
-		MultiDataset.MultiSplit s = d.MultiSplit(splitter);
-		ProgressCounter pc = new ProgressCounter("train/test","fold",s.getNumPartitions());
-		for (int k=0; k<s.getNumPartitions(); k++) {		    
-		    //for (int k=0; k<1; k++) {
-			MultiDataset trainData = s.getTrain(k);
-			if(cross) trainData=trainData.annotateData();
-			MultiDataset testData = s.getTest(k);
-			log.info("splitting with "+splitter+", preparing to train on "+trainData.size()
-							 +" and test on "+testData.size());
-			MultiClassifier c = new MultiDatasetClassifierTeacher(trainData).train(learner);
-			//if(cross) testData=testData.annotateData(c);
-			if(cross) {
-			    AbstractInstanceTransform transformer = new PredictedClassTransform(c);
-			    c = new TransformingMultiClassifier(c, transformer);
-			}
-			if (DEBUG) log.debug("classifier for fold "+(k+1)+"/"+s.getNumPartitions()+" is:\n" + c);
-			v.extend( c, testData);
-			log.info("splitting with "+splitter+", completed train-test round");
-			pc.progress();
-		}
+		return multiEvaluate(learner,d,splitter,cross,1);
+	}
+
+	/** 
+	 * Do some sort of hold-out experiment, as determined by the splitter,
+	 * training up to numThreads folds at once.  Results are merged in fold order.
+	 */
+	static public MultiEvaluation multiEvaluate(final ClassifierLearner learner,MultiDataset d,final Splitter<MultiExample> splitter,final boolean cross,int numThreads)
+	{
+		final MultiEvaluation v = new MultiEvaluation(d.getMultiSchema()); 
+		final MultiDataset.MultiSplit s = d.MultiSplit(splitter);
+		final ProgressCounter pc = new ProgressCounter("train/test","fold",s.getNumPartitions());
+		final List<ClassifierLearner> copies = FoldRunner.copies(learner,s.getNumPartitions(),numThreads);
+		FoldRunner.run(s.getNumPartitions(),copies!=null ? numThreads : 1,
+			new FoldRunner.Fold<MultiFold>() {
+				@Override
+				public MultiFold run(int k) {
+					MultiDataset trainData,testData;
+					synchronized (s) {
+						trainData = s.getTrain(k);
+						testData = s.getTest(k);
+					}
+					if(cross) trainData=trainData.annotateData();
+					log.info("splitting with "+splitter+", preparing to train on "+trainData.size()
+									 +" and test on "+testData.size());
+					MultiClassifier c = new MultiDatasetClassifierTeacher(trainData).train(copies!=null ? copies.get(k) : learner);
+					//if(cross) testData=testData.annotateData(c);
+					if(cross) {
+					    AbstractInstanceTransform transformer = new PredictedClassTransform(c);
+					    c = new TransformingMultiClassifier(c, transformer);
+					}
+					return new MultiFold(c,testData);
+				}
+			},
+			new FoldRunner.Merger<MultiFold>() {
+				@Override
+				public void merge(int k,MultiFold fold) {
+					if (DEBUG) log.debug("classifier for fold "+(k+1)+"/"+s.getNumPartitions()+" is:\n" + fold.classifier);
+					v.extend( fold.classifier, fold.testData);
+					log.info("splitting with "+splitter+", completed train-test round");
+					pc.progress();
+				}
+			});
 		pc.finished();
 		return v;
 	}    
 
+	/** The classifier learned on one fold of a multi-label experiment, and that fold's test data. */
+	static private class MultiFold
+	{
+		final MultiClassifier classifier;
+		final MultiDataset testData;
+		MultiFold(MultiClassifier classifier,MultiDataset testData)
+		{
+			this.classifier = classifier;
+			this.testData = testData;
+		}
+	}
+
 	/** Do some sort of hold-out experiment, as determined by the splitter */
 	static public Evaluation evaluate(SequenceClassifierLearner learner,SequenceDataset d,Splitter<Example[]> splitter)
 	{
@@ -41,17 +41,22 @@ public class MultiLearner implements ClassifierLearner{
 
 	@Override
 	public ClassifierLearner copy(){
-		MultiLearner learner=null;
+		MultiLearner copy;
 		try{
-			learner=(MultiLearner)this.clone();
+			copy=(MultiLearner)this.clone();
+		}catch(CloneNotSupportedException e){
+			throw new IllegalStateException("can't copy "+this+": "+e,e);
+		}
+		// the copy gets its own prototype and inner learners, so it can be
+		// trained independently of this one
+		copy.learner=learner.copy();
+		if(innerLearner!=null){
+			copy.innerLearner=new ArrayList<ClassifierLearner>(innerLearner.size());
 			for(int i=0;i<innerLearner.size();i++){
-				ClassifierLearner inner=innerLearner.get(i);
-				learner.innerLearner.add(inner.copy());
+				copy.innerLearner.add(innerLearner.get(i).copy());
 			}
-		}catch(Exception e){
-			e.printStackTrace();
 		}
-		return learner;
+		return copy;
 	}
 
 	@Override
@@ -101,6 +101,18 @@ implements BatchSequenceClassifierLearner,SequenceConstants,SequenceClassifier,V
 	public String maxItersHelp = new String("Number of training iterations over the training set; default set to 100");
 	public String getMaxItersHelp() { return maxItersHelp; }
 
+	public void setNumThreads (int newNumThreads) {
+		defaults.setProperty("numThreads", Integer.toString(newNumThreads));
+	}
+	public int getNumThreads () {
+		String numThreads = defaults.getProperty("numThreads");
+		if (numThreads != null)
+			return Integer.parseInt(numThreads);
+		return 1;
+	}
+	public String numThreadsHelp = new String("Number of threads used to compute the gradient in each training iteration; default set to 1");
+	public String getNumThreadsHelp() { return numThreadsHelp; }
+
 	public boolean getUseHighPrecisionArithmetic() {
 		String value = defaults.getProperty("trainer");
 		if ((value != null) && (value.equals("ll")))
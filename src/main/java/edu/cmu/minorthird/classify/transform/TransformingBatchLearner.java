@@ -2,11 +2,16 @@
 
 package edu.cmu.minorthird.classify.transform;
 
+import java.io.IOException;
+import java.io.Serializable;
+
 import edu.cmu.minorthird.classify.BatchClassifierLearner;
 import edu.cmu.minorthird.classify.Classifier;
+import edu.cmu.minorthird.classify.ClassifierLearner;
 import edu.cmu.minorthird.classify.Dataset;
 import edu.cmu.minorthird.classify.ExampleSchema;
 import edu.cmu.minorthird.classify.algorithms.linear.MaxEntLearner;
+import edu.cmu.minorthird.util.IOUtil;
 
 /**
  * Learns to first transforming data with an InstanceTransform, then classify
@@ -41,6 +46,28 @@ public class TransformingBatchLearner extends BatchClassifierLearner{
 		return classifierLearner;
 	}
 
+	/**
+	 * The copy gets its own classifier learner, and its own transform learner,
+	 * which is copied by serialization.  Transform learners that aren't
+	 * Serializable can't be copied.
+	 */
+	@Override
+	public ClassifierLearner copy(){
+		if(!(transformLearner instanceof Serializable))
+			throw new UnsupportedOperationException("can't copy "+transformLearner);
+		TransformingBatchLearner learner=(TransformingBatchLearner)super.copy();
+		try{
+			learner.transformLearner=
+					(InstanceTransformLearner)IOUtil
+							.copySerialized((Serializable)transformLearner);
+		}catch(IOException e){
+			throw new UnsupportedOperationException("can't copy "+transformLearner+
+					": "+e);
+		}
+		learner.classifierLearner=(BatchClassifierLearner)classifierLearner.copy();
+		return learner;
+	}
+
 	@Override
 	public void setSchema(ExampleSchema schema){
 		classifierLearner.setSchema(schema);
@@ -1,5 +1,16 @@
 package edu.cmu.minorthird.text;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.cmu.minorthird.util.ProgressCounter;
+
 /**
  * Generic implementation of an annotator.
  *
@@ -9,6 +20,11 @@ package edu.cmu.minorthird.text;
 
 public abstract class AbstractAnnotator implements Annotator{
 
+	// documents computed, per thread, between commits to the labels
+	private static final int DOCUMENTS_PER_THREAD=16;
+
+	private int numThreads=1;
+
 	/** The implementation for this method annotates labels in-line. */
 	abstract protected void doAnnotate(MonotonicTextLabels labels);
 
@@ -28,4 +44,121 @@ public abstract class AbstractAnnotator implements Annotator{
 		annotate(copy);
 		return copy;
 	}
+
+	/**
+	 * Sets the number of threads used by subclasses that annotate documents
+	 * with annotateDocuments.  The default of 1 annotates one document at a
+	 * time.
+	 */
+	public void setNumThreads(int numThreads){
+		this.numThreads=numThreads;
+	}
+
+	public int getNumThreads(){
+		return numThreads;
+	}
+
+	/**
+	 * Annotates a single document in two steps: compute, which only reads the
+	 * labels and may run on any thread, and commit, which records the result in
+	 * the labels.
+	 */
+	protected interface DocumentWorker<T>{
+
+		/** Compute the annotation of a document without changing the labels. */
+		public T compute(TextLabels labels,Span documentSpan);
+
+		/** Record the annotation computed for a document. */
+		public void commit(MonotonicTextLabels labels,Span documentSpan,T result);
+
+		/** A worker that can compute annotations at the same time as this one. */
+		public DocumentWorker<T> copy();
+	}
+
+	/**
+	 * Annotate every document in the labels' text base with the worker.  With
+	 * more than one thread, documents are computed in chunks by copies of the
+	 * worker, one per thread.  Labels are only changed between chunks, on the
+	 * calling thread and in document order, so the result is the same as
+	 * annotating the documents one at a time.
+	 */
+	protected <T> void annotateDocuments(final MonotonicTextLabels labels,
+			DocumentWorker<T> worker,String task){
+		Iterator<Span> i=labels.getTextBase().documentSpanIterator();
+		ProgressCounter pc=new ProgressCounter(task,"document");
+		// the first document is annotated here, so anything the worker sets up
+		// lazily, like required annotations, is in place before it is copied
+		if(i.hasNext()){
+			Span s=i.next();
+			worker.commit(labels,s,worker.compute(labels,s));
+			pc.progress();
+		}
+		if(numThreads<=1){
+			while(i.hasNext()){
+				Span s=i.next();
+				worker.commit(labels,s,worker.compute(labels,s));
+				pc.progress();
+			}
+			pc.finished();
+			return;
+		}
+		ExecutorService pool=Executors.newFixedThreadPool(numThreads);
+		try{
+			final ThreadLocal<DocumentWorker<T>> workers=
+					new ThreadLocal<DocumentWorker<T>>();
+			final DocumentWorker<T> original=worker;
+			List<Span> chunk=new ArrayList<Span>();
+			List<Future<T>> results=new ArrayList<Future<T>>();
+			while(i.hasNext()){
+				chunk.clear();
+				results.clear();
+				while(i.hasNext()&&chunk.size()<numThreads*DOCUMENTS_PER_THREAD){
+					final Span s=i.next();
+					chunk.add(s);
+					results.add(pool.submit(new Callable<T>(){
+
+						@Override
+						public T call(){
+							DocumentWorker<T> w=workers.get();
+							if(w==null){
+								synchronized(original){
+									w=original.copy();
+								}
+								workers.set(w);
+							}
+							return w.compute(labels,s);
+						}
+					}));
+				}
+				List<T> computed=new ArrayList<T>(chunk.size());
+				for(Future<T> result:results){
+					computed.add(get(result));
+				}
+				for(int j=0;j<chunk.size();j++){
+					worker.commit(labels,chunk.get(j),computed.get(j));
+					pc.progress();
+				}
+			}
+		}finally{
+			pool.shutdownNow();
+		}
+		pc.finished();
+	}
+
+	/** Wait for a document to be computed, rethrowing whatever was thrown. */
+	private static <T> T get(Future<T> result){
+		try{
+			return result.get();
+		}catch(ExecutionException e){
+			Throwable cause=e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new IllegalStateException("error annotating document: "+cause,cause);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while annotating documents",e);
+		}
+	}
 }
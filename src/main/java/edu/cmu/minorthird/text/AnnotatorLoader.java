@@ -63,8 +63,9 @@ public abstract class AnnotatorLoader{
 	 * <li>If one can find a file resource "foo.mixup", use that as the source.
 	 * <li>Use 'foo' as a class name.
 	 * </ol>
+	 * Subclasses may override this, eg to reuse the annotators they find.
 	 */
-	final public Annotator findAnnotator(String annotationType,String source){
+	public Annotator findAnnotator(String annotationType,String source){
 
 		log.debug("Trying to load annotator with annotation type \""+annotationType+"\" from source \""+source+"\"");
 		if(source!=null){
@@ -2,6 +2,7 @@ package edu.cmu.minorthird.text;
 
 import java.io.Serializable;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -75,6 +76,31 @@ public class BasicTextBase extends MutableTextBase implements Serializable{
 		documentMap.put(documentId,document);
 	}
 
+	/**
+	 * Adds a document for each entry of documents, which maps document ids to
+	 * text.  If this TextBase uses a RegexTokenizer the documents are tokenized
+	 * with up to numThreads threads; either way the result is the same as
+	 * calling loadDocument on each entry in turn.
+	 */
+	@Override
+	public void loadDocuments(Map<String,String> documents,int numThreads){
+		if(!(getTokenizer() instanceof RegexTokenizer)){
+			super.loadDocuments(documents,numThreads);
+			return;
+		}
+		Document[] docs=new Document[documents.size()];
+		int i=0;
+		for(Map.Entry<String,String> entry:documents.entrySet()){
+			docs[i++]=new Document(entry.getKey(),entry.getValue());
+		}
+		TextToken[][] tokens=
+				((RegexTokenizer)getTokenizer()).splitIntoTokens(docs,numThreads);
+		for(i=0;i<docs.length;i++){
+			docs[i].setTokens(tokens[i]);
+			documentMap.put(docs[i].getId(),docs[i]);
+		}
+	}
+
 	/**
 	 * Sets the document group id for the specified documentId to the specified
 	 * document group id.
@@ -222,12 +222,18 @@ public class BasicTextLabels implements MutableTextLabels,Serializable,Visible,
 	@Override
 	public void defineDictionary(String dictName,List<String> fileNames,
 			boolean ignoreCase){
+		defineDictionary(dictName,loadDictionary(this,fileNames,ignoreCase));
+	}
+
+	/** Read the one-token entries of some dictionary files */
+	static public Set<String> loadDictionary(MonotonicTextLabels labels,
+			List<String> fileNames,boolean ignoreCase){
 		Set<String> wordSet=new HashSet<String>();
-		AnnotatorLoader theLoader=this.getAnnotatorLoader();
+		AnnotatorLoader theLoader=labels.getAnnotatorLoader();
 		// We should use the same tokenizer that the text base associated with this
 		// labels set uses for new docs.
 		// RegexTokenizer tok = new RegexTokenizer();
-		Tokenizer tok=this.getTextBase().getTokenizer();
+		Tokenizer tok=labels.getTextBase().getTokenizer();
 		String[] currentEntryTokens;
 		for(int i=0;i<fileNames.size();i++){
 			String fileName=fileNames.get(i);
@@ -260,7 +266,7 @@ public class BasicTextLabels implements MutableTextLabels,Serializable,Visible,
 				ioe.printStackTrace();
 			}
 		}
-		defineDictionary(dictName,wordSet);
+		return wordSet;
 	}
 
 	/** Return a trie if defined */
@@ -272,11 +278,26 @@ public class BasicTextLabels implements MutableTextLabels,Serializable,Visible,
 	/** Define a trie */
 	@Override
 	public void defineTrie(List<String> phraseList){
-		trie=new Trie();
+		defineTrie(phraseList,false);
+	}
+
+	/** Define a trie, optionally matching phrases regardless of case */
+	@Override
+	public void defineTrie(List<String> phraseList,boolean ignoreCase){
+		trie=loadTrie(this,phraseList,ignoreCase);
+	}
+
+	/**
+	 * Build a trie of phrases; a phrase in double quotes names a file with one
+	 * phrase per line
+	 */
+	static public Trie loadTrie(MonotonicTextLabels labels,List<String> phraseList,
+			boolean ignoreCase){
+		Trie trie=new Trie(ignoreCase);
 		// We should use the same tokenizer that the text base associated with this
 		// labels set uses for new docs.
 		// RegexTokenizer tokenizer = new RegexTokenizer();
-		Tokenizer tokenizer=this.getTextBase().getTokenizer();
+		Tokenizer tokenizer=labels.getTextBase().getTokenizer();
 		for(int i=0;i<phraseList.size();i++){
 			String[] toks=tokenizer.splitIntoTokens(phraseList.get(i));
 			if(toks.length<=2||!"\"".equals(toks[0])||
@@ -287,7 +308,7 @@ public class BasicTextLabels implements MutableTextLabels,Serializable,Visible,
 				for(int j=1;j<toks.length-1;j++){
 					defFile.append(toks[j]);
 				}
-				AnnotatorLoader theLoader=this.getAnnotatorLoader();
+				AnnotatorLoader theLoader=labels.getAnnotatorLoader();
 				InputStream stream=theLoader.findFileResource(defFile.toString());
 				try{
 					LineNumberReader bReader=
@@ -308,6 +329,7 @@ public class BasicTextLabels implements MutableTextLabels,Serializable,Visible,
 				}
 			} // file load
 		} // each phrase
+		return trie;
 	}
 
 	//
@@ -317,7 +339,9 @@ public class BasicTextLabels implements MutableTextLabels,Serializable,Visible,
 	/** Get the property value associated with this Token. */
 	@Override
 	public String getProperty(Token token,String prop){
-		return getPropMap(token).get(prop);
+		// look up without adding an empty map, so reads don't change the labels
+		SortedMap<String,String> map=textTokenPropertyMap.get(token);
+		return map==null?null:map.get(prop);
 	}
 
 	/** Get a set of all properties. */
@@ -362,7 +386,8 @@ public class BasicTextLabels implements MutableTextLabels,Serializable,Visible,
 	/** Get the property value associated with this Span. */
 	@Override
 	public String getProperty(Span span,String prop){
-		return getPropMap(span).get(prop);
+		SortedMap<String,String> map=spanPropertyMap.get(span);
+		return map==null?null:map.get(prop);
 	}
 
 	/** Get a set of all properties. */
@@ -0,0 +1,990 @@
+package edu.cmu.minorthird.text;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+import edu.cmu.minorthird.text.gui.ZoomingTextLabelsViewer;
+import edu.cmu.minorthird.util.Saveable;
+import edu.cmu.minorthird.util.gui.Viewer;
+import edu.cmu.minorthird.util.gui.Visible;
+
+/**
+ * A MutableTextLabels for large text bases, which keeps its assertions in
+ * primitive arrays instead of a Span object and a TreeSet entry per labeled
+ * span and a TreeMap per labeled token, as BasicTextLabels does.
+ * <p>
+ * Document ids and property values are interned to ints.  The instances of a
+ * type in a document are a sorted array of (lo,hi) token offsets, span
+ * properties add a parallel array of value ids, and each token property is a
+ * column of value ids over the sorted positions of the tokens that have it.
+ * Membership, property and overlap queries are binary searches, and spans
+ * added in document order, as annotators usually add them, are appended.
+ * <p>
+ * Spans are rebuilt from their document span when they are returned, so they
+ * are equal to, but not the same objects as, the spans that were added.
+ * Iterators fail with a ConcurrentModificationException if the spans they
+ * cover change, as the iterators of BasicTextLabels do.
+ */
+
+public class CompactTextLabels implements MutableTextLabels,Serializable,
+		Visible,Saveable{
+
+	static private final long serialVersionUID=20261017L;
+
+	private static Logger log=Logger.getLogger(CompactTextLabels.class);
+
+	// interned document ids, and a span covering each document
+	private Map<String,Integer> docIds=new HashMap<String,Integer>();
+
+	private List<String> docNames=new ArrayList<String>();
+
+	private List<Span> docSpans=new ArrayList<Span>();
+
+	// the document ids in order of name, kept sorted as documents are added;
+	// the first docNames.size() entries are used.  Once an iterator has the
+	// array, it is copied before the next document is added
+	transient private int[] docOrder=null;
+
+	transient private boolean docOrderShared=false;
+
+	// interned property values
+	private Map<String,Integer> valueIds=new HashMap<String,Integer>();
+
+	private List<String> valueNames=new ArrayList<String>();
+
+	private Map<String,SpanIndex> typeMap=new TreeMap<String,SpanIndex>();
+
+	private Map<String,SpanIndex> closureMap=new HashMap<String,SpanIndex>();
+
+	private Map<String,SpanIndex> spanPropertyMap=new HashMap<String,SpanIndex>();
+
+	private Map<String,TokenIndex> tokenPropertyMap=new HashMap<String,TokenIndex>();
+
+	private Map<String,Set<String>> textTokenDictMap=new HashMap<String,Set<String>>();
+
+	private Set<String> annotatedBySet=new HashSet<String>();
+
+	private Map<DetailKey,Details> detailMap=new HashMap<DetailKey,Details>();
+
+	private AnnotatorLoader loader=new DefaultAnnotatorLoader();
+
+	private Trie trie=null;
+
+	// don't serialize this, it's too big!
+	transient private TextBase textBase=null;
+
+	/** Creates an empty TextLabels not associated with a TextBase */
+	public CompactTextLabels(){
+		this.textBase=null;
+	}
+
+	/** Creates an empty TextLabels associated with the specified TextBase */
+	public CompactTextLabels(TextBase textBase){
+		this.textBase=textBase;
+	}
+
+	/**
+	 * Returns the TextBase associated with this labels set or NULL if it has not
+	 * been set.
+	 */
+	@Override
+	public TextBase getTextBase(){
+		return textBase;
+	}
+
+	/**
+	 * Sets the TextBase associated with this labels set.
+	 *
+	 * @throws java.lang.IllegalStateException
+	 *           If the TextBase has already been set.
+	 */
+	@Override
+	public void setTextBase(TextBase textBase){
+		if(this.textBase!=null)
+			throw new IllegalStateException("textBase already set");
+		this.textBase=textBase;
+	}
+
+	//
+	// the columns
+	//
+
+	// the spans of one type or property in one document, sorted as Spans are,
+	// by lo and then by hi
+	private static class SpanList implements Serializable{
+
+		static private final long serialVersionUID=20261017L;
+
+		// lo and hi of span k at 2k and 2k+1
+		int[] bounds=new int[4];
+
+		// value id of span k for span properties, -1 for a null value
+		int[] values;
+
+		int size=0;
+
+		// no span is longer, which bounds the search for overlapping spans
+		int maxLength=0;
+
+		transient int modCount=0;
+
+		SpanList(boolean withValues){
+			values=withValues?new int[2]:null;
+		}
+
+		int lo(int k){
+			return bounds[2*k];
+		}
+
+		int hi(int k){
+			return bounds[2*k+1];
+		}
+
+		// index of span (lo,hi), or -(insertion point)-1
+		int find(int lo,int hi){
+			int a=0,b=size-1;
+			while(a<=b){
+				int m=(a+b)>>>1;
+				int mlo=bounds[2*m],mhi=bounds[2*m+1];
+				if(mlo<lo||mlo==lo&&mhi<hi)
+					a=m+1;
+				else if(mlo>lo||mhi>hi)
+					b=m-1;
+				else
+					return m;
+			}
+			return -(a+1);
+		}
+
+		// index of the first span starting at or after lo
+		int first(int lo){
+			int k=find(lo,Integer.MIN_VALUE);
+			return k<0?-k-1:k;
+		}
+
+		boolean add(int lo,int hi){
+			int k=find(lo,hi);
+			if(k>=0)
+				return false;
+			insert(-k-1,lo,hi);
+			return true;
+		}
+
+		void put(int lo,int hi,int value){
+			int k=find(lo,hi);
+			if(k<0)
+				insert(k=-k-1,lo,hi);
+			values[k]=value;
+		}
+
+		private void insert(int k,int lo,int hi){
+			if(2*size==bounds.length)
+				bounds=Arrays.copyOf(bounds,2*bounds.length);
+			System.arraycopy(bounds,2*k,bounds,2*k+2,2*(size-k));
+			bounds[2*k]=lo;
+			bounds[2*k+1]=hi;
+			if(values!=null){
+				if(size==values.length)
+					values=Arrays.copyOf(values,2*values.length);
+				System.arraycopy(values,k,values,k+1,size-k);
+			}
+			size++;
+			maxLength=Math.max(maxLength,hi-lo);
+			modCount++;
+		}
+
+		// removes the spans inside (lo,hi); those from first(lo) on start inside
+		void removeInside(int lo,int hi){
+			int j=first(lo);
+			for(int k=j;k<size;k++){
+				if(lo(k)<=hi&&hi(k)<=hi)
+					continue;
+				bounds[2*j]=bounds[2*k];
+				bounds[2*j+1]=bounds[2*k+1];
+				if(values!=null)
+					values[j]=values[k];
+				j++;
+			}
+			if(j<size){
+				size=j;
+				modCount++;
+			}
+		}
+	}
+
+	// the spans of one type or property, by document id
+	private static class SpanIndex implements Serializable{
+
+		static private final long serialVersionUID=20261017L;
+
+		private final boolean withValues;
+
+		private SpanList[] byDoc=new SpanList[0];
+
+		SpanIndex(boolean withValues){
+			this.withValues=withValues;
+		}
+
+		SpanList get(int doc){
+			return doc<byDoc.length?byDoc[doc]:null;
+		}
+
+		SpanList lookup(int doc){
+			if(doc>=byDoc.length)
+				byDoc=Arrays.copyOf(byDoc,Math.max(doc+1,2*byDoc.length));
+			if(byDoc[doc]==null)
+				byDoc[doc]=new SpanList(withValues);
+			return byDoc[doc];
+		}
+	}
+
+	// the values of one token property in one document, keyed by the position
+	// and length of the token, sorted as TextTokens are
+	private static class TokenColumn implements Serializable{
+
+		static private final long serialVersionUID=20261017L;
+
+		long[] keys=new long[4];
+
+		int[] values=new int[4];
+
+		int size=0;
+
+		static long key(TextToken token){
+			return ((long)token.getLo()<<32)|token.getLength();
+		}
+
+		int get(long key){
+			int k=Arrays.binarySearch(keys,0,size,key);
+			return k<0?-1:values[k];
+		}
+
+		void put(long key,int value){
+			// tokens are usually labeled in order, so try appending first
+			int k=size>0&&keys[size-1]>=key?Arrays.binarySearch(keys,0,size,key):-size-1;
+			if(k<0){
+				k=-k-1;
+				if(size==keys.length){
+					keys=Arrays.copyOf(keys,2*keys.length);
+					values=Arrays.copyOf(values,2*values.length);
+				}
+				System.arraycopy(keys,k,keys,k+1,size-k);
+				System.arraycopy(values,k,values,k+1,size-k);
+				keys[k]=key;
+				size++;
+			}
+			values[k]=value;
+		}
+	}
+
+	// the values of one token property, by document id
+	private static class TokenIndex implements Serializable{
+
+		static private final long serialVersionUID=20261017L;
+
+		private TokenColumn[] byDoc=new TokenColumn[0];
+
+		TokenColumn get(int doc){
+			return doc<byDoc.length?byDoc[doc]:null;
+		}
+
+		TokenColumn lookup(int doc){
+			if(doc>=byDoc.length)
+				byDoc=Arrays.copyOf(byDoc,Math.max(doc+1,2*byDoc.length));
+			if(byDoc[doc]==null)
+				byDoc[doc]=new TokenColumn();
+			return byDoc[doc];
+		}
+	}
+
+	//
+	// interning
+	//
+
+	// id of a document, or -1 if nothing is known about it
+	private int docId(String documentId){
+		Integer doc=docIds.get(documentId);
+		return doc==null?-1:doc;
+	}
+
+	private int lookupDocId(String documentId){
+		Integer doc=docIds.get(documentId);
+		if(doc==null){
+			docIds.put(documentId,doc=docNames.size());
+			docNames.add(documentId);
+			docSpans.add(null);
+			insertInDocOrder(doc);
+		}
+		return doc;
+	}
+
+	// adds a new document to docOrder, whose other documents are in order
+	private void insertInDocOrder(int doc){
+		if(docOrder==null){
+			docOrder=sortedDocIds();
+			docOrderShared=false;
+			return;
+		}
+		int n=docNames.size()-1;
+		String name=docNames.get(doc);
+		int lo=0,hi=n;
+		while(lo<hi){
+			int mid=(lo+hi)>>>1;
+			if(docNames.get(docOrder[mid]).compareTo(name)<0)
+				lo=mid+1;
+			else
+				hi=mid;
+		}
+		int[] order=docOrder;
+		if(docOrderShared||n==docOrder.length){
+			order=new int[Math.max(2*n,8)];
+			System.arraycopy(docOrder,0,order,0,lo);
+		}
+		System.arraycopy(docOrder,lo,order,lo+1,n-lo);
+		order[lo]=doc;
+		docOrder=order;
+		docOrderShared=false;
+	}
+
+	// id of the span's document, remembering a span that covers it
+	private int lookupDocId(Span span){
+		int doc=lookupDocId(span.getDocumentId());
+		Span docSpan=docSpans.get(doc);
+		if(docSpan==null){
+			docSpan=span.documentSpan();
+			docSpans.set(doc,docSpan);
+		}
+		// keep the document span itself, eg with its char offset
+		if(span.documentSpanStartIndex()==0&&span.size()==docSpan.size())
+			docSpans.set(doc,span);
+		return doc;
+	}
+
+	// the document ids in order of name, for an iterator
+	private int[] docOrder(){
+		if(docOrder==null)
+			docOrder=sortedDocIds();
+		docOrderShared=true;
+		return docOrder;
+	}
+
+	// all document ids sorted by name, eg after deserialization
+	private int[] sortedDocIds(){
+		int[] order=new int[docNames.size()];
+		int i=0;
+		for(Integer doc:new TreeMap<String,Integer>(docIds).values())
+			order[i++]=doc;
+		return order;
+	}
+
+	private Span span(int doc,int lo,int hi){
+		Span docSpan=docSpans.get(doc);
+		if(lo==0&&hi==docSpan.size())
+			return docSpan;
+		return docSpan.subSpan(lo,hi-lo);
+	}
+
+	private int valueId(String value){
+		if(value==null)
+			return -1;
+		Integer id=valueIds.get(value);
+		if(id==null){
+			valueIds.put(value,id=valueNames.size());
+			valueNames.add(value);
+		}
+		return id;
+	}
+
+	private String value(int id){
+		return id<0?null:valueNames.get(id);
+	}
+
+	//
+	// methods used to maintain annotation history
+	//
+
+	/**
+	 * Returns whether or not this labels set has been annotated to include the
+	 * specified type.
+	 */
+	@Override
+	public boolean isAnnotatedBy(String s){
+		return annotatedBySet.contains(s);
+	}
+
+	/**
+	 * Adds the specified type to the list of annotation types that this labels
+	 * set has been annotated to contain.
+	 */
+	@Override
+	public void setAnnotatedBy(String s){
+		annotatedBySet.add(s);
+	}
+
+	/** Sets the loader used to locate annotators. */
+	@Override
+	public void setAnnotatorLoader(AnnotatorLoader newLoader){
+		this.loader=newLoader;
+	}
+
+	/** Returns the current loader used to locate annotators. */
+	@Override
+	public AnnotatorLoader getAnnotatorLoader(){
+		return loader;
+	}
+
+	@Override
+	public void require(String annotationType,String fileToLoad){
+		require(annotationType,fileToLoad,loader);
+	}
+
+	@Override
+	public void require(String annotationType,String fileToLoad,
+			AnnotatorLoader theLoader){
+		BasicTextLabels.doRequire(this,annotationType,fileToLoad,theLoader);
+	}
+
+	@Override
+	public void annotateWith(String annotationType,String fileToLoad){
+		BasicTextLabels.annotateWith(this,annotationType,fileToLoad);
+	}
+
+	//
+	// maintain dictionaries
+	//
+
+	/** Returns whether this labels set knows about the specified dictionary */
+	@Override
+	public boolean hasDictionary(String dictionary){
+		return textTokenDictMap.containsKey(dictionary);
+	}
+
+	/** Returns true if the value of the Token is in the named dictionary. */
+	@Override
+	public boolean inDict(Token token,String dictName){
+		if(token.getValue()==null)
+			throw new IllegalArgumentException("null token.value?");
+		Set<String> set=textTokenDictMap.get(dictName);
+		if(set==null)
+			throw new IllegalArgumentException("undefined dictionary "+dictName);
+		return set.contains(token.getValue());
+	}
+
+	/** Associate a dictionary with this labeling. */
+	@Override
+	public void defineDictionary(String dictName,Set<String> dictionary){
+		textTokenDictMap.put(dictName,dictionary);
+		if(log.isDebugEnabled())
+			log.debug("added to token dictionary: "+dictName+" values "+dictionary);
+	}
+
+	/** Associate a dictionary from this file */
+	@Override
+	public void defineDictionary(String dictName,List<String> fileNames,
+			boolean ignoreCase){
+		defineDictionary(dictName,BasicTextLabels.loadDictionary(this,fileNames,
+				ignoreCase));
+	}
+
+	/** Return a trie if defined */
+	@Override
+	public Trie getTrie(){
+		return trie;
+	}
+
+	/** Define a trie */
+	@Override
+	public void defineTrie(List<String> phraseList){
+		defineTrie(phraseList,false);
+	}
+
+	/** Define a trie, optionally matching phrases regardless of case */
+	@Override
+	public void defineTrie(List<String> phraseList,boolean ignoreCase){
+		trie=BasicTextLabels.loadTrie(this,phraseList,ignoreCase);
+	}
+
+	//
+	// maintain assertions about properties of Tokens
+	//
+
+	private static TextToken textToken(Token token){
+		if(!(token instanceof TextToken))
+			throw new IllegalArgumentException("not a TextToken: "+token);
+		return (TextToken)token;
+	}
+
+	/** Get the property value associated with this Token. */
+	@Override
+	public String getProperty(Token token,String prop){
+		TokenIndex index=tokenPropertyMap.get(prop);
+		if(index==null)
+			return null;
+		TextToken textToken=textToken(token);
+		int doc=docId(textToken.getDocumentId());
+		TokenColumn column=doc<0?null:index.get(doc);
+		return column==null?null:value(column.get(TokenColumn.key(textToken)));
+	}
+
+	/** Get a set of all properties. */
+	@Override
+	public Set<String> getTokenProperties(){
+		return tokenPropertyMap.keySet();
+	}
+
+	/** Assert that Token textToken has the given value of the given property */
+	@Override
+	public void setProperty(Token token,String prop,String value){
+		TextToken textToken=textToken(token);
+		TokenIndex index=tokenPropertyMap.get(prop);
+		if(index==null)
+			tokenPropertyMap.put(prop,index=new TokenIndex());
+		index.lookup(lookupDocId(textToken.getDocumentId())).put(
+				TokenColumn.key(textToken),valueId(value));
+	}
+
+	/**
+	 * Assert that Token textToken has the given value of the given property, and
+	 * associate that with some detailed information
+	 */
+	@Override
+	public void setProperty(Token token,String prop,String value,Details details){
+		setProperty(token,prop,value);
+		if(details!=null){
+			detailMap.put(new DetailKey(token,"prop:"+prop),details);
+		}
+	}
+
+	//
+	// maintain assertions about properties of spans
+	//
+
+	// the spans of an index in a document, or null
+	private SpanList spanList(SpanIndex index,String documentId){
+		if(index==null)
+			return null;
+		int doc=docId(documentId);
+		return doc<0?null:index.get(doc);
+	}
+
+	/** Get the property value associated with this Span. */
+	@Override
+	public String getProperty(Span span,String prop){
+		SpanList list=spanList(spanPropertyMap.get(prop),span.getDocumentId());
+		if(list==null)
+			return null;
+		int lo=span.documentSpanStartIndex();
+		int k=list.find(lo,lo+span.size());
+		return k<0?null:value(list.values[k]);
+	}
+
+	/** Get a set of all properties. */
+	@Override
+	public Set<String> getSpanProperties(){
+		return spanPropertyMap.keySet();
+	}
+
+	/** Find all spans that have a non-null value for this property. */
+	@Override
+	public Iterator<Span> getSpansWithProperty(String prop){
+		SpanIndex index=spanPropertyMap.get(prop);
+		if(index==null)
+			return Collections.<Span>emptySet().iterator();
+		return new SpanIterator(index,docOrder(),docNames.size());
+	}
+
+	/** Find all spans that have a non-null value for this property. */
+	@Override
+	public Iterator<Span> getSpansWithProperty(String prop,String id){
+		SpanIndex index=spanPropertyMap.get(prop);
+		int doc=docId(id);
+		if(index==null||doc<0)
+			return Collections.<Span>emptySet().iterator();
+		return new SpanIterator(index,new int[]{doc});
+	}
+
+	/** Assert that Span span has the given value of the given property */
+	@Override
+	public void setProperty(Span span,String prop,String value){
+		SpanIndex index=spanPropertyMap.get(prop);
+		if(index==null)
+			spanPropertyMap.put(prop,index=new SpanIndex(true));
+		int lo=span.documentSpanStartIndex();
+		index.lookup(lookupDocId(span)).put(lo,lo+span.size(),valueId(value));
+	}
+
+	@Override
+	public void setProperty(Span span,String prop,String value,Details details){
+		setProperty(span,prop,value);
+		if(details!=null){
+			detailMap.put(new DetailKey(span,"prop:"+prop),details);
+		}
+	}
+
+	//
+	// maintain assertions about types of Spans
+	//
+
+	@Override
+	public boolean hasType(Span span,String type){
+		SpanList list=spanList(typeMap.get(type),span.getDocumentId());
+		if(list==null)
+			return false;
+		int lo=span.documentSpanStartIndex();
+		return list.find(lo,lo+span.size())>=0;
+	}
+
+	@Override
+	public void addToType(Span span,String type){
+		if(type==null)
+			throw new IllegalArgumentException("null type added");
+		int lo=span.documentSpanStartIndex();
+		lookupType(type,typeMap).lookup(lookupDocId(span)).add(lo,lo+span.size());
+	}
+
+	@Override
+	public void addToType(Span span,String type,Details details){
+		addToType(span,type);
+		if(details!=null){
+			detailMap.put(new DetailKey(span,"type:"+type),details);
+		}
+	}
+
+	@Override
+	public Set<String> getTypes(){
+		return typeMap.keySet();
+	}
+
+	@Override
+	public boolean isType(String type){
+		return typeMap.get(type)!=null;
+	}
+
+	@Override
+	public void declareType(String type){
+		if(type==null)
+			throw new IllegalArgumentException("null type declared");
+		lookupType(type,typeMap);
+	}
+
+	private SpanIndex lookupType(String type,Map<String,SpanIndex> map){
+		SpanIndex index=map.get(type);
+		if(index==null)
+			map.put(type,index=new SpanIndex(false));
+		return index;
+	}
+
+	@Override
+	public Iterator<Span> instanceIterator(String type){
+		SpanIndex index=typeMap.get(type);
+		if(index==null)
+			return Collections.<Span>emptySet().iterator();
+		return new SpanIterator(index,docOrder(),docNames.size());
+	}
+
+	@Override
+	public Iterator<Span> instanceIterator(String type,String documentId){
+		if(documentId!=null)
+			return getTypeSet(type,documentId).iterator();
+		else
+			return instanceIterator(type);
+	}
+
+	/**
+	 * Find the instances of a type that overlap a span, in the sense of
+	 * Span.overlaps.
+	 */
+	public Iterator<Span> overlappingIterator(String type,Span span){
+		SpanList list=spanList(typeMap.get(type),span.getDocumentId());
+		if(list==null)
+			return Collections.<Span>emptySet().iterator();
+		int doc=docId(span.getDocumentId());
+		int lo=span.documentSpanStartIndex(),hi=lo+span.size();
+		List<Span> accum=new ArrayList<Span>();
+		for(int k=list.first(lo-list.maxLength);k<list.size&&list.lo(k)<=hi;k++){
+			if(list.hi(k)>=lo)
+				accum.add(span(doc,list.lo(k),list.hi(k)));
+		}
+		return accum.iterator();
+	}
+
+	@Override
+	public void defineTypeInside(String type,Span s,Iterator<Span> i){
+		if(type==null||s.getDocumentId()==null)
+			throw new IllegalArgumentException("null type defined");
+		int doc=lookupDocId(s);
+		SpanList list=lookupType(type,typeMap).lookup(doc);
+		// remove all spans currently inside s
+		int lo=s.documentSpanStartIndex();
+		list.removeInside(lo,lo+s.size());
+		// add spans from i
+		while(i.hasNext()){
+			Span t=i.next();
+			int tlo=t.documentSpanStartIndex();
+			list.add(tlo,tlo+t.size());
+		}
+		// close the type
+		closeTypeInside(type,s);
+	}
+
+	@Override
+	public Details getDetails(Span span,String type){
+		Details details=detailMap.get(new DetailKey(span,"type:"+type));
+		if(details!=null)
+			return details;
+		else
+			return hasType(span,type)?Details.DEFAULT:null;
+	}
+
+	/**
+	 * Returns a view of the spans with a given type in the given document.
+	 */
+	@Override
+	public Set<Span> getTypeSet(String type,String documentId){
+		if(type==null||documentId==null)
+			throw new IllegalArgumentException("null type?");
+		SpanIndex index=typeMap.get(type);
+		if(spanList(index,documentId)==null)
+			return Collections.emptySet();
+		return new TypeSet(index,docId(documentId));
+	}
+
+	// a view of the spans of a type in one document
+	private class TypeSet extends AbstractSet<Span>{
+
+		private final SpanIndex index;
+
+		private final int doc;
+
+		TypeSet(SpanIndex index,int doc){
+			this.index=index;
+			this.doc=doc;
+		}
+
+		@Override
+		public int size(){
+			return index.get(doc).size;
+		}
+
+		@Override
+		public boolean contains(Object o){
+			if(!(o instanceof Span))
+				return false;
+			Span span=(Span)o;
+			if(!docNames.get(doc).equals(span.getDocumentId()))
+				return false;
+			int lo=span.documentSpanStartIndex();
+			return index.get(doc).find(lo,lo+span.size())>=0;
+		}
+
+		@Override
+		public Iterator<Span> iterator(){
+			return new SpanIterator(index,new int[]{doc});
+		}
+	}
+
+	// iterates over the spans of an index in the given documents, skipping
+	// spans whose property value is null
+	private class SpanIterator implements Iterator<Span>{
+
+		private final SpanIndex index;
+
+		private final int[] docs;
+
+		private final int numDocs;
+
+		private int d=0,doc,k,modCount;
+
+		private SpanList list=null;
+
+		SpanIterator(SpanIndex index,int[] docs){
+			this(index,docs,docs.length);
+		}
+
+		// iterates over the first numDocs of docs
+		SpanIterator(SpanIndex index,int[] docs,int numDocs){
+			this.index=index;
+			this.docs=docs;
+			this.numDocs=numDocs;
+			advance();
+		}
+
+		private void advance(){
+			while(true){
+				if(list!=null){
+					if(list.modCount!=modCount)
+						throw new ConcurrentModificationException();
+					while(k<list.size&&list.values!=null&&list.values[k]<0)
+						k++;
+					if(k<list.size)
+						return;
+				}
+				if(d==numDocs){
+					list=null;
+					return;
+				}
+				doc=docs[d++];
+				list=index.get(doc);
+				k=0;
+				if(list!=null)
+					modCount=list.modCount;
+			}
+		}
+
+		@Override
+		public boolean hasNext(){
+			return list!=null;
+		}
+
+		@Override
+		public Span next(){
+			if(list==null)
+				throw new NoSuchElementException();
+			if(list.modCount!=modCount)
+				throw new ConcurrentModificationException();
+			Span result=span(doc,list.lo(k),list.hi(k));
+			k++;
+			advance();
+			return result;
+		}
+
+		@Override
+		public void remove(){
+			throw new UnsupportedOperationException("can't remove");
+		}
+	}
+
+	// key for detailed information about a span or token
+	private static class DetailKey implements Serializable{
+
+		static private final long serialVersionUID=20261017L;
+
+		private final Object obj;
+
+		private final String str;
+
+		public DetailKey(Object obj,String str){
+			this.obj=obj;
+			this.str=str;
+		}
+
+		@Override
+		public int hashCode(){
+			return obj.hashCode()^str.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if(!(o instanceof DetailKey))
+				return false;
+			DetailKey b=(DetailKey)o;
+			return obj.equals(b.obj)&&str.equals(b.str);
+		}
+	}
+
+	//
+	// maintain assertions about where the closed world assumption holds
+	//
+
+	@Override
+	public Iterator<Span> closureIterator(String type){
+		SpanIndex index=closureMap.get(type);
+		if(index==null)
+			return Collections.<Span>emptySet().iterator();
+		return new SpanIterator(index,docOrder(),docNames.size());
+	}
+
+	@Override
+	public Iterator<Span> closureIterator(String type,String documentId){
+		if(documentId!=null){
+			SpanIndex index=closureMap.get(type);
+			int doc=docId(documentId);
+			if(index==null||doc<0)
+				return Collections.<Span>emptySet().iterator();
+			return new SpanIterator(index,new int[]{doc});
+		}else{
+			return closureIterator(type);
+		}
+	}
+
+	@Override
+	public void closeTypeInside(String type,Span s){
+		int lo=s.documentSpanStartIndex();
+		lookupType(type,closureMap).lookup(lookupDocId(s)).add(lo,lo+s.size());
+	}
+
+	@Override
+	public String toString(){
+		return "[CompactTextLabels types: "+typeMap.keySet()+"]";
+	}
+
+	/** Dump of all strings that have textTokenuence with the given property */
+	@Override
+	public String showTokenProp(TextBase base,String prop){
+		StringBuffer buf=new StringBuffer();
+		for(Iterator<Span> i=base.documentSpanIterator();i.hasNext();){
+			Span span=i.next();
+			for(int j=0;j<span.size();j++){
+				Token textToken=span.getToken(j);
+				if(j>0)
+					buf.append(" ");
+				buf.append(textToken.getValue());
+				String val=getProperty(textToken,prop);
+				if(val!=null){
+					buf.append(":"+val);
+				}
+			}
+			buf.append("\n");
+		}
+		return buf.toString();
+	}
+
+	@Override
+	public Viewer toGUI(){
+		return new ZoomingTextLabelsViewer(this);
+	}
+
+	//
+	// Implement Saveable interface.
+	//
+	static private final String FORMAT_NAME="Minorthird TextLabels";
+
+	@Override
+	public String[] getFormatNames(){
+		return new String[]{FORMAT_NAME};
+	}
+
+	@Override
+	public String getExtensionFor(String s){
+		return ".labels";
+	}
+
+	@Override
+	public void saveAs(File file,String format) throws IOException{
+		if(!format.equals(FORMAT_NAME))
+			throw new IllegalArgumentException("illegal format "+format);
+		new TextLabelsLoader().saveTypesAsOps(this,file);
+	}
+
+	@Override
+	public Object restore(File file) throws IOException{
+		throw new UnsupportedOperationException("Cannot load TextLabels object");
+	}
+
+}
@@ -25,6 +25,9 @@ public interface MonotonicTextLabels extends TextLabels{
 	/** Define a trie */
 	public void defineTrie(List<String> phraseList);
 
+	/** Define a trie, optionally matching phrases regardless of case */
+	public void defineTrie(List<String> phraseList,boolean ignoreCase);
+
 	/** Assert that TextToken textToken has the given value of the given property. */
 	public void setProperty(Token token,String prop,String value);
 
@@ -1,6 +1,7 @@
 package edu.cmu.minorthird.text;
 
 import java.util.Iterator;
+import java.util.Map;
 
 /**
  *
@@ -25,6 +26,17 @@ public abstract class MutableTextBase extends AbstractTextBase {
      */
     public abstract void loadDocument(String documentId, String documentString, int charOffset);
 
+    /** Creates and stores a document for each entry of documents, which maps
+     *  document ids to text, in the map's iteration order.  <br>
+     *  Subclasses may tokenize the documents with up to numThreads threads;
+     *  the result is the same as calling loadDocument on each entry.
+     */
+    public void loadDocuments(Map<String,String> documents, int numThreads) {
+        for (Map.Entry<String,String> entry : documents.entrySet()) {
+            loadDocument(entry.getKey(), entry.getValue());
+        }
+    }
+
     /** Sets the group that a document belongs to */
     public abstract void setDocumentGroupId(String documentId,String documentGroupId);
 
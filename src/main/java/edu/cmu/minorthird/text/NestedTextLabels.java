@@ -101,6 +101,12 @@ public class NestedTextLabels implements MonotonicTextLabels,Visible{
 		outer.defineTrie(phraseList);
 	}
 
+	/** Define a trie, optionally matching phrases regardless of case */
+	@Override
+	public void defineTrie(List<String> phraseList,boolean ignoreCase){
+		outer.defineTrie(phraseList,ignoreCase);
+	}
+
 	@Override
 	public boolean inDict(Token token,String dictionary){
 		boolean outDict=outer.hasDictionary(dictionary);
@@ -4,8 +4,14 @@ package edu.cmu.minorthird.text;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -51,6 +57,12 @@ public class RegexTokenizer implements Tokenizer{
 
 	public String regexPattern=standardTokenRegexPattern;
 
+	// regexPattern compiled, recompiled if someone changes regexPattern
+	private volatile Pattern compiledPattern;
+
+	// Matchers aren't thread-safe, so each thread reuses its own
+	private final ThreadLocal<Matcher> matchers=new ThreadLocal<Matcher>();
+
 	public RegexTokenizer(){
 	}
 
@@ -58,34 +70,119 @@ public class RegexTokenizer implements Tokenizer{
 		this.regexPattern=pattern;
 	}
 
+	/** The compiled form of regexPattern. */
+	public Pattern getPattern(){
+		Pattern pattern=compiledPattern;
+		if(pattern==null||!pattern.pattern().equals(regexPattern)){
+			pattern=Pattern.compile(regexPattern);
+			compiledPattern=pattern;
+		}
+		return pattern;
+	}
+
+	/** This thread's matcher for the token pattern, reset to the given text. */
+	private Matcher matcher(CharSequence text){
+		Pattern pattern=getPattern();
+		Matcher matcher=matchers.get();
+		if(matcher==null||matcher.pattern()!=pattern){
+			matcher=pattern.matcher(text);
+			matchers.set(matcher);
+		}else{
+			matcher.reset(text);
+		}
+		return matcher;
+	}
+
 	/** Tokenize a string. */
 	@Override
 	public String[] splitIntoTokens(String string){
-		List<String> list=new ArrayList<String>();
-		Pattern pattern=Pattern.compile(regexPattern);
-		Matcher matcher=pattern.matcher(string);
+		Matcher matcher=matcher(string);
+		String[] tokens=new String[initialCapacity(string)];
+		int n=0;
 		while(matcher.find()){
-			list.add(matcher.group(1));
+			if(n==tokens.length){
+				tokens=Arrays.copyOf(tokens,2*n);
+			}
+			tokens[n++]=matcher.group(1);
 		}
-		return list.toArray(new String[list.size()]);
+		// don't keep the string reachable from this thread's matcher
+		matcher.reset("");
+		return n==tokens.length?tokens:Arrays.copyOf(tokens,n);
 	}
 
 	/** Tokenize a document. */
 	@Override
 	public TextToken[] splitIntoTokens(Document document){
-		List<TextToken> tokenList=new ArrayList<TextToken>();
-		TextToken[] tokenArray;
 		String string=document.getText();
-
-		Pattern pattern=Pattern.compile(regexPattern);
-		Matcher matcher=pattern.matcher(string);
-
+		Matcher matcher=matcher(string);
+		int[] starts=new int[initialCapacity(string)];
+		int[] ends=new int[starts.length];
+		int n=0;
 		while(matcher.find()){
-			tokenList.add(new TextToken(document,matcher.start(1),matcher.end(1)-
-					matcher.start(1)));
+			if(n==starts.length){
+				starts=Arrays.copyOf(starts,2*n);
+				ends=Arrays.copyOf(ends,2*n);
+			}
+			starts[n]=matcher.start(1);
+			ends[n++]=matcher.end(1);
+		}
+		matcher.reset("");
+		TextToken[] tokenArray=new TextToken[n];
+		for(int i=0;i<n;i++){
+			tokenArray[i]=new TextToken(document,starts[i],ends[i]-starts[i]);
 		}
-		tokenArray=tokenList.toArray(new TextToken[0]);
-
 		return tokenArray;
 	}
+
+	// a guess at the number of tokens in a string: about one per 6 characters
+	private static int initialCapacity(String string){
+		return string.length()/6+8;
+	}
+
+	/**
+	 * Tokenize a batch of documents, using up to numThreads threads.  Element
+	 * i of the result holds the tokens of documents[i], exactly as
+	 * splitIntoTokens(documents[i]) would return them.
+	 */
+	public TextToken[][] splitIntoTokens(final Document[] documents,int numThreads){
+		final TextToken[][] tokens=new TextToken[documents.length][];
+		int numChunks=Math.min(documents.length,4*numThreads);
+		if(numThreads<=1||numChunks<=1){
+			for(int i=0;i<documents.length;i++){
+				tokens[i]=splitIntoTokens(documents[i]);
+			}
+			return tokens;
+		}
+		ExecutorService pool=Executors.newFixedThreadPool(Math.min(numThreads,numChunks));
+		try{
+			List<Future<Object>> results=new ArrayList<Future<Object>>(numChunks);
+			for(int c=0;c<numChunks;c++){
+				final int lo=(int)((long)c*documents.length/numChunks);
+				final int hi=(int)((long)(c+1)*documents.length/numChunks);
+				results.add(pool.submit(new Callable<Object>(){
+					@Override
+					public Object call(){
+						for(int i=lo;i<hi;i++){
+							tokens[i]=splitIntoTokens(documents[i]);
+						}
+						return null;
+					}
+				}));
+			}
+			for(Future<Object> result:results){
+				result.get();
+			}
+		}catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IllegalStateException("error tokenizing documents: "+e.getCause(),e.getCause());
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while tokenizing documents",e);
+		}finally{
+			pool.shutdownNow();
+		}
+		return tokens;
+	}
 }
@@ -2,15 +2,28 @@ package edu.cmu.minorthird.text;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,7 +58,15 @@ import edu.cmu.minorthird.util.ProgressCounter;
  * <p>
  * In ALL cases use:
  * tbl.load(FILE);
+ * ------------------------------------------------------
+ * Large directories can be loaded with several threads:
+ * tbl.setNumThreads(4);
  * </pre>
+ * With more than one thread, files in a directory are read and their markup
+ * parsed on a pool of worker threads, and the documents are tokenized in
+ * chunks.  Only a bounded window of files is held in memory at once, and
+ * documents and labels are added in the same order as a serial load, so the
+ * result is the same.
  * 
  * @author William Cohen
  * @author Kevin Steppe
@@ -86,6 +107,15 @@ public class TextBaseLoader{
 	// too?
 	private boolean recurseDirectories=false;
 
+	// number of threads used to load a directory
+	private int numThreads=1;
+
+	// files in flight, and documents per tokenized chunk, for each thread
+	private static final int FILES_PER_THREAD=64;
+
+	private static final Pattern markupPattern=
+			Pattern.compile("</?([^ ><]+)( [^<>]+)?>");
+
 	// internal structure
 	private static Logger log=Logger.getLogger(TextBaseLoader.class);
 
@@ -156,7 +186,9 @@ public class TextBaseLoader{
 		this.labels=new BasicTextLabels(this.textBase);
 
 		// check whether it's a dir or single dataLocation
-		if(dataLocation.isDirectory())
+		if(dataLocation.isDirectory()&&numThreads>1)
+			loadDirectoryInParallel(dataLocation);
+		else if(dataLocation.isDirectory())
 			loadDirectory(dataLocation);
 		else
 			loadFile(dataLocation);
@@ -188,7 +220,9 @@ public class TextBaseLoader{
 		this.labels=new BasicTextLabels(this.textBase);
 
 		// check whether it's a dir or single dataLocation
-		if(dataLocation.isDirectory())
+		if(dataLocation.isDirectory()&&numThreads>1)
+			loadDirectoryInParallel(dataLocation);
+		else if(dataLocation.isDirectory())
 			loadDirectory(dataLocation);
 		else
 			loadFile(dataLocation);
@@ -280,6 +314,18 @@ public class TextBaseLoader{
 		this.recurseDirectories=rec;
 	}
 
+	/**
+	 * Sets the number of threads used to read, parse and tokenize the files of
+	 * a directory.  The default of 1 loads files one at a time.
+	 */
+	public void setNumThreads(int numThreads){
+		this.numThreads=numThreads;
+	}
+
+	public int getNumThreads(){
+		return numThreads;
+	}
+
 	/** get labeling generated by tags in data file */
 	public MutableTextLabels getLabels(){
 		return labels;
@@ -380,36 +426,55 @@ public class TextBaseLoader{
 			in=new BufferedReader(new FileReader(file));
 		}
 
+		// Clear the xml tag stack
+		stack=new ArrayList<StackEntry>();
+
+		try{
+			parseFile(file.getName(),in,stack,new DocumentSink(){
+
+				public void add(ParsedDocument doc){
+					addDocument(doc.text,doc.id,doc.spans,null);
+				}
+			});
+		}finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Split the contents of a file into documents according to the current
+	 * settings, removing any markup, and pass them to docs.
+	 */
+	private void parseFile(String fileName,BufferedReader in,
+			List<StackEntry> stack,DocumentSink docs) throws IOException,
+			ParseException{
+
 		// set the docid
-		String curDocID=file.getName();
+		String curDocID=fileName;
 
 		// list of labeled spans if internally tagged
 		List<CharSpan> spanList=new ArrayList<CharSpan>();
 
-		// Clear the xml tag stack
-		stack=new ArrayList<StackEntry>();
-
 		// loop through the file
 		StringBuffer buf=new StringBuffer();
-		while(in.ready()){ // in.ready may cause problems on Macintosh
-			String line=in.readLine();
+		String line;
+		while((line=in.readLine())!=null){
 
 			// BUG: THIS METHOD ADDS BLANK LINES AS DOCS FOR DOC_PER_LINE STYLE FILES
 
 			// appends to the buffer internally
 			if(this.use_markup){
-				line=labelLine(line,buf,curDocID,spanList);
+				line=labelLine(line,buf,curDocID,spanList,stack);
 			}
 
 			// If this reader is set to create a doc for each line then add the doc
 			// now
 			if(this.documentStyle==DOC_PER_LINE){
 				if(line.trim().length()>0){
-					curDocID=
-							file.getName()+"@line:"+((LineNumberReader)in).getLineNumber();
-					addDocument(line,curDocID,spanList,null);
+					curDocID=fileName+"@line:"+((LineNumberReader)in).getLineNumber();
+					docs.add(new ParsedDocument(curDocID,line,spanList));
 					buf=new StringBuffer();
-					spanList.clear();
+					spanList=new ArrayList<CharSpan>();
 				}
 			}
 			// Otherwise add the line to the buffer and continue reading
@@ -422,9 +487,173 @@ public class TextBaseLoader{
 		}
 
 		if(this.documentStyle==DOC_PER_FILE)
-			addDocument(buf.toString(),curDocID,spanList,null);
+			docs.add(new ParsedDocument(curDocID,buf.toString(),spanList));
+	}
 
-		in.close();
+	/**
+	 * Load the files of a directory with numThreads threads. Workers read and
+	 * parse the files, a window of at most numThreads*FILES_PER_THREAD files
+	 * ahead of the one being merged.  The parsed documents are merged in file
+	 * order, a chunk at a time, so the text base and labels end up the same as
+	 * after loadDirectory.
+	 */
+	private void loadDirectoryInParallel(File directory) throws IOException,
+			ParseException{
+		List<File> files=new ArrayList<File>();
+		listFiles(directory,files);
+
+		ProgressCounter pc=
+				new ProgressCounter("loading directory "+directory.getName(),"file",
+						files.size());
+		int window=numThreads*FILES_PER_THREAD;
+		ExecutorService pool=Executors.newFixedThreadPool(numThreads);
+		try{
+			LinkedList<Future<List<ParsedDocument>>> pending=
+					new LinkedList<Future<List<ParsedDocument>>>();
+			Map<String,ParsedDocument> chunk=
+					new LinkedHashMap<String,ParsedDocument>();
+			Iterator<File> next=files.iterator();
+			while(next.hasNext()||!pending.isEmpty()){
+				while(next.hasNext()&&pending.size()<window){
+					pending.add(pool.submit(parseTask(next.next())));
+				}
+				for(Iterator<ParsedDocument> i=getParsed(pending.removeFirst()).iterator();i.hasNext();){
+					ParsedDocument doc=i.next();
+					// Blank documents are dropped
+					if(doc.text.length()==0){
+						log.warn("Text for document "+doc.id+
+								" is length zero or all white space, it will not be added to the text base.");
+						continue;
+					}
+					// a repeated id replaces the earlier document, as in a serial load
+					if(chunk.containsKey(doc.id))
+						addChunk(chunk);
+					chunk.put(doc.id,doc);
+				}
+				pc.progress();
+				if(chunk.size()>=window)
+					addChunk(chunk);
+			}
+			addChunk(chunk);
+		}finally{
+			pool.shutdownNow();
+		}
+
+		// Closing once at the end gives the same closure as closing after each
+		// document
+		new TextLabelsLoader().closeLabels(labels,closurePolicy);
+		pc.finished();
+	}
+
+	/**
+	 * List the files loadDirectory would load from directory, in the order it
+	 * would load them.
+	 */
+	private void listFiles(File directory,List<File> result){
+		File[] files=directory.listFiles();
+		if(files==null)
+			throw new IllegalArgumentException("can't list directory "+
+					directory.getName());
+		Arrays.sort(files);
+		for(int i=0;i<files.length;i++){
+			// skip CVS directories
+			if("CVS".equals(files[i].getName()))
+				continue;
+
+			if(files[i].isDirectory()&&this.recurseDirectories)
+				listFiles(files[i],result);
+
+			if(files[i].isFile())
+				result.add(files[i]);
+		}
+	}
+
+	/** A task that reads and parses one file, with its own markup stack. */
+	private Callable<List<ParsedDocument>> parseTask(final File file){
+		return new Callable<List<ParsedDocument>>(){
+
+			public List<ParsedDocument> call() throws IOException,ParseException{
+				log.debug("loadFile: "+file.getName());
+				String contents=readFile(file);
+				BufferedReader in;
+				if(documentStyle==DOC_PER_LINE){
+					in=new LineNumberReader(new StringReader(contents));
+				}else{
+					in=new BufferedReader(new StringReader(contents));
+				}
+				final List<ParsedDocument> docs=new ArrayList<ParsedDocument>();
+				parseFile(file.getName(),in,new ArrayList<StackEntry>(),
+						new DocumentSink(){
+
+							public void add(ParsedDocument doc){
+								docs.add(doc);
+							}
+						});
+				return docs;
+			}
+		};
+	}
+
+	/** Wait for a parse task, rethrowing whatever it threw. */
+	private static List<ParsedDocument> getParsed(
+			Future<List<ParsedDocument>> result) throws IOException,ParseException{
+		try{
+			return result.get();
+		}catch(ExecutionException e){
+			Throwable cause=e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			if(cause instanceof ParseException)
+				throw (ParseException)cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new IllegalStateException("error loading file: "+cause,cause);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while loading files",e);
+		}
+	}
+
+	/**
+	 * Read a whole file through a FileChannel, decoding it with the default
+	 * charset as a FileReader would.
+	 */
+	private static String readFile(File file) throws IOException{
+		FileInputStream in=new FileInputStream(file);
+		try{
+			FileChannel channel=in.getChannel();
+			ByteBuffer bytes=ByteBuffer.allocate((int)channel.size());
+			while(bytes.hasRemaining()&&channel.read(bytes)>=0){
+			}
+			bytes.flip();
+			return Charset.defaultCharset().decode(bytes).toString();
+		}finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Add a chunk of parsed documents to the text base, tokenizing them with
+	 * up to numThreads threads, then add their spans to the labels in order.
+	 */
+	private void addChunk(Map<String,ParsedDocument> chunk){
+		if(chunk.isEmpty())
+			return;
+		Map<String,String> texts=new LinkedHashMap<String,String>();
+		for(Iterator<ParsedDocument> i=chunk.values().iterator();i.hasNext();){
+			ParsedDocument doc=i.next();
+			texts.put(doc.id,doc.text);
+		}
+		textBase.loadDocuments(texts,numThreads);
+		for(Iterator<ParsedDocument> i=chunk.values().iterator();i.hasNext();){
+			ParsedDocument doc=i.next();
+			if(log.isDebugEnabled())
+				log.debug("add document "+doc.id);
+			addSpans(doc.text,doc.id,doc.spans);
+		}
+		chunk.clear();
 	}
 
 	/**
@@ -451,6 +680,32 @@ public class TextBaseLoader{
 		textBase.loadDocument(documentId,docText);
 
 		// Now add all of the extracted spans to the labels set
+		addSpans(docText,documentId,spans);
+
+		// Next add all extracted token properties to the labels set
+		if(tokenProps!=null&&tokenProps.size()>0){
+			Document doc=textBase.getDocument(documentId);
+			TextToken[] tokens=doc.getTokens();
+			Iterator<String> itr=tokenProps.iterator();
+			if(tokens.length>0){
+				for(int x=0;x<tokens.length;x++){
+					String nextPOS=itr.next();
+					if(nextPOS!=null&&tokens[x]!=null){
+						labels.setProperty(tokens[x],"POS",nextPOS);
+					}
+				}
+			}
+		}
+
+		// Close the labels set
+		new TextLabelsLoader().closeLabels(labels,closurePolicy);
+	}
+
+	/**
+	 * Add the spans extracted from a document's text to the labels, as token
+	 * spans of the document already in the text base.
+	 */
+	private void addSpans(String docText,String documentId,List<CharSpan> spans){
 		for(Iterator<CharSpan> j=spans.iterator();j.hasNext();){
 			CharSpan charSpan=j.next();
 			Span approxSpan; // =
@@ -480,24 +735,6 @@ public class TextBaseLoader{
 			}
 			labels.addToType(approxSpan,charSpan.type);
 		}
-
-		// Next add all extracted token properties to the labels set
-		if(tokenProps!=null&&tokenProps.size()>0){
-			Document doc=textBase.getDocument(documentId);
-			TextToken[] tokens=doc.getTokens();
-			Iterator<String> itr=tokenProps.iterator();
-			if(tokens.length>0){
-				for(int x=0;x<tokens.length;x++){
-					String nextPOS=itr.next();
-					if(nextPOS!=null&&tokens[x]!=null){
-						labels.setProperty(tokens[x],"POS",nextPOS);
-					}
-				}
-			}
-		}
-
-		// Close the labels set
-		new TextLabelsLoader().closeLabels(labels,closurePolicy);
 	}
 
 	/**
@@ -517,9 +754,13 @@ public class TextBaseLoader{
 		// stack of open tags
 		if(stack==null)
 			stack=new ArrayList<StackEntry>();
+		return labelLine(line,docBuffer,docId,spanList,stack);
+	}
 
+	/** As labelLine, keeping open tags on the given stack. */
+	private String labelLine(String line,StringBuffer docBuffer,String docId,
+			List<CharSpan> spanList,List<StackEntry> stack) throws ParseException{
 		// Create the matcher to find any XML marked up tags
-		Pattern markupPattern=Pattern.compile("</?([^ ><]+)( [^<>]+)?>");
 		Matcher matcher=markupPattern.matcher(line);
 
 		int currentChar=0;
@@ -571,7 +812,7 @@ public class TextBaseLoader{
 		return docBuffer.toString();
 	}
 
-	private class StackEntry{
+	private static class StackEntry{
 
 		public int index;
 
@@ -583,7 +824,7 @@ public class TextBaseLoader{
 		}
 	}
 
-	private class CharSpan{
+	private static class CharSpan{
 
 		public int lo,hi;
 
@@ -598,6 +839,26 @@ public class TextBaseLoader{
 		}
 	}
 
+	/** A document read from a file, before it is added to the text base. */
+	private static class ParsedDocument{
+
+		String id,text;
+
+		List<CharSpan> spans;
+
+		ParsedDocument(String id,String text,List<CharSpan> spans){
+			this.id=id;
+			this.text=text;
+			this.spans=spans;
+		}
+	}
+
+	/** Receives the documents parsed from a file. */
+	private interface DocumentSink{
+
+		public void add(ParsedDocument doc);
+	}
+
 	// --------------------- End Private methods
 	// --------------------------------------------------
 }
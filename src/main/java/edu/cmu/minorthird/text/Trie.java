@@ -4,27 +4,24 @@ import java.util.*;
 
 /**
  * Efficient scheme for matching a rote list of sequences of tokens.
- * 
+ * <p>
+ * Words are interned to integer ids when they are added, and the phrases are
+ * compiled into an Aho-Corasick automaton whose transitions are kept in a
+ * primitive hash table, so a lookup is a single pass over the tokens of a
+ * span with one hash lookup per token, however large the dictionary.
+ * Optionally, words and tokens are matched ignoring case.
+ * <p>
+ * The automaton is compiled on the first lookup after words are added.
+ * Lookups may then run concurrently.  Case is ignored by lower-casing in the
+ * root locale, so matches don't depend on the default locale.
+ *
  * @author William Cohen
  */
 
 public class Trie{
 
-	// a node in the trie
-	private static class TrieNode{
-
-		public Map<String,TrieNode> map=null;
-
-		public List<String> endIds=null;
-
-		@Override
-		public String toString(){
-			return "TrieNode(ends="+endIds+",map="+map+")";
-		}
-	}
-
 	// a match to something in the Trie
-	private static class TrieMatch{
+	private static class TrieMatch implements Comparable<TrieMatch>{
 
 		public List<String> endIds;
 
@@ -37,63 +34,232 @@ public class Trie{
 			this.start=start;
 			this.length=length;
 		}
+
+		// by start, then shortest first
+		@Override
+		public int compareTo(TrieMatch other){
+			if(start!=other.start)
+				return start<other.start?-1:1;
+			return length<other.length?-1:(length==other.length?0:1);
+		}
 	}
 
-	private TrieNode root;
-	
+	private boolean ignoreCase;
+
+	// interned words, and the words by id
+	private Map<String,Integer> wordIds=new HashMap<String,Integer>();
+
+	private List<String> words=new ArrayList<String>();
+
+	// the states; state 0 is the root
+	private int numStates=1;
+
+	private int[] depth=new int[16];
+
+	private int[] firstChild=new int[16];
+
+	private int[] nextSibling=new int[16];
+
+	private int[] word=new int[16];
+
+	private List<List<String>> endIds=new ArrayList<List<String>>();
+
+	// transitions: key (state,word) maps to the child state, 0 for none
+	private long[] edgeKeys=new long[32];
+
+	private int[] edgeTargets=new int[32];
+
+	private int numEdges=0;
+
+	// failure links, and the nearest state on the failure chain with ids
+	private int[] fail;
+
+	private int[] out;
+
+	// written last by compile(), so a lookup that reads it as true sees the
+	// automaton
+	private volatile boolean compiled=false;
+
 	public Trie(){
-		root=new TrieNode();
+		this(false);
+	}
+
+	/**
+	 * @param ignoreCase if true, words and tokens are matched regardless of
+	 *          case
+	 */
+	public Trie(boolean ignoreCase){
+		this.ignoreCase=ignoreCase;
+		endIds.add(null);
+	}
+
+	public boolean getIgnoreCase(){
+		return ignoreCase;
 	}
 
 	/** Lookup matches to the trie in the span */
 	public ResultIterator lookup(Span span){
+		if(!compiled)
+			compile();
 		List<TrieMatch> accum=new ArrayList<TrieMatch>();
+		List<String> rootIds=endIds.get(0);
+		int state=0;
 		for(int i=0;i<span.size();i++){
-			lookup(accum,span,i);
-		}
-		return new MyResultIterator(span,accum);
-	}
-
-	private void lookup(List<TrieMatch> accum,Span span,int start){
-		TrieNode node=root;
-		int depth=0;
-		while(node!=null){
-			if(node.endIds!=null){
-				// add a new match
-				accum.add(new TrieMatch(node.endIds,start,depth));
+			if(rootIds!=null){
+				accum.add(new TrieMatch(rootIds,i,0));
 			}
-			// extend the trie
-			if(node.map!=null&&start+depth<span.size()){
-				node=node.map.get(span.getToken(start+depth).getValue());
-			}else{
-				node=null;
+			Integer id=wordIds.get(fold(span.getToken(i).getValue()));
+			state=id==null?0:step(state,id);
+			int s=endIds.get(state)!=null?state:out[state];
+			while(s!=0){
+				accum.add(new TrieMatch(endIds.get(s),i+1-depth[s],depth[s]));
+				s=out[s];
 			}
-			depth++;
 		}
+		// matches are found by end; return them by start, as a walk from each start would
+		Collections.sort(accum);
+		return new MyResultIterator(span,accum);
 	}
 
 	/** Associate a sequence of words with a given id. */
-	public void addWords(String id,String[] words){
-		TrieNode node=root;
+	public synchronized void addWords(String id,String[] words){
+		int node=0;
 		for(int i=0;i<words.length;i++){
-			if(node.map==null)
-				node.map=new TreeMap<String,TrieNode>();
-			TrieNode kid=node.map.get(words[i]);
-			if(kid==null)
-				node.map.put(words[i],(kid=new TrieNode()));
+			int w=intern(fold(words[i]));
+			int kid=child(node,w);
+			if(kid==0){
+				kid=newState(node,w);
+			}
 			node=kid;
 		}
 		// associate this id with the last node in the chain
-		if(node.endIds==null)
-			node.endIds=new ArrayList<String>();
-		node.endIds.add(id);
+		if(endIds.get(node)==null)
+			endIds.set(node,new ArrayList<String>());
+		endIds.get(node).add(id);
+		compiled=false;
+	}
+
+	private String fold(String w){
+		return ignoreCase?w.toLowerCase(Locale.ROOT):w;
+	}
+
+	private int intern(String w){
+		Integer id=wordIds.get(w);
+		if(id==null){
+			id=words.size();
+			wordIds.put(w,id);
+			words.add(w);
+		}
+		return id;
+	}
+
+	private int newState(int parent,int w){
+		if(numStates==depth.length){
+			int n=2*numStates;
+			depth=Arrays.copyOf(depth,n);
+			firstChild=Arrays.copyOf(firstChild,n);
+			nextSibling=Arrays.copyOf(nextSibling,n);
+			word=Arrays.copyOf(word,n);
+		}
+		int s=numStates++;
+		depth[s]=depth[parent]+1;
+		word[s]=w;
+		firstChild[s]=0;
+		nextSibling[s]=firstChild[parent];
+		firstChild[parent]=s;
+		endIds.add(null);
+		if(2*(numEdges+1)>edgeKeys.length){
+			rehash(2*edgeKeys.length);
+		}
+		putEdge(edgeKeys,edgeTargets,key(parent,w),s);
+		numEdges++;
+		return s;
+	}
+
+	//
+	// the transition table, open addressing on (state,word)
+	//
+
+	private static long key(int state,int w){
+		return ((long)state<<32)|w;
+	}
+
+	private static int slot(long key,int mask){
+		long h=key*0x9E3779B97F4A7C15L;
+		return (int)(h^(h>>>32))&mask;
+	}
+
+	private static void putEdge(long[] keys,int[] targets,long key,int target){
+		int mask=keys.length-1;
+		int i=slot(key,mask);
+		while(targets[i]!=0){
+			i=(i+1)&mask;
+		}
+		keys[i]=key;
+		targets[i]=target;
+	}
+
+	private void rehash(int capacity){
+		long[] keys=new long[capacity];
+		int[] targets=new int[capacity];
+		for(int i=0;i<edgeKeys.length;i++){
+			if(edgeTargets[i]!=0)
+				putEdge(keys,targets,edgeKeys[i],edgeTargets[i]);
+		}
+		edgeKeys=keys;
+		edgeTargets=targets;
+	}
+
+	private int child(int state,int w){
+		long key=key(state,w);
+		int mask=edgeKeys.length-1;
+		for(int i=slot(key,mask);edgeTargets[i]!=0;i=(i+1)&mask){
+			if(edgeKeys[i]==key)
+				return edgeTargets[i];
+		}
+		return 0;
+	}
+
+	// the state reached from state on word w, following failure links
+	private int step(int state,int w){
+		while(true){
+			int kid=child(state,w);
+			if(kid!=0||state==0)
+				return kid;
+			state=fail[state];
+		}
+	}
+
+	// computes failure and output links breadth first
+	private synchronized void compile(){
+		if(compiled)
+			return;
+		int[] fail=new int[numStates];
+		int[] out=new int[numStates];
+		int[] queue=new int[numStates];
+		int head=0,tail=0;
+		for(int s=firstChild[0];s!=0;s=nextSibling[s]){
+			queue[tail++]=s;
+		}
+		this.fail=fail;
+		while(head<tail){
+			int u=queue[head++];
+			for(int v=firstChild[u];v!=0;v=nextSibling[v]){
+				int f=step(fail[u],word[v]);
+				fail[v]=f;
+				out[v]=endIds.get(f)!=null&&f!=0?f:out[f];
+				queue[tail++]=v;
+			}
+		}
+		this.out=out;
+		compiled=true;
 	}
 
 	/** Pretty-print the entire trie. */
 	@Override
 	public String toString(){
 		StringBuilder b=new StringBuilder();
-		toString(b,0,root);
+		toString(b,0,0);
 		return b.toString();
 	}
 
@@ -102,23 +268,24 @@ public class Trie{
 			b.append("|  ");
 	}
 
-	private void toString(StringBuilder b,int level,TrieNode node){
-		if(node.map==null)
-			return;
-		for(Iterator<String> i=node.map.keySet().iterator();i.hasNext();){
+	private void toString(StringBuilder b,int level,int node){
+		SortedMap<String,Integer> kids=new TreeMap<String,Integer>();
+		for(int s=firstChild[node];s!=0;s=nextSibling[s]){
+			kids.put(words.get(word[s]),s);
+		}
+		for(Iterator<String> i=kids.keySet().iterator();i.hasNext();){
 			String w=i.next();
-			TrieNode kid=node.map.get(w);
+			int kid=kids.get(w);
 			tab(b,level);
 			b.append("'").append(w).append("'");
-			if(kid.endIds!=null){
+			if(endIds.get(kid)!=null){
 				b.append(" IDS:");
-				for(Iterator<String> j=kid.endIds.iterator();j.hasNext();){
+				for(Iterator<String> j=endIds.get(kid).iterator();j.hasNext();){
 					b.append(" ").append(j.next());
 				}
 			}
-			// buf.append("\t"+node);
 			b.append("\n");
-			toString(b,level+1,node.map.get(w));
+			toString(b,level+1,kid);
 		}
 	}
 
@@ -143,12 +310,9 @@ public class Trie{
 
 		private List<String> lastIdList;
 
-//		private int estSize=-1;
-
 		public MyResultIterator(Span span,Collection<TrieMatch> c){
 			this.span=span;
 			this.i=c.iterator();
-//			estSize=c.size();
 		}
 
 		@Override
@@ -172,10 +336,6 @@ public class Trie{
 			lastIdList=match.endIds;
 			return span.subSpan(match.start,match.length);
 		}
-
-//		public int estimatedSize(){
-//			return estSize;
-//		}
 	}
 
 	public static void main(String[] argv){
@@ -0,0 +1,402 @@
+package edu.cmu.minorthird.text.learn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import org.apache.log4j.Logger;
+
+import edu.cmu.minorthird.text.Annotator;
+import edu.cmu.minorthird.text.AnnotatorLoader;
+import edu.cmu.minorthird.text.BasicTextBase;
+import edu.cmu.minorthird.text.BasicTextLabels;
+import edu.cmu.minorthird.text.DefaultAnnotatorLoader;
+import edu.cmu.minorthird.text.RegexTokenizer;
+import edu.cmu.minorthird.text.Span;
+import edu.cmu.minorthird.text.TextBase;
+import edu.cmu.minorthird.text.Tokenizer;
+import edu.cmu.minorthird.text.Trie;
+import edu.cmu.minorthird.util.IOUtil;
+
+/**
+ * Applies an ExtractorAnnotator to many short strings, eg one per request in a
+ * server, and may be called from several threads at once.
+ * <p>
+ * ExtractorAnnotatorWrapper.extractFrom sets everything up again for each
+ * string: a new tokenizer, and a new search for each annotation the annotator
+ * requires, which reads and parses Mixup programs and their dictionaries and
+ * tries again.  A session does that once.  It keeps a pool of scratch areas,
+ * each with its own copy of the annotator, a tokenizer, and the annotators
+ * required so far; each call takes a scratch area of its own from the pool.
+ * The pool holds at most a given number of scratch areas, by default one per
+ * processor; when all of them are in use, calls wait for one to be free.
+ * Dictionaries and tries defined by Mixup programs are loaded once and shared.
+ * The annotator and what it requires are loaded when the session is created,
+ * by extracting from a short text.
+ * <p>
+ * Copies of the annotator are made by serialization, as for parallel
+ * annotation, so the session never uses the caller's annotator itself.  If
+ * the annotator can't be serialized, calls take turns with a single scratch
+ * area, which does use it.
+ * <p>
+ * The latency of each call can be reported to a Metrics hook, such as a
+ * LatencyRecorder.
+ */
+
+public class ExtractionSession{
+
+	private static Logger log=Logger.getLogger(ExtractionSession.class);
+
+	// extracted from when the session is created
+	private static final String PRELOAD_TEXT="Preload the annotator.";
+
+	/** Receives the latency of each call to extractFrom. */
+	public interface Metrics{
+
+		/** Called after extracting from numStrings strings in nanos nanoseconds. */
+		public void record(int numStrings,long nanos);
+	}
+
+	private final AnnotatorLoader loader;
+
+	// the annotator as serialized before it was used, or null if it can't be
+	private final byte[] annotatorBytes;
+
+	// the scratch area for every call if the annotator can't be copied
+	private final Scratch shared;
+
+	private final Queue<Scratch> idle=new ConcurrentLinkedQueue<Scratch>();
+
+	// one permit for each scratch area a call may take from the pool
+	private final Semaphore available;
+
+	// keyed by the files or phrases, and whether case is ignored
+	private final Map<List<Object>,Set<String>> dictionaries=
+			new ConcurrentHashMap<List<Object>,Set<String>>();
+
+	private final Map<List<Object>,Trie> tries=
+			new ConcurrentHashMap<List<Object>,Trie>();
+
+	private volatile Metrics metrics=null;
+
+	/** Create a session for an annotator, finding what it requires as labels do. */
+	public ExtractionSession(ExtractorAnnotator annotator){
+		this(annotator,new DefaultAnnotatorLoader());
+	}
+
+	/**
+	 * Create a session for an annotator, finding what it requires with loader,
+	 * with a scratch area for each processor.
+	 */
+	public ExtractionSession(ExtractorAnnotator annotator,AnnotatorLoader loader){
+		this(annotator,loader,Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a session for an annotator, finding what it requires with loader,
+	 * that runs at most maxScratchAreas calls at once.
+	 */
+	public ExtractionSession(ExtractorAnnotator annotator,AnnotatorLoader loader,
+			int maxScratchAreas){
+		if(maxScratchAreas<1)
+			throw new IllegalArgumentException("maxScratchAreas must be positive: "+
+					maxScratchAreas);
+		this.loader=loader;
+		this.annotatorBytes=serialize(annotator);
+		this.available=new Semaphore(maxScratchAreas);
+		if(annotatorBytes==null){
+			shared=new Scratch(annotator);
+			shared.extract(Collections.singletonList(PRELOAD_TEXT));
+		}else{
+			shared=null;
+			Scratch first=newScratch();
+			first.extract(Collections.singletonList(PRELOAD_TEXT));
+			idle.add(first);
+		}
+	}
+
+	/** Report the latency of each call to metrics, or to nothing if null. */
+	public void setMetrics(Metrics metrics){
+		this.metrics=metrics;
+	}
+
+	public Metrics getMetrics(){
+		return metrics;
+	}
+
+	/** Apply the annotator to a string, and return all substrings extracted. */
+	public String[] extractFrom(String source){
+		return extractFrom(Collections.singletonList(source)).get(0);
+	}
+
+	/**
+	 * Apply the annotator to some strings, annotating them together, and return
+	 * the substrings extracted from each.
+	 */
+	public List<String[]> extractFrom(List<String> sources){
+		long start=System.nanoTime();
+		Scratch scratch=take();
+		List<String[]> result;
+		try{
+			synchronized(scratch){
+				result=scratch.extract(sources);
+			}
+		}finally{
+			release(scratch);
+		}
+		Metrics m=metrics;
+		if(m!=null)
+			m.record(sources.size(),System.nanoTime()-start);
+		return result;
+	}
+
+	// waits until fewer than the maximum number of scratch areas are in use
+	private Scratch take(){
+		if(shared!=null)
+			return shared;
+		try{
+			available.acquire();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"interrupted while waiting for a scratch area",e);
+		}
+		Scratch scratch=idle.poll();
+		if(scratch!=null)
+			return scratch;
+		try{
+			return newScratch();
+		}catch(RuntimeException e){
+			available.release();
+			throw e;
+		}
+	}
+
+	private void release(Scratch scratch){
+		if(scratch!=shared){
+			idle.add(scratch);
+			available.release();
+		}
+	}
+
+	// a scratch area with a new copy of the annotator
+	private Scratch newScratch(){
+		try{
+			return new Scratch((ExtractorAnnotator)IOUtil
+					.loadSerialized(new ByteArrayInputStream(annotatorBytes)));
+		}catch(IOException e){
+			throw new IllegalStateException("can't copy annotator: "+e,e);
+		}
+	}
+
+	private static byte[] serialize(ExtractorAnnotator annotator){
+		try{
+			ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+			ObjectOutputStream out=new ObjectOutputStream(bytes);
+			out.writeObject(annotator);
+			out.close();
+			return bytes.toByteArray();
+		}catch(IOException e){
+			log.warn("can't copy "+annotator+", so calls will take turns: "+e);
+			return null;
+		}
+	}
+
+	/** What one call at a time uses. */
+	private class Scratch{
+
+		private final ExtractorAnnotator annotator;
+
+		private final Tokenizer tokenizer=new RegexTokenizer();
+
+		// loaders that reuse the annotators found by the loaders they wrap
+		private final Map<AnnotatorLoader,CachingLoader> loaders=
+				new IdentityHashMap<AnnotatorLoader,CachingLoader>();
+
+		Scratch(ExtractorAnnotator annotator){
+			this.annotator=annotator;
+		}
+
+		AnnotatorLoader cached(AnnotatorLoader theLoader){
+			if(theLoader instanceof CachingLoader)
+				return theLoader;
+			CachingLoader cachingLoader=loaders.get(theLoader);
+			if(cachingLoader==null)
+				loaders.put(theLoader,cachingLoader=new CachingLoader(theLoader));
+			return cachingLoader;
+		}
+
+		List<String[]> extract(List<String> sources){
+			BasicTextBase base=new BasicTextBase(tokenizer);
+			for(int i=0;i<sources.size();i++){
+				base.loadDocument("source"+i,sources.get(i));
+			}
+			SessionLabels labels=new SessionLabels(base,this);
+			annotator.annotate(labels);
+			List<String[]> result=new ArrayList<String[]>(sources.size());
+			for(int i=0;i<sources.size();i++){
+				List<String> accum=new ArrayList<String>();
+				for(Iterator<Span> j=
+						labels.instanceIterator(annotator.getSpanType(),"source"+i);j
+						.hasNext();){
+					accum.add(j.next().asString());
+				}
+				result.add(accum.toArray(new String[accum.size()]));
+			}
+			return result;
+		}
+	}
+
+	/** Labels that get required annotators, dictionaries and tries from the session. */
+	private class SessionLabels extends BasicTextLabels{
+
+		static private final long serialVersionUID=20261017L;
+
+		private final Scratch scratch;
+
+		SessionLabels(TextBase base,Scratch scratch){
+			super(base);
+			this.scratch=scratch;
+			setAnnotatorLoader(scratch.cached(loader));
+		}
+
+		@Override
+		public void require(String annotationType,String fileToLoad,
+				AnnotatorLoader theLoader){
+			if(theLoader==null)
+				theLoader=getAnnotatorLoader();
+			super.require(annotationType,fileToLoad,scratch.cached(theLoader));
+		}
+
+		@Override
+		public void defineDictionary(String dictName,List<String> fileNames,
+				boolean ignoreCase){
+			List<Object> key=new ArrayList<Object>(fileNames);
+			key.add(ignoreCase);
+			Set<String> dictionary=dictionaries.get(key);
+			if(dictionary==null){
+				dictionary=BasicTextLabels.loadDictionary(this,fileNames,ignoreCase);
+				dictionaries.put(key,dictionary);
+			}
+			defineDictionary(dictName,dictionary);
+		}
+
+		@Override
+		public void defineTrie(List<String> phraseList,boolean ignoreCase){
+			List<Object> key=new ArrayList<Object>(phraseList);
+			key.add(ignoreCase);
+			Trie cached=tries.get(key);
+			if(cached==null){
+				cached=BasicTextLabels.loadTrie(this,phraseList,ignoreCase);
+				tries.put(key,cached);
+			}
+			trie=cached;
+		}
+	}
+
+	/** Finds annotators with another loader, once for each type and source. */
+	private static class CachingLoader extends AnnotatorLoader{
+
+		private final AnnotatorLoader loader;
+
+		private final Map<List<String>,Annotator> annotators=
+				new HashMap<List<String>,Annotator>();
+
+		CachingLoader(AnnotatorLoader loader){
+			this.loader=loader;
+		}
+
+		@Override
+		public InputStream findFileResource(String fileName){
+			return loader.findFileResource(fileName);
+		}
+
+		@Override
+		public Class<?> findClassResource(String className){
+			return loader.findClassResource(className);
+		}
+
+		@Override
+		public Annotator findAnnotator(String annotationType,String source){
+			List<String> key=Arrays.asList(annotationType,source);
+			Annotator annotator=annotators.get(key);
+			if(annotator==null){
+				annotator=loader.findAnnotator(annotationType,source);
+				if(annotator!=null)
+					annotators.put(key,annotator);
+			}
+			return annotator;
+		}
+
+		@Override
+		public String toString(){
+			return "[CachingLoader "+loader+"]";
+		}
+	}
+
+	/**
+	 * Metrics that keep the latencies of the latest calls, and report
+	 * percentiles of them.
+	 */
+	public static class LatencyRecorder implements Metrics{
+
+		private final long[] latencies;
+
+		private long count=0;
+
+		/** Keep the latencies of the latest 10000 calls. */
+		public LatencyRecorder(){
+			this(10000);
+		}
+
+		/** Keep the latencies of the latest capacity calls. */
+		public LatencyRecorder(int capacity){
+			latencies=new long[capacity];
+		}
+
+		@Override
+		public synchronized void record(int numStrings,long nanos){
+			latencies[(int)(count++%latencies.length)]=nanos;
+		}
+
+		/** The number of calls recorded. */
+		public synchronized long getCount(){
+			return count;
+		}
+
+		/**
+		 * The latency in nanoseconds within which the given fraction of the
+		 * latest calls finished, eg 0.5 for the median or 0.99 for p99.
+		 */
+		public synchronized long getPercentile(double fraction){
+			int n=(int)Math.min(count,latencies.length);
+			if(n==0)
+				return 0;
+			long[] sorted=Arrays.copyOf(latencies,n);
+			Arrays.sort(sorted);
+			int k=(int)Math.ceil(fraction*n)-1;
+			return sorted[Math.max(0,Math.min(n-1,k))];
+		}
+
+		@Override
+		public String toString(){
+			return String.format("%d calls, p50 %.3f ms, p99 %.3f ms",getCount(),
+					getPercentile(0.5)/1e6,getPercentile(0.99)/1e6);
+		}
+	}
+}
@@ -64,6 +64,13 @@ public class ExtractorAnnotatorWrapper{
 		return accum.toArray(new String[accum.size()]);
 	}
 
+	/** Create a session for extracting from many strings with the wrapped
+	 * annotator, which sets up once what extractFrom sets up on every call.
+	 */
+	public ExtractionSession newSession(){
+		return new ExtractionSession(annotator);
+	}
+
 	/** An interactive test routine to see if this thing works.
 	 */
 	public static void main(String[] args) throws Exception{
@@ -1,7 +1,7 @@
 package edu.cmu.minorthird.text.learn;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.Iterator;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
@@ -22,7 +22,7 @@ import edu.cmu.minorthird.text.Annotator;
 import edu.cmu.minorthird.text.MonotonicTextLabels;
 import edu.cmu.minorthird.text.Span;
 import edu.cmu.minorthird.text.TextLabels;
-import edu.cmu.minorthird.util.ProgressCounter;
+import edu.cmu.minorthird.util.IOUtil;
 import edu.cmu.minorthird.util.gui.ComponentViewer;
 import edu.cmu.minorthird.util.gui.SmartVanillaViewer;
 import edu.cmu.minorthird.util.gui.Viewer;
@@ -206,27 +206,62 @@ public class SequenceAnnotatorLearner extends AbstractBatchAnnotatorLearner{
 			return seqClassifier;
 		}
 
+		/**
+		 * Tags each document with the sequence classifier.  With more than one
+		 * thread (see setNumThreads), documents are tagged in parallel, each
+		 * thread using its own copy of the feature extractor and classifier.
+		 */
 		@Override
 		protected void doAnnotate(MonotonicTextLabels labels){
-			Iterator<Span> i=labels.getTextBase().documentSpanIterator();
-			ProgressCounter pc=
-					new ProgressCounter("tagging with classifier","document");
-			while(i.hasNext()){
-				Span s=i.next();
+			annotateDocuments(labels,new Tagger(fe,seqClassifier),
+					"tagging with classifier");
+			reduction.extractFromTags(annotationType,labels);
+		}
+
+		/** Classifies the tokens of a document and records the tags. */
+		private class Tagger implements DocumentWorker<ClassLabel[]>{
+
+			private SpanFeatureExtractor fe;
+
+			private SequenceClassifier seqClassifier;
+
+			Tagger(SpanFeatureExtractor fe,SequenceClassifier seqClassifier){
+				this.fe=fe;
+				this.seqClassifier=seqClassifier;
+			}
+
+			@Override
+			public ClassLabel[] compute(TextLabels labels,Span s){
 				Instance[] sequence=new Instance[s.size()];
 				for(int j=0;j<s.size();j++){
 					Span tokenSpan=s.subSpan(j,1);
 					sequence[j]=fe.extractInstance(labels,tokenSpan);
 				}
-				ClassLabel[] classLabels=seqClassifier.classification(sequence);
+				return seqClassifier.classification(sequence);
+			}
+
+			@Override
+			public void commit(MonotonicTextLabels labels,Span s,
+					ClassLabel[] classLabels){
 				for(int j=0;j<classLabels.length;j++){
 					labels.setProperty(s.getToken(j),reduction.getTokenProp(),
 							classLabels[j].bestClassName());
 				}
-				pc.progress();
 			}
-			pc.finished();
-			reduction.extractFromTags(annotationType,labels);
+
+			// feature extractors and classifiers keep per-call state, so each
+			// thread gets its own copy
+			@Override
+			public DocumentWorker<ClassLabel[]> copy(){
+				try{
+					SequenceAnnotator copy=
+							(SequenceAnnotator)IOUtil.copySerialized(SequenceAnnotator.this);
+					return copy.new Tagger(copy.fe,copy.seqClassifier);
+				}catch(IOException e){
+					throw new IllegalStateException("can't copy "+annotationType+
+							" annotator for another thread: "+e,e);
+				}
+			}
 		}
 
 		@Override
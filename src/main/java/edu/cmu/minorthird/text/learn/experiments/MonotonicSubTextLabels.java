@@ -61,6 +61,12 @@ public class MonotonicSubTextLabels extends SubTextLabels implements
 		monotonicLabels.defineTrie(phraseList);
 	}
 
+	/** Define a trie, optionally matching phrases regardless of case */
+	@Override
+	public void defineTrie(List<String> phraseList,boolean ignoreCase){
+		monotonicLabels.defineTrie(phraseList,ignoreCase);
+	}
+
 	@Override
 	public void setProperty(Token token,String prop,String value){
 		monotonicLabels.setProperty(token,prop,value);
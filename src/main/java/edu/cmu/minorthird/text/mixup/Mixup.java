@@ -2,9 +2,12 @@ package edu.cmu.minorthird.text.mixup;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -71,6 +74,10 @@ import edu.cmu.minorthird.util.ProgressCounter;
  </pre>
 
  The name's an acronym for My Information eXtraction and Understanding Package.
+ <p>
+ A Mixup is not changed by matching: what is learned about a span lives only
+ as long as the call that matches it.  So one Mixup can extract from several
+ threads at once, as long as the labels it reads are not changed meanwhile.
 
  *
  * @author William Cohen
@@ -144,7 +151,14 @@ public class Mixup implements Serializable{
 	/** Extract subspans from each generated span using the mixup expression.
 	 */
 	public Iterator<Span> extract(TextLabels labels,Iterator<Span> spanLooper){
-		return expr.match(labels,spanLooper);
+		return expr.match(labels,spanLooper,true);
+	}
+
+	/** Extract subspans from one span, without reporting progress, so that
+	 * several threads can extract at once.
+	 */
+	Iterator<Span> extract(TextLabels labels,Span span){
+		return expr.match(labels,Collections.singleton(span).iterator(),false);
 	}
 
 	public String toString(){
@@ -580,10 +594,6 @@ public class Mixup implements Serializable{
 
 		public List<Prim> primList=new ArrayList<Prim>();
 
-		public boolean[] whereIMatch;
-
-		public Span whatIIndexed=null;
-
 		public int minCount;
 
 		public int maxCount; // -1 indicates infinity
@@ -644,13 +654,13 @@ public class Mixup implements Serializable{
 			}
 		}
 
-		/** Indexes where tokens match in the PrimList */
-		public void index(Span s,TextLabels labels){
-			whatIIndexed=s;
-			whereIMatch=new boolean[s.size()];
+		/** Where tokens of the span match the PrimList */
+		public boolean[] whereIMatch(Span s,TextLabels labels){
+			boolean[] whereIMatch=new boolean[s.size()];
 			for(int i=0;i<s.size();i++){
 				whereIMatch[i]=matchesPrimList(labels,s.getToken(i));
 			}
+			return whereIMatch;
 		}
 
 		/** See if this pattern matches span.subSpan(lo,len). */
@@ -662,14 +672,6 @@ public class Mixup implements Serializable{
 					return len==0||labels.hasType(span.subSpan(lo,len),type);
 				}
 			}else{
-				// check and see if this span has been indexed or not
-				//String span1 = span.asString();
-				//String span2 = "";
-				//if(whatIIndexed != null) span2 = whatIIndexed.asString();
-				//if(!span1.trim().equals(span2.trim())) index(span, labels);		    
-				if(whatIIndexed==null||!whatIIndexed.equals(span))
-					index(span,labels);
-
 				if(len>maxCount&&maxCount>=0)
 					return false;
 				if(len<minCount)
@@ -678,19 +680,15 @@ public class Mixup implements Serializable{
 				for(int i=lo;i<lo+len;i++){
 					if(i>=spanSize)
 						return false;
-					//if (!matchesPrimList(labels,span.getToken(i))) return false;
-					if(!whereIMatch[i])
+					if(!matchesPrimList(labels,span.getToken(i)))
 						return false;
 				}
 				if(leftMost&&(len<maxCount||maxCount<0)){
-					if(lo>0&&
-							/*matchesPrimList(labels,span.getToken(lo-1))*/whereIMatch[lo-1])
+					if(lo>0&&matchesPrimList(labels,span.getToken(lo-1)))
 						return false;
 				}
 				if(rightMost&&(len<maxCount||maxCount<0)){
-					if(lo+len<spanSize&&
-							/*matchesPrimList(labels,span.getToken(lo+len))*/whereIMatch[lo+
-									len])
+					if(lo+len<spanSize&&matchesPrimList(labels,span.getToken(lo+len)))
 						return false;
 				}
 				return true;
@@ -707,6 +705,144 @@ public class Mixup implements Serializable{
 		}
 	}
 
+	// the places a repPrim can match in one span, in memory linear in the span
+	private static class Placements{
+
+		private final RepeatedPrim rp;
+
+		private final int size;
+
+		private final int maxLen;
+
+		// for a token-level repPrim: whether each token matches, and how
+		// many matching tokens start at each position
+		private boolean[] whereIMatch;
+
+		private int[] run;
+
+		// for a spantype repPrim: lengths[firstAt[j]..firstAt[j+1]) start at j
+		private int[] firstAt;
+
+		private int[] lengths;
+
+		// the number of placements, as the buffers of the old matcher counted them
+		public long count=0;
+
+		public Placements(RepeatedPrim rp,TextLabels labels,Span span,int maxLen){
+			this.rp=rp;
+			this.size=span.size();
+			this.maxLen=maxLen;
+			if(rp.type!=null){
+				indexType(labels,span);
+			}else{
+				whereIMatch=rp.whereIMatch(span,labels);
+				run=new int[size+1];
+				for(int j=size-1;j>=0;j--){
+					run[j]=whereIMatch[j]?run[j+1]+1:0;
+				}
+				for(int j=0;j<=size;j++){
+					for(int k=nextLength(j,0);k>=0;k=nextLength(j,k+1)){
+						count++;
+						if(!leftOk(j)||rp.rightMost)
+							continue;
+						// every length up to the top one matches
+						count+=topLength(j)-k;
+						break;
+					}
+				}
+			}
+		}
+
+		private void indexType(TextLabels labels,Span span){
+			int[] los=new int[16];
+			int[] lens=new int[16];
+			int n=0;
+			// look up matches from the labels, eg @foo
+			for(Iterator<Span> el=labels.instanceIterator(rp.type,span.getDocumentId());el.hasNext();){
+				Span s=el.next();
+				if(span.contains(s)){
+					if(n==los.length){
+						los=Arrays.copyOf(los,2*n);
+						lens=Arrays.copyOf(lens,2*n);
+					}
+					los[n]=s.documentSpanStartIndex()-span.documentSpanStartIndex();
+					lens[n]=s.size();
+					n++;
+				}
+			}
+			if(rp.minCount==0){
+				// @foo? also matches the empty sequence
+				for(int j=0;j<=size;j++){
+					int topLen=Math.min(maxLen,size-j);
+					for(int k=rp.minCount;k<=topLen;k++){
+						if(rp.matchesSubspan(labels,span,j,k)){
+							if(n==los.length){
+								los=Arrays.copyOf(los,2*n);
+								lens=Arrays.copyOf(lens,2*n);
+							}
+							los[n]=j;
+							lens[n]=k;
+							n++;
+						}
+					}
+				}
+			}
+			count=n;
+			firstAt=new int[size+2];
+			for(int m=0;m<n;m++){
+				firstAt[los[m]+1]++;
+			}
+			for(int j=0;j<=size;j++){
+				firstAt[j+1]+=firstAt[j];
+			}
+			lengths=new int[n];
+			int[] fill=Arrays.copyOf(firstAt,size+1);
+			for(int m=0;m<n;m++){
+				lengths[fill[los[m]]++]=lens[m];
+			}
+		}
+
+		private boolean leftOk(int j){
+			return !rp.leftMost||j==0||!whereIMatch[j-1];
+		}
+
+		private int topLength(int j){
+			return Math.min(maxLen,Math.min(size-j,run[j]));
+		}
+
+		/** The smallest length of at least k that matches at j, or -1. */
+		public int nextLength(int j,int k){
+			if(lengths!=null){
+				int best=-1;
+				for(int m=firstAt[j];m<firstAt[j+1];m++){
+					if(lengths[m]>=k&&(best<0||lengths[m]<best))
+						best=lengths[m];
+				}
+				return best;
+			}
+			k=Math.max(k,rp.minCount);
+			int top=topLength(j);
+			if(k>top)
+				return -1;
+			// L and R only constrain matches shorter than maxCount; R holds
+			// for a match that ends where the run of matching tokens does
+			boolean left=leftOk(j);
+			if(left&&!rp.rightMost)
+				return k;
+			int best=-1;
+			if(left&&run[j]>=k&&run[j]<=top)
+				best=run[j];
+			if(rp.maxCount>=k&&rp.maxCount<=top&&(best<0||rp.maxCount<best))
+				best=rp.maxCount;
+			return best;
+		}
+
+		/** Whether some placement starts at j. */
+		public boolean startsAt(int j){
+			return nextLength(j,0)>=0;
+		}
+	}
+
 	//
 	// encodes a basicExpr in the BNF above
 	//
@@ -751,31 +887,31 @@ public class Mixup implements Serializable{
 			}
 		}
 
-		public Iterator<Span> match(TextLabels labels,Iterator<Span> spanLooper){
+		// progress counters share static state, so only one thread may show progress
+		public Iterator<Span> match(TextLabels labels,Iterator<Span> spanLooper,
+				boolean showProgress){
 			if(expr!=null){
-				return expr.match(labels,spanLooper);
+				return expr.match(labels,spanLooper,showProgress);
 			}else{
 				ProgressCounter pc=
-						new ProgressCounter("mixup","span");
+						showProgress?new ProgressCounter("mixup","span"):null;
 				Set<Span> accum=new TreeSet<Span>();
 				while(spanLooper.hasNext()){
-					pc.progress();
+					if(pc!=null)
+						pc.progress();
 					Span span=spanLooper.next();
 					// match(labels,accum,span,new int[repPrim.length],new int[repPrim.length],1,0,0);
 					fastMatch(labels,span,accum);
 				}
-				pc.finished();
+				if(pc!=null)
+					pc.finished();
 				return accum.iterator();
 			}
 		}
 
 		// most time taken here
 		private void fastMatch(TextLabels labels,Span span,Set<Span> accum){
-			//      log.debug("span size: " + span.size() + " - " + span.asString());
-			// there are at most span.length^2 matches of every repeated primitive
 			log.debug("matching span id/size="+span.getDocumentId()+"/"+span.size());
-			log.debug("before alloc: max/free="+Runtime.getRuntime().maxMemory()+"/"+
-					Runtime.getRuntime().freeMemory());
 			// We may overflow the int datatype if there are too many tokens in the span, in which case we should use 
 			// the largest available int as it is highly unlikely that there will *actually* be anywhere near that
 			// many matches to store.
@@ -802,19 +938,12 @@ public class Mixup implements Serializable{
 					maxRepeatedPrimMatches=maxNumberOfMatches;
 				}
 			}
-			int[] loIndexBuffer=new int[maxRepeatedPrimMatches];
-			int[] lengthBuffer=new int[maxRepeatedPrimMatches];
-			log.debug("alloc hi-lo: max/free="+Runtime.getRuntime().maxMemory()+"/"+
-					Runtime.getRuntime().freeMemory());
-			// store possible places that repPrim[i] can match
-			int[][] possibleLos=new int[repPrim.length][];
-			int[][] possibleLens=new int[repPrim.length][];
+			// the places repPrim[i] can match, indexed rather than listed
+			Placements[] placements=new Placements[repPrim.length];
 			// also record min/max length 
 			int[] minLen=new int[repPrim.length];
 			int[] maxLen=new int[repPrim.length];
 			boolean[] isAny=new boolean[repPrim.length];
-			log.debug("after alloc: max/free="+Runtime.getRuntime().maxMemory()+"/"+
-					Runtime.getRuntime().freeMemory());
 			for(int i=0;i<repPrim.length;i++){
 				// work out possible lengths for repPrim[i]
 				RepeatedPrim rp=repPrim[i];
@@ -830,67 +959,22 @@ public class Mixup implements Serializable{
 				}
 				if(!isAny[i]){
 					// find all places this matches
-					int numMatches=0;
-					if(rp.type!=null){
-						// look up matches from the labels for a spantype repPrim, eg @foo
-						for(Iterator<Span> el=
-								labels.instanceIterator(rp.type,span.getDocumentId());el
-								.hasNext();){
-							if(numMatches>=maxRepeatedPrimMatches){
-								overflowWarning(numMatches,maxRepeatedPrimMatches,span,i);
-								return;
-							}
-							Span s=el.next();
-							if(span.contains(s)){
-								if(numMatches>=maxRepeatedPrimMatches){
-									overflowWarning(numMatches,maxRepeatedPrimMatches,span,i);
-									return;
-								}
-								loIndexBuffer[numMatches]=
-										s.documentSpanStartIndex()-span.documentSpanStartIndex();
-								lengthBuffer[numMatches]=s.size();
-								numMatches++;
-							}
-						}
-					}
-					if(rp.type==null||(rp.type!=null&&rp.minCount==0)){
-						// something besides @foo or @foo?
-						// check all possible subspans
-						for(int j=0;j<=span.size();j++){
-							int topLen=Math.min(maxLen[i],span.size()-j);
-							for(int k=minLen[i];k<=topLen;k++){
-								if(numMatches>=maxRepeatedPrimMatches){
-									overflowWarning(numMatches,maxRepeatedPrimMatches,span,i);
-									return;
-								}
-								//84% time taken in matchesSubspan
-								if(rp.matchesSubspan(labels,span,j,k)){
-									loIndexBuffer[numMatches]=j;
-									lengthBuffer[numMatches]=k;
-									numMatches++;
-								}
-							}
-						}
-					}
-					// save matches from buffer into loIndices, lengths
-					possibleLos[i]=new int[numMatches];
-					possibleLens[i]=new int[numMatches];
-					for(int m=0;m<numMatches;m++){
-						possibleLos[i][m]=loIndexBuffer[m];
-						possibleLens[i][m]=lengthBuffer[m];
+					placements[i]=new Placements(rp,labels,span,maxLen[i]);
+					if(placements[i].count>maxRepeatedPrimMatches){
+						overflowWarning(placements[i].count,maxRepeatedPrimMatches,span,i);
+						return;
 					}
 				}
 			}
 			//
 			// now find a good series of loIndex/length pairs
 			//
-			int[] lows=new int[repPrim.length];
-			int[] highs=new int[repPrim.length];
-			fastMatch(labels,accum,span,lows,highs,1,0,0,possibleLos,possibleLens,
-					isAny,minLen,maxLen);
+			for(Iterator<Span> i=new SpanMatcher(span,placements,isAny,minLen,maxLen);i.hasNext();){
+				accum.add(i.next());
+			}
 		}
 
-		private void overflowWarning(int numMatches,int maxRepeatedPrimMatches,
+		private void overflowWarning(long numMatches,int maxRepeatedPrimMatches,
 				Span span,int i){
 			log.warn("mixup warning at pattern #"+(i+1)+" "+repPrim[i]+") on "+span);
 			log.warn("not enough room to store all matches: adjust Mixup.maxNumberOfMatches(PerToken)");
@@ -899,77 +983,116 @@ public class Mixup implements Serializable{
 							minMatchesToApplyConstraints);
 		}
 
-		private void fastMatch(TextLabels labels, // passed along to subroutines
-				Set<Span> accum, // accumulate matches
-				Span span, // span being matched
-				int[] lows, // lows[i] is lo index of match to repPrim[i] 
-				int[] highs, // highs[i] is high index of match to repPrim[i] 
-				int tab, // for debugging
-				int spanCursor, // index into the span being matched
-				int patternCursor, // index into the repPrim's being matched
-				int[][] possibleLos, // loIndices[i] is all places repPrim[i] might match
-				int[][] possibleLens, // lengths[i] is parallel-to-loIndices array of lengths 
-				boolean[] isAny, // true if repPrim[i] is "any"
-				int[] minLen, // min lengths of subseq matching an isAny==true repPrim[i]
-				int[] maxLen) // max lengths of subseq matching an isAny==true repPrim[i]
-		{
-			if(patternCursor==repPrim.length){
-				if(spanCursor==span.size()){
-					// a complete, successful match
-					if(DEBUG)
-						showMatch(tab,"complete",span,lows,highs,patternCursor);
-					int lo=lows[leftBracket];
-					int hi=highs[rightBracket-1];
-					accum.add(span.subSpan(lo,hi-lo));
-				}else{
-					// a deadend
-					if(DEBUG)
-						showMatch(tab,"failed",span,lows,highs,patternCursor);
-				}
-			}else{
-				// continue a partial match
-				if(isAny[patternCursor]){
-					if(patternCursor+1<repPrim.length&&!isAny[patternCursor+1]){
-						// trick to handle something like '...' followed by a specific pattern 
-						for(int i=0;i<possibleLos[patternCursor+1].length;i++){
-							int nextSpanCursor=possibleLos[patternCursor+1][i];
-							int len=nextSpanCursor-spanCursor;
-							if(len>=minLen[patternCursor]&&len<=maxLen[patternCursor]){
-								lows[patternCursor]=spanCursor;
-								highs[patternCursor]=spanCursor+len;
-								if(DEBUG)
-									showMatch(tab,"partial",span,lows,highs,patternCursor+1);
-								fastMatch(labels,accum,span,lows,highs,tab+1,spanCursor+len,
-										patternCursor+1,possibleLos,possibleLens,isAny,minLen,
-										maxLen);
-							}
-						}
-					}else{
-						int topLen=Math.min(maxLen[patternCursor],span.size()-spanCursor);
-						for(int len=minLen[patternCursor];len<=topLen;len++){
-							lows[patternCursor]=spanCursor;
-							highs[patternCursor]=spanCursor+len;
+		/**
+		 * Streams the matches of this expression in one span.  Placements of
+		 * the repPrims are tried depth first, as a recursive search would, but
+		 * with one small frame per repPrim; a match may be returned more than
+		 * once.
+		 */
+		private class SpanMatcher implements Iterator<Span>{
+
+			private final Span span;
+
+			private final Placements[] placements; // placements[i] is where repPrim[i] might match
+
+			private final boolean[] isAny; // true if repPrim[i] is "any"
+
+			private final int[] minLen; // min lengths of subseq matching an isAny==true repPrim[i]
+
+			private final int[] maxLen; // max lengths of subseq matching an isAny==true repPrim[i]
+
+			private final int[] lows; // lows[i] is lo index of match to repPrim[i]
+
+			private final int[] highs; // highs[i] is high index of match to repPrim[i]
+
+			private final int[] lens; // lens[i] is the length last tried for repPrim[i], -1 for none
+
+			private int patternCursor=0; // index into the repPrim's being matched
+
+			private Span next=null;
+
+			public SpanMatcher(Span span,Placements[] placements,boolean[] isAny,
+					int[] minLen,int[] maxLen){
+				this.span=span;
+				this.placements=placements;
+				this.isAny=isAny;
+				this.minLen=minLen;
+				this.maxLen=maxLen;
+				lows=new int[repPrim.length];
+				highs=new int[repPrim.length];
+				lens=new int[repPrim.length+1];
+				lens[0]=-1;
+				next=findNext();
+			}
+
+			@Override
+			public boolean hasNext(){
+				return next!=null;
+			}
+
+			@Override
+			public Span next(){
+				if(next==null)
+					throw new NoSuchElementException();
+				Span result=next;
+				next=findNext();
+				return result;
+			}
+
+			@Override
+			public void remove(){
+				throw new UnsupportedOperationException();
+			}
+
+			private Span findNext(){
+				while(patternCursor>=0){
+					if(patternCursor==repPrim.length){
+						patternCursor--;
+						if(highs[repPrim.length-1]==span.size()){
+							// a complete, successful match
 							if(DEBUG)
-								showMatch(tab,"partial",span,lows,highs,patternCursor+1);
-							fastMatch(labels,accum,span,lows,highs,tab+1,spanCursor+len,
-									patternCursor+1,possibleLos,possibleLens,isAny,minLen,maxLen);
+								showMatch(repPrim.length,"complete",span,lows,highs,repPrim.length);
+							int lo=lows[leftBracket];
+							int hi=highs[rightBracket-1];
+							return span.subSpan(lo,hi-lo);
 						}
+						// a deadend
+						if(DEBUG)
+							showMatch(repPrim.length,"failed",span,lows,highs,repPrim.length);
+					}else if(advance(patternCursor)){
+						if(DEBUG)
+							showMatch(patternCursor,"partial",span,lows,highs,patternCursor+1);
+						lens[++patternCursor]=-1;
+					}else{
+						patternCursor--;
 					}
-				}else{
-					int topLen=span.size()-spanCursor;
-					for(int i=0;i<possibleLos[patternCursor].length;i++){
-						if(possibleLos[patternCursor][i]==spanCursor&&
-								possibleLens[patternCursor][i]<=topLen){
-							int len=possibleLens[patternCursor][i];
-							lows[patternCursor]=spanCursor;
-							highs[patternCursor]=spanCursor+len;
-							if(DEBUG)
-								showMatch(tab,"partial",span,lows,highs,patternCursor+1);
-							fastMatch(labels,accum,span,lows,highs,tab+1,spanCursor+len,
-									patternCursor+1,possibleLos,possibleLens,isAny,minLen,maxLen);
-						}
+				}
+				return null;
+			}
+
+			// moves repPrim[p] to its next placement after the last one tried
+			private boolean advance(int p){
+				int spanCursor=p==0?0:highs[p-1];
+				int len;
+				if(isAny[p]){
+					len=lens[p]<0?minLen[p]:lens[p]+1;
+					int topLen=Math.min(maxLen[p],span.size()-spanCursor);
+					if(p+1<repPrim.length&&!isAny[p+1]){
+						// trick to handle something like '...' followed by a specific pattern 
+						while(len<=topLen&&!placements[p+1].startsAt(spanCursor+len))
+							len++;
 					}
+					if(len>topLen)
+						return false;
+				}else{
+					len=placements[p].nextLength(spanCursor,lens[p]+1);
+					if(len<0)
+						return false;
 				}
+				lens[p]=len;
+				lows[p]=spanCursor;
+				highs[p]=spanCursor+len;
+				return true;
 			}
 		}
 
@@ -1052,11 +1175,13 @@ public class Mixup implements Serializable{
 			this.op=op;
 		}
 
-		public Iterator<Span> match(TextLabels labels,Iterator<Span> spanIt){
+		public Iterator<Span> match(TextLabels labels,Iterator<Span> spanIt,
+				boolean showProgress){
 			if(expr2==null){
-				return expr1.match(labels,spanIt);
+				return expr1.match(labels,spanIt,showProgress);
 			}else if("&&".equals(op)){
-				return expr2.match(labels,expr1.match(labels,spanIt));
+				return expr2.match(labels,expr1.match(labels,spanIt,showProgress),
+						showProgress);
 			}else{
 				if(!"||".equals(op))
 					throw new IllegalStateException("illegal operator '"+op+"'");
@@ -1065,8 +1190,8 @@ public class Mixup implements Serializable{
 				while(spanIt.hasNext())
 					save.add(spanIt.next());
 				// union the outputs of expr1 and expr2
-				Iterator<Span> a=expr1.match(labels,save.iterator());
-				Iterator<Span> b=expr2.match(labels,save.iterator());
+				Iterator<Span> a=expr1.match(labels,save.iterator(),showProgress);
+				Iterator<Span> b=expr2.match(labels,save.iterator(),showProgress);
 				SortedSet<Span> union=new TreeSet<Span>();
 				while(a.hasNext())
 					union.add(a.next());
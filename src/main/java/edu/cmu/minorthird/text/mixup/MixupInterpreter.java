@@ -1,6 +1,6 @@
 package edu.cmu.minorthird.text.mixup;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -9,6 +9,11 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,11 +30,30 @@ import edu.cmu.minorthird.text.TextBaseManager;
 import edu.cmu.minorthird.text.TextLabels;
 import edu.cmu.minorthird.text.TextToken;
 import edu.cmu.minorthird.text.Tokenizer;
-
+import edu.cmu.minorthird.text.Trie;
+import edu.cmu.minorthird.util.ProgressCounter;
+
+/**
+ * Executes a MixupProgram on a hierarchy of TextLabels.
+ * <p>
+ * Statements that match spans (mixup, filter, trie and regex statements) can
+ * be evaluated on several threads: see setNumThreads.  The input spans are
+ * then matched in parallel, a block at a time, while the labels are only
+ * changed on the calling thread and in the same order as with one thread, so
+ * the result is the same.
+ */
 public class MixupInterpreter{
 
 	private static Logger log=Logger.getLogger(MixupInterpreter.class);
 
+	// input spans matched, per thread, in each block
+	private static final int SPANS_PER_THREAD=16;
+
+	private int numThreads=1;
+
+	// the threads of the current eval, if numThreads>1
+	private ExecutorService pool=null;
+
 	private MixupProgram program=null;
 
 	private Map<String,MonotonicTextLabels> levelsToLabelsMap=
@@ -93,11 +117,32 @@ public class MixupInterpreter{
 
 		// If everything is in place, go ahead and evaluate the program statements on the current state.
 		Statement[] statementList=program.getStatements();
-		for(int i=0;i<statementList.length;i++){
-			this.evaluate(statementList[i]);
+		if(numThreads>1)
+			pool=Executors.newFixedThreadPool(numThreads);
+		try{
+			for(int i=0;i<statementList.length;i++){
+				this.evaluate(statementList[i]);
+			}
+		}finally{
+			if(pool!=null){
+				pool.shutdownNow();
+				pool=null;
+			}
 		}
 	}
 
+	/**
+	 * Sets the number of threads that match the input spans of a statement.
+	 * The default of 1 matches one span at a time.
+	 */
+	public void setNumThreads(int numThreads){
+		this.numThreads=numThreads;
+	}
+
+	public int getNumThreads(){
+		return numThreads;
+	}
+
 	/** Sets the MixupProgram that this interpreter will execute when the eval method is called. */
 	public void setProgram(MixupProgram p){
 		program=p;
@@ -262,12 +307,11 @@ public class MixupInterpreter{
 		Mixup mixupExpr=statement.getMixupExpr();
 		List<String> phraseList=statement.getPhraseList();
 		String regex=statement.getRegex();
-		int regexGroup=statement.getRegexGroup();
+		final int regexGroup=statement.getRegexGroup();
 
 		if("defDict".equals(keyword)){
 			if(filesToLoad.size()>0){
 				labels.defineDictionary(type,filesToLoad,ignoreCase);
-				filesToLoad.clear();
 			}else{
 				log.debug("defining dictionary of: "+wordSet);
 				labels.defineDictionary(type,wordSet);
@@ -299,9 +343,26 @@ public class MixupInterpreter{
 				throw new IllegalStateException("no type '"+startType+"' defined");
 			}
 			if(statementType==Statement.MIXUP){
-				for(Iterator<Span> i=mixupExpr.extract(labels,input);i.hasNext();){
-					Span span=i.next();
-					extendLabels(labels,span,statement);
+				if(pool==null){
+					for(Iterator<Span> i=mixupExpr.extract(labels,input);i.hasNext();){
+						Span span=i.next();
+						extendLabels(labels,span,statement);
+					}
+				}else{
+					// the matches of the whole input are the union of the matches of each span
+					SortedSet<Span> accum=new TreeSet<Span>();
+					SpanMatcher extractor=extractor(mixupExpr,labels);
+					ProgressCounter pc=new ProgressCounter("mixup","span");
+					while(input.hasNext()){
+						for(List<Span> matches:matchBlock(input,extractor)){
+							pc.progress();
+							accum.addAll(matches);
+						}
+					}
+					pc.finished();
+					for(Iterator<Span> i=accum.iterator();i.hasNext();){
+						extendLabels(labels,i.next(),statement);
+					}
 				}
 				// make sure type is declared, even if nothing happened to be defined here
 				if("defSpanType".equals(keyword)){
@@ -309,10 +370,14 @@ public class MixupInterpreter{
 				}
 			}else if(statementType==Statement.FILTER){
 				SortedSet<Span> accum=new TreeSet<Span>();
-				for(Iterator<Span> i=input;i.hasNext();){
-					Span span=i.next();
-					if(!hasExtraction(mixupExpr,labels,span)){
-						accum.add(span);
+				SpanMatcher extractor=extractor(mixupExpr,labels);
+				while(input.hasNext()){
+					List<Span> block=new ArrayList<Span>();
+					List<List<Span>> matches=matchBlock(input,extractor,block);
+					for(int j=0;j<block.size();j++){
+						if(matches.get(j).isEmpty()){
+							accum.add(block.get(j));
+						}
 					}
 				}
 				for(Iterator<Span> i=accum.iterator();i.hasNext();){
@@ -320,29 +385,49 @@ public class MixupInterpreter{
 				}
 			}else if(statementType==Statement.TRIE){
 				labels.defineTrie(phraseList);
+				final Trie trie=labels.getTrie();
+				SpanMatcher trieLookup=new SpanMatcher(){
+					@Override
+					public List<Span> match(Span span){
+						List<Span> matches=new ArrayList<Span>();
+						for(Iterator<Span> output=trie.lookup(span);output.hasNext();){
+							matches.add(output.next());
+						}
+						return matches;
+					}
+				};
 				while(input.hasNext()){
-					Span span=input.next();
-					Iterator<Span> output=labels.getTrie().lookup(span);
-					while(output.hasNext()){
-						extendLabels(labels,output.next(),statement);
+					for(List<Span> matches:matchBlock(input,trieLookup)){
+						for(Span span:matches){
+							extendLabels(labels,span,statement);
+						}
 					}
 				}
 			}else if(statementType==Statement.REGEX){
-				Pattern pattern=Pattern.compile(regex);
+				final Pattern pattern=Pattern.compile(regex);
+				SpanMatcher regexMatcher=new SpanMatcher(){
+					@Override
+					public List<Span> match(Span span){
+						List<Span> matches=new ArrayList<Span>();
+						// Don't use this method as it drops leading and trailing spaces from the document text.
+						//Matcher matcher = pattern.matcher( span.asString() );
+						Matcher matcher=pattern.matcher(span.getDocumentContents());
+						while(matcher.find()){
+							try{
+								matches.add(span.charIndexProperSubSpan(matcher.start(regexGroup),
+										matcher.end(regexGroup)));
+							}catch(IllegalArgumentException ex){
+								/* there is no subspan that is properly contained by the regex match,
+								   so don't add anything */
+							}
+						}
+						return matches;
+					}
+				};
 				while(input.hasNext()){
-					Span span=input.next();
-					// Don't use this method as it drops leading and trailing spaces from the document text.
-					//Matcher matcher = pattern.matcher( span.asString() );
-					Matcher matcher=pattern.matcher(span.getDocumentContents());
-					while(matcher.find()){
-						try{
-							Span subspan=
-									span.charIndexProperSubSpan(matcher.start(regexGroup),matcher
-											.end(regexGroup));
-							extendLabels(labels,subspan,statement);
-						}catch(IllegalArgumentException ex){
-							/* there is no subspan that is properly contained by the regex match,
-							   so don't add anything */
+					for(List<Span> matches:matchBlock(input,regexMatcher)){
+						for(Span span:matches){
+							extendLabels(labels,span,statement);
 						}
 					}
 				}
@@ -354,12 +439,75 @@ public class MixupInterpreter{
 		log.info("time: "+((end-start)/1000.0)+" sec");
 	}
 
-	// subroutine of eval - check if a mixup expression matches
-	private boolean hasExtraction(final Mixup mixupExpr,final TextLabels labels,
-			final Span span){
-		Iterator<Span> input=Collections.singleton(span).iterator();
-		Iterator<Span> output=mixupExpr.extract(labels,input);
-		return output.hasNext();
+	// what a statement finds in one input span; only reads the labels
+	private interface SpanMatcher{
+
+		public List<Span> match(Span span);
+	}
+
+	// subroutine of eval - the extractions of a mixup expression from one
+	// span, which may be run on a pool thread, so doesn't show progress
+	private static SpanMatcher extractor(final Mixup mixupExpr,
+			final TextLabels labels){
+		return new SpanMatcher(){
+			@Override
+			public List<Span> match(Span span){
+				List<Span> matches=new ArrayList<Span>();
+				for(Iterator<Span> output=mixupExpr.extract(labels,span);output.hasNext();){
+					matches.add(output.next());
+				}
+				return matches;
+			}
+		};
+	}
+
+	// subroutine of eval - match the next block of input spans, in order
+	private List<List<Span>> matchBlock(Iterator<Span> input,SpanMatcher matcher){
+		return matchBlock(input,matcher,new ArrayList<Span>());
+	}
+
+	// as above, also collecting the input spans of the block
+	private List<List<Span>> matchBlock(Iterator<Span> input,
+			final SpanMatcher matcher,List<Span> block){
+		List<List<Span>> results=new ArrayList<List<Span>>();
+		if(pool==null){
+			Span span=input.next();
+			block.add(span);
+			results.add(matcher.match(span));
+			return results;
+		}
+		List<Future<List<Span>>> futures=new ArrayList<Future<List<Span>>>();
+		while(input.hasNext()&&block.size()<numThreads*SPANS_PER_THREAD){
+			final Span span=input.next();
+			block.add(span);
+			futures.add(pool.submit(new Callable<List<Span>>(){
+				@Override
+				public List<Span> call(){
+					return matcher.match(span);
+				}
+			}));
+		}
+		for(Future<List<Span>> future:futures){
+			results.add(get(future));
+		}
+		return results;
+	}
+
+	/** Wait for a span to be matched, rethrowing whatever was thrown. */
+	private static <T> T get(Future<T> result){
+		try{
+			return result.get();
+		}catch(ExecutionException e){
+			Throwable cause=e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new IllegalStateException("error matching span: "+cause,cause);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while matching spans",e);
+		}
 	}
 
 	// subroutine of eval - label the span  
@@ -1303,6 +1303,8 @@ public class CommandLineUtil{
 
 		public boolean showTestDetails=true;
 
+		public int numThreads=1;
+
 		private String repositoryKey="";
 
 		public void splitter(String s){
@@ -1313,6 +1315,10 @@ public class CommandLineUtil{
 			this.showTestDetails=(new Boolean(bool)).booleanValue();
 		}
 
+		public void threads(String s){
+			this.numThreads=StringUtil.atoi(s);
+		}
+
 		public void test(String s){
 			this.repositoryKey=s;
 			this.labels=
@@ -1336,6 +1342,9 @@ public class CommandLineUtil{
 			new String(
 			"Specify directory or repository key of test data\n  -Note: splitter will be ignored with this option");
 
+		private String numThreadsHelp=
+			new String("number of train/test folds to run in parallel");
+
 		@Override
 		public void usage(){
 			System.out.println("train/test experimentation parameters:");
@@ -1349,6 +1358,8 @@ public class CommandLineUtil{
 					showTestDetailsHelp);
 			System.out
 			.println(" -test REPOSITORY_KEY             specify source for test data");
+			System.out.println(" [-threads N]                     "+
+					numThreadsHelp);
 			System.out
 			.println(" [-SplitterOp STRING=VALUE]       Extra options that can be defined with the splitter");
 			System.out
@@ -1396,6 +1407,14 @@ public class CommandLineUtil{
 			this.showTestDetails=flag;
 		}
 
+		public int getNumThreads(){
+			return numThreads;
+		}
+
+		public void setNumThreads(int numThreads){
+			this.numThreads=numThreads;
+		}
+
 		// help buttons
 		public String getSplitterHelp(){
 			return splitterHelp;
@@ -1408,6 +1427,10 @@ public class CommandLineUtil{
 		public String getTestFilenameHelp(){
 			return testHelp;
 		}
+
+		public String getNumThreadsHelp(){
+			return numThreadsHelp;
+		}
 	}
 
 	/** Creates a Mixup program that defines a SpanProp from a list of Span Types */
@@ -120,12 +120,14 @@ public class TrainTestClassifier extends UIMain{
 		CrossValidatedDataset cvd=null;
 		Evaluation evaluation=null;
 		if(trainTest.showTestDetails){
-			cvd=new CrossValidatedDataset(train.learner,d,trainTest.splitter);
+			cvd=new CrossValidatedDataset(train.learner,d,trainTest.splitter,false,
+					trainTest.numThreads);
 			evaluation=cvd.getEvaluation();
 			result=cvd;
 		}else{
 			cvd=null;
-			evaluation=Tester.evaluate(train.learner,d,trainTest.splitter);
+			evaluation=Tester.evaluate(train.learner,d,trainTest.splitter,
+					trainTest.numThreads);
 			result=evaluation;
 		}
 
@@ -124,7 +124,8 @@ public class TrainTestMultiClassifier extends UIMain{
 		}else{
 			cvd=null;
 			evaluation=
-					Tester.multiEvaluate(train.learner,d,trainTest.splitter,signal.cross);
+					Tester.multiEvaluate(train.learner,d,trainTest.splitter,signal.cross,
+							trainTest.numThreads);
 			result=evaluation;
 		}
 
@@ -20,8 +20,17 @@ public class IOUtil
 		try {
 			if (obj instanceof Saveable) {
 				Saveable saveObj = (Saveable)obj;
-				String defaultFormat = saveObj.getFormatNames()[0];
-				saveObj.saveAs( file, defaultFormat );
+				String[] formats = saveObj.getFormatNames();
+				// use the format whose extension the file has, if any
+				String format = formats[0];
+				for (int i=0; i<formats.length; i++) {
+					String ext = saveObj.getExtensionFor(formats[i]);
+					if (ext!=null && file.getName().endsWith(ext)) {
+						format = formats[i];
+						break;
+					}
+				}
+				saveObj.saveAs( file, format );
 				return true;
 			} else if (obj instanceof Serializable) {
 				IOUtil.saveSerialized((Serializable)obj,file);
@@ -78,6 +87,19 @@ public class IOUtil
 		}
 	}
 
+	/**
+	 * Makes a deep copy of an object by serializing it to memory and reading
+	 * it back.
+	 */
+	public static Serializable copySerialized(Serializable obj) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(obj);
+		out.close();
+		return loadSerialized(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+
 	/**
 	 * Reads a file and converts it to a String via a byte array and inputStream.available()
 	 * I'm not positive that inputStream.available() works the same under multi-threading
@@ -75,14 +75,70 @@ public class CRF implements Serializable {
      * read the parameters of the CRF from a file
      */
     public void read(String fileName) throws IOException {
+        if (isBinary(fileName)) {
+            readBinary(fileName);
+            return;
+        }
+        lambda = readText(fileName);
+    }
+    static double[] readText(String fileName) throws IOException {
         BufferedReader in=new BufferedReader(new FileReader(fileName));
         int numF = Integer.parseInt(in.readLine());
-        lambda = new double[numF];
+        double lambda[] = new double[numF];
         int pos = 0;
         String line;
         while((line=in.readLine())!=null) {
             lambda[pos++] = Double.parseDouble(line);
         }
+        in.close();
+        return lambda;
+    }
+    static final int BINARY_MAGIC = 0x43524631; // "CRF1"
+    static boolean isBinary(String fileName) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(fileName));
+        try {
+            return (in.available() >= 4) && (in.readInt() == BINARY_MAGIC);
+        } finally {
+            in.close();
+        }
+    }
+    /**
+     * write the trained parameters in binary: the magic number, the number
+     * of parameters and the parameters as big-endian doubles.
+     */
+    public void writeBinary(String fileName) throws IOException {
+        writeBinary(lambda,fileName);
+    }
+    static void writeBinary(double lambda[], String fileName) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+        out.writeInt(BINARY_MAGIC);
+        out.writeInt(lambda.length);
+        for (int i = 0; i < lambda.length; i++)
+            out.writeDouble(lambda[i]);
+        out.close();
+    }
+    /**
+     * read parameters written by writeBinary.  The file is mapped read-only
+     * and copied into the parameter array in bulk, without any parsing.
+     */
+    public void readBinary(String fileName) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileName,"r");
+        java.nio.ByteBuffer buf;
+        try {
+            buf = file.getChannel().map(java.nio.channels.FileChannel.MapMode.READ_ONLY,0,file.length());
+        } finally {
+            file.close();
+        }
+        if (buf.getInt() != BINARY_MAGIC)
+            throw new IOException(fileName + " is not a binary CRF file");
+        lambda = new double[buf.getInt()];
+        buf.asDoubleBuffer().get(lambda);
+    }
+    /**
+     * convert parameters saved by write to the binary format of writeBinary.
+     */
+    public static void convertToBinary(String textFile, String binaryFile) throws IOException {
+        writeBinary(readText(textFile),binaryFile);
     }
     protected Trainer dynamicallyLoadedTrainer() {
         if (params.trainerType.startsWith("load=")) {
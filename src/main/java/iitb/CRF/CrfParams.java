@@ -45,6 +45,21 @@ public class CrfParams extends Properties implements Serializable {
     
     public boolean reuseM = false;
     
+    /** Number of threads used to compute the gradient during training.
+     *  More than one thread implies that features are cached.
+     */
+    public int numThreads = 1;
+    
+    /** Megabytes of heap for the feature ids cached during training;
+     *  beyond it they spill to a memory-mapped file.  0 means no limit.
+     */
+    public long cacheMemory = 0;
+    
+    /** Directory of the feature cache's spill file, null for the default
+     *  temporary directory.
+     */
+    public String cacheSpillDir = null;
+    
     /** This when set to true will only allow transitions
      *  for which there is a corresponding edge feature
      */
@@ -122,6 +137,13 @@ public class CrfParams extends Properties implements Serializable {
 		    beamSize = Integer.parseInt(opts.getProperty("beamSize"));
 	    }catch(NumberFormatException nfe){}
 	}
+	if (opts.getProperty("numThreads") != null) {
+	    numThreads = Integer.parseInt(opts.getProperty("numThreads"));
+	}
+	if (opts.getProperty("cacheMemory") != null) {
+	    cacheMemory = Long.parseLong(opts.getProperty("cacheMemory"));
+	}
+	cacheSpillDir = opts.getProperty("cacheSpillDir");
     reuseM = Boolean.valueOf(opts.getProperty("reuseM","false")).booleanValue();
     onlyFeatureBasedTransitions = Boolean.valueOf(opts.getProperty("onlyFeatureTransitions","false")).booleanValue();
     }
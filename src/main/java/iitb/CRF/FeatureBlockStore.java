@@ -0,0 +1,129 @@
+/** FeatureBlockStore.java
+ *
+ * Holds the cached features of each training sequence as one packed int
+ * block.  Blocks are kept on the heap up to a memory budget; beyond it the
+ * oldest blocks are written to a memory-mapped spill file as new ones are
+ * added, and read from there, so a cache larger than the heap still costs
+ * feature generation only once.
+ *
+ * Spilled blocks are not brought back to the heap.  Training reads every
+ * sequence once per iteration in the same order, and for that order moving
+ * read blocks back in would evict each block shortly before it is read
+ * again; a fixed set of blocks on the heap serves the budget's worth of
+ * blocks from memory on every pass.
+ *
+ * Blocks are never changed once added.  The methods are synchronized so that
+ * gradient workers can share one store.
+ */
+package iitb.CRF;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class FeatureBlockStore {
+    /** ints mapped at a time from the spill file, unless a block is larger. */
+    static final int CHUNK_INTS = 1 << 24;
+    long maxHeapInts;
+    long heapInts = 0;
+    File spillDir;
+    /** every block, as a view of its heap array or of the spill file. */
+    ArrayList<IntBuffer> blocks = new ArrayList<IntBuffer>();
+    /** blocks still on the heap, oldest first. */
+    LinkedHashMap<Integer,int[]> onHeap = new LinkedHashMap<Integer,int[]>();
+    File spillPath;
+    RandomAccessFile spillFile;
+    long spillBytes = 0;
+    IntBuffer chunk;
+
+    /**
+     * @param maxHeapBytes memory for blocks on the heap, Long.MAX_VALUE for no limit.
+     * @param spillDir directory of the spill file, null for the default temporary directory.
+     */
+    public FeatureBlockStore(long maxHeapBytes, File spillDir) {
+        this.maxHeapInts = maxHeapBytes/4;
+        this.spillDir = spillDir;
+    }
+    public FeatureBlockStore() {
+        this(Long.MAX_VALUE, null);
+    }
+    public synchronized int size() {
+        return blocks.size();
+    }
+    /**
+     * Adds a block, which must not be changed afterwards.
+     * @return the index of the block.
+     */
+    public synchronized int add(int block[]) {
+        int index = blocks.size();
+        blocks.add(IntBuffer.wrap(block));
+        onHeap.put(index, block);
+        heapInts += block.length;
+        evict();
+        return index;
+    }
+    /**
+     * @return a view of the block whose position is the start of the block.
+     */
+    public synchronized IntBuffer get(int index) {
+        return blocks.get(index).duplicate();
+    }
+    /** spills the oldest blocks until the rest fit in the budget. */
+    void evict() {
+        for (Iterator<Map.Entry<Integer,int[]>> iter = onHeap.entrySet().iterator();
+        (heapInts > maxHeapInts) && iter.hasNext();) {
+            Map.Entry<Integer,int[]> entry = iter.next();
+            int block[] = entry.getValue();
+            blocks.set(entry.getKey(), spill(block));
+            heapInts -= block.length;
+            iter.remove();
+        }
+    }
+    IntBuffer spill(int block[]) {
+        try {
+            if ((chunk == null) || (chunk.remaining() < block.length)) {
+                if (spillFile == null) {
+                    spillPath = File.createTempFile("crfcache", ".bin", spillDir);
+                    spillPath.deleteOnExit();
+                    spillFile = new RandomAccessFile(spillPath, "rw");
+                }
+                long bytes = 4L*Math.max(CHUNK_INTS, block.length);
+                chunk = spillFile.getChannel().map(FileChannel.MapMode.READ_WRITE, spillBytes, bytes).asIntBuffer();
+                spillBytes += bytes;
+            }
+            int start = chunk.position();
+            chunk.put(block);
+            IntBuffer view = chunk.duplicate();
+            view.position(start);
+            view.limit(start+block.length);
+            return view.slice();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not spill the feature cache: " + e);
+        }
+    }
+    /** number of blocks that live in the spill file. */
+    public synchronized int numSpilled() {
+        return blocks.size() - onHeap.size();
+    }
+    /** drops all blocks and deletes the spill file. */
+    public synchronized void close() {
+        blocks.clear();
+        onHeap.clear();
+        heapInts = 0;
+        chunk = null;
+        if (spillFile != null) {
+            try {
+                spillFile.close();
+            } catch (IOException e) {}
+            spillPath.delete();
+            spillFile = null;
+        }
+        spillBytes = 0;
+    }
+};
@@ -9,14 +9,19 @@
  *   the values and labels of the feature seen throughout the data.  This list is a vector of
  *   variantIds.  There is hash-map from variantIds to FeatureImpl.
  *   
- *   TODO: keeping vector of featureIds implies that insertion is quadratic--- need to make this efficient.
+ *   The feature ids of each sequence, with the offsets of every segment's
+ *   features, are packed into one int block in a FeatureBlockStore, which can
+ *   keep them within a memory budget by spilling to a memory-mapped file.
  */
 package iitb.CRF;
 
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.procedure.TObjectProcedure;
 
+import java.io.File;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Hashtable;
@@ -28,30 +33,34 @@ public class FeatureGenCache implements FeatureGeneratorNested {
     private static final long serialVersionUID = 1L;
     FeatureGeneratorNested fgen;
     FeatureGenerator sfgen;
+    /** feature ids of the sequence being cached in the first scan. */
     TIntArrayList featureIds = new TIntArrayList();
-    ArrayList<int[][][]> perSegmentFeatureOffsets = new ArrayList<int[][][]>();
+    /*
+     * One block per sequence: its length, the maximum segment size m, then
+     * for each position p and segment length l+1 < m+1 the start and end of
+     * the segment's feature ids at 2+2*(p*m+l), then the feature ids.
+     */
+    FeatureBlockStore blocks = new FeatureBlockStore();
     protected boolean firstScan=true;
     int dataIndex=-1;
     int scanNum=0;
     int dataIndexStart=0;
-    static class DBKeysToIndexMap extends Hashtable<Integer,Integer> {
+    static class DBKeysToIndexMap extends TIntIntHashMap {
         /**
 		 * 
 		 */
-		private static final long serialVersionUID = -5371025071227735691L;
+		private static final long serialVersionUID = 20261017L;
 		int prevId=-1;
-        Integer pos;
+        int pos;
         public int getDataIndex(DataSequence data) {
             int id = ((KeyedDataSequence)data).getKey();
             if (prevId==id)
                 return pos;
             prevId = id;
-            pos = get(id);
-            if (pos==null) {
-                pos=-1;
-            }
+            pos = containsKey(id)?get(id):-1;
             return pos;
         }
+        public DBKeysToIndexMap() {}
         public DBKeysToIndexMap(DataIter dataIter) {
             int pos = 0;
             for (dataIter.startScan(); dataIter.hasNext();pos++) {
@@ -390,8 +399,7 @@ public class FeatureGenCache implements FeatureGeneratorNested {
         fgen = sharedCache.fgen;
         sfgen = sharedCache.sfgen;
         featureCache = sharedCache.featureCache;
-        featureIds = sharedCache.featureIds;
-        perSegmentFeatureOffsets = sharedCache.perSegmentFeatureOffsets;
+        blocks = sharedCache.blocks;
         stats = sharedCache.stats;
     }
     /**
@@ -413,6 +421,20 @@ public class FeatureGenCache implements FeatureGeneratorNested {
         alloc(fgen,edgeFeaturesXIndependent);
         cacheFeaturesOnKeys(dataIter);
     }
+    /**
+     * Limits the heap used by cached feature ids to maxHeapBytes; the least
+     * recently used sequences beyond it are spilled to a memory-mapped file
+     * in spillDir (the default temporary directory if null).  Call before
+     * the first scan.
+     */
+    public void setMemoryBudget(long maxHeapBytes, File spillDir) {
+        assert(blocks.size()==0);
+        blocks = new FeatureBlockStore(maxHeapBytes, spillDir);
+    }
+    /** deletes the spill file, if any; the cache can't be used afterwards. */
+    public void close() {
+        blocks.close();
+    }
     public void cacheFeaturesOnKeys(DataIter dataIter) {
     	setDataKeys(dataIter);
         startDataScan();
@@ -532,7 +554,8 @@ public class FeatureGenCache implements FeatureGeneratorNested {
             firstScan = false;
             // cache the last data item.
             cachePreviousDataSequence();
-            System.out.println("First scan done..distinct features "+(featureCache.featureVariants.size()+featureCache.distinctFeatures.size()));
+            System.out.println("First scan done..distinct features "+(featureCache.featureVariants.size()+featureCache.distinctFeatures.size())
+                    +((blocks.numSpilled() > 0)?(", sequences spilled to disk "+blocks.numSpilled()):""));
         }
     }
 
@@ -541,15 +564,22 @@ public class FeatureGenCache implements FeatureGeneratorNested {
      */
     private void cachePreviousDataSequence() {
         int dataLen = stats.dataLen;
-        int[][] featureOffsets[] = new int[dataLen][stats.maxSegSize][2];
+        int m = stats.maxSegSize;
+        int idStart = 2+2*dataLen*m;
+        int block[] = new int[idStart+featureIds.size()];
+        block[0] = dataLen;
+        block[1] = m;
         for (int p = 0; p < dataLen; p++) {
-            for (int l = 0; (l < stats.maxSegSize) && (p-l >= 0); l++) {
+            for (int l = 0; (l < m) && (p-l >= 0); l++) {
                 int offsets[] = stats.getStartEndOffsets(p-l-1,p);
-                featureOffsets[p][l][0] = (offsets==null)?0:offsets[0];
-                featureOffsets[p][l][1] = (offsets==null)?-1:offsets[1];
+                block[2+2*(p*m+l)] = (offsets==null)?0:idStart+offsets[0];
+                block[3+2*(p*m+l)] = (offsets==null)?-1:idStart+offsets[1];
             }
         }
-        perSegmentFeatureOffsets.add(featureOffsets);
+        for (int i = 0; i < featureIds.size(); i++)
+            block[idStart+i] = featureIds.get(i);
+        featureIds.resetQuick();
+        blocks.add(block);
     }
     protected void cacheFeature(Feature f)  {
         stats.add(f);
@@ -574,6 +604,13 @@ public class FeatureGenCache implements FeatureGeneratorNested {
         }
         stats.clear();
     }
+    /**
+     * Index of the cached features of data, the numRecord-th sequence in a
+     * scan of the training data.
+     */
+    public int getCacheIndex(DataSequence data, int numRecord) {
+        return (dbKeyToIndexMap != null)?dbKeyToIndexMap.getDataIndex(data):dataIndexStart+numRecord;
+    }
     /**
      * @param data
      * @return
@@ -586,15 +623,22 @@ public class FeatureGenCache implements FeatureGeneratorNested {
         int featureOffsetEnd;
         int edgeFeatureId = 0;
         AllFeatureCache.FeatureVector edgeFeatureIds;
+        int blockIndex = -1;
+        IntBuffer block;
         /**
          * @param data
          * @param pos
          * @param prevPos
          */
         public void init(DataSequence data, int prevPos, int pos) {
-            int[][] tfeatures[] = (int[][][]) perSegmentFeatureOffsets.get(getDataIndex(data));
-            currentFeatureOffset = tfeatures[pos][pos-prevPos-1][0];
-            featureOffsetEnd = tfeatures[pos][pos-prevPos-1][1];
+            int dataIndex = getDataIndex(data);
+            if ((dataIndex != blockIndex) || (block == null)) {
+                block = blocks.get(dataIndex);
+                blockIndex = dataIndex;
+            }
+            int offset = 2+2*(pos*block.get(1)+pos-prevPos-1);
+            currentFeatureOffset = block.get(offset);
+            featureOffsetEnd = block.get(offset+1);
             assert(featureOffsetEnd >= currentFeatureOffset);
             edgeFeatureId = -1;
             if ((prevPos >= 0) && (featureCache.edgeFeaturesXIndependent)) {
@@ -617,7 +661,7 @@ public class FeatureGenCache implements FeatureGeneratorNested {
          */
         public Feature nextFeature() {
             int featureId = (currentFeatureOffset < featureOffsetEnd)?
-                    featureIds.get(currentFeatureOffset++):edgeFeatureIds.get(edgeFeatureId--);
+                    block.get(currentFeatureOffset++):edgeFeatureIds.get(edgeFeatureId--);
                     return featureCache.get(featureId);
         }
     }
@@ -0,0 +1,103 @@
+/** ForwardBackward.java
+ *
+ * Workspace and kernels for Trainer's forward-backward pass on flat double
+ * arrays, in place of Colt matrices.  The kernels visit entries in the same
+ * order as Trainer.computeLogMi and RobustMath.Mult/logMult.
+ *
+ * The arrays grow to the longest sequence seen and are reused, so a
+ * workspace belongs to one thread; every gradient worker has its own.
+ */
+package iitb.CRF;
+
+import java.util.Arrays;
+
+class ForwardBackward {
+    int numY;
+    EdgeGenerator edgeGen;
+    /** Mi[yprev*numY+y] and Ri[y] of the current position. */
+    double Mi[], Ri[];
+    double alpha[], newAlpha[], tmp[];
+    /** beta[i*numY+y] for position i. */
+    double beta[];
+    double scale[];
+
+    ForwardBackward(int numY, EdgeGenerator edgeGen) {
+        this.numY = numY;
+        this.edgeGen = edgeGen;
+        Mi = new double[numY*numY];
+        Ri = new double[numY];
+        alpha = new double[numY];
+        newAlpha = new double[numY];
+        tmp = new double[numY];
+        beta = new double[0];
+        scale = new double[0];
+    }
+    void ensureLength(int len) {
+        if (scale.length < len) {
+            beta = new double[2*len*numY];
+            scale = new double[2*len];
+        }
+    }
+    /**
+     * Same as Trainer.computeLogMi on Mi and Ri: with reuseM, Mi is left
+     * as it is once it has been set.
+     */
+    boolean computeMi(FeatureGenerator featureGen, double lambda[], DataSequence dataSeq, int i,
+            boolean takeExp, boolean reuseM, boolean initMDone) {
+        featureGen.startScanFeaturesAt(dataSeq, i);
+        boolean setM = !(reuseM && initMDone);
+        if (setM)
+            Arrays.fill(Mi, 0);
+        else if (featureGen instanceof FeatureGenCache)
+            ((FeatureGenCache)featureGen).noEdgeFeatures();
+        Arrays.fill(Ri, 0);
+        boolean mSet = false;
+        while (featureGen.hasNext()) {
+            Feature feature = featureGen.next();
+            int f = feature.index();
+            int yp = feature.y();
+            int yprev = feature.yprev();
+            float val = feature.value();
+            if (yprev == -1) {
+                Ri[yp] = Ri[yp]+lambda[f]*val;
+            } else if (setM) {
+                Mi[yprev*numY+yp] = Mi[yprev*numY+yp]+lambda[f]*val;
+                mSet = true;
+            }
+        }
+        if (takeExp) {
+            for (int r = numY-1; r >= 0; r--) {
+                Ri[r] = Trainer.expE(Ri[r]);
+                if (setM)
+                    for (int c = numY-1; c >= 0; c--)
+                        Mi[r*numY+c] = Trainer.expE(Mi[r*numY+c]);
+            }
+        }
+        return mSet;
+    }
+    /** z = Mi*y, or its transpose, into z[zOffset..zOffset+numY). */
+    void mult(double y[], double z[], int zOffset, boolean transposeA) {
+        for (int k = 0; k < numY; k++)
+            z[zOffset+k] = z[zOffset+k]*0;
+        for (int j = 0; j < numY; j++) {
+            for (int i = (edgeGen==null)?j:edgeGen.first(j); i < numY; i = (edgeGen==null)?i+1:edgeGen.next(j,i)) {
+                if (transposeA)
+                    z[zOffset+j] = z[zOffset+j] + Mi[i*numY+j]*y[i];
+                else
+                    z[zOffset+i] = z[zOffset+i] + Mi[i*numY+j]*y[j];
+            }
+        }
+    }
+    /** the log space version of mult. */
+    void logMult(double y[], double z[], int zOffset, boolean transposeA) {
+        Arrays.fill(z, zOffset, zOffset+numY, RobustMath.LOG0);
+        for (int j = 0; j < numY; j++) {
+            for (int i = (edgeGen==null)?j:edgeGen.first(j); i < numY; i = (edgeGen==null)?i+1:edgeGen.next(j,i)) {
+                if (transposeA)
+                    z[zOffset+j] = RobustMath.logSumExp(z[zOffset+j], Mi[i*numY+j]+y[i]);
+                else
+                    z[zOffset+i] = RobustMath.logSumExp(z[zOffset+i], Mi[i*numY+j]+y[j]);
+            }
+        }
+    }
+};
@@ -9,39 +9,6 @@ import iitb.Utils.Counters;
 
 import java.io.Serializable;
 
-class EdgeGenerator implements Serializable {
-    /**
-	 * 
-	 */
-	private static final long serialVersionUID = -4872905008657745029L;
-	int offset;
-    int numOrigY;
-    int histsize;
-    EdgeGenerator(int histsize, int numOrigY) {
-	offset = 1;
-	for (int i = 0; i < histsize-1; i++)
-	    offset *= numOrigY;
-	this.numOrigY = numOrigY;
-	this.histsize = histsize;
-    }
-    int first(int destY) {
-	return destY/numOrigY;
-    }
-    int next(int destY, int currentSrcY) {
-	return currentSrcY + offset;
-    }
-    int firstY(int pos) {
-	return 0;
-    }
-    int nextY(int currentY, int pos) {
-	if ((pos >= histsize-1) || (currentY < numOrigY-1))
-	    return currentY+1;
-	if (currentY >= Math.pow(numOrigY,(pos+1)))
-	    return numOrigY*offset;
-	return currentY+1;
-    }
-};
-
 class HistoryManager implements Serializable {
     /**
 	 * 
@@ -85,6 +85,9 @@ public class MaxentTagger extends CRF {
                 Mi.viewRow(yprev).assign(normalizer);
             }
         }
+        protected boolean argmaxOnly() {
+            return beamsize == 1;
+        }
         public LabelSequence[] topKLabelSequences(DataSequence dataSeq, double[] lambda, int numLabelSeqs, boolean getScores) {
             viterbiSearch(dataSeq, lambda,false);
             int numSols = Math.min(finalSoln.numSolns(), numLabelSeqs);
@@ -6,11 +6,21 @@
 package iitb.CRF;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import riso.numerical.LBFGS;
 import cern.colt.function.tdouble.DoubleDoubleFunction;
@@ -25,7 +35,7 @@ import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
  *
  */ 
 
-public class Trainer {
+public class Trainer implements Cloneable {
     protected int numF,numY;
     protected double gradLogli[];
     double diag[];
@@ -40,6 +50,8 @@ public class Trainer {
     protected DoubleMatrix1D alpha_Y, newAlpha_Y;
     protected DoubleMatrix1D beta_Y[];
     protected DoubleMatrix1D tmp_Y;
+    /* flat arrays for sumProduct when useFlatKernel() */
+    ForwardBackward forwardBackward;
     
     static class  MultFunc implements DoubleDoubleFunction {
         public double apply(double a, double b) {return a*b;}
@@ -66,6 +78,12 @@ public class Trainer {
     
     protected FeatureGenCache featureGenCache;
     
+    /* used when params.numThreads > 1: one copy of this trainer per thread,
+     * and the labels and feature-cache index of each training sequence. */
+    protected Trainer gradientWorkers[];
+    protected ExecutorService gradientPool;
+    protected CachedSequence cachedSequences[];
+    
     protected double norm(double ar[]) {
         double v = 0;
         for (int f = 0; f < ar.length; f++)
@@ -163,8 +181,14 @@ public class Trainer {
         if (params.trainerType.equals("ll"))
             logProcessing=true;
         
-        if ((data != null) && params.miscOptions.getProperty("cache", "false").equals("true")) {
+        if (featureGenCache != null)
+            featureGenCache.close();
+        // the parallel gradient reads features from the cache, so it implies cache=true
+        if ((data != null) && (params.miscOptions.getProperty("cache", "false").equals("true") || useParallelGradient())) {
             featureGenCache = new FeatureGenCache(featureGenerator,reuseM);
+            if (params.cacheMemory > 0)
+                featureGenCache.setMemoryBudget(params.cacheMemory*1024*1024,
+                        (params.cacheSpillDir == null)?null:new File(params.cacheSpillDir));
             featureGenCache.setDataKeys(data);
             featureGenerator = featureGenCache;
         } else
@@ -195,6 +219,12 @@ public class Trainer {
         
         setInitValue(variables);
         
+        // a minimizer of our own, so several trainers can run at once
+        LBFGS.Minimizer minimizer = new LBFGS.Minimizer(numF, params.mForHessian);
+        minimizer.gtol = LBFGS.gtol;
+        minimizer.stpmin = LBFGS.stpmin;
+        minimizer.stpmax = LBFGS.stpmax;
+        try {
         do {
             if (positiveConstraint) {
                 for (int i = 0; i < variables.length; i++) {
@@ -215,7 +245,7 @@ public class Trainer {
             if ((evaluator != null) && (evaluator.evaluate() == false))
                 break;
             try	{
-                LBFGS.lbfgs (numF, params.mForHessian, variables, f, gradLogli, false, diag, iprint, params.epsForConvergence, xtol, iflag);
+                minimizer.lbfgs (numF, params.mForHessian, variables, f, gradLogli, false, diag, iprint, params.epsForConvergence, xtol, iflag);
             } catch (LBFGS.ExceptionWithIflag e)  {
                 System.err.println( "CRF: lbfgs failed.\n"+e );
                 if (e.iflag == -1) {
@@ -225,6 +255,9 @@ public class Trainer {
             }
             icall += 1;
         } while (( iflag[0] != 0) && (icall <= params.maxIters));
+        } finally {
+            shutdownGradientWorkers();
+        }
         reInit();
     }
     protected double computeFunctionGradient(double lambda[], double grad[]) {
@@ -274,6 +307,11 @@ public class Trainer {
             initMDone=false;
             if (featureGenCache != null) featureGenCache.startDataScan();
             int numRecord;
+            if ((grad != null) && (expFVals == null) && useParallelGradient()
+                    && (featureGenCache != null) && !featureGenCache.firstScan) {
+                logli += parallelSumProduct(lambda,grad);
+                numRecord = cachedSequences.length;
+            } else
             for (numRecord = 0; diter.hasNext(); numRecord++) {
                 if (params.debugLvl > 1)
                     Util.printDbg("Read next seq: " + numRecord + " logli " + logli);
@@ -306,12 +344,160 @@ public class Trainer {
         }
         return 0;
     }
+    /**
+     * True if the gradient should be computed with params.numThreads threads.
+     * Only this class is known to keep all of its per-sequence state in the
+     * fields copied by newGradientWorker, so subclasses must override 
+     * parallelGradientSupported to take part.
+     */
+    protected boolean useParallelGradient() {
+        return (params.numThreads > 1) && parallelGradientSupported();
+    }
+    protected boolean parallelGradientSupported() {
+        return getClass() == Trainer.class;
+    }
+    /**
+     * The labels of a training sequence and the index of its features in the
+     * feature cache.  This is all that sumProduct needs once the features are
+     * cached, and unlike the sequences returned by a DataIter it can be read by
+     * several threads.
+     */
+    protected static class CachedSequence implements DataSequence {
+        private static final long serialVersionUID = 1L;
+        final int labels[];
+        final int cacheIndex;
+        CachedSequence(DataSequence data, int cacheIndex) {
+            labels = new int[data.length()];
+            for (int i = 0; i < labels.length; i++)
+                labels[i] = data.y(i);
+            this.cacheIndex = cacheIndex;
+        }
+        public int length() {return labels.length;}
+        public int y(int i) {return labels[i];}
+        public Object x(int i) {return null;}
+        public void set_y(int i, int label) {
+            throw new UnsupportedOperationException("cached training labels are read-only");
+        }
+    }
+    /**
+     * Adds the log-likelihood of all training sequences to logli and their
+     * gradient to grad, with the sequences split into contiguous blocks, one
+     * per thread.  Each block is done by a copy of this trainer with its own
+     * alpha, beta and Mi matrices and gradient buffer, and the blocks are
+     * added up in order, so the result only differs from a serial scan in
+     * the order of floating point additions.
+     */
+    protected double parallelSumProduct(final double lambda[], double grad[]) throws Exception {
+        if (gradientWorkers == null) {
+            initGradientWorkers();
+        }
+        int numWorkers = gradientWorkers.length;
+        List<Future<Double>> results = new ArrayList<Future<Double>>(numWorkers);
+        for (int w = 0; w < numWorkers; w++) {
+            final Trainer worker = gradientWorkers[w];
+            final int start = (int)((long)w*cachedSequences.length/numWorkers);
+            final int end = (int)((long)(w+1)*cachedSequences.length/numWorkers);
+            results.add(gradientPool.submit(new Callable<Double>() {
+                public Double call() {
+                    return worker.sumProductRange(lambda,start,end);
+                }
+            }));
+        }
+        double logli = 0;
+        for (int w = 0; w < numWorkers; w++) {
+            try {
+                logli += results.get(w).get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception)
+                    throw (Exception)e.getCause();
+                throw (Error)e.getCause();
+            }
+            double workerGrad[] = gradientWorkers[w].gradLogli;
+            for (int f = 0; f < grad.length; f++)
+                grad[f] += workerGrad[f];
+        }
+        return logli;
+    }
+    /** Log-likelihood of cached sequences start..end-1, with their gradient left in gradLogli. */
+    protected double sumProductRange(double lambda[], int start, int end) {
+        for (int f = 0; f < gradLogli.length; f++)
+            gradLogli[f] = 0;
+        initMDone = false;
+        double logli = 0;
+        for (int r = start; r < end; r++) {
+            featureGenCache.setDataIndex(cachedSequences[r].cacheIndex);
+            logli += sumProduct(cachedSequences[r],featureGenerator,lambda,gradLogli,null,
+                    false, r, featureGenerator);
+        }
+        return logli;
+    }
+    protected void initGradientWorkers() {
+        List<CachedSequence> seqs = new ArrayList<CachedSequence>();
+        diter.startScan();
+        for (int r = 0; diter.hasNext(); r++) {
+            DataSequence data = diter.next();
+            seqs.add(new CachedSequence(data,featureGenCache.getCacheIndex(data,r)));
+        }
+        cachedSequences = seqs.toArray(new CachedSequence[seqs.size()]);
+        int numWorkers = Math.max(1,Math.min(params.numThreads,cachedSequences.length));
+        gradientWorkers = new Trainer[numWorkers];
+        for (int w = 0; w < numWorkers; w++)
+            gradientWorkers[w] = newGradientWorker();
+        gradientPool = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r,"CRF-gradient");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        if (params.debugLvl > 0) {
+            Util.printDbg("Computing gradient with "+numWorkers+" threads");
+        }
+    }
+    /**
+     * A copy of this trainer that shares the model and read-only data, but
+     * has its own matrices, gradient buffer and cursor into the feature cache.
+     */
+    protected Trainer newGradientWorker() {
+        Trainer worker;
+        try {
+            worker = (Trainer)clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e.toString());
+        }
+        worker.featureGenCache = new FeatureGenCache(featureGenCache,0);
+        worker.featureGenerator = worker.featureGenCache;
+        worker.diter = null;
+        worker.gradLogli = new double[numF];
+        worker.diag = null;
+        worker.ExpF = new double[ExpF.length];
+        worker.scale = null;
+        worker.rLogScale = null;
+        worker.beta_Y = null;
+        worker.initMatrices();
+        worker.forwardBackward = null;
+        worker.constMultiplier = worker.new MultSingle();
+        worker.gradientWorkers = null;
+        worker.gradientPool = null;
+        return worker;
+    }
+    protected void shutdownGradientWorkers() {
+        if (gradientPool != null) {
+            gradientPool.shutdown();
+        }
+        gradientPool = null;
+        gradientWorkers = null;
+        cachedSequences = null;
+    }
     protected double sumProduct(DataSequence dataSeq, FeatureGenerator featureGenerator, 
             double lambda[], double grad[], double expFVals[], boolean onlyForwardPass, int numRecord, 
             FeatureGenerator fgenForExpVals) {
         if (logProcessing) {
             return sumProductLL(dataSeq,featureGenerator,lambda,grad,expFVals,onlyForwardPass,numRecord,fgenForExpVals);
         }
+        if (useFlatKernel()) {
+            return sumProductFlat(dataSeq,featureGenerator,lambda,grad,expFVals,numRecord,fgenForExpVals);
+        }
         boolean doScaling = params.doScaling;
         alpha_Y.assign(1);
         for (int f = 0; f < lambda.length; f++)
@@ -412,6 +598,187 @@ public class Trainer {
         }
         return thisSeqLogli*instanceWt;
     }
+    /**
+     * Whether sumProduct runs on the flat arrays of a ForwardBackward
+     * workspace.  Only for this class: subclasses that override parts of the
+     * Colt version keep it.
+     */
+    protected boolean useFlatKernel() {
+        return getClass() == Trainer.class;
+    }
+    ForwardBackward forwardBackward() {
+        if ((forwardBackward == null) || (forwardBackward.numY != numY))
+            forwardBackward = new ForwardBackward(numY,edgeGen);
+        return forwardBackward;
+    }
+    /** sumProduct on flat arrays, with the same scaling. */
+    protected double sumProductFlat(DataSequence dataSeq, FeatureGenerator featureGenerator, 
+            double lambda[], double grad[], double expFVals[], int numRecord, 
+            FeatureGenerator fgenForExpVals) {
+        ForwardBackward fb = forwardBackward();
+        int len = dataSeq.length();
+        fb.ensureLength(len);
+        double Mi[] = fb.Mi, Ri[] = fb.Ri, alpha[] = fb.alpha, newAlpha[] = fb.newAlpha, tmp[] = fb.tmp;
+        double beta[] = fb.beta, scale[] = fb.scale;
+        boolean doScaling = params.doScaling;
+        Arrays.fill(alpha,1);
+        for (int f = 0; f < lambda.length; f++)
+            ExpF[f] = 0;
+        
+        float instanceWt = (instanceWts!=null)?instanceWts[numRecord]:1;
+        // compute beta values in a backward scan.
+        // also scale beta-values to 1 to avoid numerical problems.
+        scale[len-1] = (doScaling)?numY:1;
+        Arrays.fill(beta,(len-1)*numY,len*numY,1.0/scale[len-1]);
+        for (int i = len-1; i > 0; i--) {
+            initMDone = fb.computeMi(featureGenerator,lambda,dataSeq,i,true,reuseM,initMDone);
+            for (int y = 0; y < numY; y++)
+                tmp[y] = beta[i*numY+y]*Ri[y];
+            fb.mult(tmp,beta,(i-1)*numY,false);
+            
+            // need to scale the beta-s to avoid overflow
+            double sum = 0;
+            for (int y = 0; y < numY; y++)
+                sum += beta[(i-1)*numY+y];
+            scale[i-1] = doScaling?sum:1;
+            if ((scale[i-1] < 1) && (scale[i-1] > -1))
+                scale[i-1] = 1;
+            double multiplicator = 1.0/scale[i-1];
+            for (int y = 0; y < numY; y++)
+                beta[(i-1)*numY+y] *= multiplicator;
+        }
+        
+        double thisSeqLogli = 0;
+        for (int i = 0; i < len; i++) {
+            initMDone = fb.computeMi(featureGenerator,lambda,dataSeq,i,true,reuseM,initMDone);
+            if (i > 0) {
+                System.arraycopy(alpha,0,tmp,0,numY);
+                fb.mult(tmp,newAlpha,0,true);
+                for (int y = 0; y < numY; y++)
+                    newAlpha[y] *= Ri[y];
+            } else {
+                System.arraycopy(Ri,0,newAlpha,0,numY);
+            }
+            if ((grad !=null) || (expFVals!=null)) {
+                fgenForExpVals.startScanFeaturesAt(dataSeq, i);
+                while (fgenForExpVals.hasNext()) { 
+                    Feature feature = fgenForExpVals.next();
+                    int f = feature.index();
+                    int yp = feature.y();
+                    int yprev = feature.yprev();
+                    float val = feature.value();
+                    if ((grad != null) && (dataSeq.y(i) == yp) && (((i-1 >= 0) && (yprev == dataSeq.y(i-1))) || (yprev < 0))) {
+                        grad[f] += instanceWt*val;
+                        thisSeqLogli += val*lambda[f];
+                    }
+                    if (yprev < 0) {
+                        ExpF[f] += newAlpha[yp]*val*beta[i*numY+yp];
+                    } else {
+                        ExpF[f] += alpha[yprev]*Ri[yp]*Mi[yprev*numY+yp]*val*beta[i*numY+yp];
+                    }
+                }
+            }
+            // now scale the alpha-s to avoid overflow problems.
+            double multiplicator = 1.0/scale[i];
+            for (int y = 0; y < numY; y++)
+                alpha[y] = newAlpha[y]*multiplicator;
+            
+            if (params.debugLvl > 2) {
+                System.out.println("Alpha-i " + Arrays.toString(alpha));
+                System.out.println("Ri " + Arrays.toString(Ri));
+                System.out.println("Mi " + Arrays.toString(Mi));
+            }
+        }
+        double Zx = 0;
+        for (int y = 0; y < numY; y++)
+            Zx += alpha[y];
+        thisSeqLogli -= log(Zx);
+        // correct for the fact that alpha-s were scaled.
+        for (int i = 0; i < len; i++) {
+            thisSeqLogli -= log(scale[i]);
+        }
+        if (grad != null) {
+            for (int f = 0; f < grad.length; f++)
+                grad[f] -= instanceWt*ExpF[f]/Zx;
+        }
+        if (expFVals!=null) {
+            for (int f = 0; f < lambda.length; f++) {
+                expFVals[f] += ExpF[f]/Zx;
+            }
+        }
+        if (params.debugLvl > 1) {
+            System.out.println("Sequence "  + thisSeqLogli + " log(Zx) " + Math.log(Zx) + " Zx " + Zx);
+        }
+        return thisSeqLogli*instanceWt;
+    }
+    /** sumProductInner, with its computeBetaArray, on flat arrays in log space. */
+    protected double sumProductInnerFlat(DataSequence dataSeq, FeatureGenerator featureGenerator, double lambda[], 
+            double grad[], boolean onlyForwardPass, FeatureGenerator fgenForExpVals) {
+        ForwardBackward fb = forwardBackward();
+        int len = dataSeq.length();
+        fb.ensureLength(len);
+        double Mi[] = fb.Mi, Ri[] = fb.Ri, alpha[] = fb.alpha, newAlpha[] = fb.newAlpha, tmp[] = fb.tmp;
+        double beta[] = fb.beta;
+        if (!onlyForwardPass) {
+            Arrays.fill(beta,(len-1)*numY,len*numY,0);
+            for (int i = len-1; i > 0; i--) {
+                initMDone = fb.computeMi(featureGenerator,lambda,dataSeq,i,false,reuseM,initMDone) || initMDone;
+                for (int y = 0; y < numY; y++)
+                    tmp[y] = beta[i*numY+y]+Ri[y];
+                fb.logMult(tmp,beta,(i-1)*numY,false);
+            }
+        }
+        Arrays.fill(alpha,0);
+        double thisSeqLogli = 0;
+        for (int i = 0; i < len; i++) {
+            initMDone = fb.computeMi(featureGenerator,lambda,dataSeq,i,false,reuseM,initMDone) || initMDone;
+            if (i > 0) {
+                System.arraycopy(alpha,0,tmp,0,numY);
+                fb.logMult(tmp,newAlpha,0,true);
+                for (int y = 0; y < numY; y++)
+                    newAlpha[y] += Ri[y];
+            } else {
+                System.arraycopy(Ri,0,newAlpha,0,numY);
+            }
+            if (fgenForExpVals != null) {
+                fgenForExpVals.startScanFeaturesAt(dataSeq, i);
+                while (fgenForExpVals.hasNext()) { 
+                    Feature feature = fgenForExpVals.next();
+                    int f = feature.index();
+                    int yp = feature.y();
+                    int yprev = feature.yprev();
+                    float val = feature.value();
+                    if ((grad != null) && (dataSeq.y(i) == yp) && (((i-1 >= 0) && (yprev == dataSeq.y(i-1))) || (yprev < 0))) {
+                        grad[f] += val;
+                        thisSeqLogli += val*lambda[f];
+                        if (params.debugLvl > 2) {
+                            System.out.println("Feature fired " + f + " " + feature);
+                        } 
+                    }
+                    if (Math.abs(val) < Double.MIN_VALUE) continue;
+                    if (val < 0) {
+                        System.out.println("ERROR: Cannot process negative feature values in log domains: " 
+                                + "either disable the '-trainer=ll' flag or ensure feature values are not -ve");
+                        continue;
+                    }
+                    if (yprev < 0) {
+                        ExpF[f] = RobustMath.logSumExp(ExpF[f], newAlpha[yp] + RobustMath.log(val) + beta[i*numY+yp]);
+                    } else {
+                        ExpF[f] = RobustMath.logSumExp(ExpF[f], alpha[yprev]+Ri[yp]+Mi[yprev*numY+yp]+RobustMath.log(val)+beta[i*numY+yp]);
+                    }
+                }
+            }
+            System.arraycopy(newAlpha,0,alpha,0,numY);
+            
+            if (params.debugLvl > 2) {
+                System.out.println("Alpha-i " + Arrays.toString(alpha));
+                System.out.println("Ri " + Arrays.toString(Ri));
+                System.out.println("Mi " + Arrays.toString(Mi));
+            }
+        }
+        lZx = RobustMath.logSumExp(alpha);
+        return thisSeqLogli;
+    }
     static void computeLogMi(FeatureGenerator featureGen, double lambda[], 
             DoubleMatrix2D Mi_YY,
             DoubleMatrix1D Ri_Y, boolean takeExp) {
@@ -546,8 +913,11 @@ public class Trainer {
         if ((instanceWt != 1) && (grad != null)) {
         	gradThisInstance = new double[grad.length];
         }
-        double thisSeqLogli = sumProductInner(dataSeq,featureGenerator,lambda,gradThisInstance
-                ,onlyForwardPass, numRecord, ((grad != null)||(expFVals!=null))?fgenForExpVals:null);
+        double thisSeqLogli = useFlatKernel()
+                ? sumProductInnerFlat(dataSeq,featureGenerator,lambda,gradThisInstance
+                        ,onlyForwardPass, ((grad != null)||(expFVals!=null))?fgenForExpVals:null)
+                : sumProductInner(dataSeq,featureGenerator,lambda,gradThisInstance
+                        ,onlyForwardPass, numRecord, ((grad != null)||(expFVals!=null))?fgenForExpVals:null);
         
         thisSeqLogli -= lZx;
         
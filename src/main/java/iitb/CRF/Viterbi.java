@@ -112,6 +112,15 @@ public class Viterbi implements Serializable {
     protected Entry finalSoln;
     protected DoubleMatrix2D Mi;
     protected DoubleMatrix1D Ri;
+    /*
+     * For the argmax path: the best score of a label sequence ending at
+     * position i with label y is at i*numY+y, and the label at i-1 it came
+     * from (or -1) is at the same place in argmaxPrev.  Both grow to the
+     * longest sequence seen and are reused, so a Viterbi should be used by
+     * one thread at a time; get one per thread from CRF.getViterbi.
+     */
+    protected float argmaxScores[];
+    protected int argmaxPrev[];
 
     void allocateScratch(int numY) {
         Mi = new DenseDoubleMatrix2D(numY,numY);
@@ -213,7 +222,18 @@ public class Viterbi implements Serializable {
     protected void setSegment(DataSequence dataSeq, int prevPos, int pos, int label) {
         dataSeq.set_y(pos, label);
     }
+    /**
+     * With a beam of one, each position and label needs only its best score
+     * and the label it came from, so bestLabelSequence can skip the Entry
+     * and Soln objects.  Subclasses that build solutions or assign labels
+     * differently keep the general search.
+     */
+    protected boolean argmaxOnly() {
+        return (beamsize == 1) && (getClass() == Viterbi.class);
+    }
     public double bestLabelSequence(DataSequence dataSeq, double lambda[]) {
+        if (argmaxOnly())
+            return argmaxLabelSequence(dataSeq, lambda);
         double corrScore = viterbiSearch(dataSeq, lambda,false);
         if(model.params.debugLvl > 1)
             System.out.println("Score of best sequence "+finalSoln.get(0).score + " corrScore " + corrScore);
@@ -226,6 +246,69 @@ public class Viterbi implements Serializable {
         return finalSoln.get(0).score;
     }
     
+    /**
+     * Same labels and score as viterbiSearch followed by assignLabels with a
+     * beam of one, ties included, but kept in argmaxScores and argmaxPrev.
+     * finalSoln is left alone, so getBestSoln does not see the result.
+     */
+    protected double argmaxLabelSequence(DataSequence dataSeq, double lambda[]) {
+        int numY = model.numY;
+        int len = dataSeq.length();
+        if (Mi == null)
+            allocateScratch(numY);
+        if ((argmaxScores == null) || (argmaxScores.length < len*numY)) {
+            argmaxScores = new float[len*numY];
+            argmaxPrev = new int[len*numY];
+        }
+        double corrScore = 0;
+        for (int i = 0; i < len; i++) {
+            computeLogMi(dataSeq,i,1,lambda);
+            int base = i*numY;
+            for (int yi = 0; yi < numY; yi++) {
+                argmaxScores[base+yi] = -1*Float.MAX_VALUE;
+                argmaxPrev[base+yi] = -1;
+            }
+            for (int yi = model.edgeGen.firstY(i); yi < numY; yi = model.edgeGen.nextY(yi,i)) {
+                float best = argmaxScores[base+yi];
+                if (i > 0) {
+                    for (int yp = model.edgeGen.first(yi); yp < numY; yp = model.edgeGen.next(yi,yp)) {
+                        // narrowed to float as viterbiSearch does, so ties break the same
+                        double val = Mi.get(yp,yi)+Ri.get(yi);
+                        float score = argmaxScores[base-numY+yp] + (float)val;
+                        if (score >= best) {
+                            best = score;
+                            argmaxPrev[base+yi] = yp;
+                        }
+                    }
+                } else {
+                    float score = (float)Ri.get(yi);
+                    if (score >= best)
+                        best = score;
+                }
+                argmaxScores[base+yi] = best;
+            }
+            if (model.params.debugLvl > 1)
+                corrScore += (Ri.get(dataSeq.y(i)) + ((i > 0)?Mi.get(dataSeq.y(i-1),dataSeq.y(i)):0));
+        }
+        int y = -1;
+        float bestScore = -1*Float.MAX_VALUE;
+        for (int yi = 0; (len > 0) && (yi < numY); yi++) {
+            float score = argmaxScores[(len-1)*numY+yi];
+            if (score >= bestScore) {
+                bestScore = score;
+                y = yi;
+            }
+        }
+        if(model.params.debugLvl > 1)
+            System.out.println("Score of best sequence "+bestScore + " corrScore " + corrScore);
+        for (int i = len-1; (i >= 0) && (y >= 0); i--) {
+            int prev = argmaxPrev[i*numY+y];
+            setSegment(dataSeq, (prev < 0)?-1:i-1, i, y);
+            y = prev;
+        }
+        return bestScore;
+    }
+    
     protected void assignLabels(DataSequence dataSeq) {
         Soln ybest = finalSoln.get(0);
         ybest = ybest.prevSoln;
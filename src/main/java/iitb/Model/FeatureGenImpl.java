@@ -13,18 +13,27 @@ import iitb.CRF.Feature;
 import iitb.CRF.FeatureGeneratorNested;
 import iitb.CRF.SegmentDataSequence;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.StringTokenizer;
 import java.util.Vector;
 
 /**
@@ -122,10 +131,15 @@ public class FeatureGenImpl implements FeatureGeneratorNested {
 		private static final long serialVersionUID = -2268366275560581428L;
 		Hashtable<FeatureIdentifier, FeatureImpl> strToInt = new Hashtable<FeatureIdentifier, FeatureImpl>();
         FeatureIdentifier idToName[];
+        // the features of a model read in binary format, used in place of
+        // strToInt and idToName until more features are added.
+        transient FeatureTable table;
         FeatureMap(){
             featureCollectMode = true;
         }
         public int getId(FeatureImpl f) {
+            if (featureCollectMode && (table != null))
+                materialize();
             int id = getId(f.identifier());
             
             if ((id >= 0) && featureCollectMode) {
@@ -143,6 +157,8 @@ public class FeatureGenImpl implements FeatureGeneratorNested {
             return id;
         }
         private int getId(Object key) {
+            if (table != null)
+                return table.getIndex(((FeatureIdentifier)key).id);
             if (strToInt.get(key) != null) {
 //                return ((Integer)strToInt.get(key)).intValue();
                 return ((FeatureImpl)strToInt.get(key)).index();
@@ -151,6 +167,8 @@ public class FeatureGenImpl implements FeatureGeneratorNested {
         }
         public int getIndex(FeatureIdentifier fId) {return getId(fId);}
         public int add(FeatureImpl feature) {
+            if (table != null)
+                materialize();
             int newId = strToInt.size();
 //            strToInt.put(feature.identifier().clone(), new Integer(newId));
             FeatureImpl newFeature = (FeatureImpl) feature.clone();
@@ -161,6 +179,10 @@ public class FeatureGenImpl implements FeatureGeneratorNested {
         void freezeFeatures() {
             //	    System.out.println(strToInt.size());
             featureCollectMode = false;
+            if (table != null) {
+                totalFeatures = table.size();
+                return;
+            }
             idToName = new FeatureIdentifier[strToInt.size()];
             for (Enumeration<FeatureIdentifier> e = strToInt.keys() ; e.hasMoreElements() ;) {
                 //TODO: Just add immediately
@@ -179,6 +201,12 @@ public class FeatureGenImpl implements FeatureGeneratorNested {
         }
         public void write(PrintWriter out) throws IOException {
             out.println("******* Features ************");
+            if (table != null) {
+                out.println(table.size());
+                for (int i = 0; i < table.size(); i++)
+                    out.println(table.getIdentifier(i) + " " + i);
+                return;
+            }
             out.println(strToInt.size());
             for (Enumeration<FeatureIdentifier> e = strToInt.keys() ; e.hasMoreElements() ;) {
                 Object key = e.nextElement();
@@ -186,20 +214,64 @@ public class FeatureGenImpl implements FeatureGeneratorNested {
             }
         }
         public int read(BufferedReader in) throws IOException {
+            table = null;
             in.readLine();
             int len = Integer.parseInt(in.readLine());
             String line;
             for(int l = 0; (l < len) && ((line=in.readLine())!=null); l++) {
-                StringTokenizer entry = new StringTokenizer(line," ");
-                FeatureIdentifier key = new FeatureIdentifier(entry.nextToken());
-                int pos = Integer.parseInt(entry.nextToken());
+                // names may contain spaces, so the index is after the last one
+                int sep = line.lastIndexOf(' ');
+                FeatureIdentifier key = new FeatureIdentifier(line.substring(0,sep));
+                int pos = Integer.parseInt(line.substring(sep+1));
                 strToInt.put(key,new FeatureImpl(pos,key));
             }
             freezeFeatures();
             return strToInt.size();
         }
-        public FeatureIdentifier getIdentifier(int id) {return idToName[id];} 
-        public String getName(int id) {return idToName[id].toString();} 
+        public void writeBinary(DataOutputStream out) throws IOException {
+            FeatureIdentifier ids[] = new FeatureIdentifier[(table != null)?table.size():strToInt.size()];
+            if (table != null) {
+                for (int i = 0; i < ids.length; i++)
+                    ids[i] = table.getIdentifier(i);
+            } else {
+                for (Enumeration<FeatureIdentifier> e = strToInt.keys() ; e.hasMoreElements() ;) {
+                    FeatureIdentifier key = e.nextElement();
+                    ids[getId(key)] = key;
+                }
+            }
+            FeatureTable.write(out,ids);
+        }
+        /**
+         * use the table in buf, which is not copied, as the feature map.
+         */
+        public int readBinary(ByteBuffer buf) {
+            strToInt.clear();
+            idToName = null;
+            table = new FeatureTable(buf);
+            freezeFeatures();
+            return table.size();
+        }
+        /**
+         * replace the table by a hashtable, so that features can be added
+         * or the map serialized.
+         */
+        void materialize() {
+            FeatureTable t = table;
+            table = null;
+            idToName = new FeatureIdentifier[t.size()];
+            for (int i = 0; i < idToName.length; i++) {
+                FeatureIdentifier key = t.getIdentifier(i);
+                strToInt.put(key,new FeatureImpl(i,key));
+                idToName[i] = key;
+            }
+        }
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            if (table != null)
+                materialize();
+            out.defaultWriteObject();
+        }
+        public FeatureIdentifier getIdentifier(int id) {return (table != null)?table.getIdentifier(id):idToName[id];} 
+        public String getName(int id) {return getIdentifier(id).toString();} 
     };
     FeatureMap featureMap;
     static Model getModel(String modelSpecs, int numLabels) throws Exception {
@@ -447,7 +519,14 @@ public class FeatureGenImpl implements FeatureGeneratorNested {
     protected int numFeatureTypes() {
         return features.size();
     }
+    /**
+     * read the features from a file written by write or by writeBinary.
+     */
     public void read(String fileName) throws IOException {
+        if (isBinary(fileName)) {
+            readBinary(fileName);
+            return;
+        }
         BufferedReader in=new BufferedReader(new FileReader(fileName));
         if (dict != null) dict.read(in, model.numStates());
         totalFeatures = featureMap.read(in);
@@ -458,6 +537,68 @@ public class FeatureGenImpl implements FeatureGeneratorNested {
         featureMap.write(out);
         out.close();
     }
+    static final int BINARY_MAGIC = 0x46474931; // "FGI1"
+    static boolean isBinary(String fileName) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(fileName));
+        try {
+            return (in.available() >= 4) && (in.readInt() == BINARY_MAGIC);
+        } finally {
+            in.close();
+        }
+    }
+    /**
+     * write the features in the binary format: the magic number, the
+     * length of the dictionary (-1 if there is none), the dictionary and
+     * the feature table. 
+     * @see FeatureTable
+     */
+    public void writeBinary(String fileName) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+        out.writeInt(BINARY_MAGIC);
+        if (dict != null) {
+            ByteArrayOutputStream dictBytes = new ByteArrayOutputStream();
+            DataOutputStream dictOut = new DataOutputStream(dictBytes);
+            dict.write(dictOut);
+            dictOut.flush();
+            out.writeInt(dictBytes.size());
+            dictBytes.writeTo(out);
+        } else {
+            out.writeInt(-1);
+        }
+        featureMap.writeBinary(out);
+        out.close();
+    }
+    /**
+     * read features written by writeBinary.  The feature table is mapped
+     * read-only rather than read into the heap, so models load without
+     * parsing and several processes using a model share its pages.
+     */
+    public void readBinary(String fileName) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileName,"r");
+        ByteBuffer buf;
+        try {
+            buf = file.getChannel().map(FileChannel.MapMode.READ_ONLY,0,file.length());
+        } finally {
+            file.close();
+        }
+        if (buf.getInt() != BINARY_MAGIC)
+            throw new IOException(fileName + " is not a binary feature file");
+        int dictLength = buf.getInt();
+        if (dictLength >= 0) {
+            byte dictBytes[] = new byte[dictLength];
+            buf.get(dictBytes);
+            if (dict != null) dict.read(new DataInputStream(new ByteArrayInputStream(dictBytes)), model.numStates());
+        }
+        totalFeatures = featureMap.readBinary(buf);
+    }
+    /**
+     * convert features saved by write to the binary format of
+     * writeBinary; this generator must be set up as for reading textFile.
+     */
+    public void convertToBinary(String textFile, String binaryFile) throws IOException {
+        read(textFile);
+        writeBinary(binaryFile);
+    }
     public void displayModel(double featureWts[]) throws IOException {
         displayModel(featureWts,System.out);
     }
@@ -1,6 +1,5 @@
 package iitb.Model;
 import java.io.Serializable;
-import java.util.StringTokenizer;
 
 /**
  * 
@@ -21,11 +20,15 @@ public class FeatureIdentifier implements Cloneable, Serializable {
     public FeatureIdentifier(int fid, int s, Object n) {
 	init(fid,s,n);
     }
+    /**
+     * parse the form written by toString; the name may itself contain ':'.
+     */
     public FeatureIdentifier(String strRep) {
-	StringTokenizer strTok = new StringTokenizer(strRep, ":");
-	name = strTok.nextToken();
-	id = Integer.parseInt(strTok.nextToken());
-	stateId = Integer.parseInt(strTok.nextToken());
+	int stateSep = strRep.lastIndexOf(':');
+	int idSep = strRep.lastIndexOf(':',stateSep-1);
+	name = strRep.substring(0,idSep);
+	id = Integer.parseInt(strRep.substring(idSep+1,stateSep));
+	stateId = Integer.parseInt(strRep.substring(stateSep+1));
     }
     public void init(int fid, int s, Object n) {
 	name = n;
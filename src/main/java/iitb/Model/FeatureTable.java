@@ -0,0 +1,146 @@
+package iitb.Model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A read-only feature map in the binary model format written by
+ * FeatureGenImpl.writeBinary.  All of its arrays live in a single buffer,
+ * normally a read-only mapping of the model file, so loading it does no
+ * parsing and processes that map the same model share its pages.
+ * <p>
+ * The layout is a sequence of big-endian ints followed by the string table:
+ * <pre>
+ *   numFeatures, numNames, hashCapacity
+ *   ids[numFeatures]        FeatureIdentifier.id of each feature index
+ *   states[numFeatures]     FeatureIdentifier.stateId of each feature index
+ *   names[numFeatures]      position of each feature's name in the string table
+ *   slots[hashCapacity]     open addressing table from id to feature index+1
+ *   nameOffsets[numNames+1] byte offset of each name in the string table
+ *   UTF-8 bytes of the names
+ * </pre>
+ *
+ * @see FeatureGenImpl#writeBinary(String)
+ */
+public class FeatureTable {
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    private final int numFeatures;
+    private final int mask;
+    private final IntBuffer ids, states, names, slots, nameOffsets;
+    private final ByteBuffer strings;
+
+    /**
+     * @param buf a buffer positioned at the start of a table written by
+     * write(); the table is read from buf without copying.
+     */
+    public FeatureTable(ByteBuffer buf) {
+        ByteBuffer table = buf.slice();
+        IntBuffer header = table.asIntBuffer();
+        numFeatures = header.get(0);
+        int numNames = header.get(1);
+        int capacity = header.get(2);
+        mask = capacity-1;
+        int pos = 3;
+        ids = section(header,pos,numFeatures); pos += numFeatures;
+        states = section(header,pos,numFeatures); pos += numFeatures;
+        names = section(header,pos,numFeatures); pos += numFeatures;
+        slots = section(header,pos,capacity); pos += capacity;
+        nameOffsets = section(header,pos,numNames+1); pos += numNames+1;
+        table.position(4*pos);
+        table.limit(4*pos+nameOffsets.get(numNames));
+        strings = table.slice();
+    }
+    private static IntBuffer section(IntBuffer header, int start, int length) {
+        IntBuffer dup = header.duplicate();
+        dup.position(start);
+        dup.limit(start+length);
+        return dup.slice();
+    }
+    public int size() {return numFeatures;}
+    /**
+     * @return the index of the feature with identifier id, or -1 if
+     * there is no such feature.
+     */
+    public int getIndex(int id) {
+        for (int slot = hash(id) & mask;; slot = (slot+1) & mask) {
+            int entry = slots.get(slot);
+            if (entry == 0)
+                return -1;
+            if (ids.get(entry-1) == id)
+                return entry-1;
+        }
+    }
+    public String getName(int index) {
+        int name = names.get(index);
+        int start = nameOffsets.get(name);
+        byte bytes[] = new byte[nameOffsets.get(name+1)-start];
+        ByteBuffer dup = strings.duplicate();
+        dup.position(start);
+        dup.get(bytes);
+        return new String(bytes,UTF8);
+    }
+    /**
+     * @return a new identifier for the feature at index; changing it does
+     * not change the table.
+     */
+    public FeatureIdentifier getIdentifier(int index) {
+        return new FeatureIdentifier(ids.get(index),states.get(index),getName(index));
+    }
+
+    private static int hash(int id) {
+        int h = id*0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    /**
+     * Write a table for the features in idToName, where idToName[i] is the
+     * identifier of the feature with index i.
+     */
+    public static void write(DataOutputStream out, FeatureIdentifier idToName[]) throws IOException {
+        int n = idToName.length;
+        int capacity = 2;
+        while (capacity < 2*n)
+            capacity <<= 1;
+        int slots[] = new int[capacity];
+        int names[] = new int[n];
+        HashMap<String,Integer> nameIds = new HashMap<String,Integer>();
+        ArrayList<byte[]> nameBytes = new ArrayList<byte[]>();
+        for (int i = 0; i < n; i++) {
+            String name = idToName[i].getName();
+            Integer nameId = nameIds.get(name);
+            if (nameId == null) {
+                nameId = nameBytes.size();
+                nameIds.put(name,nameId);
+                nameBytes.add(name.getBytes(UTF8));
+            }
+            names[i] = nameId;
+            int slot = hash(idToName[i].id) & (capacity-1);
+            while (slots[slot] != 0)
+                slot = (slot+1) & (capacity-1);
+            slots[slot] = i+1;
+        }
+        out.writeInt(n);
+        out.writeInt(nameBytes.size());
+        out.writeInt(capacity);
+        for (int i = 0; i < n; i++)
+            out.writeInt(idToName[i].id);
+        for (int i = 0; i < n; i++)
+            out.writeInt(idToName[i].stateId);
+        for (int i = 0; i < n; i++)
+            out.writeInt(names[i]);
+        for (int i = 0; i < capacity; i++)
+            out.writeInt(slots[i]);
+        int offset = 0;
+        for (byte bytes[] : nameBytes) {
+            out.writeInt(offset);
+            offset += bytes.length;
+        }
+        out.writeInt(offset);
+        for (byte bytes[] : nameBytes)
+            out.write(bytes);
+    }
+};
@@ -120,7 +120,7 @@ public class WordsInTrain implements Serializable {
         }
         return -1;
     }
-    public Enumeration allWords() {return dictionary.keys();}
+    public Enumeration<Object> allWords() {return dictionary.keys();}
     private void addDictElem(Object x, int y) {
         HEntry index = dictionary.get(x);
         if (index == null) {
@@ -149,7 +149,7 @@ public class WordsInTrain implements Serializable {
     }
     protected void postProcess(int numStates){
         cntsArray = new int[dictionary.size()][0];
-        for (Enumeration e = dictionary.keys() ; e.hasMoreElements() ;) {
+        for (Enumeration<Object> e = dictionary.keys() ; e.hasMoreElements() ;) {
             Object key = e.nextElement();
             HEntry entry = dictionary.get(key);
             cntsArray[entry.index] = entry.stateArray;
@@ -190,7 +190,7 @@ public class WordsInTrain implements Serializable {
     }
     public void write(PrintWriter out) throws IOException {
         out.println(dictionary.size());
-        for (Enumeration e = dictionary.keys() ; e.hasMoreElements() ;) {
+        for (Enumeration<Object> e = dictionary.keys() ; e.hasMoreElements() ;) {
             Object key = e.nextElement();
             int pos = getIndex(key);
             out.print(key + " " + pos);
@@ -201,6 +201,43 @@ public class WordsInTrain implements Serializable {
             out.println("");
         }	
     }
+    /**
+     * binary form of write(PrintWriter), used by the binary model format.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(dictionary.size());
+        for (Enumeration<Object> e = dictionary.keys() ; e.hasMoreElements() ;) {
+            Object key = e.nextElement();
+            int pos = getIndex(key);
+            out.writeUTF(key.toString());
+            out.writeInt(pos);
+            int numNonZero = 0;
+            for (int s = nextStateWithWord(pos,-1); s != -1; s = nextStateWithWord(pos,s))
+                numNonZero++;
+            out.writeInt(numNonZero);
+            for (int s = nextStateWithWord(pos,-1); s != -1; s = nextStateWithWord(pos,s)) {
+                out.writeInt(s);
+                out.writeInt(getStateArray(pos)[s]);
+            }
+        }
+    }
+    public void read(DataInput in, int numStates) throws IOException {
+        int dictLen = in.readInt();
+        cntsArray = new int[dictLen][numStates];
+        for (int l = 0; l < dictLen; l++) {
+            String key = in.readUTF();
+            int pos = in.readInt();
+            HEntry hEntry = new HEntry(pos);
+            dictionary.put(key,hEntry);
+            for (int numNonZero = in.readInt(); numNonZero > 0; numNonZero--) {
+                int state = in.readInt();
+                int cnt = in.readInt();
+                getStateArray(pos)[state] = cnt;
+                hEntry.cnt += cnt;
+            }
+        }
+        setAggregateCnts(numStates);
+    }
     /*
     public Collection<String> wordSet() {
         return  dictionary.keySet();
@@ -122,18 +122,15 @@ public class LBFGS
 	  */
 	public static double[] solution_cache = null;
 
-	private static double gnorm = 0, stp1 = 0, ftol = 0, stp[] = new double[1], ys = 0, yy = 0, sq = 0, yr = 0, beta = 0, xnorm = 0;
-	private static int iter = 0, nfun = 0, point = 0, ispt = 0, iypt = 0, maxfev = 0, info[] = new int[1], bound = 0, npt = 0, cp = 0, i = 0, nfev[] = new int[1], inmc = 0, iycn = 0, iscn = 0;
-	private static boolean finish = false;
-
-	private static double[] w = null;
+	// the minimizer used by the static lbfgs method
+	private static final Minimizer shared = new Minimizer();
 
 	/** This method returns the total number of evaluations of the objective
 	  * function since the last time LBFGS was restarted. The total number of function
 	  * evaluations increases by the number of evaluations required for the
 	  * line search; the total is only increased after a successful line search.
 	  */
-	public static int nfevaluations() { return nfun; }
+	public static int nfevaluations() { return shared.nfevaluations(); }
 	
 	/** This subroutine solves the unconstrained minimization problem
 	  * <pre>
@@ -273,222 +270,345 @@ public class LBFGS
 
 	public static void lbfgs ( int n , int m , double[] x , double f , double[] g , boolean diagco , double[] diag , int[] iprint , double eps , double xtol , int[] iflag ) throws ExceptionWithIflag
 	{
-		boolean execute_entire_while_loop = false;
+		shared.gtol = gtol;
+		shared.stpmin = stpmin;
+		shared.stpmax = stpmax;
+		try
+		{
+			shared.lbfgs( n , m , x , f , g , diagco , diag , iprint , eps , xtol , iflag );
+		}
+		finally
+		{
+			gtol = shared.gtol;
+			solution_cache = shared.solution_cache;
+		}
+	}
+
+	/** An L-BFGS minimization, with all of its state kept in the object
+	  * rather than in static fields, so that separate <code>Minimizer</code>s
+	  * can run at the same time on different threads. A <code>Minimizer</code>
+	  * is driven exactly like the static <code>lbfgs</code> method, by calling
+	  * its <code>lbfgs</code> method repeatedly under the control of
+	  * <code>iflag</code>. It is not safe to share one <code>Minimizer</code>
+	  * between threads.
+	  */
+
+	public static class Minimizer
+	{
+		/** Controls the accuracy of the line search, as <code>LBFGS.gtol</code>. */
+		public double gtol = 0.9;
+
+		/** Lower bound for the step in the line search, as <code>LBFGS.stpmin</code>. */
+		public double stpmin = 1e-20;
+
+		/** Upper bound for the step in the line search, as <code>LBFGS.stpmax</code>. */
+		public double stpmax = 1e20;
+
+		/** The solution vector as it was at the end of the most recently
+		  * completed line search, as <code>LBFGS.solution_cache</code>.
+		  */
+		public double[] solution_cache = null;
+
+		private double gnorm = 0, stp1 = 0, ftol = 0, stp[] = new double[1], ys = 0, yy = 0, sq = 0, yr = 0, beta = 0, xnorm = 0;
+		private int iter = 0, nfun = 0, point = 0, ispt = 0, iypt = 0, maxfev = 0, info[] = new int[1], bound = 0, npt = 0, cp = 0, i = 0, nfev[] = new int[1], inmc = 0, iycn = 0, iscn = 0;
+		private boolean finish = false;
+
+		private double[] w = null;
+		private int n = 0, m = 0;
+
+		// correction pairs stored in w, and whether a line search is under way
+		private int pairs = 0;
+		private boolean searching = false;
+		private boolean warmStart = false;
 
-		if ( w == null || w.length != n*(2*m+1)+2*m )
+		private final Mcsrch lineSearch = new Mcsrch();
+
+		public Minimizer()
+		{
+		}
+
+		/** Create a minimizer with its work space, including the history of
+		  * <code>m</code> correction pairs, allocated for <code>n</code>
+		  * variables.
+		  */
+		public Minimizer( int n , int m )
 		{
+			this.n = n;
+			this.m = m;
 			w = new double[ n*(2*m+1)+2*m ];
 		}
 
-		if ( iflag[0] == 0 )
+		/** If set, a minimization started with <code>iflag = 0</code> keeps
+		  * the correction pairs of the previous minimization by this object,
+		  * provided <code>n</code> and <code>m</code> are unchanged. Its first
+		  * step then uses the previous approximation of the inverse Hessian
+		  * instead of a steepest descent step, which saves iterations when
+		  * re-optimizing a slightly changed objective from a nearby point.
+		  */
+		public void setWarmStart( boolean warmStart )
 		{
-			// Initialize.
+			this.warmStart = warmStart;
+		}
+
+		public boolean getWarmStart()
+		{
+			return warmStart;
+		}
 
-			solution_cache = new double[n];
-			System.arraycopy( x, 0, solution_cache, 0, n );
+		/** The number of evaluations of the objective function since the
+		  * last time this minimizer was restarted; see <code>LBFGS.nfevaluations</code>.
+		  */
+		public int nfevaluations() { return nfun; }
 
-			iter = 0;
+		/** Minimize a function; the parameters and behaviour are those of
+		  * the static <code>LBFGS.lbfgs</code>.
+		  */
+		public void lbfgs ( int n , int m , double[] x , double f , double[] g , boolean diagco , double[] diag , int[] iprint , double eps , double xtol , int[] iflag ) throws ExceptionWithIflag
+		{
+			boolean execute_entire_while_loop = false;
 
-			if ( n <= 0 || m <= 0 )
+			if ( w == null || w.length != n*(2*m+1)+2*m || n != this.n || m != this.m )
 			{
-				iflag[0]= -3;
-				throw new ExceptionWithIflag( iflag[0], "Improper input parameters  (n or m are not positive.)" );
+				w = new double[ n*(2*m+1)+2*m ];
+				pairs = 0;
+				searching = false;
 			}
+			this.n = n;
+			this.m = m;
 
-			if ( gtol <= 0.0001 )
+			if ( iflag[0] == 0 )
 			{
-				System.err.println( "LBFGS.lbfgs: gtol is less than or equal to 0.0001. It has been reset to 0.9." );
-				gtol= 0.9;
-			}
+				// Initialize.
 
-			nfun= 1;
-			point= 0;
-			finish= false;
+				solution_cache = new double[n];
+				System.arraycopy( x, 0, solution_cache, 0, n );
 
-			if ( diagco )
-			{
-				for ( i = 1 ; i <= n ; i += 1 )
+				iter = 0;
+
+				if ( n <= 0 || m <= 0 )
 				{
-					if ( diag [ i -1] <= 0 )
-					{
-						iflag[0]=-2;
-						throw new ExceptionWithIflag( iflag[0], "The "+i+"-th diagonal element of the inverse hessian approximation is not positive." );
-					}
+					iflag[0]= -3;
+					throw new ExceptionWithIflag( iflag[0], "Improper input parameters  (n or m are not positive.)" );
 				}
-			}
-			else
-			{
-				for ( i = 1 ; i <= n ; i += 1 )
+
+				if ( gtol <= 0.0001 )
 				{
-					diag [ i -1] = 1;
+					System.err.println( "LBFGS.lbfgs: gtol is less than or equal to 0.0001. It has been reset to 0.9." );
+					gtol= 0.9;
 				}
-			}
-			ispt= n+2*m;
-			iypt= ispt+n*m;
-
-			for ( i = 1 ; i <= n ; i += 1 )
-			{
-				w [ ispt + i -1] = - g [ i -1] * diag [ i -1];
-			}
-
-			gnorm = Math.sqrt ( ddot ( n , g , 0, 1 , g , 0, 1 ) );
-			stp1= 1/gnorm;
-			ftol= 0.0001; 
-			maxfev= 20;
 
-			if ( iprint [ 1 -1] >= 0 ) lb1 ( iprint , iter , nfun , gnorm , n , m , x , f , g , stp , finish );
+				nfun= 1;
+				finish= false;
 
-			execute_entire_while_loop = true;
-		}
+				// A warm start keeps the correction pairs of the previous run.
+				// If that run stopped during a line search, the oldest pair has
+				// been overwritten by the search direction.
+				int usable = searching ? Math.min( pairs , m-1 ) : pairs;
+				boolean warm = warmStart && usable > 0;
+				if ( ! warm )
+				{
+					point= 0;
+					pairs= 0;
+				}
+				searching= false;
 
-		while ( true )
-		{
-			if ( execute_entire_while_loop )
-			{
-				iter= iter+1;
-				info[0]=0;
-				bound=iter-1;
-				if ( iter != 1 )
+				if ( diagco )
 				{
-					if ( iter > m ) bound = m;
-					ys = ddot ( n , w , iypt + npt , 1 , w , ispt + npt , 1 );
-					if ( ! diagco )
+					for ( i = 1 ; i <= n ; i += 1 )
 					{
-						yy = ddot ( n , w , iypt + npt , 1 , w , iypt + npt , 1 );
-
-						for ( i = 1 ; i <= n ; i += 1 )
+						if ( diag [ i -1] <= 0 )
 						{
-							diag [ i -1] = ys / yy;
+							iflag[0]=-2;
+							throw new ExceptionWithIflag( iflag[0], "The "+i+"-th diagonal element of the inverse hessian approximation is not positive." );
 						}
 					}
-					else
+				}
+				else
+				{
+					for ( i = 1 ; i <= n ; i += 1 )
 					{
-						iflag[0]=2;
-						return;
+						diag [ i -1] = 1;
 					}
 				}
+				ispt= n+2*m;
+				iypt= ispt+n*m;
+
+				if ( warm )
+				{
+					// the next iteration uses the stored pairs, starting from
+					// the newest one at npt
+					iter = usable;
+				}
+				else
+				{
+					for ( i = 1 ; i <= n ; i += 1 )
+					{
+						w [ ispt + i -1] = - g [ i -1] * diag [ i -1];
+					}
+				}
+
+				gnorm = Math.sqrt ( ddot ( n , g , 0, 1 , g , 0, 1 ) );
+				stp1= 1/gnorm;
+				ftol= 0.0001; 
+				maxfev= 20;
+
+				if ( iprint [ 1 -1] >= 0 ) lb1 ( iprint , iter , nfun , gnorm , n , m , x , f , g , stp , finish );
+
+				execute_entire_while_loop = true;
 			}
 
-			if ( execute_entire_while_loop || iflag[0] == 2 )
+			while ( true )
 			{
-				if ( iter != 1 )
+				if ( execute_entire_while_loop )
 				{
-					if ( diagco )
+					iter= iter+1;
+					info[0]=0;
+					bound=iter-1;
+					if ( iter != 1 )
 					{
-						for ( i = 1 ; i <= n ; i += 1 )
+						if ( iter > m ) bound = m;
+						ys = ddot ( n , w , iypt + npt , 1 , w , ispt + npt , 1 );
+						if ( ! diagco )
 						{
-							if ( diag [ i -1] <= 0 )
+							yy = ddot ( n , w , iypt + npt , 1 , w , iypt + npt , 1 );
+
+							for ( i = 1 ; i <= n ; i += 1 )
 							{
-								iflag[0]=-2;
-								throw new ExceptionWithIflag( iflag[0], "The "+i+"-th diagonal element of the inverse hessian approximation is not positive." );
+								diag [ i -1] = ys / yy;
 							}
 						}
+						else
+						{
+							iflag[0]=2;
+							return;
+						}
 					}
-					cp= point;
-					if ( point == 0 ) cp = m;
-					w [ n + cp -1] = 1 / ys;
+				}
 
-					for ( i = 1 ; i <= n ; i += 1 )
+				if ( execute_entire_while_loop || iflag[0] == 2 )
+				{
+					if ( iter != 1 )
 					{
-						w [ i -1] = - g [ i -1];
-					}
+						if ( diagco )
+						{
+							for ( i = 1 ; i <= n ; i += 1 )
+							{
+								if ( diag [ i -1] <= 0 )
+								{
+									iflag[0]=-2;
+									throw new ExceptionWithIflag( iflag[0], "The "+i+"-th diagonal element of the inverse hessian approximation is not positive." );
+								}
+							}
+						}
+						cp= point;
+						if ( point == 0 ) cp = m;
+						w [ n + cp -1] = 1 / ys;
 
-					cp= point;
+						for ( i = 1 ; i <= n ; i += 1 )
+						{
+							w [ i -1] = - g [ i -1];
+						}
 
-					for ( i = 1 ; i <= bound ; i += 1 )
-					{
-						cp=cp-1;
-						if ( cp == - 1 ) cp = m - 1;
-						sq = ddot ( n , w , ispt + cp * n , 1 , w , 0 , 1 );
-						inmc=n+m+cp+1;
-						iycn=iypt+cp*n;
-						w [ inmc -1] = w [ n + cp + 1 -1] * sq;
-						daxpy ( n , - w [ inmc -1] , w , iycn , 1 , w , 0 , 1 );
-					}
+						cp= point;
 
-					for ( i = 1 ; i <= n ; i += 1 )
-					{
-						w [ i -1] = diag [ i -1] * w [ i -1];
-					}
+						for ( i = 1 ; i <= bound ; i += 1 )
+						{
+							cp=cp-1;
+							if ( cp == - 1 ) cp = m - 1;
+							sq = ddot ( n , w , ispt + cp * n , 1 , w , 0 , 1 );
+							inmc=n+m+cp+1;
+							iycn=iypt+cp*n;
+							w [ inmc -1] = w [ n + cp + 1 -1] * sq;
+							daxpy ( n , - w [ inmc -1] , w , iycn , 1 , w , 0 , 1 );
+						}
 
-					for ( i = 1 ; i <= bound ; i += 1 )
-					{
-						yr = ddot ( n , w , iypt + cp * n , 1 , w , 0 , 1 );
-						beta = w [ n + cp + 1 -1] * yr;
-						inmc=n+m+cp+1;
-						beta = w [ inmc -1] - beta;
-						iscn=ispt+cp*n;
-						daxpy ( n , beta , w , iscn , 1 , w , 0 , 1 );
-						cp=cp+1;
-						if ( cp == m ) cp = 0;
+						for ( i = 1 ; i <= n ; i += 1 )
+						{
+							w [ i -1] = diag [ i -1] * w [ i -1];
+						}
+
+						for ( i = 1 ; i <= bound ; i += 1 )
+						{
+							yr = ddot ( n , w , iypt + cp * n , 1 , w , 0 , 1 );
+							beta = w [ n + cp + 1 -1] * yr;
+							inmc=n+m+cp+1;
+							beta = w [ inmc -1] - beta;
+							iscn=ispt+cp*n;
+							daxpy ( n , beta , w , iscn , 1 , w , 0 , 1 );
+							cp=cp+1;
+							if ( cp == m ) cp = 0;
+						}
+
+						for ( i = 1 ; i <= n ; i += 1 )
+						{
+							w [ ispt + point * n + i -1] = w [ i -1];
+						}
 					}
 
+					nfev[0]=0;
+					stp[0]=1;
+					if ( iter == 1 ) stp[0] = stp1;
+					searching= true;
+
 					for ( i = 1 ; i <= n ; i += 1 )
 					{
-						w [ ispt + point * n + i -1] = w [ i -1];
+						w [ i -1] = g [ i -1];
 					}
 				}
 
-				nfev[0]=0;
-				stp[0]=1;
-				if ( iter == 1 ) stp[0] = stp1;
+				lineSearch.search ( n , x , f , g , w , ispt + point * n , stp , ftol , xtol , maxfev , info , nfev , diag , gtol , stpmin , stpmax );
 
-				for ( i = 1 ; i <= n ; i += 1 )
+				if ( info[0] == - 1 )
 				{
-					w [ i -1] = g [ i -1];
+					iflag[0]=1;
+					return;
 				}
-			}
 
-			Mcsrch.mcsrch ( n , x , f , g , w , ispt + point * n , stp , ftol , xtol , maxfev , info , nfev , diag );
+				if ( info[0] != 1 )
+				{
+					iflag[0]=-1;
+					throw new ExceptionWithIflag( iflag[0], "Line search failed. See documentation of routine mcsrch. Error return of line search: info = "+info[0]+" Possible causes: function or gradient are incorrect, or incorrect tolerances." );
+				}
 
-			if ( info[0] == - 1 )
-			{
-				iflag[0]=1;
-				return;
-			}
+				nfun= nfun + nfev[0];
+				npt=point*n;
 
-			if ( info[0] != 1 )
-			{
-				iflag[0]=-1;
-				throw new ExceptionWithIflag( iflag[0], "Line search failed. See documentation of routine mcsrch. Error return of line search: info = "+info[0]+" Possible causes: function or gradient are incorrect, or incorrect tolerances." );
-			}
-
-			nfun= nfun + nfev[0];
-			npt=point*n;
+				for ( i = 1 ; i <= n ; i += 1 )
+				{
+					w [ ispt + npt + i -1] = stp[0] * w [ ispt + npt + i -1];
+					w [ iypt + npt + i -1] = g [ i -1] - w [ i -1];
+				}
 
-			for ( i = 1 ; i <= n ; i += 1 )
-			{
-				w [ ispt + npt + i -1] = stp[0] * w [ ispt + npt + i -1];
-				w [ iypt + npt + i -1] = g [ i -1] - w [ i -1];
-			}
+				point=point+1;
+				if ( point == m ) point = 0;
+				pairs= Math.min( pairs+1 , m );
+				searching= false;
 
-			point=point+1;
-			if ( point == m ) point = 0;
+				gnorm = Math.sqrt ( ddot ( n , g , 0 , 1 , g , 0 , 1 ) );
+				xnorm = Math.sqrt ( ddot ( n , x , 0 , 1 , x , 0 , 1 ) );
+				xnorm = Math.max ( 1.0 , xnorm );
 
-			gnorm = Math.sqrt ( ddot ( n , g , 0 , 1 , g , 0 , 1 ) );
-			xnorm = Math.sqrt ( ddot ( n , x , 0 , 1 , x , 0 , 1 ) );
-			xnorm = Math.max ( 1.0 , xnorm );
+				if ( gnorm / xnorm <= eps ) finish = true;
 
-			if ( gnorm / xnorm <= eps ) finish = true;
+				if ( iprint [ 1 -1] >= 0 ) lb1 ( iprint , iter , nfun , gnorm , n , m , x , f , g , stp , finish );
 
-			if ( iprint [ 1 -1] >= 0 ) lb1 ( iprint , iter , nfun , gnorm , n , m , x , f , g , stp , finish );
+				// Cache the current solution vector. Due to the spaghetti-like
+				// nature of this code, it's not possible to quit here and return;
+				// we need to go back to the top of the loop, and eventually call
+				// mcsrch one more time -- but that will modify the solution vector.
+				// So we need to keep a copy of the solution vector as it was at
+				// the completion (info[0]==1) of the most recent line search.
 
-			// Cache the current solution vector. Due to the spaghetti-like
-			// nature of this code, it's not possible to quit here and return;
-			// we need to go back to the top of the loop, and eventually call
-			// mcsrch one more time -- but that will modify the solution vector.
-			// So we need to keep a copy of the solution vector as it was at
-			// the completion (info[0]==1) of the most recent line search.
+				System.arraycopy( x, 0, solution_cache, 0, n );
 
-			System.arraycopy( x, 0, solution_cache, 0, n );
+				if ( finish )
+				{
+					iflag[0]=0;
+						return;
+				}
 
-			if ( finish )
-			{
-				iflag[0]=0;
-					return;
+				execute_entire_while_loop = true;		// from now on, execute whole loop
 			}
-
-			execute_entire_while_loop = true;		// from now on, execute whole loop
 		}
 	}
 
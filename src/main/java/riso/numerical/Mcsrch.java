@@ -22,12 +22,19 @@ package riso.numerical;
   * This file is a translation of Fortran code written by Jorge Nocedal.
   * It is distributed as part of the RISO project. See comments in the file
   * <tt>LBFGS.java</tt> for more information.
+  *
+  * <p> The state of a line search in progress is kept in a <code>Mcsrch</code>
+  * object, so separate objects can search at the same time on different
+  * threads. The static <code>mcsrch</code> method uses a single shared
+  * object, and the line search parameters in <code>LBFGS</code>.
   */
 public class Mcsrch
 {
-	private static int infoc[] = new int[1], j = 0;
-	private static double dg = 0, dgm = 0, dginit = 0, dgtest = 0, dgx[] = new double[1], dgxm[] = new double[1], dgy[] = new double[1], dgym[] = new double[1], finit = 0, ftest1 = 0, fm = 0, fx[] = new double[1], fxm[] = new double[1], fy[] = new double[1], fym[] = new double[1], p5 = 0, p66 = 0, stx[] = new double[1], sty[] = new double[1], stmin = 0, stmax = 0, width = 0, width1 = 0, xtrapf = 0;
-	private static boolean brackt[] = new boolean[1], stage1 = false;
+	private static final Mcsrch shared = new Mcsrch();
+
+	private int infoc[] = new int[1], j = 0;
+	private double dg = 0, dgm = 0, dginit = 0, dgtest = 0, dgx[] = new double[1], dgxm[] = new double[1], dgy[] = new double[1], dgym[] = new double[1], finit = 0, ftest1 = 0, fm = 0, fx[] = new double[1], fxm[] = new double[1], fy[] = new double[1], fym[] = new double[1], p5 = 0, p66 = 0, stx[] = new double[1], sty[] = new double[1], stmin = 0, stmax = 0, width = 0, width1 = 0, xtrapf = 0;
+	private boolean brackt[] = new boolean[1], stage1 = false;
 
 	static double sqr( double x ) { return x*x; }
 	static double max3( double x, double y, double z ) { return x < y ? ( y < z ? z : y ) : ( x < z ? z : x ); }
@@ -130,6 +137,16 @@ public class Mcsrch
 	  */
 
 	public static void mcsrch ( int n , double[] x , double f , double[] g , double[] s , int is0 , double[] stp , double ftol , double xtol , int maxfev , int[] info , int[] nfev , double[] wa )
+	{
+		shared.search( n , x , f , g , s , is0 , stp , ftol , xtol , maxfev , info , nfev , wa , LBFGS.gtol , LBFGS.stpmin , LBFGS.stpmax );
+	}
+
+	/** Minimize a function along a search direction, keeping the state of the
+	  * search in this object. The parameters are those of <code>mcsrch</code>,
+	  * followed by the line search parameters <code>gtol</code>, 
+	  * <code>stpmin</code> and <code>stpmax</code> described in <code>LBFGS</code>.
+	  */
+	public void search ( int n , double[] x , double f , double[] g , double[] s , int is0 , double[] stp , double ftol , double xtol , int maxfev , int[] info , int[] nfev , double[] wa , double gtol , double stpmin , double stpmax )
 	{
 		p5 = 0.5;
 		p66 = 0.66;
@@ -138,7 +155,7 @@ public class Mcsrch
 		if ( info[0] != - 1 )
 		{
 			infoc[0] = 1;
-			if ( n <= 0 || stp[0] <= 0 || ftol < 0 || LBFGS.gtol < 0 || xtol < 0 || LBFGS.stpmin < 0 || LBFGS.stpmax < LBFGS.stpmin || maxfev <= 0 ) 
+			if ( n <= 0 || stp[0] <= 0 || ftol < 0 || gtol < 0 || xtol < 0 || stpmin < 0 || stpmax < stpmin || maxfev <= 0 ) 
 				return;
 
 			// Compute the initial gradient in the search direction
@@ -163,7 +180,7 @@ public class Mcsrch
 			nfev[0] = 0;
 			finit = f;
 			dgtest = ftol*dginit;
-			width = LBFGS.stpmax - LBFGS.stpmin;
+			width = stpmax - stpmin;
 			width1 = width/p5;
 
 			for ( j = 1 ; j <= n ; j += 1 )
@@ -207,8 +224,8 @@ public class Mcsrch
 
 				// Force the step to be within the bounds stpmax and stpmin.
 
-				stp[0] = Math.max ( stp[0] , LBFGS.stpmin );
-				stp[0] = Math.min ( stp[0] , LBFGS.stpmax );
+				stp[0] = Math.max ( stp[0] , stpmin );
+				stp[0] = Math.min ( stp[0] , stpmax );
 
 				// If an unusual termination is to occur then let
 				// stp be the lowest point obtained so far.
@@ -243,15 +260,15 @@ public class Mcsrch
 
 			if ( ( brackt[0] && ( stp[0] <= stmin || stp[0] >= stmax ) ) || infoc[0] == 0 ) info[0] = 6;
 
-			if ( stp[0] == LBFGS.stpmax && f <= ftest1 && dg <= dgtest ) info[0] = 5;
+			if ( stp[0] == stpmax && f <= ftest1 && dg <= dgtest ) info[0] = 5;
 
-			if ( stp[0] == LBFGS.stpmin && ( f > ftest1 || dg >= dgtest ) ) info[0] = 4;
+			if ( stp[0] == stpmin && ( f > ftest1 || dg >= dgtest ) ) info[0] = 4;
 
 			if ( nfev[0] >= maxfev ) info[0] = 3;
 
 			if ( brackt[0] && stmax - stmin <= xtol * stmax ) info[0] = 2;
 
-			if ( f <= ftest1 && Math.abs ( dg ) <= LBFGS.gtol * ( - dginit ) ) info[0] = 1;
+			if ( f <= ftest1 && Math.abs ( dg ) <= gtol * ( - dginit ) ) info[0] = 1;
 
 			// Check for termination.
 
@@ -260,7 +277,7 @@ public class Mcsrch
 			// In the first stage we seek a step for which the modified
 			// function has a nonpositive value and nonnegative derivative.
 
-			if ( stage1 && f <= ftest1 && dg >= Math.min ( ftol , LBFGS.gtol ) * dginit ) stage1 = false;
+			if ( stage1 && f <= ftest1 && dg >= Math.min ( ftol , gtol ) * dginit ) stage1 = false;
 
 			// A modified function is used to predict the step only if
 			// we have not obtained a step for which the modified
@@ -0,0 +1,165 @@
+package LBJ2.learn;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import LBJ2.classify.Classifier;
+import LBJ2.classify.DiscretePrimitiveStringFeature;
+import LBJ2.classify.FeatureVector;
+import LBJ2.parse.Parser;
+
+
+/**
+  * Checks that pre-extracting on several threads gives the same lexicon and
+  * example arrays as pre-extracting on one.
+ **/
+public class BatchTrainerTest extends TestCase
+{
+  public BatchTrainerTest(String name) { super(name); }
+
+
+  public void testParallelPreExtractMatchesSerial() {
+    NaiveBayes serialLearner = toyLearner();
+    BatchTrainer serial = new BatchTrainer(serialLearner, new ToyParser(3000));
+    Learner serialResult =
+      serial.preExtract(null, false, Lexicon.CountPolicy.global);
+
+    NaiveBayes parallelLearner = toyLearner();
+    BatchTrainer parallel =
+      new BatchTrainer(parallelLearner, new ToyParser(3000));
+    parallel.setThreads(4);
+    Learner parallelResult =
+      parallel.preExtract(null, false, Lexicon.CountPolicy.global);
+
+    assertEquals(serialResult.getLexicon().size(),
+                 parallelResult.getLexicon().size());
+    for (int i = 0; i < serialResult.getLexicon().size(); ++i)
+      assertEquals(serialResult.getLexicon().lookupKey(i),
+                   parallelResult.getLexicon().lookupKey(i));
+    assertEquals(serialResult.getLexicon(), parallelResult.getLexicon());
+    assertEquals(serialResult.getLabelLexicon(),
+                 parallelResult.getLabelLexicon());
+
+    Parser expected = serial.getParser();
+    Parser actual = parallel.getParser();
+    int examples = 0;
+    for (Object e = expected.next(); e != null; e = expected.next()) {
+      Object[] expectedArray = (Object[]) e;
+      Object[] actualArray = (Object[]) actual.next();
+      assertNotNull(actualArray);
+      assertTrue(Arrays.equals((int[]) expectedArray[0],
+                               (int[]) actualArray[0]));
+      assertTrue(Arrays.equals((double[]) expectedArray[1],
+                               (double[]) actualArray[1]));
+      assertTrue(Arrays.equals((int[]) expectedArray[2],
+                               (int[]) actualArray[2]));
+      assertTrue(Arrays.equals((double[]) expectedArray[3],
+                               (double[]) actualArray[3]));
+      ++examples;
+    }
+    assertNull(actual.next());
+    assertEquals(3000, examples);
+  }
+
+
+  /** A learner reading examples from {@link ToyParser}. */
+  static NaiveBayes toyLearner() {
+    NaiveBayes learner = new ToyLearner();
+    learner.setLabeler(new ToyLabeler());
+    learner.setExtractor(new ToyExtractor());
+    return learner;
+  }
+
+
+  /** Has the flag that {@link BatchTrainer} sets in generated learners. */
+  public static class ToyLearner extends NaiveBayes
+  {
+    public static boolean isTraining;
+
+    public ToyLearner() { super("LBJ2.learn.ToyLearner"); }
+  }
+
+
+  /**
+    * Returns examples of the form <code>label word word ...</code>, the same
+    * ones every time it is created or reset.
+   **/
+  static class ToyParser implements Parser
+  {
+    private int size;
+    private int position;
+    private Random random;
+
+    ToyParser(int s) {
+      size = s;
+      reset();
+    }
+
+    public Object next() {
+      if (position == size) return null;
+      ++position;
+      StringBuffer example =
+        new StringBuffer(random.nextBoolean() ? "yes" : "no");
+      int words = 1 + random.nextInt(10);
+      for (int i = 0; i < words; ++i)
+        example.append(" w" + random.nextInt(500));
+      return example.toString();
+    }
+
+    public void reset() {
+      position = 0;
+      random = new Random(0);
+    }
+
+    public void close() { }
+  }
+
+
+  /** The first word of a toy example. */
+  static class ToyLabeler extends Classifier
+  {
+    ToyLabeler() { super("LBJ2.learn.ToyLabeler"); }
+
+    public FeatureVector classify(Object o) {
+      String example = (String) o;
+      String label = example.substring(0, example.indexOf(' '));
+      return
+        new FeatureVector(
+            new DiscretePrimitiveStringFeature(containingPackage, name, "",
+                                               label));
+    }
+  }
+
+
+  /** The other words of a toy example. */
+  static class ToyExtractor extends Classifier
+  {
+    ToyExtractor() { super("LBJ2.learn.ToyExtractor"); }
+
+    public String getOutputType() { return "discrete%"; }
+
+    public FeatureVector classify(Object o) {
+      String[] words = ((String) o).split(" ");
+      FeatureVector result = new FeatureVector();
+      for (int i = 1; i < words.length; ++i)
+        result.addFeature(
+            new DiscretePrimitiveStringFeature(containingPackage, name,
+                                               words[i], "true"));
+      return result;
+    }
+  }
+
+
+  public static Test suite() {
+    return new TestSuite(BatchTrainerTest.class);
+  }
+
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,147 @@
+package LBJ2.learn;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import LBJ2.classify.Classifier;
+import LBJ2.classify.DiscretePrimitiveStringFeature;
+import LBJ2.classify.FeatureVector;
+
+
+/**
+  * Checks that classifying a batch of examples gives the same decisions as
+  * classifying them one at a time, for batches smaller and larger than
+  * {@link Learner#parallelBatchShare}.
+ **/
+public class ClassifyBatchTest extends TestCase
+{
+  public ClassifyBatchTest(String name) { super(name); }
+
+
+  public void testNaiveBayes() {
+    NaiveBayes learner = new NaiveBayes("toy");
+    learner.setLabeler(new BatchTrainerTest.ToyLabeler());
+    checkBatches(learner);
+  }
+
+
+  public void testSparseNetworkLearner() {
+    SparseNetworkLearner learner = new SparseNetworkLearner("toy");
+    learner.setLabeler(new BatchTrainerTest.ToyLabeler());
+    checkBatches(learner);
+  }
+
+
+  public void testLinearThresholdUnit() {
+    SparseAveragedPerceptron learner = new SparseAveragedPerceptron("toy");
+    learner.setLabeler(new BinaryLabeler());
+    checkBatches(learner);
+  }
+
+
+  /**
+    * Trains the learner on half the examples and compares batches with
+    * single decisions, then trains it on the rest, so that anything cached
+    * by the first batches is stale, and compares again.
+   **/
+  private void checkBatches(Learner learner) {
+    learner.setExtractor(new BatchTrainerTest.ToyExtractor());
+    Random random = new Random(0);
+    String[] examples = new String[2000];
+    for (int i = 0; i < examples.length; ++i)
+      examples[i] = example(random);
+
+    for (int i = 0; i < examples.length / 2; ++i) learner.learn(examples[i]);
+    learner.doneLearning();
+    int[] sizes = { 1, Learner.parallelBatchShare - 1,
+                    4 * Learner.parallelBatchShare + 37 };
+    for (int s = 0; s < sizes.length; ++s)
+      checkBatch(learner, batch(learner, examples, sizes[s]));
+
+    for (int i = examples.length / 2; i < examples.length; ++i)
+      learner.learn(examples[i]);
+    learner.doneLearning();
+    for (int s = 0; s < sizes.length; ++s)
+      checkBatch(learner, batch(learner, examples, sizes[s]));
+  }
+
+
+  private void checkBatch(Learner learner, Object[][] batch) {
+    FeatureVector[] results = learner.classify(batch);
+    assertEquals(batch.length, results.length);
+    for (int i = 0; i < batch.length; ++i) {
+      FeatureVector expected =
+        learner.classify((int[]) batch[i][0], (double[]) batch[i][1]);
+      assertEquals("example " + i + " of " + batch.length, expected,
+                   results[i]);
+    }
+  }
+
+
+  /**
+    * A batch of the given size drawn from the examples, with some examples
+    * that have no features, on which every label ties, and some with
+    * features the lexicon has never seen.
+   **/
+  private static Object[][] batch(Learner learner, String[] examples,
+                                  int size) {
+    Object[][] batch = new Object[size][];
+    int unseen = learner.getLexicon().size();
+    for (int i = 0; i < size; ++i) {
+      if (i % 50 == 7)
+        batch[i] = new Object[]{ new int[0], new double[0] };
+      else if (i % 50 == 23)
+        batch[i] =
+          new Object[]{ new int[]{ 0, unseen + i }, new double[]{ 1, 1 } };
+      else
+        batch[i] =
+          learner.getExampleArray(examples[(i * 7) % examples.length], false);
+    }
+    return batch;
+  }
+
+
+  /**
+    * An example of the form read by {@link BatchTrainerTest.ToyLabeler},
+    * whose words depend on its label.
+   **/
+  private static String example(Random random) {
+    int label = random.nextInt(3);
+    StringBuffer example = new StringBuffer("abc".substring(label, label + 1));
+    int words = 1 + random.nextInt(8);
+    for (int i = 0; i < words; ++i)
+      example.append(" w" + (label * 100 + random.nextInt(300)));
+    return example.toString();
+  }
+
+
+  /** Whether the first word of an example is <code>a</code>. */
+  static class BinaryLabeler extends Classifier
+  {
+    BinaryLabeler() { super("LBJ2.learn.BinaryLabeler"); }
+
+    public String[] allowableValues() { return new String[]{ "no", "yes" }; }
+
+    public FeatureVector classify(Object o) {
+      String value = ((String) o).startsWith("a ") ? "yes" : "no";
+      return
+        new FeatureVector(
+            new DiscretePrimitiveStringFeature(containingPackage, name, "",
+                                               value, valueIndexOf(value),
+                                               (short) 2));
+    }
+  }
+
+
+  public static Test suite() {
+    return new TestSuite(ClassifyBatchTest.class);
+  }
+
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,167 @@
+package LBJ2.learn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import LBJ2.classify.DiscretePrimitiveStringFeature;
+import LBJ2.classify.Feature;
+
+
+/**
+  * Checks that frozen and concurrent lexicons give the same indexes and
+  * counts as a plain one.
+ **/
+public class LexiconTest extends TestCase
+{
+  private static final int FEATURES = 1000;
+
+
+  public LexiconTest(String name) { super(name); }
+
+
+  private static Feature feature(int i) {
+    return new DiscretePrimitiveStringFeature("LBJ2.learn", "test", "f" + i,
+                                              "true");
+  }
+
+
+  public void testFrozenLookupMatchesUnfrozen() {
+    Lexicon lexicon = new Lexicon();
+    for (int i = 0; i < FEATURES; ++i) lexicon.lookup(feature(i), true);
+    int[] expected = new int[FEATURES + 10];
+    for (int i = 0; i < expected.length; ++i)
+      expected[i] = lexicon.lookup(feature(i));
+
+    lexicon.freeze();
+    assertTrue(lexicon.isFrozen());
+    for (int i = 0; i < expected.length; ++i) {
+      assertEquals(expected[i], lexicon.lookup(feature(i)));
+      assertEquals(i < FEATURES, lexicon.contains(feature(i)));
+    }
+    assertEquals(FEATURES, lexicon.lookup(feature(FEATURES + 1)));
+    assertEquals(FEATURES, lexicon.size());
+  }
+
+
+  public void testMutationThaws() {
+    Lexicon lexicon = new Lexicon();
+    for (int i = 0; i < FEATURES; ++i) lexicon.lookup(feature(i), true);
+    lexicon.freeze();
+
+    assertEquals(FEATURES, lexicon.lookup(feature(FEATURES), true));
+    assertTrue(!lexicon.isFrozen());
+    assertEquals(FEATURES, lexicon.lookup(feature(FEATURES)));
+    assertEquals(7, lexicon.lookup(feature(7)));
+
+    lexicon.freeze();
+    assertEquals(7, lexicon.lookup(feature(7), true));
+    assertTrue(!lexicon.isFrozen());
+
+    lexicon.freeze();
+    lexicon.clear();
+    assertTrue(!lexicon.isFrozen());
+    assertEquals(0, lexicon.size());
+    assertTrue(!lexicon.contains(feature(7)));
+  }
+
+
+  public void testConcurrentTraining() throws Exception {
+    final Lexicon lexicon = new Lexicon();
+    lexicon.countFeatures(Lexicon.CountPolicy.global);
+    lexicon.setConcurrent(true);
+    // some features are known before training starts
+    for (int i = 0; i < FEATURES / 2; ++i) lexicon.lookup(feature(i), true);
+
+    final int threads = 4, rounds = 5;
+    final int[][] indexes = new int[threads][FEATURES];
+    final List<Throwable> failures = new ArrayList<Throwable>();
+    Thread[] trainers = new Thread[threads];
+    for (int t = 0; t < threads; ++t) {
+      final int thread = t;
+      trainers[t] = new Thread() {
+        public void run() {
+          try {
+            List<Integer> order = new ArrayList<Integer>();
+            for (int i = 0; i < FEATURES; ++i) order.add(i);
+            Random random = new Random(thread);
+            for (int r = 0; r < rounds; ++r) {
+              Collections.shuffle(order, random);
+              for (int i : order) {
+                int index = lexicon.lookup(feature(i), true);
+                if (r > 0 && index != indexes[thread][i])
+                  throw new IllegalStateException(
+                      "feature " + i + " moved from " + indexes[thread][i]
+                      + " to " + index);
+                indexes[thread][i] = index;
+                lexicon.lookup(feature(i));
+              }
+            }
+          }
+          catch (Throwable e) {
+            synchronized (failures) { failures.add(e); }
+          }
+        }
+      };
+      trainers[t].start();
+    }
+    for (int t = 0; t < threads; ++t) trainers[t].join();
+
+    assertEquals(failures.toString(), 0, failures.size());
+    assertEquals(FEATURES, lexicon.size());
+    for (int i = 0; i < FEATURES; ++i) {
+      int index = indexes[0][i];
+      if (i < FEATURES / 2) assertEquals(i, index);
+      for (int t = 1; t < threads; ++t) assertEquals(index, indexes[t][i]);
+      assertEquals(feature(i), lexicon.lookupKey(index));
+      int expectedCount = threads * rounds + (i < FEATURES / 2 ? 1 : 0);
+      assertEquals(expectedCount, lexicon.featureCounts.get(index));
+    }
+  }
+
+
+  public void testConcurrentSurvivesSerialization() throws Exception {
+    Lexicon lexicon = new Lexicon();
+    for (int i = 0; i < FEATURES; ++i) lexicon.lookup(feature(i), true);
+    lexicon.setConcurrent(true);
+    Lexicon copy = serializedCopy(lexicon);
+    assertTrue(copy.isConcurrent());
+    assertEquals(lexicon, copy);
+    for (int i = 0; i < FEATURES; ++i)
+      assertEquals(i, copy.lookup(feature(i)));
+    assertEquals(FEATURES, copy.lookup(feature(FEATURES), true));
+
+    lexicon.setConcurrent(false);
+    assertTrue(!serializedCopy(lexicon).isConcurrent());
+  }
+
+
+  private static Lexicon serializedCopy(Lexicon lexicon) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(lexicon);
+    out.close();
+    ObjectInputStream in =
+      new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    return (Lexicon) in.readObject();
+  }
+
+
+  public static Test suite() {
+    return new TestSuite(LexiconTest.class);
+  }
+
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,193 @@
+package edu.cmu.minorthird.classify;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.Logger;
+
+import edu.cmu.minorthird.util.StringEncoder;
+
+/**
+ * Checks that the chunked, parallel DatasetLoader parses files into the same
+ * examples as parsing each line with split, as the loader used to.
+ */
+public class DatasetLoaderTest extends TestCase
+{
+  private static final String[] NAMES = {"a","bb","c%2e","d%%","e.f","g..h","i.","j%3d","",".k","l%20m"};
+  private static final String[] NUMBERS = {"1","-2","3.5","-0","0.001",".5","7.","1e-3","2.5E10","123456789012345678","0.1234567890123456","+4","NaN","-Infinity"};
+  private static final String[] SPACES = {" ","\t","  "," \t "};
+  private static final String[] NEWLINES = {"\n","\r\n","\r"};
+
+  private File file;
+
+  public DatasetLoaderTest(String name)
+  {
+    super(name);
+  }
+
+  protected void setUp() throws IOException
+  {
+    Logger.getRootLogger().removeAllAppenders();
+    org.apache.log4j.BasicConfigurator.configure();
+    Logger.getRootLogger().setLevel(org.apache.log4j.Level.WARN);
+    file = File.createTempFile("datasetloadertest",".data");
+  }
+
+  protected void tearDown()
+  {
+    file.delete();
+  }
+
+  public void testLoadFile() throws IOException
+  {
+    Random r = new Random(0);
+    List<String> lines = new ArrayList<String>();
+    for (int i=0; i<3000; i++) {
+      StringBuffer line = new StringBuffer();
+      if (r.nextInt(50)==0) line.append(pick(r,SPACES));
+      line.append("k").append(pick(r,SPACES));
+      line.append(r.nextBoolean() ? "NUL" : "sub%20"+r.nextInt(3)).append(pick(r,SPACES));
+      line.append("label").append(r.nextInt(4));
+      for (int j=r.nextInt(12); j>0; j--) {
+        line.append(pick(r,SPACES)).append(pick(r,NAMES));
+        if (r.nextBoolean()) line.append('.').append(pick(r,NAMES));
+        if (r.nextBoolean()) line.append('=').append(pick(r,NUMBERS));
+      }
+      if (r.nextInt(10)==0) line.append(pick(r,SPACES));
+      lines.add(line.toString());
+    }
+    write(lines,r);
+    List<Example> expected = new ArrayList<Example>();
+    for (int i=0; i<lines.size(); i++) {
+      expected.add(splitLine(lines.get(i),i+1));
+    }
+    check(expected,DatasetLoader.loadFile(file).iterator());
+    check(expected,DatasetLoader.loadFile(file,4).iterator());
+    check(expected,DatasetLoader.exampleIterator(file,3));
+  }
+
+  public void testLoadSVMStyle() throws IOException
+  {
+    Random r = new Random(1);
+    List<String> lines = new ArrayList<String>();
+    for (int i=0; i<2500; i++) {
+      StringBuffer line = new StringBuffer(r.nextBoolean() ? "+1" : "-1");
+      for (int j=r.nextInt(10); j>0; j--) {
+        line.append(pick(r,SPACES)).append(r.nextInt(100)).append(':').append(pick(r,NUMBERS));
+      }
+      lines.add(line.toString());
+    }
+    write(lines,r);
+    List<Example> expected = new ArrayList<Example>();
+    for (int i=0; i<lines.size(); i++) {
+      StringTokenizer st = new StringTokenizer(lines.get(i)," \t\n\r\f:");
+      double label = Double.parseDouble(st.nextToken());
+      MutableInstance instance = new MutableInstance();
+      while (st.hasMoreTokens()) {
+        instance.addNumeric(new Feature(st.nextToken()),Double.parseDouble(st.nextToken()));
+      }
+      expected.add(new Example(instance,ClassLabel.binaryLabel(label)));
+    }
+    check(expected,DatasetLoader.loadSVMStyle(file).iterator());
+    check(expected,DatasetLoader.loadSVMStyle(file,4).iterator());
+    check(expected,DatasetLoader.svmStyleExampleIterator(file,2));
+  }
+
+  public void testBadLine() throws IOException
+  {
+    List<String> lines = new ArrayList<String>();
+    for (int i=0; i<2000; i++) lines.add("k NUL pos f"+i);
+    lines.set(1500,"k NUL");
+    write(lines,new Random(2));
+    try {
+      DatasetLoader.loadFile(file,4);
+      fail("expected an error for line 1501");
+    } catch (IllegalArgumentException e) {
+      assertEquals("too few values at line#1501 of "+file.getName(),e.getMessage());
+    }
+  }
+
+  private static String pick(Random r,String[] choices)
+  {
+    return choices[r.nextInt(choices.length)];
+  }
+
+  private void write(List<String> lines,Random r) throws IOException
+  {
+    Writer out = new FileWriter(file);
+    for (int i=0; i<lines.size(); i++) {
+      out.write(lines.get(i));
+      if (i<lines.size()-1 || r.nextBoolean()) out.write(pick(r,NEWLINES));
+    }
+    out.close();
+  }
+
+  // how DatasetLoader parsed lines before it tokenized them itself
+  private Example splitLine(String line,int lineNumber)
+  {
+    StringEncoder stringCoder = new StringEncoder('%'," \t");
+    StringEncoder featureCoder = new StringEncoder('%',"=. \t");
+    String[] arr = line.split("\\s+");
+    for (int i=0; i<3; i++) arr[i] = stringCoder.decode(arr[i]);
+    MutableInstance instance = new MutableInstance(file.getName()+":"+lineNumber,"NUL".equals(arr[1])?null:arr[1]);
+    for (int i=3; i<arr.length; i++) {
+      int eqPos = arr[i].indexOf("=");
+      String name = eqPos>=0 ? arr[i].substring(0,eqPos) : arr[i];
+      String[] parts = name.split("\\.");
+      for (int j=0; j<parts.length; j++) parts[j] = featureCoder.decode(parts[j]);
+      if (eqPos>=0) instance.addNumeric(new Feature(parts),Double.parseDouble(arr[i].substring(eqPos+1)));
+      else instance.addBinary(new Feature(parts));
+    }
+    return new Example(instance,new ClassLabel(arr[2]));
+  }
+
+  private void check(List<Example> expected,Iterator<Example> actual)
+  {
+    for (Example x : expected) {
+      assertTrue(actual.hasNext());
+      Example y = actual.next();
+      assertEquals(x.getSource(),y.getSource());
+      assertEquals(x.getSubpopulationId(),y.getSubpopulationId());
+      assertEquals(x.getLabel().bestClassName(),y.getLabel().bestClassName());
+      assertEquals(x.getLabel().bestWeight(),y.getLabel().bestWeight(),0);
+      assertEquals(features(x.binaryFeatureIterator()),features(y.binaryFeatureIterator()));
+      assertEquals(features(x.numericFeatureIterator()),features(y.numericFeatureIterator()));
+      for (Iterator<Feature> i=x.numericFeatureIterator(); i.hasNext(); ) {
+        Feature f = i.next();
+        assertEquals(Double.doubleToLongBits(x.getWeight(f)),Double.doubleToLongBits(y.getWeight(f)));
+      }
+    }
+    assertTrue(!actual.hasNext());
+  }
+
+  private static List<Feature> features(Iterator<Feature> i)
+  {
+    List<Feature> list = new ArrayList<Feature>();
+    while (i.hasNext()) list.add(i.next());
+    // compressed instances list features by id, not by name
+    Collections.sort(list);
+    return list;
+  }
+
+  public static Test suite()
+  {
+    return new TestSuite(DatasetLoaderTest.class);
+  }
+
+  public static void main(String args[])
+  {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -69,6 +69,89 @@ public class FeatureTest extends TestCase
       assertTrue(factory.contains(f));
   }
 
+  /**
+   * Ids are assigned consecutively and survive serialization
+   */
+  public void testFeatureIds() throws Exception
+  {
+      FeatureFactory factory = new FeatureFactory();
+      Feature a = factory.getFeature("token.eq.hello");
+      Feature b = factory.getFeature("token.eq.world");
+      assertEquals(0, factory.getID(new Feature("token.eq.hello")));
+      assertEquals(1, factory.getID(b));
+      assertEquals(-1, factory.getID(new Feature("token.eq.missing")));
+      assertSame(a, factory.getFeature(0));
+      assertSame(b, factory.getFeature(new String[] {"token","eq","world"}));
+      assertNull(factory.getFeature(2));
+      assertEquals(1, factory.getMaxFeatureIndex());
+
+      java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+      java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(bytes);
+      out.writeObject(factory);
+      out.close();
+      java.io.ObjectInputStream in = new java.io.ObjectInputStream(
+          new java.io.ByteArrayInputStream(bytes.toByteArray()));
+      FeatureFactory copy = (FeatureFactory)in.readObject();
+      assertEquals(1, copy.getID(b));
+      assertEquals(b, copy.getFeature(1));
+      assertEquals(2, copy.getFeature("token.eq.new").getID());
+  }
+
+  /**
+   * Canonical features compare by id within a factory, by name otherwise
+   */
+  public void testFeatureEquality()
+  {
+      FeatureFactory f1 = new FeatureFactory();
+      FeatureFactory f2 = new FeatureFactory();
+      f2.getFeature("token.eq.other");
+      Feature a1 = f1.getFeature("token.eq.a");
+      Feature b1 = f1.getFeature("token.eq.b");
+      Feature a2 = f2.getFeature("token.eq.a");
+      Feature plain = new Feature("token.eq.a");
+      assertTrue(!a1.equals(b1));
+      assertTrue(a1.equals(a2));
+      assertEquals(a1.hashCode(), a2.hashCode());
+      assertTrue(plain.equals(a1));
+      assertTrue(a2.equals(plain));
+      assertEquals(plain.hashCode(), a1.hashCode());
+  }
+
+  /**
+   * Compact instances are indexed by feature id
+   */
+  public void testCompactInstance()
+  {
+      FeatureFactory factory = new FeatureFactory();
+      Feature b = factory.getFeature("token.eq.b");
+      Feature a = factory.getFeature("token.eq.a");
+      MutableInstance inst = new MutableInstance("source");
+      inst.addBinary(new Feature("token.eq.a"));
+      inst.addBinary(new Feature("token.eq.c"));
+      inst.addNumeric(new Feature("token.eq.b"), 2.5);
+      FeatureFactory.CompactInstance compact = factory.compress(inst);
+      assertEquals(3, compact.numFeatures());
+      assertEquals(1.0, compact.getWeight(a), 0.0);
+      assertEquals(2.5, compact.getWeight(new Feature("token.eq.b")), 0.0);
+      assertEquals(2.5, compact.getWeight(b.getID()), 0.0);
+      assertEquals(0.0, compact.getWeight(new Feature("token.eq.d")), 0.0);
+      // binary features first, then numeric, each in id order
+      assertEquals(a.getID(), compact.getIDAt(0));
+      assertEquals(2, compact.getIDAt(1));
+      assertEquals(b.getID(), compact.getIDAt(2));
+      assertEquals(2.5, compact.getWeightAt(2), 0.0);
+      assertEquals(2, compact.getMaxID());
+      double[] w = new double[] {10, 100, 1000};
+      assertEquals(2.5*10+100+1000, compact.dot(w), 0.0);
+      compact.axpy(2, w);
+      assertEquals(15, w[0], 0.0);
+      assertEquals(102, w[1], 0.0);
+      int n = 0;
+      for (java.util.Iterator<Feature> i = compact.featureIterator(); i.hasNext(); i.next())
+        n++;
+      assertEquals(3, n);
+  }
+
   /**
    * Creates a TestSuite from all testXXX methods
    * @return TestSuite
@@ -0,0 +1,171 @@
+package edu.cmu.minorthird.classify;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.Logger;
+
+import edu.cmu.minorthird.util.IOUtil;
+
+/**
+ * Checks that datasets saved in the binary format read back as the same
+ * examples as the text format gives.
+ */
+public class MappedDatasetTest extends TestCase
+{
+  private File text, binary;
+
+  public MappedDatasetTest(String name)
+  {
+    super(name);
+  }
+
+  protected void setUp() throws IOException
+  {
+    Logger.getRootLogger().removeAllAppenders();
+    org.apache.log4j.BasicConfigurator.configure();
+    Logger.getRootLogger().setLevel(org.apache.log4j.Level.WARN);
+    text = File.createTempFile("mappeddatasettest",".data");
+    binary = File.createTempFile("mappeddatasettest",".bdata");
+  }
+
+  protected void tearDown()
+  {
+    text.delete();
+    binary.delete();
+  }
+
+  public void testRoundTrip() throws IOException
+  {
+    Dataset original = makeDataset(new Random(0),true);
+    DatasetLoader.save(original,text);
+    Dataset expected = DatasetLoader.loadFile(text);
+    DatasetLoader.saveBinary(original,binary);
+    assertTrue(DatasetLoader.isBinary(binary));
+    assertTrue(!DatasetLoader.isBinary(text));
+    MappedDataset mapped = DatasetLoader.loadBinary(binary);
+    assertEquals(expected.size(),mapped.size());
+    check(expected,mapped.iterator());
+    check(expected,DatasetLoader.loadFile(binary).iterator());
+    Iterator<Example> j = expected.iterator();
+    for (int i=0; i<mapped.size(); i++) {
+      check(j.next(),mapped.getExample(i));
+    }
+    // the mapped dataset saves back to the same text
+    DatasetLoader.save(mapped,text);
+    check(expected,DatasetLoader.loadFile(text).iterator());
+  }
+
+  public void testDoubleValues() throws IOException
+  {
+    Dataset original = makeDataset(new Random(1),false);
+    DatasetLoader.save(original,text);
+    Dataset expected = DatasetLoader.loadFile(text);
+    DatasetLoader.saveBinary(original,binary);
+    check(expected,DatasetLoader.loadBinary(binary).iterator());
+  }
+
+  public void testSaveByExtension() throws IOException
+  {
+    Dataset original = DatasetLoader.loadFile(save(makeDataset(new Random(2),true)));
+    assertTrue(IOUtil.saveSomehow(original,binary));
+    assertTrue(DatasetLoader.isBinary(binary));
+    assertTrue(IOUtil.saveSomehow(original,text));
+    assertTrue(!DatasetLoader.isBinary(text));
+    Object restored = ((BasicDataset)original).restore(binary);
+    assertTrue(restored instanceof MappedDataset);
+    check(original,((Dataset)restored).iterator());
+  }
+
+  public void testShuffle() throws IOException
+  {
+    Dataset expected = DatasetLoader.loadFile(save(makeDataset(new Random(3),true)));
+    DatasetLoader.saveBinary(expected,binary);
+    MappedDataset mapped = DatasetLoader.loadBinary(binary);
+    expected.shuffle(new Random(4));
+    mapped.shuffle(new Random(4));
+    check(expected,mapped.iterator());
+    Example x = mapped.getExample(0);
+    mapped.add(x);
+    assertEquals(expected.size()+1,mapped.size());
+  }
+
+  private File save(Dataset dataset) throws IOException
+  {
+    DatasetLoader.save(dataset,text);
+    return text;
+  }
+
+  private static Dataset makeDataset(Random r,boolean floatValues)
+  {
+    Dataset dataset = new BasicDataset();
+    for (int i=0; i<500; i++) {
+      MutableInstance instance = new MutableInstance("s"+i,r.nextInt(3)==0 ? null : "sub "+r.nextInt(4));
+      for (int j=r.nextInt(15); j>0; j--) {
+        // the text format can't hold a feature that is both binary and numeric
+        if (r.nextBoolean()) instance.addBinary(new Feature(new String[]{"b"+r.nextInt(5),"v."+r.nextInt(40)}));
+        else instance.addNumeric(new Feature(new String[]{"n"+r.nextInt(5),"v."+r.nextInt(40)}),floatValues ? r.nextInt(100)/4.0 : r.nextGaussian());
+      }
+      ClassLabel label = new ClassLabel("label"+r.nextInt(3));
+      dataset.add(new Example(instance,label));
+    }
+    return dataset;
+  }
+
+  private static void check(Dataset expected,Iterator<Example> actual)
+  {
+    for (Iterator<Example> i=expected.iterator(); i.hasNext(); ) {
+      assertTrue(actual.hasNext());
+      check(i.next(),actual.next());
+    }
+    assertTrue(!actual.hasNext());
+  }
+
+  private static void check(Example x,Example y)
+  {
+    // sources name the file each example was read from, then its line
+    assertEquals(line(x.getSource()),line(y.getSource()));
+    assertEquals(x.getSubpopulationId(),y.getSubpopulationId());
+    assertEquals(x.getLabel().bestClassName(),y.getLabel().bestClassName());
+    assertEquals(x.getWeight(),y.getWeight(),0);
+    assertEquals(features(x.binaryFeatureIterator()),features(y.binaryFeatureIterator()));
+    assertEquals(features(x.numericFeatureIterator()),features(y.numericFeatureIterator()));
+    for (Iterator<Feature> i=x.numericFeatureIterator(); i.hasNext(); ) {
+      Feature f = i.next();
+      assertEquals(Double.doubleToLongBits(x.getWeight(f)),Double.doubleToLongBits(y.getWeight(f)));
+    }
+  }
+
+  private static String line(Object source)
+  {
+    String s = source.toString();
+    return s.substring(s.lastIndexOf(':')+1);
+  }
+
+  private static List<Feature> features(Iterator<Feature> i)
+  {
+    List<Feature> list = new ArrayList<Feature>();
+    while (i.hasNext()) list.add(i.next());
+    Collections.sort(list);
+    return list;
+  }
+
+  public static Test suite()
+  {
+    return new TestSuite(MappedDatasetTest.class);
+  }
+
+  public static void main(String args[])
+  {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -1,5 +1,10 @@
 package edu.cmu.minorthird.classify;
 
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -100,6 +105,55 @@ public class MutableInstanceTest extends InstanceTestBase
     //check that the new and old are equivalent
   }
 
+  /**
+   * Repeated binary and numeric adds of the same features should give the
+   * same features, weights and order as a TreeSet of binary features and a
+   * WeightedSet of numeric ones.
+   */
+  public void testRepeatedFeatures()
+  {
+    Random random = new Random(0);
+    for (int trial = 0; trial < 200; trial++) {
+      MutableInstance mut = new MutableInstance("trial " + trial);
+      Set<Feature> binary = new TreeSet<Feature>();
+      WeightedSet<Feature> numeric = new WeightedSet<Feature>();
+      int numAdds = random.nextInt(40);
+      for (int i = 0; i < numAdds; i++) {
+        Feature f = new Feature("f" + random.nextInt(10));
+        if (random.nextBoolean()) {
+          mut.addBinary(f);
+          binary.add(f);
+        } else {
+          double w = random.nextInt(5);
+          mut.addNumeric(f, w);
+          binary.remove(f);
+          numeric.add(f, w);
+        }
+        // reading part way through shouldn't change the result
+        if (random.nextInt(10) == 0) mut.numFeatures();
+      }
+      assertEquals(binary.size() + numeric.size(), mut.numFeatures());
+      Iterator<Feature> i = mut.binaryFeatureIterator();
+      for (Iterator<Feature> j = binary.iterator(); j.hasNext(); ) {
+        assertEquals(j.next(), i.next());
+      }
+      assertTrue(!i.hasNext());
+      i = mut.numericFeatureIterator();
+      for (Iterator<Feature> j = numeric.iterator(); j.hasNext(); ) {
+        Feature f = j.next();
+        assertEquals(f, i.next());
+        double expected = binary.contains(f) ? 1.0 : numeric.getWeight(f);
+        assertEquals(expected, mut.getWeight(f), 0);
+      }
+      assertTrue(!i.hasNext());
+      for (int k = 0; k < 10; k++) {
+        Feature f = new Feature("f" + k);
+        double expected = binary.contains(f) ? 1.0 : numeric.getWeight(f);
+        assertEquals(expected, mut.getWeight(f), 0);
+      }
+    }
+  }
+
   private void addNewFeatures()
   {
   }
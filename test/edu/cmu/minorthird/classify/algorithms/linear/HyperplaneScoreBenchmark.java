@@ -0,0 +1,100 @@
+package edu.cmu.minorthird.classify.algorithms.linear;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.cmu.minorthird.classify.Dataset;
+import edu.cmu.minorthird.classify.Example;
+import edu.cmu.minorthird.classify.Feature;
+import edu.cmu.minorthird.classify.Instance;
+import edu.cmu.minorthird.classify.MutableInstance;
+import edu.cmu.minorthird.classify.SampleDatasets;
+
+/**
+ * Microbenchmark for Hyperplane.score on the datasets in SampleDatasets.
+ * Compares compressed instances, whose features are canonical in the
+ * dataset's FeatureFactory, with copies built from fresh, non-canonical
+ * features.  Run with no arguments for all datasets, or pass dataset
+ * names and optionally "-rounds N".
+ */
+public class HyperplaneScoreBenchmark{
+
+	private static final String[] DATASETS=
+			{"toy","bayes","num","sparseNum","logistic","bigLogistic"};
+
+	private static final int WARMUP_ROUNDS=2000;
+
+	public static void main(String[] args){
+		int rounds=20000;
+		List<String> names=new ArrayList<String>();
+		for(int i=0;i<args.length;i++){
+			if("-rounds".equals(args[i])){
+				rounds=Integer.parseInt(args[++i]);
+			}else{
+				names.add(args[i]);
+			}
+		}
+		if(names.isEmpty()){
+			for(String name:DATASETS){
+				names.add(name);
+			}
+		}
+		for(String name:names){
+			benchmark(name,rounds);
+		}
+	}
+
+	private static void benchmark(String name,int rounds){
+		Dataset data=SampleDatasets.sampleData(name,false);
+		List<Instance> compact=new ArrayList<Instance>();
+		List<Instance> plain=new ArrayList<Instance>();
+		Hyperplane h=new Hyperplane();
+		for(Iterator<Example> i=data.iterator();i.hasNext();){
+			Example ex=i.next();
+			h.increment(ex.asInstance(),ex.getLabel().numericLabel());
+			compact.add(ex.asInstance());
+			plain.add(copyOf(ex.asInstance()));
+		}
+		double compactNanos=time(h,compact,rounds);
+		double plainNanos=time(h,plain,rounds);
+		System.out.println(name+": "+compact.size()+" instances, "+
+				String.format("%.1f",compactNanos)+" ns/score compact, "+
+				String.format("%.1f",plainNanos)+" ns/score plain, speedup "+
+				String.format("%.2f",plainNanos/compactNanos));
+	}
+
+	// copy an instance using fresh features, which have no factory and no id
+	private static Instance copyOf(Instance instance){
+		MutableInstance copy=new MutableInstance(instance.getSource());
+		for(Iterator<Feature> i=instance.binaryFeatureIterator();i.hasNext();){
+			copy.addBinary(new Feature(i.next().getName().clone()));
+		}
+		for(Iterator<Feature> i=instance.numericFeatureIterator();i.hasNext();){
+			Feature f=i.next();
+			copy.addNumeric(new Feature(f.getName().clone()),instance.getWeight(f));
+		}
+		return copy;
+	}
+
+	// average nanoseconds per call of h.score, after a warmup
+	private static double time(Hyperplane h,List<Instance> instances,int rounds){
+		double sink=0;
+		for(int r=0;r<WARMUP_ROUNDS;r++){
+			for(Instance instance:instances){
+				sink+=h.score(instance);
+			}
+		}
+		long start=System.nanoTime();
+		for(int r=0;r<rounds;r++){
+			for(Instance instance:instances){
+				sink+=h.score(instance);
+			}
+		}
+		long elapsed=System.nanoTime()-start;
+		if(sink==Double.MIN_VALUE){
+			System.out.println(sink);
+		}
+		return (double)elapsed/((double)rounds*instances.size());
+	}
+}
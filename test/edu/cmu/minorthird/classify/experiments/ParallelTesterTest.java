@@ -0,0 +1,123 @@
+package edu.cmu.minorthird.classify.experiments;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.Logger;
+
+import edu.cmu.minorthird.classify.ClassifierLearner;
+import edu.cmu.minorthird.classify.Dataset;
+import edu.cmu.minorthird.classify.Example;
+import edu.cmu.minorthird.classify.OneVsAllLearner;
+import edu.cmu.minorthird.classify.SampleDatasets;
+import edu.cmu.minorthird.classify.StackedLearner;
+import edu.cmu.minorthird.classify.TweakedLearner;
+import edu.cmu.minorthird.classify.algorithms.linear.NaiveBayes;
+import edu.cmu.minorthird.classify.algorithms.trees.AdaBoost;
+import edu.cmu.minorthird.classify.algorithms.trees.DecisionTreeLearner;
+import edu.cmu.minorthird.classify.algorithms.trees.RandomForests;
+
+/**
+ * Checks that running cross-validation folds in parallel gives the same
+ * evaluation as running them one after another.
+ */
+public class ParallelTesterTest extends TestCase
+{
+  public ParallelTesterTest(String name)
+  {
+    super(name);
+  }
+
+  protected void setUp()
+  {
+    Logger.getRootLogger().removeAllAppenders();
+    org.apache.log4j.BasicConfigurator.configure();
+    Logger.getRootLogger().setLevel(org.apache.log4j.Level.WARN);
+  }
+
+  public void testEvaluate()
+  {
+    Dataset data = SampleDatasets.sampleData("toy",false);
+    ClassifierLearner[] learners = {new NaiveBayes(), new DecisionTreeLearner()};
+    for (int i=0; i<learners.length; i++) {
+      Evaluation serial = Tester.evaluate(learners[i],data,new CrossValSplitter<Example>(new Random(0),5));
+      Evaluation parallel = Tester.evaluate(learners[i],data,new CrossValSplitter<Example>(new Random(0),5),3);
+      checkSame(serial,parallel);
+    }
+  }
+
+  public void testWrapperLearners()
+  {
+    Dataset data = SampleDatasets.sampleData("toy",false);
+    ClassifierLearner[] learners = {new TweakedLearner(new NaiveBayes(),1.0), new AdaBoost()};
+    for (int i=0; i<learners.length; i++) {
+      Evaluation serial = Tester.evaluate(learners[i],data,new CrossValSplitter<Example>(new Random(0),5));
+      Evaluation parallel = Tester.evaluate(learners[i],data,new CrossValSplitter<Example>(new Random(0),5),5);
+      checkSame(serial,parallel);
+    }
+    data = SampleDatasets.sampleData("toy3",false);
+    ClassifierLearner learner = new OneVsAllLearner(new DecisionTreeLearner());
+    Evaluation serial = Tester.evaluate(learner,data,new CrossValSplitter<Example>(new Random(0),5));
+    Evaluation parallel = Tester.evaluate(learner,data,new CrossValSplitter<Example>(new Random(0),5),5);
+    checkSame(serial,parallel);
+  }
+
+  public void testUncopyableLearnerRunsSerially()
+  {
+    Dataset data = SampleDatasets.sampleData("toy",false);
+    Evaluation serial = Tester.evaluate(
+      new StackedLearner(new DecisionTreeLearner(),new CrossValSplitter<Example>(new Random(2),3)),
+      data,new CrossValSplitter<Example>(new Random(0),5));
+    Evaluation parallel = Tester.evaluate(
+      new StackedLearner(new DecisionTreeLearner(),new CrossValSplitter<Example>(new Random(2),3)),
+      data,new CrossValSplitter<Example>(new Random(0),5),5);
+    checkSame(serial,parallel);
+  }
+
+  public void testSeededForestRunsSerially()
+  {
+    Dataset data = SampleDatasets.sampleData("toy",false);
+    Evaluation serial = Tester.evaluate(RandomForests.RepeatableForest(),data,new CrossValSplitter<Example>(new Random(0),5));
+    Evaluation parallel = Tester.evaluate(RandomForests.RepeatableForest(),data,new CrossValSplitter<Example>(new Random(0),5),5);
+    checkSame(serial,parallel);
+  }
+
+  public void testCrossValidatedDataset()
+  {
+    Dataset data = SampleDatasets.sampleData("bayes",false);
+    ClassifierLearner learner = new NaiveBayes();
+    CrossValidatedDataset serial =
+      new CrossValidatedDataset(learner,data,new CrossValSplitter<Example>(new Random(1),4),true);
+    CrossValidatedDataset parallel =
+      new CrossValidatedDataset(learner,data,new CrossValSplitter<Example>(new Random(1),4),true,4);
+    checkSame(serial.getEvaluation(),parallel.getEvaluation());
+    for (int k=1; k<=4; k++) {
+      assertEquals(serial.getEvaluation().getProperty("classesInFold"+k),
+                   parallel.getEvaluation().getProperty("classesInFold"+k));
+    }
+  }
+
+  private void checkSame(Evaluation expected,Evaluation actual)
+  {
+    assertEquals(expected.numberOfInstances(),actual.numberOfInstances(),0);
+    for (int i=0; i<expected.numberOfInstances(); i++) {
+      assertEquals(expected.getActual(i).bestClassName(),actual.getActual(i).bestClassName());
+      assertEquals(expected.getPrediction(i).bestClassName(),actual.getPrediction(i).bestClassName());
+      assertEquals(expected.getPrediction(i).bestWeight(),actual.getPrediction(i).bestWeight(),0);
+    }
+    assertEquals(expected.errorRate(),actual.errorRate(),0);
+  }
+
+  public static Test suite()
+  {
+    return new TestSuite(ParallelTesterTest.class);
+  }
+
+  public static void main(String args[])
+  {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -7,6 +7,10 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -15,6 +19,8 @@ import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 import edu.cmu.minorthird.classify.AbstractClassificationChecks;
+import edu.cmu.minorthird.classify.ClassLabel;
+import edu.cmu.minorthird.classify.Example;
 import edu.cmu.minorthird.classify.SampleDatasets;
 import edu.cmu.minorthird.classify.experiments.Evaluation;
 
@@ -135,6 +141,87 @@ public class CrfTest extends AbstractClassificationChecks
     }
 
 
+    // Training with several gradient threads should find the same weights as
+    //   training serially over the same feature cache.
+    public void testParallelGradient() {
+        CRFLearner serial = new CRFLearner("cache true");
+        new DatasetSequenceClassifierTeacher(SampleDatasets.makeToySequenceData()).train(serial);
+        CRFLearner parallel = new CRFLearner("numThreads 3");
+        new DatasetSequenceClassifierTeacher(SampleDatasets.makeToySequenceData()).train(parallel);
+        assertEquals(serial.crfWs.length, parallel.crfWs.length);
+        for (int i = 0; i < serial.crfWs.length; i++) {
+            assertEquals(serial.crfWs[i], parallel.crfWs[i], 1e-6*Math.max(1, Math.abs(serial.crfWs[i])));
+        }
+    }
+
+    // Each trainer has its own L-BFGS state, so CRFs trained at the same time
+    //   should find the same weights as one trained alone.
+    public void testConcurrentTraining() throws InterruptedException {
+        CRFLearner serial = new CRFLearner();
+        new DatasetSequenceClassifierTeacher(SampleDatasets.makeToySequenceData()).train(serial);
+        final CRFLearner[] learners = new CRFLearner[3];
+        Thread[] threads = new Thread[learners.length];
+        for (int i = 0; i < learners.length; i++) {
+            final CRFLearner l = learners[i] = new CRFLearner();
+            threads[i] = new Thread() {
+                public void run() {
+                    new DatasetSequenceClassifierTeacher(SampleDatasets.makeToySequenceData()).train(l);
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        for (int i = 0; i < learners.length; i++) {
+            assertEquals(serial.crfWs.length, learners[i].crfWs.length);
+            for (int j = 0; j < serial.crfWs.length; j++) {
+                assertEquals(serial.crfWs[j], learners[i].crfWs[j], 1e-6*Math.max(1, Math.abs(serial.crfWs[j])));
+            }
+        }
+    }
+
+    // A model saved as text and converted to the binary format should label
+    //   sequences exactly as the model it was saved from.
+    public void testBinaryModel() throws Exception {
+        CRFLearner l = new CRFLearner();
+        new DatasetSequenceClassifierTeacher(SampleDatasets.makeToySequenceData()).train(l);
+        SequenceDataset test = SampleDatasets.makeToySequenceTestData();
+        List<ClassLabel> expected = new ArrayList<ClassLabel>();
+        for (Iterator<Example[]> i = test.sequenceIterator(); i.hasNext(); ) {
+            expected.addAll(Arrays.asList(l.classification(i.next())));
+        }
+        int numFeatures = l.featureGen.numFeatures();
+        File features = File.createTempFile("crftest", ".features");
+        File crf = File.createTempFile("crftest", ".crf");
+        File binaryFeatures = File.createTempFile("crftest", ".features.bin");
+        File binaryCrf = File.createTempFile("crftest", ".crf.bin");
+        try {
+            l.featureGen.write(features.getPath());
+            l.crfModel.write(crf.getPath());
+            l.featureGen.convertToBinary(features.getPath(), binaryFeatures.getPath());
+            iitb.CRF.CRF.convertToBinary(crf.getPath(), binaryCrf.getPath());
+            l.featureGen.read(binaryFeatures.getPath());
+            l.crfModel.read(binaryCrf.getPath());
+        } finally {
+            features.delete();
+            crf.delete();
+            binaryFeatures.delete();
+            binaryCrf.delete();
+        }
+        assertEquals(numFeatures, l.featureGen.numFeatures());
+        for (int f = 0; f < numFeatures; f++) {
+            assertEquals(f, l.featureGen.featureIndex(l.featureGen.featureIdentifier(f)));
+        }
+        Iterator<ClassLabel> e = expected.iterator();
+        for (Iterator<Example[]> i = test.sequenceIterator(); i.hasNext(); ) {
+            ClassLabel[] labels = l.classification(i.next());
+            for (int j = 0; j < labels.length; j++) {
+                assertEquals(e.next().bestClassName(), labels[j].bestClassName());
+            }
+        }
+    }
+
     /**
      *  Test a full cycle of training, testing, saving (serializing), loading, and testing again.<br>
      *  <br>
@@ -0,0 +1,105 @@
+package edu.cmu.minorthird.text;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Benchmark comparing the heap used by BasicTextLabels and CompactTextLabels
+ * for the same labels on a synthetic text base: a part of speech like token
+ * property on every token, and types and a span property over short spans,
+ * as a tagger and a chunker would add them.  Also times hasType and
+ * getProperty lookups on both.  Run with optional arguments "-docs N",
+ * "-docLength N" and "-rounds N".
+ */
+public class LabelsBenchmark{
+
+	private static final String[] TAGS={"NN","NNS","VB","VBD","DT","IN","JJ",
+			"RB","CC","PRP"};
+
+	public static void main(String[] args){
+		int docs=2000,docLength=500,rounds=3;
+		for(int i=0;i<args.length;i++){
+			if("-docs".equals(args[i])){
+				docs=Integer.parseInt(args[++i]);
+			}else if("-docLength".equals(args[i])){
+				docLength=Integer.parseInt(args[++i]);
+			}else if("-rounds".equals(args[i])){
+				rounds=Integer.parseInt(args[++i]);
+			}
+		}
+		Random random=new Random(0);
+		BasicTextBase base=new BasicTextBase();
+		for(int d=0;d<docs;d++){
+			StringBuilder text=new StringBuilder();
+			for(int i=0;i<docLength;i++){
+				text.append((char)('a'+random.nextInt(26))).append(
+						(char)('a'+random.nextInt(26))).append(' ');
+			}
+			base.loadDocument("d"+d,text.toString());
+		}
+
+		long before=usedMemory();
+		MutableTextLabels basic=new BasicTextLabels(base);
+		label(basic,base);
+		long basicBytes=usedMemory()-before;
+		before=usedMemory();
+		MutableTextLabels compact=new CompactTextLabels(base);
+		label(compact,base);
+		long compactBytes=usedMemory()-before;
+		System.out.println(docs+" docs of "+docLength+" tokens: "+basicBytes/1024+
+				" KB BasicTextLabels, "+compactBytes/1024+" KB CompactTextLabels, ratio "+
+				String.format("%.2f",(double)basicBytes/compactBytes));
+
+		if(lookup(basic,base)!=lookup(compact,base))
+			throw new IllegalStateException("lookups differ");
+		double basicMillis=0,compactMillis=0;
+		for(int r=0;r<rounds;r++){
+			long start=System.nanoTime();
+			lookup(basic,base);
+			basicMillis+=(System.nanoTime()-start)/1e6;
+			start=System.nanoTime();
+			lookup(compact,base);
+			compactMillis+=(System.nanoTime()-start)/1e6;
+		}
+		System.out.println("lookups: "+String.format("%.1f",basicMillis/rounds)+
+				" ms BasicTextLabels, "+String.format("%.1f",compactMillis/rounds)+
+				" ms CompactTextLabels");
+	}
+
+	private static void label(MutableTextLabels labels,TextBase base){
+		Random random=new Random(1);
+		for(Iterator<Span> i=base.documentSpanIterator();i.hasNext();){
+			Span doc=i.next();
+			for(int j=0;j<doc.size();j++){
+				labels.setProperty(doc.getToken(j),"pos",TAGS[random.nextInt(TAGS.length)]);
+			}
+			for(int j=0;j+3<=doc.size();j+=1+random.nextInt(4)){
+				Span chunk=doc.subSpan(j,1+random.nextInt(3));
+				labels.addToType(chunk,random.nextBoolean()?"NP":"VP");
+				labels.setProperty(chunk,"head",TAGS[random.nextInt(TAGS.length)]);
+			}
+		}
+	}
+
+	// counts the tokens tagged NN and the two-token spans that are NPs
+	private static int lookup(TextLabels labels,TextBase base){
+		int found=0;
+		for(Iterator<Span> i=base.documentSpanIterator();i.hasNext();){
+			Span doc=i.next();
+			for(int j=0;j<doc.size();j++){
+				if("NN".equals(labels.getProperty(doc.getToken(j),"pos")))
+					found++;
+				if(j+2<=doc.size()&&labels.hasType(doc.subSpan(j,2),"NP"))
+					found++;
+			}
+		}
+		return found;
+	}
+
+	private static long usedMemory(){
+		Runtime runtime=Runtime.getRuntime();
+		for(int i=0;i<3;i++)
+			System.gc();
+		return runtime.totalMemory()-runtime.freeMemory();
+	}
+}
@@ -32,8 +32,10 @@ public class TestPackage extends TestSuite{
 		suite.addTest(new ToXMLTest("doTest"));
 		suite.addTest(new DiffTest("doTest"));
 		suite.addTest(new TrieTest("doTest"));
+		suite.addTest(new TrieTest("doOverlapTest"));
 		suite.addTest(new MixupTest("doTest"));
 		suite.addTest(new LabelsTest("doTest"));
+		suite.addTest(new LabelsTest("doCompactTest"));
 		suite.addTest(new TokenizationTest("doTest"));
 		return suite;
 	}
@@ -105,6 +107,91 @@ public class TestPackage extends TestSuite{
 				throw new IllegalStateException(e.toString());
 			}
 		}
+
+		public void doCompactTest(){
+			BasicTextBase b=new BasicTextBase();
+			b.loadDocument("d2","the cat sat on the mat");
+			b.loadDocument("d1","a b c b d");
+			MutableTextLabels basic=new BasicTextLabels(b);
+			MutableTextLabels compact=new CompactTextLabels(b);
+			try{
+				MixupProgram p=
+						new MixupProgram(new String[]{
+								"defTokenProp det:t =: ... [re('^(the|a)$')] ...",
+								"defSpanType pair =: ... [any any] ...",
+								"defSpanType triple =: ... [any any any] ...",
+								"defSpanProp startsWith:b =: ... ['b' any]...",
+								"defSpanProp startsWith:the =: ... ['the' any]...",
+								"defSpanType inner =pair: [any] ...",
+								"defSpanType out =pair- ... ['b'] ..."});
+				MixupInterpreter interp=new MixupInterpreter(p);
+				interp.eval(basic);
+				interp.eval(compact);
+			}catch(Mixup.ParseException e){
+				throw new IllegalStateException(e.toString());
+			}
+			checkSame(b,basic,compact);
+			// replace the pairs inside the second half of d1
+			Span d1=b.documentSpan("d1");
+			for(MutableTextLabels labels:new MutableTextLabels[]{basic,compact}){
+				List<Span> spans=new ArrayList<Span>();
+				spans.add(d1.subSpan(3,1));
+				spans.add(d1.subSpan(0,5));
+				labels.defineTypeInside("pair",d1.subSpan(2,3),spans.iterator());
+				labels.setProperty(d1.subSpan(3,2),"startsWith",null);
+			}
+			checkSame(b,basic,compact);
+			// instances of a type overlapping a span
+			Span probe=d1.subSpan(1,1);
+			List<Span> expected=new ArrayList<Span>();
+			for(Iterator<Span> i=basic.instanceIterator("triple");i.hasNext();){
+				Span s=i.next();
+				if(s.overlaps(probe))
+					expected.add(s);
+			}
+			assertEquals(3,expected.size());
+			assertEquals(expected,list(((CompactTextLabels)compact)
+					.overlappingIterator("triple",probe)));
+		}
+
+		private void checkSame(TextBase b,TextLabels basic,TextLabels compact){
+			assertEquals(basic.getTypes(),compact.getTypes());
+			for(String type:basic.getTypes()){
+				assertEquals(list(basic.instanceIterator(type)),list(compact
+						.instanceIterator(type)));
+				assertEquals(list(basic.closureIterator(type)),list(compact
+						.closureIterator(type)));
+				for(Iterator<Span> i=b.documentSpanIterator();i.hasNext();){
+					String id=i.next().getDocumentId();
+					assertEquals(basic.getTypeSet(type,id),compact.getTypeSet(type,id));
+				}
+			}
+			for(String prop:basic.getSpanProperties()){
+				List<Span> spans=list(basic.getSpansWithProperty(prop));
+				assertEquals(spans,list(compact.getSpansWithProperty(prop)));
+				for(Span s:spans)
+					assertEquals(basic.getProperty(s,prop),compact.getProperty(s,prop));
+			}
+			for(Iterator<Span> i=b.documentSpanIterator();i.hasNext();){
+				Span doc=i.next();
+				for(int j=0;j<doc.size();j++){
+					Token token=doc.getToken(j);
+					assertEquals(basic.getProperty(token,"det"),compact.getProperty(
+							token,"det"));
+					for(int k=j;k<=doc.size();k++){
+						assertEquals(basic.hasType(doc.subSpan(j,k-j),"pair"),compact
+								.hasType(doc.subSpan(j,k-j),"pair"));
+					}
+				}
+			}
+		}
+
+		private List<Span> list(Iterator<Span> i){
+			List<Span> accum=new ArrayList<Span>();
+			while(i.hasNext())
+				accum.add(i.next());
+			return accum;
+		}
 	}
 
 	public static class ToXMLTest extends TestCase{
@@ -286,6 +373,19 @@ public class TestPackage extends TestSuite{
 					2,4)});
 		}
 
+		public void doOverlapTest(){
+			trie=new Trie(true);
+			trie.addWords("jp",b.getTokenizer().splitIntoTokens("John Paul"));
+			trie.addWords("j2p2",b.getTokenizer()
+					.splitIntoTokens("pope john paul II"));
+			trie.addWords("p2",b.getTokenizer().splitIntoTokens("paul ii"));
+			b.loadDocument("t5","is the Pope John Paul II or not?");
+			checkLookup("t5",new TrieExpects[]{
+					new TrieExpects(new String[]{"j2p2"},2,4),
+					new TrieExpects(new String[]{"jp"},3,2),
+					new TrieExpects(new String[]{"p2"},4,2)});
+		}
+
 		private void checkLookup(String documentId,TrieExpects[] expects){
 			Span span=b.documentSpan(documentId);
 			List<Span> spanList=new ArrayList<Span>();
@@ -373,6 +473,10 @@ public class TestPackage extends TestSuite{
 			checkExpr(e,"...[re('...')]... && ( [re('[bc]')] || [re('[cd]')] ) ",
 					new String[]{"ccc"});
 			checkExpr(e,"...[L re('^..$')+ R]...",new String[]{"aa bb","dd ee ff"});
+			checkExpr(e,"...[L re('^..$'){1,2}]...",new String[]{"aa","aa bb","dd",
+					"dd ee","ee ff"});
+			checkExpr(e,"...[re('^..$'){1,2}R]...",new String[]{"aa bb","bb","dd ee",
+					"ee ff","ff"});
 			checkExpr(e,"...<re('[bc]'),re('...')>[any]...",new String[]{"dd"});
 			//
 			// test program - out is the output tested against the 'expected' strings
@@ -446,6 +550,11 @@ public class TestPackage extends TestSuite{
 				MixupInterpreter interp=new MixupInterpreter(program);
 				interp.eval(labels);
 				checkLooper(expected,labels.instanceIterator("out"));
+				// the same program, matched on several threads
+				labels=new BasicTextLabels(b);
+				interp.setNumThreads(2);
+				interp.eval(labels);
+				checkLooper(expected,labels.instanceIterator("out"));
 			}catch(Mixup.ParseException e){
 				throw new IllegalStateException("parse error"+e);
 			}
@@ -200,6 +200,50 @@ public class TextBaseLoaderTest extends TestCase
 		}
 	}
 
+	/**
+	 * Loading a directory with several threads should give the same documents
+	 * and labels as loading it with one.
+	 */
+	public void testLoadDirectoryInParallel() {
+		try {
+			TextBaseLoader serial = new TextBaseLoader(TextBaseLoader.DOC_PER_FILE, TextBaseLoader.USE_XML);
+			TextBase serialBase = serial.load(new File(testCaseDir+"/SeminarAnnouncements"));
+			TextBaseLoader parallel = new TextBaseLoader(TextBaseLoader.DOC_PER_FILE, TextBaseLoader.USE_XML);
+			parallel.setNumThreads(3);
+			TextBase parallelBase = parallel.load(new File(testCaseDir+"/SeminarAnnouncements"));
+
+			assertEquals(serialBase.size(), parallelBase.size());
+			for (Iterator<Span> i = serialBase.documentSpanIterator(); i.hasNext(); ) {
+				Span docSpan = i.next();
+				Span other = parallelBase.documentSpan(docSpan.getDocumentId());
+				assertNotNull(other);
+				assertEquals(docSpan.size(), other.size());
+				assertEquals(docSpan.asString(), other.asString());
+			}
+
+			MutableTextLabels serialLabels = serial.getLabels();
+			MutableTextLabels parallelLabels = parallel.getLabels();
+			assertEquals(serialLabels.getTypes(), parallelLabels.getTypes());
+			for (Iterator<String> t = serialLabels.getTypes().iterator(); t.hasNext(); ) {
+				String type = t.next();
+				Iterator<Span> j = parallelLabels.instanceIterator(type);
+				for (Iterator<Span> i = serialLabels.instanceIterator(type); i.hasNext(); ) {
+					Span span = i.next();
+					Span other = j.next();
+					assertEquals(span.getDocumentId(), other.getDocumentId());
+					assertEquals(span.documentSpanStartIndex(), other.documentSpanStartIndex());
+					assertEquals(span.size(), other.size());
+				}
+				assertTrue(!j.hasNext());
+				assertEquals(getNumClosures(serialLabels, type), getNumClosures(parallelLabels, type));
+			}
+		}
+		catch(Exception e) {
+			log.fatal(e.getMessage(), e);
+			fail("testLoadDirectoryInParallel failed because an exception occurred: " + e.getMessage());
+		}
+	}
+
 	public void testLoadWordPerLineFile() {
 		try {
 			TextBaseLoader loader = new TextBaseLoader();
@@ -255,6 +299,15 @@ public class TextBaseLoaderTest extends TestCase
 		return i;
 	}
 
+	// returns the number of spans the given type is closed over
+	private int getNumClosures(TextLabels labels, String type) {
+		int i = 0;
+		for (Iterator<Span> l = labels.closureIterator(type); l.hasNext(); l.next()) {
+			i++;
+		}
+		return i;
+	}
+
 	// Asserts that there is an instance of the specified type, that this instance has the specified 
 	// value and that it appears (with that value) the specified number of times
 	private void checkType(TextLabels labels, String type, String doc, String value, int num) {
@@ -109,6 +109,43 @@ public class TokenizerTest extends TestCase
         assertEquals(9, tokens2.length);
     }
 
+    public void testRegexTokenizerBatch() {
+
+        System.out.println("Testing the RegexTokenizer batch API");
+
+        // Tokenizing many documents at once gives the same tokens as one at a time
+        RegexTokenizer tokenizer = new RegexTokenizer();
+        Document[] docs = new Document[50];
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = new Document("doc" + i, sampleDocs[i % sampleDocs.length] + " " + i);
+        }
+        TextToken[][] batch = tokenizer.splitIntoTokens(docs, 4);
+        for (int i = 0; i < docs.length; i++) {
+            TextToken[] single = tokenizer.splitIntoTokens(docs[i]);
+            assertEquals(single.length, batch[i].length);
+            for (int j = 0; j < single.length; j++) {
+                assertEquals(single[j].getLo(), batch[i][j].getLo());
+                assertEquals(single[j].getHi(), batch[i][j].getHi());
+            }
+        }
+
+        // and loading them into a text base in a batch gives the same documents
+        java.util.Map<String,String> texts = new java.util.TreeMap<String,String>();
+        for (int i = 0; i < docs.length; i++) {
+            texts.put(docs[i].getId(), docs[i].getText());
+        }
+        BasicTextBase textBase = new BasicTextBase();
+        textBase.loadDocuments(texts, 3);
+        assertEquals(docs.length, textBase.size());
+        for (int i = 0; i < docs.length; i++) {
+            assertEquals(batch[i].length, textBase.getDocument(docs[i].getId()).getTokens().length);
+        }
+
+        // Changing the pattern takes effect on the next call
+        tokenizer.regexPattern = "([^\\s]+)";
+        assertEquals(11, tokenizer.splitIntoTokens(sampleDocs[0]).length);
+    }
+
     public void testSpanTypeTokenizer() {
 
         System.out.println("Testing the SpanTypeTokenizer");
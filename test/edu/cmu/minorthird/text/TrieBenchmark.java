@@ -0,0 +1,160 @@
+package edu.cmu.minorthird.text;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Benchmark for Trie.lookup on a large synthetic lexicon.  Compares the
+ * Aho-Corasick Trie with the walk from every token position over
+ * TreeMap-per-node children that it replaced, after checking that both
+ * find the same matches.  Run with optional arguments "-phrases N",
+ * "-vocab N", "-docs N", "-docLength N" and "-rounds N".
+ */
+public class TrieBenchmark{
+
+	// the TreeMap-per-node trie Trie used to be, as the reference
+	private static class TreeMapTrie{
+
+		private static class Node{
+
+			public Map<String,Node> map=null;
+
+			public List<String> endIds=null;
+		}
+
+		private Node root=new Node();
+
+		public void addWords(String id,String[] words){
+			Node node=root;
+			for(int i=0;i<words.length;i++){
+				if(node.map==null)
+					node.map=new TreeMap<String,Node>();
+				Node kid=node.map.get(words[i]);
+				if(kid==null)
+					node.map.put(words[i],(kid=new Node()));
+				node=kid;
+			}
+			if(node.endIds==null)
+				node.endIds=new ArrayList<String>();
+			node.endIds.add(id);
+		}
+
+		public List<Span> lookup(Span span){
+			List<Span> accum=new ArrayList<Span>();
+			for(int start=0;start<span.size();start++){
+				Node node=root;
+				int depth=0;
+				while(node!=null){
+					if(node.endIds!=null){
+						accum.add(span.subSpan(start,depth));
+					}
+					if(node.map!=null&&start+depth<span.size()){
+						node=node.map.get(span.getToken(start+depth).getValue());
+					}else{
+						node=null;
+					}
+					depth++;
+				}
+			}
+			return accum;
+		}
+	}
+
+	public static void main(String[] args){
+		int phrases=500000,vocab=50000,docs=200,docLength=2000,rounds=5;
+		for(int i=0;i<args.length;i++){
+			if("-phrases".equals(args[i])){
+				phrases=Integer.parseInt(args[++i]);
+			}else if("-vocab".equals(args[i])){
+				vocab=Integer.parseInt(args[++i]);
+			}else if("-docs".equals(args[i])){
+				docs=Integer.parseInt(args[++i]);
+			}else if("-docLength".equals(args[i])){
+				docLength=Integer.parseInt(args[++i]);
+			}else if("-rounds".equals(args[i])){
+				rounds=Integer.parseInt(args[++i]);
+			}
+		}
+		Random random=new Random(0);
+		String[] words=new String[vocab];
+		for(int w=0;w<vocab;w++){
+			// letters only, so that each word is one token
+			StringBuilder b=new StringBuilder();
+			for(int n=w;n>0||b.length()==0;n/=26){
+				b.append((char)('a'+n%26));
+			}
+			words[w]=b.toString();
+		}
+
+		Trie trie=new Trie();
+		TreeMapTrie reference=new TreeMapTrie();
+		long start=System.nanoTime();
+		for(int p=0;p<phrases;p++){
+			String[] phrase=new String[1+random.nextInt(4)];
+			for(int i=0;i<phrase.length;i++){
+				phrase[i]=words[skewed(random,vocab)];
+			}
+			trie.addWords("p"+p,phrase);
+			reference.addWords("p"+p,phrase);
+		}
+		System.out.println(phrases+" phrases added in "+
+				(System.nanoTime()-start)/1000000+" ms");
+
+		BasicTextBase base=new BasicTextBase();
+		List<Span> spans=new ArrayList<Span>();
+		for(int d=0;d<docs;d++){
+			StringBuilder text=new StringBuilder();
+			for(int i=0;i<docLength;i++){
+				text.append(words[skewed(random,vocab)]).append(' ');
+			}
+			base.loadDocument("d"+d,text.toString());
+			spans.add(base.documentSpan("d"+d));
+		}
+
+		start=System.nanoTime();
+		int matches=0;
+		for(Span span:spans){
+			List<Span> expected=reference.lookup(span);
+			int k=0;
+			for(Iterator<Span> i=trie.lookup(span);i.hasNext();k++){
+				if(k>=expected.size()||!i.next().equals(expected.get(k)))
+					throw new IllegalStateException("matches differ in "+
+							span.getDocumentId()+" at "+k);
+			}
+			if(k!=expected.size())
+				throw new IllegalStateException("matches differ in "+
+						span.getDocumentId());
+			matches+=k;
+		}
+		System.out.println(matches+" matches agree, found in "+
+				(System.nanoTime()-start)/1000000+" ms with checking");
+
+		double trieMillis=0,referenceMillis=0;
+		for(int r=0;r<rounds;r++){
+			start=System.nanoTime();
+			for(Span span:spans){
+				for(Iterator<Span> i=trie.lookup(span);i.hasNext();i.next());
+			}
+			trieMillis+=(System.nanoTime()-start)/1e6;
+			start=System.nanoTime();
+			for(Span span:spans){
+				reference.lookup(span);
+			}
+			referenceMillis+=(System.nanoTime()-start)/1e6;
+		}
+		System.out.println(docs+" docs of "+docLength+" tokens: "+
+				String.format("%.1f",trieMillis/rounds)+" ms Aho-Corasick, "+
+				String.format("%.1f",referenceMillis/rounds)+" ms TreeMap, speedup "+
+				String.format("%.2f",referenceMillis/trieMillis));
+	}
+
+	// word ids skewed towards low ones, as word frequencies are in real text
+	private static int skewed(Random random,int n){
+		double u=random.nextDouble();
+		return (int)(n*u*u*u);
+	}
+}
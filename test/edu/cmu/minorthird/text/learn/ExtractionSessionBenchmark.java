@@ -0,0 +1,93 @@
+package edu.cmu.minorthird.text.learn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.cmu.minorthird.classify.algorithms.linear.VotedPerceptron;
+import edu.cmu.minorthird.classify.sequential.CMMLearner;
+import edu.cmu.minorthird.text.Span;
+import edu.cmu.minorthird.ui.Recommended;
+
+/**
+ * Benchmark comparing ExtractorAnnotatorWrapper.extractFrom with an
+ * ExtractionSession on short strings, the test documents of the sample
+ * extraction problem.  The annotator is learned with a feature extractor
+ * that requires the "date" annotation, so each extractFrom call loads
+ * date.mixup and time.mixup again; lib/mixup must be on the classpath.
+ * Reports p50 and p99 latency.  Run with optional arguments "-calls N" and
+ * "-threads N", the number of threads calling the session at once.
+ */
+public class ExtractionSessionBenchmark{
+
+	public static void main(String[] args) throws Exception{
+		int calls=2000,threads=1;
+		for(int i=0;i<args.length;i++){
+			if("-calls".equals(args[i])){
+				calls=Integer.parseInt(args[++i]);
+			}else if("-threads".equals(args[i])){
+				threads=Integer.parseInt(args[++i]);
+			}
+		}
+		Recommended.TokenFE fe=new Recommended.TokenFE();
+		fe.setRequiredAnnotation("date","date.mixup");
+		SequenceAnnotatorLearner learner=
+				new SequenceAnnotatorLearner(new CMMLearner(new VotedPerceptron(),3),fe);
+		learner.setAnnotationType("prediction");
+		ExtractorAnnotator annotator=
+				(ExtractorAnnotator)new TextLabelsAnnotatorTeacher(
+						SampleExtractionProblem.trainLabels(),SampleExtractionProblem.LABEL)
+						.train(learner);
+		final List<String> sources=new ArrayList<String>();
+		for(Iterator<Span> i=SampleExtractionProblem.testBase().documentSpanIterator();i
+				.hasNext();){
+			sources.add(i.next().asString());
+		}
+
+		ExtractorAnnotatorWrapper wrapper=new ExtractorAnnotatorWrapper(annotator);
+		long start=System.nanoTime();
+		final ExtractionSession session=wrapper.newSession();
+		System.out.println("session created in "+(System.nanoTime()-start)/1000000+
+				" ms");
+		for(String source:sources){
+			if(!Arrays.equals(wrapper.extractFrom(source),session.extractFrom(source)))
+				throw new IllegalStateException("extractions differ for '"+source+"'");
+		}
+
+		ExtractionSession.LatencyRecorder wrapperLatency=
+				new ExtractionSession.LatencyRecorder(calls);
+		for(int c=0;c<calls;c++){
+			start=System.nanoTime();
+			wrapper.extractFrom(sources.get(c%sources.size()));
+			wrapperLatency.record(1,System.nanoTime()-start);
+		}
+		System.out.println("extractFrom: "+wrapperLatency);
+
+		final ExtractionSession.LatencyRecorder sessionLatency=
+				new ExtractionSession.LatencyRecorder(calls);
+		session.setMetrics(sessionLatency);
+		final int callsPerThread=calls/threads;
+		Thread[] callers=new Thread[threads];
+		start=System.nanoTime();
+		for(int t=0;t<threads;t++){
+			final int offset=t;
+			callers[t]=new Thread(){
+
+				@Override
+				public void run(){
+					for(int c=0;c<callsPerThread;c++){
+						session.extractFrom(sources.get((c+offset)%sources.size()));
+					}
+				}
+			};
+			callers[t].start();
+		}
+		for(int t=0;t<threads;t++){
+			callers[t].join();
+		}
+		System.out.println("session, "+threads+" threads: "+sessionLatency+", "+
+				String.format("%.0f",sessionLatency.getCount()/
+						((System.nanoTime()-start)/1e9))+" calls/s");
+	}
+}
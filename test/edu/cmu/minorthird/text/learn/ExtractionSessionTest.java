@@ -0,0 +1,105 @@
+package edu.cmu.minorthird.text.learn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.Logger;
+
+import edu.cmu.minorthird.classify.algorithms.linear.VotedPerceptron;
+import edu.cmu.minorthird.classify.sequential.CMMLearner;
+import edu.cmu.minorthird.text.DefaultAnnotatorLoader;
+import edu.cmu.minorthird.text.Span;
+import edu.cmu.minorthird.ui.Recommended;
+
+/**
+ * Checks that an ExtractionSession called from several threads at once
+ * extracts the same substrings as ExtractorAnnotatorWrapper.extractFrom.
+ */
+public class ExtractionSessionTest extends TestCase
+{
+	private static final int THREADS=6,ROUNDS=5;
+
+	public ExtractionSessionTest(String name)
+	{
+		super(name);
+	}
+
+	protected void setUp()
+	{
+		Logger.getRootLogger().removeAllAppenders();
+		org.apache.log4j.BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(org.apache.log4j.Level.WARN);
+	}
+
+	public void testConcurrentCallsMatchExtractFrom() throws Exception
+	{
+		SequenceAnnotatorLearner learner=
+				new SequenceAnnotatorLearner(new CMMLearner(new VotedPerceptron(),3),
+						new Recommended.TokenFE());
+		learner.setAnnotationType("prediction");
+		ExtractorAnnotator annotator=
+				(ExtractorAnnotator)new TextLabelsAnnotatorTeacher(
+						SampleExtractionProblem.trainLabels(),SampleExtractionProblem.LABEL)
+						.train(learner);
+		final List<String> sources=new ArrayList<String>();
+		for(Iterator<Span> i=SampleExtractionProblem.testBase().documentSpanIterator();i
+				.hasNext();){
+			sources.add(i.next().asString());
+		}
+		ExtractorAnnotatorWrapper wrapper=new ExtractorAnnotatorWrapper(annotator);
+		final List<String[]> expected=new ArrayList<String[]>();
+		for(String source:sources){
+			expected.add(wrapper.extractFrom(source));
+		}
+
+		// fewer scratch areas than threads, so some calls wait for one
+		final ExtractionSession session=
+				new ExtractionSession(annotator,new DefaultAnnotatorLoader(),2);
+		ExtractionSession.LatencyRecorder latency=
+				new ExtractionSession.LatencyRecorder();
+		session.setMetrics(latency);
+		final List<String> failures=new ArrayList<String>();
+		Thread[] callers=new Thread[THREADS];
+		for(int t=0;t<THREADS;t++){
+			final int offset=t;
+			callers[t]=new Thread(){
+
+				public void run(){
+					for(int c=0;c<ROUNDS*sources.size();c++){
+						int k=(c+offset)%sources.size();
+						String[] actual=session.extractFrom(sources.get(k));
+						if(!Arrays.equals(expected.get(k),actual)){
+							synchronized(failures){
+								failures.add(sources.get(k)+": expected "+
+										Arrays.asList(expected.get(k))+" but was "+
+										Arrays.asList(actual));
+							}
+						}
+					}
+				}
+			};
+			callers[t].start();
+		}
+		for(int t=0;t<THREADS;t++){
+			callers[t].join();
+		}
+		assertEquals(failures.toString(),0,failures.size());
+		assertEquals(THREADS*ROUNDS*sources.size(),latency.getCount());
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(ExtractionSessionTest.class);
+	}
+
+	public static void main(String args[])
+	{
+		junit.textui.TestRunner.run(suite());
+	}
+}
@@ -1,5 +1,10 @@
 package edu.cmu.minorthird.text.learn;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -9,7 +14,9 @@ import org.apache.log4j.Logger;
 import edu.cmu.minorthird.classify.algorithms.linear.VotedPerceptron;
 import edu.cmu.minorthird.classify.algorithms.svm.SVMLearner;
 import edu.cmu.minorthird.classify.sequential.CMMLearner;
+import edu.cmu.minorthird.text.AbstractAnnotator;
 import edu.cmu.minorthird.text.Annotator;
+import edu.cmu.minorthird.text.Span;
 import edu.cmu.minorthird.text.SpanDifference;
 import edu.cmu.minorthird.text.TextBase;
 import edu.cmu.minorthird.text.TextLabels;
@@ -91,6 +98,56 @@ public class SampleExtractionTest extends TestCase
 				new double[]{0.93,1.0,0.25,1.0,1.0,0.25} );
 	}
 
+	/**
+	 * Tagging documents on several threads should find the same spans as
+	 * tagging them one at a time.
+	 */
+	public void testParallelAnnotation()
+	{
+		SequenceAnnotatorLearner learner =
+			new SequenceAnnotatorLearner( new CMMLearner(new VotedPerceptron(), 3), new Recommended.TokenFE());
+		learner.setAnnotationType( "prediction" );
+		AbstractAnnotator annotator =
+			(AbstractAnnotator)new TextLabelsAnnotatorTeacher( labels, labelString ).train( learner );
+		TextLabels serial = annotator.annotatedCopy( testLabels );
+		annotator.setNumThreads( 3 );
+		TextLabels parallel = annotator.annotatedCopy( testLabels );
+		Iterator<Span> j = parallel.instanceIterator( "prediction" );
+		for (Iterator<Span> i = serial.instanceIterator( "prediction" ); i.hasNext(); ) {
+			assertTrue( j.hasNext() );
+			assertEquals( i.next(), j.next() );
+		}
+		assertTrue( !j.hasNext() );
+	}
+
+	/**
+	 * A session should extract the same strings as extractFrom, one string
+	 * at a time or in a batch.
+	 */
+	public void testExtractionSession()
+	{
+		SequenceAnnotatorLearner learner =
+			new SequenceAnnotatorLearner( new CMMLearner(new VotedPerceptron(), 3), new Recommended.TokenFE());
+		learner.setAnnotationType( "prediction" );
+		ExtractorAnnotatorWrapper wrapper = new ExtractorAnnotatorWrapper(
+			(ExtractorAnnotator)new TextLabelsAnnotatorTeacher( labels, labelString ).train( learner ) );
+		ExtractionSession session = wrapper.newSession();
+		ExtractionSession.LatencyRecorder recorder = new ExtractionSession.LatencyRecorder();
+		session.setMetrics( recorder );
+		List<String> sources = new ArrayList<String>();
+		for (Iterator<Span> i = testBase.documentSpanIterator(); i.hasNext(); ) {
+			String source = i.next().asString();
+			sources.add( source );
+			assertTrue( Arrays.equals( wrapper.extractFrom( source ), session.extractFrom( source ) ) );
+		}
+		List<String[]> batch = session.extractFrom( sources );
+		assertEquals( sources.size(), batch.size() );
+		for (int i = 0; i < sources.size(); i++)
+			assertTrue( Arrays.equals( wrapper.extractFrom( sources.get(i) ), batch.get(i) ) );
+		assertEquals( sources.size()+1, recorder.getCount() );
+		assertTrue( recorder.getPercentile( 0.5 ) <= recorder.getPercentile( 0.99 ) );
+	}
+
 	// double array is <precision,recall,tolerance> for train & test
 	private void doExtractionTest(AnnotatorLearner learner, double[]expected)
 	{
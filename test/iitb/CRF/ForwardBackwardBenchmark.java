@@ -0,0 +1,86 @@
+/** ForwardBackwardBenchmark.java
+ *
+ * Times one gradient computation of Trainer over synthetic sequences, with
+ * the forward-backward pass on flat arrays against the Colt matrices, for
+ * label counts from 5 to 50.  Both the scaled and the log space ("trainer ll")
+ * passes are timed, after checking that they agree.
+ * Run with optional arguments "-sequences N", "-length N" and "-rounds N".
+ */
+package iitb.CRF;
+
+import java.util.Random;
+
+public class ForwardBackwardBenchmark {
+    static class Data implements DataIter {
+        ViterbiBenchmark.Seq seqs[];
+        int pos;
+        Data(ViterbiBenchmark.Seq seqs[]) {this.seqs = seqs;}
+        public void startScan() {pos = 0;}
+        public boolean hasNext() {return pos < seqs.length;}
+        public DataSequence next() {return seqs[pos++];}
+    };
+
+    public static void main(String args[]) {
+        int sequences = 100, length = 50, rounds = 5;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-sequences")) sequences = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-length")) length = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-rounds")) rounds = Integer.parseInt(args[++i]);
+        }
+        int labelCounts[] = {5, 10, 20, 50};
+        String options[] = {"debugLvl 0", "debugLvl 0 trainer ll"};
+        for (int l = 0; l < labelCounts.length; l++) {
+            int numY = labelCounts[l];
+            Random random = new Random(0);
+            ViterbiBenchmark.FeatureGen fgen = new ViterbiBenchmark.FeatureGen(numY, 1000, 3);
+            ViterbiBenchmark.Seq seqs[] = new ViterbiBenchmark.Seq[sequences];
+            for (int s = 0; s < seqs.length; s++) {
+                int x[] = new int[length];
+                for (int i = 0; i < x.length; i++)
+                    x[i] = random.nextInt(fgen.vocab);
+                seqs[s] = new ViterbiBenchmark.Seq(x);
+                for (int i = 0; i < x.length; i++)
+                    seqs[s].y[i] = random.nextInt(numY);
+            }
+            double lambda[] = new double[fgen.numFeatures()];
+            for (int f = 0; f < lambda.length; f++)
+                lambda[f] = 0.1*random.nextGaussian();
+
+            for (int o = 0; o < options.length; o++) {
+                CRF crf = new CRF(numY, fgen, options[o]);
+                Trainer flat = new Trainer(crf.params);
+                // a subclass keeps the Colt matrices
+                Trainer colt = new Trainer(crf.params) {};
+                flat.init(crf, new Data(seqs), lambda);
+                colt.init(crf, new Data(seqs), lambda);
+
+                double flatGrad[] = new double[lambda.length], coltGrad[] = new double[lambda.length];
+                double flatLogli = flat.computeFunctionGradient(lambda, flatGrad);
+                double coltLogli = colt.computeFunctionGradient(lambda, coltGrad);
+                if (Math.abs(flatLogli - coltLogli) > 1e-9*Math.abs(coltLogli))
+                    throw new IllegalStateException("loglikelihoods differ: " + flatLogli + " " + coltLogli);
+                for (int f = 0; f < lambda.length; f++) {
+                    if (Math.abs(flatGrad[f] - coltGrad[f]) > 1e-9*Math.max(1, Math.abs(coltGrad[f])))
+                        throw new IllegalStateException("gradients differ at " + f + ": " + flatGrad[f] + " " + coltGrad[f]);
+                }
+
+                double flatMillis = time(flat, lambda, flatGrad, rounds);
+                double coltMillis = time(colt, lambda, coltGrad, rounds);
+                System.out.println(numY + " labels, \"" + options[o] + "\": "
+                        + String.format("%.1f", flatMillis) + " ms flat, "
+                        + String.format("%.1f", coltMillis) + " ms colt, speedup "
+                        + String.format("%.2f", coltMillis/flatMillis));
+            }
+        }
+    }
+
+    // average milliseconds per gradient, after a warmup
+    static double time(Trainer trainer, double lambda[], double grad[], int rounds) {
+        for (int r = 0; r < rounds; r++)
+            trainer.computeFunctionGradient(lambda, grad);
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++)
+            trainer.computeFunctionGradient(lambda, grad);
+        return (System.nanoTime() - start)/1e6/rounds;
+    }
+};
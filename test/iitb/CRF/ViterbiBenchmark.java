@@ -0,0 +1,114 @@
+/** ViterbiBenchmark.java
+ *
+ * Times Viterbi.bestLabelSequence on long synthetic sequences, with the
+ * argmax path for a beam of one against the general Entry/Soln search.
+ * Run with optional arguments "-length N", "-labels N" and "-rounds N".
+ */
+package iitb.CRF;
+
+import java.util.Random;
+
+public class ViterbiBenchmark {
+    static class Seq implements DataSequence {
+        private static final long serialVersionUID = 1L;
+        int x[], y[];
+        Seq(int x[]) {this.x = x; y = new int[x.length];}
+        public int length() {return x.length;}
+        public int y(int i) {return y[i];}
+        public Object x(int i) {return new Integer(x[i]);}
+        public void set_y(int i, int label) {y[i] = label;}
+    };
+    /*
+     * Each token fires statesPerToken state features for every label, and
+     * every label pair has an edge feature.
+     */
+    static class FeatureGen implements FeatureGenerator, Feature {
+        private static final long serialVersionUID = 1L;
+        int numY, vocab, statesPerToken;
+        Seq data;
+        int pos, next, end;
+        int index, y, yprev;
+        FeatureGen(int numY, int vocab, int statesPerToken) {
+            this.numY = numY;
+            this.vocab = vocab;
+            this.statesPerToken = statesPerToken;
+        }
+        public int numFeatures() {return vocab*statesPerToken*numY + numY*numY;}
+        public void startScanFeaturesAt(DataSequence data, int pos) {
+            this.data = (Seq)data;
+            this.pos = pos;
+            next = 0;
+            end = statesPerToken*numY + ((pos > 0)?numY*numY:0);
+        }
+        public boolean hasNext() {return next < end;}
+        public Feature next() {
+            int states = statesPerToken*numY;
+            y = next%numY;
+            if (next < states) {
+                index = data.x[pos]*states + next;
+                yprev = -1;
+            } else {
+                index = vocab*states + next - states;
+                yprev = (next - states)/numY;
+            }
+            next++;
+            return this;
+        }
+        public int index() {return index;}
+        public int y() {return y;}
+        public int yprev() {return yprev;}
+        public float value() {return 1;}
+        public int[] yprevArray() {return null;}
+        public String featureName(int featureIndex) {return "f" + featureIndex;}
+    };
+
+    public static void main(String args[]) {
+        int length = 20000, numY = 10, rounds = 20;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-length")) length = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-labels")) numY = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-rounds")) rounds = Integer.parseInt(args[++i]);
+        }
+        Random random = new Random(0);
+        FeatureGen fgen = new FeatureGen(numY, 1000, 3);
+        CRF crf = new CRF(numY, fgen, "");
+        double lambda[] = new double[fgen.numFeatures()];
+        for (int f = 0; f < lambda.length; f++)
+            lambda[f] = random.nextGaussian();
+        int x[] = new int[length];
+        for (int i = 0; i < x.length; i++)
+            x[i] = random.nextInt(fgen.vocab);
+
+        Viterbi argmax = new Viterbi(crf, 1);
+        // a subclass keeps the general search
+        Viterbi general = new Viterbi(crf, 1) {
+            private static final long serialVersionUID = 1L;
+        };
+        Seq a = new Seq(x), g = new Seq(x);
+        double argmaxScore = argmax.bestLabelSequence(a, lambda);
+        double generalScore = general.bestLabelSequence(g, lambda);
+        for (int i = 0; i < length; i++) {
+            if (a.y[i] != g.y[i])
+                throw new IllegalStateException("labels differ at " + i);
+        }
+        if (argmaxScore != generalScore)
+            throw new IllegalStateException("scores differ: " + argmaxScore + " " + generalScore);
+
+        double argmaxMillis = time(argmax, a, lambda, rounds);
+        double generalMillis = time(general, g, lambda, rounds);
+        System.out.println(length + " positions, " + numY + " labels: "
+                + String.format("%.1f", argmaxMillis) + " ms argmax, "
+                + String.format("%.1f", generalMillis) + " ms general, speedup "
+                + String.format("%.2f", generalMillis/argmaxMillis));
+    }
+
+    // average milliseconds per sequence, after a warmup
+    static double time(Viterbi viterbi, Seq seq, double lambda[], int rounds) {
+        for (int r = 0; r < rounds; r++)
+            viterbi.bestLabelSequence(seq, lambda);
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++)
+            viterbi.bestLabelSequence(seq, lambda);
+        return (System.nanoTime() - start)/1e6/rounds;
+    }
+};
@@ -0,0 +1,93 @@
+package riso.numerical;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that a warm started LBFGS.Minimizer finds the same optimum as a
+ * cold start, in fewer evaluations.
+ */
+public class LBFGSTest extends TestCase
+{
+  private static final int N = 20, M = 20;
+
+  private static final double EPS = 1e-6;
+
+  public LBFGSTest(String name)
+  {
+    super(name);
+  }
+
+  /** The quadratic sum of scale[i]*(x[i]-center[i])^2/2; fills in g. */
+  private static double quadratic(double[] x, double[] center, double[] g)
+  {
+    double f = 0;
+    for (int i = 0; i < x.length; i++) {
+      double d = x[i] - center[i];
+      double scale = 1 + i * i;
+      f += scale * d * d / 2;
+      g[i] = scale * d;
+    }
+    return f;
+  }
+
+  /** Minimize the quadratic from x, returning the number of evaluations. */
+  private static int minimize(LBFGS.Minimizer minimizer, double[] x, double[] center)
+    throws LBFGS.ExceptionWithIflag
+  {
+    double[] g = new double[N];
+    double[] diag = new double[N];
+    int[] iprint = {-1, 0};
+    int[] iflag = {0};
+    int evaluations = 0;
+    do {
+      double f = quadratic(x, center, g);
+      evaluations++;
+      minimizer.lbfgs(N, M, x, f, g, false, diag, iprint, EPS, 1e-16, iflag);
+    } while (iflag[0] == 1 && evaluations < 1000);
+    assertEquals(0, iflag[0]);
+    return evaluations;
+  }
+
+  public void testWarmStart() throws Exception
+  {
+    double[] center = new double[N];
+    for (int i = 0; i < N; i++) center[i] = Math.sin(i);
+    LBFGS.Minimizer minimizer = new LBFGS.Minimizer(N, M);
+    minimizer.setWarmStart(true);
+    double[] x = new double[N];
+    minimize(minimizer, x, center);
+    checkOptimum(center, x);
+
+    // re-optimize a slightly changed objective from the returned point
+    double[] moved = new double[N];
+    for (int i = 0; i < N; i++) moved[i] = center[i] + 0.01 * Math.cos(i);
+    double[] cold = (double[]) x.clone();
+    int coldEvaluations = minimize(new LBFGS.Minimizer(N, M), cold, moved);
+    double[] warm = (double[]) x.clone();
+    int warmEvaluations = minimize(minimizer, warm, moved);
+
+    checkOptimum(moved, cold);
+    checkOptimum(moved, warm);
+    assertTrue("warm start took " + warmEvaluations + " evaluations, cold start " + coldEvaluations,
+               warmEvaluations < coldEvaluations);
+  }
+
+  private static void checkOptimum(double[] expected, double[] actual)
+  {
+    for (int i = 0; i < N; i++) {
+      assertEquals(expected[i], actual[i], 1e-5);
+    }
+  }
+
+  public static Test suite()
+  {
+    return new TestSuite(LBFGSTest.class);
+  }
+
+  public static void main(String args[])
+  {
+    junit.textui.TestRunner.run(suite());
+  }
+}